@@ -0,0 +1,185 @@
+package com.xatkit.plugins.moodle.benchmarks;
+
+import com.xatkit.plugins.moodle.platform.metrics.LatencyHistogram;
+import com.xatkit.plugins.moodle.platform.metrics.MetricNames;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how many concurrent chat widgets a single node of a bot using the Moodle platform sustains.
+ * <p>
+ * This class starts a {@link FakeMoodleServer} and a {@link SocketSwarm} of {@code activeUsers} users chatting
+ * with the bot, then opens idle socket connections (emulating the chat widgets of the users browsing Moodle) by steps
+ * of {@code step} connections up to {@code maxConnections}. After each step it waits {@code stepDuration} seconds and
+ * reports the number of live connections, the time taken to open the step's connections, the disconnections, and
+ * the reply latency of the active users. The test stops at the first step whose connections cannot all be opened,
+ * where connections are dropped, or where the p99 reply latency exceeds {@code maxLatency} milliseconds, and reports
+ * the last sustained number of connections. If the bot exposes its metrics (see
+ * {@code xatkit.moodle.metrics.port}), the number of sockets seen by the node is read from the {@code metrics} URL.
+ * <p>
+ * The bot must be started separately, as for the {@link LoadTest}. Each client connection uses a thread of the
+ * harness, large numbers of connections should be opened from another host, with a raised limit of open files
+ * ({@code ulimit -n}) on both hosts.
+ * <p>
+ * Usage: {@code java -cp target/benchmarks.jar com.xatkit.plugins.moodle.benchmarks.ConnectionScaleTest
+ * [--option=value]*}, see {@link #DEFAULTS} for the supported options.
+ */
+public final class ConnectionScaleTest {
+
+    /**
+     * The supported options and their default values.
+     */
+    private static final Map<String, String> DEFAULTS = new HashMap<>();
+
+    static {
+        DEFAULTS.put("bot", "http://localhost:5002");
+        DEFAULTS.put("metrics", "");
+        DEFAULTS.put("maxConnections", "10000");
+        DEFAULTS.put("step", "1000");
+        DEFAULTS.put("stepDuration", "10");
+        DEFAULTS.put("connectTimeout", "60");
+        DEFAULTS.put("activeUsers", "10");
+        DEFAULTS.put("firstUserId", "1000");
+        DEFAULTS.put("message", "What are my courses?");
+        DEFAULTS.put("thinkTime", "1000");
+        DEFAULTS.put("replyTimeout", "10000");
+        DEFAULTS.put("maxLatency", "1000");
+        DEFAULTS.put("moodlePort", "8089");
+        DEFAULTS.put("moodleLatency", "20");
+        DEFAULTS.put("courses", "10");
+    }
+
+    private ConnectionScaleTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>(DEFAULTS);
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0 || !DEFAULTS.containsKey(arg.substring(2, separator))) {
+                System.err.println("Unknown option " + arg + ", supported options: " + DEFAULTS);
+                System.exit(1);
+            }
+            options.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        String bot = options.get("bot");
+        int maxConnections = Integer.parseInt(options.get("maxConnections"));
+        int step = Integer.parseInt(options.get("step"));
+        long stepDuration = TimeUnit.SECONDS.toMillis(Long.parseLong(options.get("stepDuration")));
+        long connectTimeout = TimeUnit.SECONDS.toMillis(Long.parseLong(options.get("connectTimeout")));
+        int activeUsers = Integer.parseInt(options.get("activeUsers"));
+        int firstUserId = Integer.parseInt(options.get("firstUserId"));
+        String message = options.get("message");
+        long thinkTime = Long.parseLong(options.get("thinkTime"));
+        long replyTimeout = Long.parseLong(options.get("replyTimeout"));
+        double maxLatency = Double.parseDouble(options.get("maxLatency"));
+        List<SocketSwarm> widgets = new ArrayList<>();
+        try (FakeMoodleServer moodle = new FakeMoodleServer(Integer.parseInt(options.get("moodlePort")),
+                Long.parseLong(options.get("moodleLatency")), 0, Integer.parseInt(options.get("courses")));
+             SocketSwarm active = new SocketSwarm(bot, activeUsers, firstUserId, message, thinkTime,
+                     replyTimeout)) {
+            moodle.setMessageListener((toUserId, text) -> active.onReply(toUserId));
+            System.out.println("Fake Moodle endpoint: " + moodle.getEndpoint());
+            System.out.println("Connecting " + activeUsers + " active users to " + bot);
+            if (!active.connect(connectTimeout)) {
+                System.err.println("Some active users could not connect to the bot");
+                System.exit(1);
+            }
+            active.start();
+            System.out.println();
+            System.out.printf("%12s %12s %12s %10s %10s %10s %10s %10s%n", "connections", "connected",
+                    "connect(ms)", "dropped", "replies/s", "p50(ms)", "p99(ms)", "node");
+            int sustained = 0;
+            String failure = null;
+            for (int connections = 0; connections <= maxConnections && failure == null; connections += step) {
+                long connectTime = 0;
+                if (connections > 0) {
+                    SocketSwarm swarm = new SocketSwarm(bot, step, firstUserId + activeUsers + connections - step,
+                            message, thinkTime, replyTimeout);
+                    widgets.add(swarm);
+                    long startTime = System.nanoTime();
+                    if (!swarm.connect(connectTimeout)) {
+                        failure = "the connections could not be opened within " + connectTimeout + "ms";
+                    }
+                    connectTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+                }
+                active.resetStatistics();
+                Thread.sleep(stepDuration);
+                int connected = 0;
+                long dropped = 0;
+                for (SocketSwarm swarm : widgets) {
+                    connected += swarm.getConnectedCount();
+                    dropped += swarm.getDisconnectCount();
+                }
+                LatencyHistogram latencies = active.getLatencies();
+                double p99 = millis(latencies.getValueAtPercentile(99));
+                System.out.printf("%12d %12d %12d %10d %10.1f %10.2f %10.2f %10s%n", connections, connected,
+                        connectTime, dropped, active.getRepliedCount() * 1000d / stepDuration,
+                        millis(latencies.getValueAtPercentile(50)), p99, connectedSockets(options.get("metrics")));
+                if (failure == null) {
+                    if (connected < connections || dropped > 0) {
+                        failure = (connections - connected) + " connection(s) lost, " + dropped + " disconnection(s)";
+                    } else if (active.getRepliedCount() == 0 || p99 > maxLatency) {
+                        failure = "the p99 reply latency exceeded " + maxLatency + "ms";
+                    } else {
+                        sustained = connections;
+                    }
+                }
+            }
+            active.stop();
+            System.out.println();
+            if (failure != null) {
+                System.out.println("Stopped: " + failure);
+            }
+            System.out.println("Sustained:        " + sustained + " idle connections with " + activeUsers
+                    + " active users");
+        } finally {
+            for (SocketSwarm swarm : widgets) {
+                swarm.close();
+            }
+        }
+    }
+
+    /**
+     * Reads the number of sockets connected to the node from its metrics endpoint.
+     *
+     * @param metricsUrl the URL of the node's metrics endpoint, or an empty string if it is not available
+     * @return the number of connected sockets, or {@code -} if it cannot be read
+     */
+    private static String connectedSockets(String metricsUrl) {
+        if (metricsUrl.isEmpty()) {
+            return "-";
+        }
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(metricsUrl).openConnection();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(),
+                    StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith(MetricNames.CONNECTED_SOCKETS + ' ')) {
+                        return line.substring(MetricNames.CONNECTED_SOCKETS.length() + 1).trim();
+                    }
+                }
+            } finally {
+                connection.disconnect();
+            }
+        } catch (IOException e) {
+            return "?";
+        }
+        return "-";
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000d;
+    }
+}
@@ -0,0 +1,108 @@
+package com.xatkit.plugins.moodle.benchmarks;
+
+import com.xatkit.plugins.moodle.platform.utils.MoodleXmlResponseReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathFactory;
+
+/**
+ * Compares the streaming {@link MoodleXmlResponseReader} with the DOM + XPath parsing previously used by {@code
+ * GetCourses} on {@code core_enrol_get_users_courses} responses of increasing size.
+ * <p>
+ * Run with {@code java -jar target/benchmarks.jar CourseResponseParsingBenchmark -prof gc} to compare the
+ * allocation rates of both approaches.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CourseResponseParsingBenchmark {
+
+    /**
+     * The number of courses in the response.
+     */
+    @Param({"5", "50", "500"})
+    public int courseCount;
+
+    private byte[] response;
+
+    private MoodleXmlResponseReader reader;
+
+    @Setup
+    public void setUp() {
+        this.response = MoodleResponses.usersCourses(courseCount).getBytes(StandardCharsets.UTF_8);
+        this.reader = new MoodleXmlResponseReader("fullname");
+    }
+
+    /**
+     * Parses the response with the streaming {@link MoodleXmlResponseReader}.
+     *
+     * @return the formatted course list
+     */
+    @Benchmark
+    public String streaming() {
+        StringBuilder result = new StringBuilder();
+        reader.read(new ByteArrayInputStream(response), (record, key, value) -> result.append(record + 1)
+                .append(" - ").append(value).append("<br>"));
+        return result.toString();
+    }
+
+    /**
+     * Parses the response with the DOM + XPath implementation previously used by {@code GetCourses}.
+     *
+     * @return the formatted course list
+     * @throws Exception if an error occurred when parsing the response
+     */
+    @Benchmark
+    public String domXPath() throws Exception {
+        InputStream body = new ByteArrayInputStream(response);
+        String result = "";
+        BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(body));
+        StringBuilder xml = new StringBuilder();
+        String line;
+        while ((line = bufferedReader.readLine()) != null) {
+            xml.append(line);
+        }
+        bufferedReader.close();
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new InputSource(new StringReader(xml.toString())));
+        NodeList errNodes = doc.getElementsByTagName("error");
+        if (errNodes.getLength() > 0) {
+            throw new IllegalStateException("Unexpected error in the benchmark response");
+        }
+        XPath xpath = XPathFactory.newInstance().newXPath();
+        XPathExpression expr = xpath.compile("//KEY[@name=\"fullname\"]");
+        NodeList nl = (NodeList) expr.evaluate(doc, XPathConstants.NODESET);
+        for (int i = 0; nl.getLength() > i; i++) {
+            result += (i + 1) + " - " + nl.item(i).getTextContent() + "<br>";
+        }
+        return result;
+    }
+}
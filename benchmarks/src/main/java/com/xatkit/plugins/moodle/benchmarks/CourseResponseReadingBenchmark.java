@@ -0,0 +1,81 @@
+package com.xatkit.plugins.moodle.benchmarks;
+
+import com.xatkit.plugins.moodle.platform.utils.MoodleCourse;
+import com.xatkit.plugins.moodle.platform.utils.MoodleCourseList;
+import com.xatkit.plugins.moodle.platform.utils.MoodleResponseReader;
+import com.xatkit.plugins.moodle.platform.utils.MoodleRestFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the handling of {@code core_enrol_get_users_courses} responses performed by {@code GetCourses}: the
+ * response is deserialized into {@link MoodleCourse}s and rendered as the numbered course list returned to the bot.
+ * <p>
+ * The benchmark covers both response formats supported by the platform, on realistic response sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CourseResponseReadingBenchmark {
+
+    /**
+     * The format of the response.
+     */
+    @Param({"json", "xml"})
+    public String format;
+
+    /**
+     * The number of courses in the response.
+     */
+    @Param({"5", "50", "500"})
+    public int courseCount;
+
+    private byte[] response;
+
+    private MoodleResponseReader reader;
+
+    @Setup
+    public void setUp() {
+        MoodleRestFormat restFormat = MoodleRestFormat.fromLabel(format);
+        String body = restFormat == MoodleRestFormat.JSON ? MoodleResponses.usersCoursesJson(courseCount)
+                : MoodleResponses.usersCourses(courseCount);
+        this.response = body.getBytes(StandardCharsets.UTF_8);
+        this.reader = new MoodleResponseReader(restFormat);
+    }
+
+    /**
+     * Deserializes the response into a {@link MoodleCourseList}.
+     *
+     * @return the deserialized {@link MoodleCourseList}
+     */
+    @Benchmark
+    public MoodleCourseList read() {
+        return new MoodleCourseList(reader.readList(new ByteArrayInputStream(response), MoodleCourse.class));
+    }
+
+    /**
+     * Deserializes the response and renders the numbered course list returned to the bot.
+     *
+     * @return the rendered course list
+     */
+    @Benchmark
+    public String readAndRender() {
+        return read().toString();
+    }
+}
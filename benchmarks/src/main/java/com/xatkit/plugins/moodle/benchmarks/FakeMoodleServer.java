@@ -0,0 +1,280 @@
+package com.xatkit.plugins.moodle.benchmarks;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A local stand-in for Moodle's REST web services.
+ * <p>
+ * The server implements the functions called by the platform ({@code core_enrol_get_users_courses},
+ * {@code core_course_get_courses} (which returns the same courses), {@code core_enrol_get_enrolled_users}, and
+ * {@code core_message_send_instant_messages}) in both the JSON and XML formats, as well as the batched calls of
+ * {@code core_enrol_get_users_courses} through {@code tool_mobile_call_external_functions} in the JSON format, and
+ * can emulate a slow or unreliable Moodle instance: each call is delayed by {@code latency} milliseconds, and fails
+ * with a Moodle exception payload with the probability {@code errorRate}. The messages sent to the users are passed
+ * to the {@link MessageListener} registered with {@link #setMessageListener(MessageListener)}, which plays the role
+ * of Moodle pushing the messages to the browsers.
+ * <p>
+ * The bot under test must be configured with {@link #getEndpoint()} as its Moodle endpoint.
+ */
+public class FakeMoodleServer implements AutoCloseable {
+
+    /**
+     * The path of Moodle's REST web service.
+     */
+    public static final String PATH = "/webservice/rest/server.php";
+
+    /**
+     * Receives the messages sent to the users.
+     */
+    @FunctionalInterface
+    public interface MessageListener {
+
+        /**
+         * Handles the provided {@code text} sent to the user {@code toUserId}.
+         *
+         * @param toUserId the id of the user the message is sent to
+         * @param text     the text of the message
+         */
+        void onMessage(int toUserId, String text);
+    }
+
+    private final HttpServer server;
+
+    private final ExecutorService executor;
+
+    private final long latency;
+
+    private final double errorRate;
+
+    private final int coursesPerUser;
+
+    private final AtomicLong messageIds = new AtomicLong();
+
+    private final LongAdder calls = new LongAdder();
+
+    private final LongAdder errors = new LongAdder();
+
+    private volatile MessageListener messageListener = (toUserId, text) -> {
+    };
+
+    private volatile int enrolledUsers;
+
+    /**
+     * Constructs and starts a new {@link FakeMoodleServer}.
+     *
+     * @param port           the port of the server ({@code 0} to use a random port)
+     * @param latency        the delay (in milliseconds) applied to each call
+     * @param errorRate      the probability (between {@code 0} and {@code 1}) of a call to fail
+     * @param coursesPerUser the number of courses returned for each user
+     * @throws IOException if the server cannot be started
+     */
+    public FakeMoodleServer(int port, long latency, double errorRate, int coursesPerUser) throws IOException {
+        this.latency = latency;
+        this.errorRate = errorRate;
+        this.coursesPerUser = coursesPerUser;
+        this.server = HttpServer.create(new InetSocketAddress(port), 1024);
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "fake-moodle");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server.setExecutor(executor);
+        this.server.createContext(PATH, this::handle);
+        this.server.start();
+    }
+
+    /**
+     * Returns the endpoint to configure in the bot under test.
+     *
+     * @return the endpoint of the server, including a fake {@code wstoken}
+     */
+    public String getEndpoint() {
+        return "http://localhost:" + server.getAddress().getPort() + PATH + "?wstoken=fake";
+    }
+
+    /**
+     * Sets the {@link MessageListener} receiving the messages sent to the users.
+     *
+     * @param messageListener the {@link MessageListener} to set
+     */
+    public void setMessageListener(MessageListener messageListener) {
+        this.messageListener = messageListener;
+    }
+
+    /**
+     * Sets the number of users enrolled in each course.
+     * <p>
+     * The users returned by {@code core_enrol_get_enrolled_users} have the ids {@code 1} to {@code enrolledUsers}.
+     *
+     * @param enrolledUsers the number of users enrolled in each course
+     */
+    public void setEnrolledUsers(int enrolledUsers) {
+        this.enrolledUsers = enrolledUsers;
+    }
+
+    /**
+     * Returns the number of calls received by the server.
+     *
+     * @return the number of calls received by the server
+     */
+    public long getCallCount() {
+        return calls.sum();
+    }
+
+    /**
+     * Returns the number of calls that failed with an emulated error.
+     *
+     * @return the number of failed calls
+     */
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        calls.increment();
+        Map<String, String> parameters = parse(exchange.getRequestURI().getRawQuery());
+        parameters.putAll(parse(read(exchange.getRequestBody())));
+        boolean json = !"xml".equals(parameters.get("moodlewsrestformat"));
+        if (latency > 0) {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        String function = parameters.get("wsfunction");
+        String body;
+        if (ThreadLocalRandom.current().nextDouble() < errorRate) {
+            errors.increment();
+            body = exception("servicenotavailable", "Web service is not available", json);
+        } else if ("core_enrol_get_users_courses".equals(function) || "core_course_get_courses".equals(function)) {
+            body = json ? MoodleResponses.usersCoursesJson(coursesPerUser)
+                    : MoodleResponses.usersCourses(coursesPerUser);
+        } else if ("core_enrol_get_enrolled_users".equals(function)) {
+            body = enrolledUsers(json);
+        } else if ("core_message_send_instant_messages".equals(function)) {
+            body = sendMessages(parameters, json);
+        } else if ("tool_mobile_call_external_functions".equals(function) && json) {
+            body = callFunctions(parameters);
+        } else {
+            body = exception("invalidrecord", "Can not find data record in database table external_functions.",
+                    json);
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", json ? "application/json" : "application/xml");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    private String sendMessages(Map<String, String> parameters, boolean json) {
+        StringBuilder sb = new StringBuilder(json ? "[" : "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n"
+                + "<RESPONSE>\n<MULTIPLE>\n");
+        for (int i = 0; parameters.containsKey("messages[" + i + "][touserid]"); i++) {
+            int toUserId = Integer.parseInt(parameters.get("messages[" + i + "][touserid]"));
+            String clientMsgId = parameters.getOrDefault("messages[" + i + "][clientmsgid]", "");
+            long msgId = messageIds.incrementAndGet();
+            if (json) {
+                sb.append(i > 0 ? "," : "").append("{\"msgid\":").append(msgId).append(",\"clientmsgid\":\"")
+                        .append(clientMsgId).append("\",\"text\":\"\",\"timecreated\":0,\"conversationid\":1"
+                        + ",\"useridfrom\":2,\"candeletemessagesforallusers\":false}");
+            } else {
+                sb.append("<SINGLE>\n<KEY name=\"msgid\"><VALUE>").append(msgId).append("</VALUE>\n</KEY>\n")
+                        .append("<KEY name=\"clientmsgid\"><VALUE>").append(clientMsgId)
+                        .append("</VALUE>\n</KEY>\n</SINGLE>\n");
+            }
+            messageListener.onMessage(toUserId, parameters.get("messages[" + i + "][text]"));
+        }
+        return sb.append(json ? "]" : "</MULTIPLE>\n</RESPONSE>\n").toString();
+    }
+
+    private String enrolledUsers(boolean json) {
+        StringBuilder sb = new StringBuilder(json ? "[" : "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n"
+                + "<RESPONSE>\n<MULTIPLE>\n");
+        int count = enrolledUsers;
+        for (int i = 1; i <= count; i++) {
+            if (json) {
+                sb.append(i > 1 ? "," : "").append("{\"id\":").append(i).append(",\"fullname\":\"User ")
+                        .append(i).append("\"}");
+            } else {
+                sb.append("<SINGLE>\n<KEY name=\"id\"><VALUE>").append(i).append("</VALUE>\n</KEY>\n")
+                        .append("<KEY name=\"fullname\"><VALUE>User ").append(i)
+                        .append("</VALUE>\n</KEY>\n</SINGLE>\n");
+            }
+        }
+        return sb.append(json ? "]" : "</MULTIPLE>\n</RESPONSE>\n").toString();
+    }
+
+    private String callFunctions(Map<String, String> parameters) {
+        StringBuilder sb = new StringBuilder("{\"responses\":[");
+        String courses = MoodleResponses.usersCoursesJson(coursesPerUser).replace("\\", "\\\\")
+                .replace("\"", "\\\"");
+        for (int i = 0; parameters.containsKey("requests[" + i + "][function]"); i++) {
+            sb.append(i > 0 ? "," : "");
+            if ("core_enrol_get_users_courses".equals(parameters.get("requests[" + i + "][function]"))) {
+                sb.append("{\"error\":false,\"data\":\"").append(courses).append("\"}");
+            } else {
+                sb.append("{\"error\":true,\"exception\":\"{}\"}");
+            }
+        }
+        return sb.append("]}").toString();
+    }
+
+    private static String exception(String errorCode, String message, boolean json) {
+        if (json) {
+            return "{\"exception\":\"moodle_exception\",\"errorcode\":\"" + errorCode + "\",\"message\":\"" + message
+                    + "\"}";
+        }
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n<EXCEPTION class=\"moodle_exception\">\n<ERRORCODE>"
+                + errorCode + "</ERRORCODE>\n<MESSAGE>" + message + "</MESSAGE>\n</EXCEPTION>\n";
+    }
+
+    private static String read(InputStream is) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = is.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String> parse(String form) throws UnsupportedEncodingException {
+        Map<String, String> result = new HashMap<>();
+        if (form == null || form.isEmpty()) {
+            return result;
+        }
+        for (String pair : form.split("&")) {
+            int separator = pair.indexOf('=');
+            String key = separator < 0 ? pair : pair.substring(0, separator);
+            String value = separator < 0 ? "" : pair.substring(separator + 1);
+            result.put(URLDecoder.decode(key, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+        }
+        return result;
+    }
+}
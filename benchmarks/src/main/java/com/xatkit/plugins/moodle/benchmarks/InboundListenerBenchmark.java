@@ -0,0 +1,147 @@
+package com.xatkit.plugins.moodle.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.xatkit.core.session.XatkitSession;
+import com.xatkit.plugins.moodle.platform.io.InboundMessageDispatcher;
+import com.xatkit.plugins.moodle.platform.session.MoodleSessionContext;
+import com.xatkit.plugins.moodle.platform.session.MoodleSessionManager;
+import com.xatkit.plugins.moodle.platform.utils.MessageObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of the {@code MoodleIntentProvider} listener path with a stub recognizer.
+ * <p>
+ * Each operation deserializes a {@code user_message} payload, submits it to the {@link InboundMessageDispatcher},
+ * and processes it on a worker as the provider does: the user's session is retrieved from the
+ * {@link MoodleSessionManager}, the intent is recognized by a keyword-based stub (optionally burning
+ * {@code recognitionTokens} of CPU to emulate a real recognizer), and the session's {@link MoodleSessionContext}
+ * is updated. The Xatkit core is not involved, meaning that the benchmark isolates the cost of the platform.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InboundListenerBenchmark {
+
+    /**
+     * The number of messages submitted in each benchmark invocation.
+     */
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * The number of users sending the messages.
+     */
+    @Param({"1", "100", "1000"})
+    public int userCount;
+
+    /**
+     * The CPU consumed by the stub recognizer for each message (in {@link Blackhole#consumeCPU(long)} tokens).
+     */
+    @Param({"0", "1000"})
+    public long recognitionTokens;
+
+    private byte[][] payloads;
+
+    private ObjectReader reader;
+
+    private MoodleSessionManager sessionManager;
+
+    private InboundMessageDispatcher dispatcher;
+
+    @Setup
+    public void setUp() {
+        String[] messages = {"What are my courses?", "Hello", "When is the next assignment due?", "Thanks!"};
+        this.payloads = new byte[userCount][];
+        for (int i = 0; i < userCount; i++) {
+            payloads[i] = MoodleResponses.userMessage(Integer.toString(1000 + i), messages[i % messages.length])
+                    .getBytes(StandardCharsets.UTF_8);
+        }
+        this.reader = new ObjectMapper().readerFor(MessageObject.class);
+        this.sessionManager = new MoodleSessionManager(XatkitSession::new);
+        this.dispatcher = new InboundMessageDispatcher(16, BATCH_SIZE);
+    }
+
+    @TearDown
+    public void tearDown() {
+        dispatcher.shutdown(1000);
+    }
+
+    /**
+     * Submits {@link #BATCH_SIZE} messages and waits until they are processed.
+     *
+     * @throws Exception if an error occurred when deserializing a payload
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void listener() throws Exception {
+        CountDownLatch processed = new CountDownLatch(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            MessageObject message = reader.readValue(payloads[i % userCount]);
+            boolean accepted = dispatcher.submit(message.getUserId(), () -> {
+                try {
+                    handle(message);
+                } finally {
+                    processed.countDown();
+                }
+            });
+            if (!accepted) {
+                processed.countDown();
+            }
+        }
+        processed.await();
+    }
+
+    /**
+     * Processes the provided {@code message} as {@code MoodleIntentProvider} does.
+     *
+     * @param message the message to process
+     */
+    private void handle(MessageObject message) {
+        XatkitSession session = sessionManager.getOrCreate(message.getUserId());
+        session.store("intent", recognize(message.getMessage()));
+        sessionManager.update(session, new MoodleSessionContext(message.getUserId(), message.getMessage(),
+                message.getCurrentCourseID()));
+    }
+
+    /**
+     * A keyword-based stub of the intent recognizer.
+     *
+     * @param text the text to recognize the intent of
+     * @return the name of the recognized intent
+     */
+    private String recognize(String text) {
+        if (recognitionTokens > 0) {
+            Blackhole.consumeCPU(recognitionTokens);
+        }
+        String normalized = text.toLowerCase(Locale.ROOT);
+        if (normalized.contains("course")) {
+            return "GetCourses";
+        } else if (normalized.contains("hello")) {
+            return "Greetings";
+        } else if (normalized.contains("assignment")) {
+            return "GetAssignments";
+        }
+        return "Default_Fallback_Intent";
+    }
+}
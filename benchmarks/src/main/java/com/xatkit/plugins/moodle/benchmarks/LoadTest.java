@@ -0,0 +1,97 @@
+package com.xatkit.plugins.moodle.benchmarks;
+
+import com.xatkit.plugins.moodle.platform.metrics.LatencyHistogram;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the end-to-end throughput and latency of a bot using the Moodle platform.
+ * <p>
+ * This class starts a {@link FakeMoodleServer} and drives a {@link SocketSwarm} of {@code users} concurrent users
+ * into the bot's socket server, then reports the sustained number of replied messages per second and the p50/p99
+ * reply latency. The bot must be started separately, with its Moodle endpoint set to the endpoint printed at
+ * startup (use {@code --moodlePort} to make it stable across runs), and must reply to the swarm's message (either
+ * with {@code Reply} or {@code PostMessage}).
+ * <p>
+ * Usage: {@code java -cp target/benchmarks.jar com.xatkit.plugins.moodle.benchmarks.LoadTest [--option=value]*},
+ * see {@link #DEFAULTS} for the supported options.
+ */
+public final class LoadTest {
+
+    /**
+     * The supported options and their default values.
+     */
+    private static final Map<String, String> DEFAULTS = new HashMap<>();
+
+    static {
+        DEFAULTS.put("bot", "http://localhost:5002");
+        DEFAULTS.put("users", "100");
+        DEFAULTS.put("firstUserId", "1000");
+        DEFAULTS.put("message", "What are my courses?");
+        DEFAULTS.put("thinkTime", "0");
+        DEFAULTS.put("replyTimeout", "10000");
+        DEFAULTS.put("warmup", "10");
+        DEFAULTS.put("duration", "60");
+        DEFAULTS.put("connectTimeout", "60");
+        DEFAULTS.put("moodlePort", "8089");
+        DEFAULTS.put("moodleLatency", "20");
+        DEFAULTS.put("moodleErrorRate", "0");
+        DEFAULTS.put("courses", "10");
+    }
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>(DEFAULTS);
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0 || !DEFAULTS.containsKey(arg.substring(2, separator))) {
+                System.err.println("Unknown option " + arg + ", supported options: " + DEFAULTS);
+                System.exit(1);
+            }
+            options.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        try (FakeMoodleServer moodle = new FakeMoodleServer(Integer.parseInt(options.get("moodlePort")),
+                Long.parseLong(options.get("moodleLatency")), Double.parseDouble(options.get("moodleErrorRate")),
+                Integer.parseInt(options.get("courses")));
+             SocketSwarm swarm = new SocketSwarm(options.get("bot"), Integer.parseInt(options.get("users")),
+                     Integer.parseInt(options.get("firstUserId")), options.get("message"),
+                     Long.parseLong(options.get("thinkTime")), Long.parseLong(options.get("replyTimeout")))) {
+            moodle.setMessageListener((toUserId, text) -> swarm.onReply(toUserId));
+            System.out.println("Fake Moodle endpoint: " + moodle.getEndpoint());
+            System.out.println("Connecting " + options.get("users") + " users to " + options.get("bot"));
+            if (!swarm.connect(TimeUnit.SECONDS.toMillis(Long.parseLong(options.get("connectTimeout"))))) {
+                System.err.println("Some users could not connect to the bot");
+                System.exit(1);
+            }
+            swarm.start();
+            Thread.sleep(TimeUnit.SECONDS.toMillis(Long.parseLong(options.get("warmup"))));
+            swarm.resetStatistics();
+            long moodleCalls = moodle.getCallCount();
+            long moodleErrors = moodle.getErrorCount();
+            long duration = Long.parseLong(options.get("duration"));
+            Thread.sleep(TimeUnit.SECONDS.toMillis(duration));
+            swarm.stop();
+            LatencyHistogram latencies = swarm.getLatencies();
+            System.out.println();
+            System.out.println("Users:            " + options.get("users"));
+            System.out.println("Duration:         " + duration + "s");
+            System.out.println("Sent:             " + swarm.getSentCount());
+            System.out.println("Replied:          " + swarm.getRepliedCount());
+            System.out.println("Timeouts:         " + swarm.getTimeoutCount());
+            System.out.printf("Throughput:       %.1f msg/s%n", (double) swarm.getRepliedCount() / duration);
+            System.out.printf("Latency p50:      %.2f ms%n", millis(latencies.getValueAtPercentile(50)));
+            System.out.printf("Latency p99:      %.2f ms%n", millis(latencies.getValueAtPercentile(99)));
+            System.out.printf("Latency max:      %.2f ms%n", millis(latencies.getMax()));
+            System.out.println("Moodle calls:     " + (moodle.getCallCount() - moodleCalls));
+            System.out.println("Moodle errors:    " + (moodle.getErrorCount() - moodleErrors));
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000d;
+    }
+}
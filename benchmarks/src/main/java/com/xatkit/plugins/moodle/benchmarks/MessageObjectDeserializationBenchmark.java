@@ -0,0 +1,78 @@
+package com.xatkit.plugins.moodle.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.xatkit.plugins.moodle.platform.utils.MessageObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the Jackson deserialization of the {@code user_message} payloads into {@link MessageObject}s, as
+ * performed by the socket server for each received message.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageObjectDeserializationBenchmark {
+
+    /**
+     * The length of the message sent by the user.
+     */
+    @Param({"16", "256", "2048"})
+    public int messageLength;
+
+    private byte[] payload;
+
+    private ObjectMapper mapper;
+
+    private ObjectReader reader;
+
+    @Setup
+    public void setUp() {
+        StringBuilder message = new StringBuilder(messageLength);
+        while (message.length() < messageLength) {
+            message.append("what are my courses ");
+        }
+        message.setLength(messageLength);
+        this.payload = MoodleResponses.userMessage("1234", message.toString()).getBytes(StandardCharsets.UTF_8);
+        this.mapper = new ObjectMapper();
+        this.reader = mapper.readerFor(MessageObject.class);
+    }
+
+    /**
+     * Deserializes the payload with a shared {@link ObjectMapper}.
+     *
+     * @return the deserialized {@link MessageObject}
+     * @throws Exception if an error occurred when deserializing the payload
+     */
+    @Benchmark
+    public MessageObject objectMapper() throws Exception {
+        return mapper.readValue(payload, MessageObject.class);
+    }
+
+    /**
+     * Deserializes the payload with a pre-built {@link ObjectReader}.
+     *
+     * @return the deserialized {@link MessageObject}
+     * @throws Exception if an error occurred when deserializing the payload
+     */
+    @Benchmark
+    public MessageObject objectReader() throws Exception {
+        return reader.readValue(payload);
+    }
+}
@@ -0,0 +1,52 @@
+package com.xatkit.plugins.moodle.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Objects;
+
+/**
+ * The entry point of the benchmarks jar.
+ * <p>
+ * This class accepts the command line options of JMH's own launcher, and writes the results in a JSON file named
+ * after the benchmarked version of the platform ({@code jmh-result-<version>.json}) unless the {@code -rf} or
+ * {@code -rff} options are provided. The JSON files of successive releases can be compared to spot regressions
+ * (e.g. with <a href="https://jmh.morethan.io">JMH Visualizer</a>).
+ */
+public final class MoodleBenchmarks {
+
+    private MoodleBenchmarks() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        if (commandLineOptions.shouldHelp()) {
+            commandLineOptions.showHelp();
+            return;
+        }
+        if (commandLineOptions.shouldListResultFormats()) {
+            commandLineOptions.listResultFormats();
+            return;
+        }
+        if (commandLineOptions.shouldListProfilers()) {
+            commandLineOptions.listProfilers();
+            return;
+        }
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLineOptions);
+        if (!commandLineOptions.getResultFormat().hasValue() && !commandLineOptions.getResult().hasValue()) {
+            String version = Objects.toString(MoodleBenchmarks.class.getPackage().getImplementationVersion(), "dev");
+            options.resultFormat(ResultFormatType.JSON).result("jmh-result-" + version + ".json");
+        }
+        Runner runner = new Runner(options.build());
+        if (commandLineOptions.shouldList()) {
+            runner.list();
+        } else if (commandLineOptions.shouldListWithParams()) {
+            runner.listWithParams(commandLineOptions);
+        } else {
+            runner.run();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.xatkit.plugins.moodle.benchmarks;
+
+/**
+ * Builds realistic Moodle web service responses used as benchmark inputs.
+ */
+final class MoodleResponses {
+
+    private MoodleResponses() {
+    }
+
+    /**
+     * Returns a {@code core_enrol_get_users_courses} XML response containing {@code courseCount} courses.
+     * <p>
+     * The records contain the keys returned by Moodle 3.8, including the nested {@code overviewfiles} structure.
+     *
+     * @param courseCount the number of courses in the response
+     * @return the XML response
+     */
+    static String usersCourses(int courseCount) {
+        StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n<RESPONSE>\n<MULTIPLE>\n");
+        for (int i = 1; i <= courseCount; i++) {
+            sb.append("<SINGLE>\n");
+            key(sb, "id", Integer.toString(i));
+            key(sb, "shortname", "C" + i);
+            key(sb, "fullname", "Course number " + i + " - Introduction to software modeling");
+            key(sb, "displayname", "Course number " + i + " - Introduction to software modeling");
+            key(sb, "enrolledusercount", Integer.toString(100 + i));
+            key(sb, "idnumber", "");
+            key(sb, "visible", "1");
+            key(sb, "summary", "&lt;p&gt;This course introduces the basics of model-driven engineering, "
+                    + "domain-specific languages, and model transformations.&lt;/p&gt;");
+            key(sb, "summaryformat", "1");
+            key(sb, "format", "topics");
+            key(sb, "showgrades", "1");
+            key(sb, "lang", "");
+            key(sb, "enablecompletion", "1");
+            key(sb, "completionhascriteria", "0");
+            key(sb, "completionusertracked", "1");
+            key(sb, "category", Integer.toString(1 + i % 7));
+            key(sb, "progress", "42");
+            key(sb, "completed", "0");
+            key(sb, "startdate", "1580511600");
+            key(sb, "enddate", "1612047600");
+            key(sb, "marker", "0");
+            key(sb, "lastaccess", "1586000000");
+            key(sb, "isfavourite", "0");
+            key(sb, "hidden", "0");
+            sb.append("<KEY name=\"overviewfiles\">\n<MULTIPLE>\n<SINGLE>\n");
+            key(sb, "filename", "course" + i + ".png");
+            key(sb, "filepath", "/");
+            key(sb, "filesize", "20480");
+            key(sb, "fileurl", "https://moodle.example.org/webservice/pluginfile.php/" + i + "/course/overviewfiles/"
+                    + "course" + i + ".png");
+            key(sb, "timemodified", "1580511600");
+            key(sb, "mimetype", "image/png");
+            sb.append("</SINGLE>\n</MULTIPLE>\n</KEY>\n");
+            sb.append("</SINGLE>\n");
+        }
+        sb.append("</MULTIPLE>\n</RESPONSE>\n");
+        return sb.toString();
+    }
+
+    /**
+     * Returns a {@code core_enrol_get_users_courses} JSON response containing {@code courseCount} courses.
+     * <p>
+     * The records contain the same keys as the ones of {@link #usersCourses(int)}.
+     *
+     * @param courseCount the number of courses in the response
+     * @return the JSON response
+     */
+    static String usersCoursesJson(int courseCount) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 1; i <= courseCount; i++) {
+            if (i > 1) {
+                sb.append(',');
+            }
+            sb.append("{\"id\":").append(i)
+                    .append(",\"shortname\":\"C").append(i).append('"')
+                    .append(",\"fullname\":\"Course number ").append(i)
+                    .append(" - Introduction to software modeling\"")
+                    .append(",\"displayname\":\"Course number ").append(i)
+                    .append(" - Introduction to software modeling\"")
+                    .append(",\"enrolledusercount\":").append(100 + i)
+                    .append(",\"idnumber\":\"\",\"visible\":1")
+                    .append(",\"summary\":\"<p>This course introduces the basics of model-driven engineering, "
+                            + "domain-specific languages, and model transformations.</p>\"")
+                    .append(",\"summaryformat\":1,\"format\":\"topics\",\"showgrades\":true,\"lang\":\"\"")
+                    .append(",\"enablecompletion\":true,\"completionhascriteria\":false")
+                    .append(",\"completionusertracked\":true")
+                    .append(",\"category\":").append(1 + i % 7)
+                    .append(",\"progress\":42,\"completed\":false,\"startdate\":1580511600")
+                    .append(",\"enddate\":1612047600,\"marker\":0,\"lastaccess\":1586000000")
+                    .append(",\"isfavourite\":false,\"hidden\":false")
+                    .append(",\"overviewfiles\":[{\"filename\":\"course").append(i).append(".png\"")
+                    .append(",\"filepath\":\"/\",\"filesize\":20480")
+                    .append(",\"fileurl\":\"https://moodle.example.org/webservice/pluginfile.php/").append(i)
+                    .append("/course/overviewfiles/course").append(i).append(".png\"")
+                    .append(",\"timemodified\":1580511600,\"mimetype\":\"image/png\"}]}");
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * Returns a {@code user_message} event payload sent by the Moodle chat client.
+     *
+     * @param userId  the id of the user sending the message
+     * @param message the message
+     * @return the JSON payload
+     */
+    static String userMessage(String userId, String message) {
+        return "{\"message\":\"" + message + "\",\"userId\":\"" + userId + "\",\"currentCourseAccessID\":\"42\"}";
+    }
+
+    private static void key(StringBuilder sb, String name, String value) {
+        sb.append("<KEY name=\"").append(name).append("\"><VALUE>").append(value).append("</VALUE>\n</KEY>\n");
+    }
+}
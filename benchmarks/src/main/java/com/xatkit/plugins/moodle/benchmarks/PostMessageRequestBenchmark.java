@@ -0,0 +1,81 @@
+package com.xatkit.plugins.moodle.benchmarks;
+
+import com.xatkit.plugins.moodle.platform.action.MoodleWebServiceClient;
+import org.apache.commons.configuration2.BaseConfiguration;
+import org.apache.http.client.methods.HttpPost;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the building of the {@code core_message_send_instant_messages} requests sent for the messages posted by
+ * {@code PostMessage}.
+ * <p>
+ * The request fields are built as in {@code MessageBatcher}, for batches of increasing size, and encoded into a
+ * form request by {@link MoodleWebServiceClient#createRequest(String, String, Map)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PostMessageRequestBenchmark {
+
+    private static final String ENDPOINT = "https://moodle.example.org/webservice/rest/server.php?wstoken=0123456789"
+            + "abcdef";
+
+    /**
+     * The number of messages in the request.
+     */
+    @Param({"1", "10", "50"})
+    public int batchSize;
+
+    private MoodleWebServiceClient client;
+
+    private String[] texts;
+
+    @Setup
+    public void setUp() {
+        this.client = new MoodleWebServiceClient(new BaseConfiguration());
+        this.texts = new String[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            texts[i] = "You are registered in the following courses:<br>1 - Course number " + i
+                    + " - Introduction to software modeling<br>";
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.close();
+    }
+
+    /**
+     * Builds the request sending the batch of messages.
+     *
+     * @return the built request
+     */
+    @Benchmark
+    public HttpPost buildRequest() {
+        Map<String, Object> fields = new HashMap<>(batchSize * 4);
+        for (int i = 0; i < batchSize; i++) {
+            fields.put("messages[" + i + "][touserid]", 1000 + i);
+            fields.put("messages[" + i + "][text]", texts[i]);
+            fields.put("messages[" + i + "][clientmsgid]", "xatkit-" + i);
+        }
+        return client.createRequest(ENDPOINT, "core_message_send_instant_messages", fields);
+    }
+}
@@ -0,0 +1,286 @@
+package com.xatkit.plugins.moodle.benchmarks;
+
+import com.xatkit.plugins.moodle.platform.metrics.LatencyHistogram;
+import com.xatkit.plugins.moodle.platform.utils.SocketEventTypes;
+import io.socket.client.IO;
+import io.socket.client.Socket;
+import io.socket.engineio.client.transports.WebSocket;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A swarm of socket.io clients emulating Moodle users chatting with the bot.
+ * <p>
+ * Each user runs a closed loop: it sends a {@link SocketEventTypes#USER_MESSAGE}, waits for the reply of the bot,
+ * waits {@code thinkTime} milliseconds, and sends its next message. Replies are received either over the socket
+ * ({@link SocketEventTypes#BOT_MESSAGE} events) or through {@link #onReply(int)}, which is called by the
+ * {@link FakeMoodleServer} when the bot sends a message through Moodle's REST API. The end-to-end latency of each
+ * message (from its emission to the first reply) is recorded in a {@link LatencyHistogram}.
+ */
+public class SocketSwarm implements AutoCloseable {
+
+    private final OkHttpClient httpClient;
+
+    private final List<VirtualUser> users;
+
+    private final ConcurrentHashMap<Integer, VirtualUser> usersById = new ConcurrentHashMap<>();
+
+    private final String message;
+
+    private final long thinkTime;
+
+    private final long replyTimeout;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final LongAdder sent = new LongAdder();
+
+    private final LongAdder replied = new LongAdder();
+
+    private final LongAdder timeouts = new LongAdder();
+
+    private final AtomicInteger connected = new AtomicInteger();
+
+    private final LongAdder disconnects = new LongAdder();
+
+    private volatile LatencyHistogram latencies = new LatencyHistogram();
+
+    private volatile boolean running;
+
+    /**
+     * Constructs a new {@link SocketSwarm}.
+     *
+     * @param url          the URL of the bot's socket server
+     * @param userCount    the number of users
+     * @param firstUserId  the id of the first user (the users have consecutive ids)
+     * @param message      the message sent by the users
+     * @param thinkTime    the time (in milliseconds) waited by a user between a reply and its next message
+     * @param replyTimeout the time (in milliseconds) after which a message without reply is considered lost
+     * @throws URISyntaxException if the provided {@code url} is not valid
+     */
+    public SocketSwarm(String url, int userCount, int firstUserId, String message, long thinkTime,
+                       long replyTimeout) throws URISyntaxException {
+        this.message = message;
+        this.thinkTime = thinkTime;
+        this.replyTimeout = replyTimeout;
+        this.scheduler = Executors.newScheduledThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors()),
+                r -> {
+                    Thread thread = new Thread(r, "socket-swarm");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        /*
+         * The default OkHttp dispatcher accepts at most 5 concurrent calls per host, and each open websocket holds one
+         * of them.
+         */
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(Integer.MAX_VALUE);
+        dispatcher.setMaxRequestsPerHost(Integer.MAX_VALUE);
+        this.httpClient = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .readTimeout(0, TimeUnit.MILLISECONDS)
+                .build();
+        this.users = new ArrayList<>(userCount);
+        for (int i = 0; i < userCount; i++) {
+            IO.Options options = new IO.Options();
+            options.forceNew = true;
+            options.transports = new String[]{WebSocket.NAME};
+            options.webSocketFactory = httpClient;
+            options.callFactory = httpClient;
+            VirtualUser user = new VirtualUser(firstUserId + i, IO.socket(url, options));
+            users.add(user);
+            usersById.put(user.id, user);
+        }
+    }
+
+    /**
+     * Connects the users to the bot.
+     *
+     * @param timeout the time (in milliseconds) to wait for the connections
+     * @return {@code true} if all the users are connected, {@code false} if the timeout expired
+     * @throws InterruptedException if the thread is interrupted while waiting for the connections
+     */
+    public boolean connect(long timeout) throws InterruptedException {
+        CountDownLatch connected = new CountDownLatch(users.size());
+        for (VirtualUser user : users) {
+            user.socket.once(Socket.EVENT_CONNECT, args -> connected.countDown());
+            user.socket.on(Socket.EVENT_CONNECT, args -> this.connected.incrementAndGet());
+            user.socket.on(Socket.EVENT_DISCONNECT, args -> {
+                this.connected.decrementAndGet();
+                disconnects.increment();
+            });
+            user.socket.on(SocketEventTypes.BOT_MESSAGE.label, args -> onReply(user.id));
+            user.socket.connect();
+        }
+        return connected.await(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts the users' loops.
+     */
+    public void start() {
+        running = true;
+        for (VirtualUser user : users) {
+            scheduler.execute(user::send);
+        }
+    }
+
+    /**
+     * Resets the recorded statistics, typically at the end of the warmup.
+     */
+    public void resetStatistics() {
+        latencies = new LatencyHistogram();
+        sent.reset();
+        replied.reset();
+        timeouts.reset();
+    }
+
+    /**
+     * Stops the users' loops.
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Records the reply received by the provided {@code userId}.
+     * <p>
+     * Only the first reply to a message is recorded.
+     *
+     * @param userId the id of the user who received the reply
+     */
+    public void onReply(int userId) {
+        VirtualUser user = usersById.get(userId);
+        if (user != null) {
+            user.replied();
+        }
+    }
+
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    public long getSentCount() {
+        return sent.sum();
+    }
+
+    public long getRepliedCount() {
+        return replied.sum();
+    }
+
+    public long getTimeoutCount() {
+        return timeouts.sum();
+    }
+
+    /**
+     * Returns the number of users whose socket is currently connected.
+     * <p>
+     * The sockets reconnect automatically, a user that lost its connection is counted again once it reconnected.
+     *
+     * @return the number of connected users
+     */
+    public int getConnectedCount() {
+        return connected.get();
+    }
+
+    /**
+     * Returns the number of times a connected socket has been disconnected.
+     *
+     * @return the number of disconnections
+     */
+    public long getDisconnectCount() {
+        return disconnects.sum();
+    }
+
+    @Override
+    public void close() {
+        stop();
+        scheduler.shutdownNow();
+        for (VirtualUser user : users) {
+            user.socket.close();
+        }
+        httpClient.dispatcher().executorService().shutdown();
+    }
+
+    /**
+     * A user of the swarm.
+     */
+    private class VirtualUser {
+
+        private final int id;
+
+        private final Socket socket;
+
+        /**
+         * The time the pending message was sent at, {@code 0} if the user doesn't wait for a reply.
+         */
+        private final AtomicLong pendingSince = new AtomicLong();
+
+        private VirtualUser(int id, Socket socket) {
+            this.id = id;
+            this.socket = socket;
+        }
+
+        private void send() {
+            if (!running) {
+                return;
+            }
+            JSONObject payload = new JSONObject();
+            try {
+                payload.put("message", message);
+                payload.put("userId", Integer.toString(id));
+                payload.put("currentCourseAccessID", "1");
+            } catch (JSONException e) {
+                throw new IllegalStateException(e);
+            }
+            long now = System.nanoTime();
+            pendingSince.set(now);
+            sent.increment();
+            socket.emit(SocketEventTypes.USER_MESSAGE.label, payload);
+            schedule(() -> {
+                if (pendingSince.compareAndSet(now, 0)) {
+                    timeouts.increment();
+                    send();
+                }
+            }, replyTimeout);
+        }
+
+        private void replied() {
+            long since = pendingSince.getAndSet(0);
+            if (since == 0) {
+                return;
+            }
+            latencies.recordSince(since);
+            replied.increment();
+            schedule(this::send, thinkTime);
+        }
+
+        private void schedule(Runnable task, long delay) {
+            if (!running) {
+                return;
+            }
+            try {
+                scheduler.schedule(task, delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                /*
+                 * The swarm has been closed.
+                 */
+            }
+        }
+    }
+}
@@ -1,16 +1,67 @@
 package com.xatkit.plugins.moodle.platform;
 
+import com.corundumstudio.socketio.SocketIOClient;
 import com.corundumstudio.socketio.SocketIOServer;
+import com.corundumstudio.socketio.Transport;
 import com.xatkit.core.XatkitCore;
+import com.xatkit.core.XatkitException;
 import com.xatkit.core.server.XatkitServerUtils;
 import com.xatkit.core.session.XatkitSession;
 import com.xatkit.plugins.chat.platform.ChatPlatform;
+import com.xatkit.plugins.moodle.platform.action.ActionTracker;
+import com.xatkit.plugins.moodle.platform.action.CoursePrefetcher;
+import com.xatkit.plugins.moodle.platform.action.GetCourses;
+import com.xatkit.plugins.moodle.platform.catalog.CourseCatalog;
+import com.xatkit.plugins.moodle.platform.catalog.CourseCatalogSynchronizer;
+import com.xatkit.plugins.moodle.platform.cluster.ClusterStore;
+import com.xatkit.plugins.moodle.platform.cluster.FileClusterStore;
+import com.xatkit.plugins.moodle.platform.cluster.InMemoryClusterStore;
+import com.xatkit.plugins.moodle.platform.action.MessageBatcher;
+import com.xatkit.plugins.moodle.platform.action.MoodleWebServiceClient;
 import com.xatkit.plugins.moodle.platform.action.PostMessage;
+import com.xatkit.plugins.moodle.platform.io.BatchIntentRecognizer;
+import com.xatkit.plugins.moodle.platform.io.InboundMessageDispatcher;
+import com.xatkit.plugins.moodle.platform.io.RecognitionBatcher;
+import com.xatkit.plugins.moodle.platform.io.RecognitionCache;
+import com.xatkit.plugins.moodle.platform.io.SequentialBatchIntentRecognizer;
+import com.xatkit.plugins.moodle.platform.io.SocketClientRegistry;
+import com.xatkit.plugins.moodle.platform.journal.OutboundJournal;
+import com.xatkit.plugins.moodle.platform.metrics.Counter;
+import com.xatkit.plugins.moodle.platform.metrics.InMemoryMetricsRegistry;
+import com.xatkit.plugins.moodle.platform.metrics.MetricNames;
+import com.xatkit.plugins.moodle.platform.metrics.MetricsEndpoint;
+import com.xatkit.plugins.moodle.platform.metrics.MetricsRegistry;
+import com.xatkit.plugins.moodle.platform.session.FileSessionStore;
+import com.xatkit.plugins.moodle.platform.session.MoodleSessionManager;
+import com.xatkit.plugins.moodle.platform.utils.ExpiringCache;
+import com.xatkit.plugins.moodle.platform.utils.MessageObject;
+import com.xatkit.plugins.moodle.platform.utils.MessageObjectCodec;
+import com.xatkit.plugins.moodle.platform.utils.MoodleCourse;
+import com.xatkit.plugins.moodle.platform.utils.MoodleCourseList;
 import com.xatkit.plugins.moodle.platform.utils.MoodleUtils;
+import com.xatkit.plugins.moodle.platform.utils.SocketEventTypes;
 
 import fr.inria.atlanmod.commons.log.Log;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.epoll.Epoll;
 import org.apache.commons.configuration2.Configuration;
 
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+
 /**
  * This platform creates a server that accepts socket connexions from the moodle application. Messages are received
  * in real-time, and replies are sent to the client using moodle's API.
@@ -18,16 +69,247 @@ import org.apache.commons.configuration2.Configuration;
  * This platform provides the following actions:
  * <ul>
  * <li>{@link PostMessage}: post a message to a given channel (i.e. moodle user)</li>
- * <li>{@link GetCourses}: retrieves the courses in which a user is registered.</li>
+ * <li>{@link GetCourses}: retrieves the courses in which a user is registered (the courses are cached, see
+ * {@link #getCourseCache()})</li>
+ * <li>{@link com.xatkit.plugins.moodle.platform.action.Reply}: replies to the user, over its socket if
+ * {@link #isSocketReplyEnabled()} is {@code true}</li>
+ * <li>{@link com.xatkit.plugins.moodle.platform.action.IsMoodleAvailable}: checks whether Moodle is currently
+ * available</li>
+ * <li>{@link com.xatkit.plugins.moodle.platform.action.BroadcastToCourse}: sends a message to all the users of a
+ * course, over the sockets of the course room when possible</li>
+ * <li>{@link com.xatkit.plugins.moodle.platform.action.FindCourse}: finds the courses matching an id, a short name,
+ * or words of their names (answered from the course catalog when enabled, see {@link #getCourseCatalog()})</li>
+ * <li>{@link com.xatkit.plugins.moodle.platform.action.FilterCourses}: retrieves the courses of a user whose names
+ * match a term</li>
  * </ul>
+ * <p>
+ * The platform is {@link State#READY} once its socket server is listening. When it is shut down, it first reports
+ * that it is not ready anymore while still serving its users ({@link State#DRAINING}), then refuses the new
+ * connections and messages, processes the queued messages and sends the pending replies ({@link State#STOPPING}),
+ * and finally stops its socket server ({@link State#STOPPED}).
  */
 public class MoodlePlatform extends ChatPlatform {
 
+    /**
+     * The lifecycle states of a {@link MoodlePlatform}.
+     */
+    public enum State {
+        /**
+         * The socket server is starting.
+         */
+        STARTING,
+        /**
+         * The platform accepts connections and messages, and reports that it is ready.
+         */
+        READY,
+        /**
+         * The platform still accepts connections and messages, but reports that it is not ready so that new users
+         * are routed to other nodes.
+         */
+        DRAINING,
+        /**
+         * The platform refuses the new connections and messages, and completes the queued work.
+         */
+        STOPPING,
+        /**
+         * The platform is stopped.
+         */
+        STOPPED
+    }
+
+    /**
+     * The socket.io handshake parameter containing the Moodle id of the connecting user.
+     * <p>
+     * Clients providing this parameter when connecting (e.g. {@code io(url, {query: {userId: 42}})}) get their
+     * courses prefetched before sending their first message. The socket is bound to this user: its messages claiming
+     * another user id are refused (see {@link #registerClient(String, SocketIOClient)}).
+     */
+    public static final String USER_ID_HANDSHAKE_PARAMETER = "userId";
+
+    /**
+     * The socket.io handshake parameter containing the Moodle id of the course the connecting user is browsing.
+     * <p>
+     * Clients providing this parameter join the room of the course when they connect, and receive the messages
+     * broadcast to the course if their user is enrolled in it (see {@link #broadcastToCourseRoom(String, String,
+     * Set)}). The room of a client is updated with the {@code currentCourseID} of each of its messages.
+     */
+    public static final String COURSE_ID_HANDSHAKE_PARAMETER = "courseId";
+
+    /**
+     * The separator between the endpoint and the user id in the keys of the course cache.
+     */
+    private static final char COURSE_CACHE_KEY_SEPARATOR = '\u0000';
+
+    /**
+     * The prefix of the socket.io rooms gathering the clients browsing a course.
+     */
+    private static final String COURSE_ROOM_PREFIX = "course:";
+
+    /**
+     * The socket client attribute storing the id of the course room the client joined.
+     */
+    private static final String COURSE_ROOM_ATTRIBUTE = "xatkit.moodle.courseRoom";
+
+    /**
+     * The socket.io handshake parameter containing the encoding requested by the connecting client.
+     * <p>
+     * Clients setting this parameter to {@link #BINARY_CODEC} receive the bot messages as
+     * {@link SocketEventTypes#BINARY_BOT_MESSAGE}s encoded with the {@link MessageObjectCodec}.
+     */
+    public static final String CODEC_HANDSHAKE_PARAMETER = "codec";
+
+    /**
+     * The value of the {@link #CODEC_HANDSHAKE_PARAMETER} requesting the {@link MessageObjectCodec} encoding.
+     */
+    public static final String BINARY_CODEC = "msgpack";
+
+    /**
+     * The socket client attribute set on the clients using the {@link MessageObjectCodec} encoding.
+     */
+    private static final String BINARY_CLIENT_ATTRIBUTE = "xatkit.moodle.binaryCodec";
+
     /**
      * The socket server used to receive and send messages.
      */
     private SocketIOServer socketIOServer;
 
+    /**
+     * The number of messages emitted to the sockets of a course room.
+     */
+    private Counter broadcastSocketDeliveries;
+
+    /**
+     * The current lifecycle state of the platform.
+     */
+    private final AtomicReference<State> state = new AtomicReference<>(State.STARTING);
+
+    /**
+     * The time (in milliseconds) the platform keeps serving its users after reporting that it is not ready when it
+     * is shut down.
+     */
+    private long drainDelay;
+
+    /**
+     * The time (in milliseconds) to wait for the queued inbound messages, and then for the outbound messages, when
+     * the platform is shut down.
+     */
+    private long shutdownTimeout;
+
+    /**
+     * The time (in milliseconds) without Moodle action after which the actions triggered by the drained inbound
+     * messages are considered done when the platform is shut down.
+     */
+    private long shutdownQuietPeriod;
+
+    /**
+     * The registry recording the platform's metrics.
+     */
+    private MetricsRegistry metrics;
+
+    /**
+     * The endpoint exposing the platform's metrics, or {@code null} if the endpoint is disabled.
+     */
+    private MetricsEndpoint metricsEndpoint;
+
+    /**
+     * The registry tracking the socket client of each connected user.
+     */
+    private SocketClientRegistry clientRegistry;
+
+    /**
+     * Whether {@code Reply} messages are delivered over the user's socket.
+     */
+    private boolean socketReply;
+
+    /**
+     * Whether the clients can exchange messages encoded with the {@link MessageObjectCodec}.
+     */
+    private boolean binarySocket;
+
+    /**
+     * The id of this node in the cluster.
+     */
+    private String nodeId;
+
+    /**
+     * The store shared by the nodes of the cluster, or {@code null} if clustering is disabled.
+     */
+    private ClusterStore clusterStore;
+
+    /**
+     * The dispatcher processing the inbound messages.
+     */
+    private InboundMessageDispatcher inboundDispatcher;
+
+    /**
+     * The manager of the Moodle users' sessions.
+     */
+    private MoodleSessionManager sessionManager;
+
+    /**
+     * The client used to call Moodle's web services.
+     */
+    private MoodleWebServiceClient moodleClient;
+
+    /**
+     * The batcher used to send outbound messages to Moodle.
+     */
+    private MessageBatcher messageBatcher;
+
+    /**
+     * The tracker recording the events sent to the Xatkit core and the Moodle actions being computed.
+     */
+    private final ActionTracker actionTracker = new ActionTracker();
+
+    /**
+     * The journal recording the outbound messages until Moodle returned a result for them, or {@code null} if the
+     * journal is disabled.
+     */
+    private OutboundJournal outboundJournal;
+
+    /**
+     * The cache storing the courses of each user, or {@code null} if the cache is disabled.
+     */
+    private ExpiringCache<String, MoodleCourseList> courseCache;
+
+    /**
+     * The cache storing the intents recognized for the received messages, or {@code null} if the cache is disabled.
+     */
+    private RecognitionCache recognitionCache;
+
+    /**
+     * The batcher grouping the received messages whose intents are recognized together.
+     */
+    private RecognitionBatcher recognitionBatcher;
+
+    /**
+     * The prefetcher retrieving the courses of the connected users, or {@code null} if the prefetching is disabled.
+     */
+    private CoursePrefetcher coursePrefetcher;
+
+    /**
+     * The catalog indexing the courses of the Moodle instance, or {@code null} if the catalog is disabled.
+     */
+    private CourseCatalog courseCatalog;
+
+    /**
+     * The synchronizer keeping the {@link #courseCatalog} up to date, or {@code null} if the catalog is disabled.
+     */
+    private CourseCatalogSynchronizer catalogSynchronizer;
+
+    /**
+     * The catalog loaded once from Moodle when the {@link #courseCatalog} is disabled, or {@code null} if it hasn't
+     * been loaded yet.
+     *
+     * @see #getOrLoadCourseCatalog(String)
+     */
+    private volatile CourseCatalog loadedCourseCatalog;
+
+    /**
+     * The lock ensuring that the {@link #loadedCourseCatalog} is only loaded once.
+     */
+    private final Object catalogLoadLock = new Object();
+
     /**
      * Constructs a new {@link MoodlePlatform} from the provided {@link XatkitCore} and {@link Configuration}.
      * <p>
@@ -63,10 +345,261 @@ public class MoodlePlatform extends ChatPlatform {
          * .com/mrniko/netty-socketio/issues/617).
          */
         socketioConfiguration.setRandomSession(true);
-        socketIOServer = new SocketIOServer(socketioConfiguration);
-        socketIOServer.addConnectListener(socketIOClient -> Log.info("Moodle Chat User Connected"));
-        socketIOServer.addDisconnectListener(socketIOClient -> Log.info("Moodle Chat User Disconnected"));
-        this.socketIOServer.startAsync();
+        configureTransport(socketioConfiguration, configuration);
+        ByteBufAllocator allocator = configuration.getBoolean(MoodleUtils.MOODLE_SOCKET_POOLED_BUFFERS_KEY,
+                MoodleUtils.DEFAULT_MOODLE_SOCKET_POOLED_BUFFERS) ? PooledByteBufAllocator.DEFAULT
+                : UnpooledByteBufAllocator.DEFAULT;
+        socketIOServer = new SocketIOServer(socketioConfiguration) {
+            @Override
+            protected void applyConnectionOptions(ServerBootstrap bootstrap) {
+                super.applyConnectionOptions(bootstrap);
+                bootstrap.option(ChannelOption.ALLOCATOR, allocator);
+                bootstrap.childOption(ChannelOption.ALLOCATOR, allocator);
+            }
+        };
+        this.metrics = createMetricsRegistry(configuration);
+        socketIOServer.addConnectListener(socketIOClient -> {
+            if (!isAcceptingMessages()) {
+                /*
+                 * The node is stopping, the client reconnects to another node.
+                 */
+                socketIOClient.disconnect();
+                return;
+            }
+            Log.info("Moodle Chat User Connected");
+            if (binarySocket && BINARY_CODEC.equals(socketIOClient.getHandshakeData().getSingleUrlParam(
+                    CODEC_HANDSHAKE_PARAMETER))) {
+                useBinaryCodec(socketIOClient);
+            }
+            joinCourseRoom(socketIOClient, socketIOClient.getHandshakeData().getSingleUrlParam(
+                    COURSE_ID_HANDSHAKE_PARAMETER));
+            prefetchCourses(socketIOClient.getHandshakeData().getSingleUrlParam(USER_ID_HANDSHAKE_PARAMETER));
+        });
+        this.clientRegistry = new SocketClientRegistry();
+        socketIOServer.addDisconnectListener(socketIOClient -> {
+            Log.info("Moodle Chat User Disconnected");
+            /*
+             * Keep the route of a user that is still connected with a more recent socket.
+             */
+            String userId = clientRegistry.unregister(socketIOClient);
+            if (nonNull(userId) && nonNull(clusterStore)) {
+                clusterStore.removeRoute(userId, nodeId);
+            }
+        });
+        this.binarySocket = configuration.getBoolean(MoodleUtils.MOODLE_SOCKET_BINARY_KEY,
+                MoodleUtils.DEFAULT_MOODLE_SOCKET_BINARY);
+        this.socketReply = configuration.getBoolean(MoodleUtils.MOODLE_SOCKET_REPLY_KEY,
+                MoodleUtils.DEFAULT_MOODLE_SOCKET_REPLY);
+        this.nodeId = configuration.getString(MoodleUtils.MOODLE_CLUSTER_NODE_ID_KEY, UUID.randomUUID().toString());
+        this.clusterStore = createClusterStore(configuration);
+        if (nonNull(clusterStore)) {
+            clusterStore.subscribe(nodeId, message -> {
+                if (!emitToLocalSocket(message.getUserId(), message.getMessage())) {
+                    Log.warn("Cannot deliver the message forwarded to the user {0}: the user is not connected to "
+                            + "the node {1}", message.getUserId(), nodeId);
+                }
+            });
+            Log.info("Moodle platform node {0} joined the cluster", nodeId);
+        }
+        String sessionsDirectory = configuration.getString(MoodleUtils.MOODLE_SESSIONS_DIRECTORY_KEY);
+        /*
+         * Don't register the sessions in the core's session map, which is never cleared: the manager releases the
+         * sessions it evicts.
+         */
+        this.sessionManager = new MoodleSessionManager(
+                userId -> this.xatkitCore.getIntentRecognitionProvider().createSession(userId),
+                configuration.getLong(MoodleUtils.MOODLE_SESSIONS_IDLE_TIMEOUT_KEY,
+                        MoodleUtils.DEFAULT_MOODLE_SESSIONS_IDLE_TIMEOUT),
+                configuration.getInt(MoodleUtils.MOODLE_SESSIONS_MAX_SIZE_KEY,
+                        MoodleUtils.DEFAULT_MOODLE_SESSIONS_MAX_SIZE),
+                nonNull(sessionsDirectory) ? new FileSessionStore(Paths.get(sessionsDirectory)) : null);
+        metrics.gauge(MetricNames.SESSIONS, sessionManager::size);
+        metrics.gauge(MetricsRegistry.name(MetricNames.SESSIONS_EVICTED, "reason", "idle"),
+                sessionManager::getIdleEvictionCount);
+        metrics.gauge(MetricsRegistry.name(MetricNames.SESSIONS_EVICTED, "reason", "capacity"),
+                sessionManager::getCapacityEvictionCount);
+        metrics.gauge(MetricNames.SESSIONS_REHYDRATED, sessionManager::getRehydrationCount);
+        if (nonNull(sessionManager.getStore())) {
+            metrics.gauge(MetricNames.SESSIONS_STORED, sessionManager.getStore()::size);
+        }
+        this.inboundDispatcher = new InboundMessageDispatcher(
+                configuration.getInt(MoodleUtils.MOODLE_INBOUND_WORKERS_KEY, MoodleUtils.DEFAULT_MOODLE_INBOUND_WORKERS),
+                configuration.getInt(MoodleUtils.MOODLE_INBOUND_QUEUE_DEPTH_KEY,
+                        MoodleUtils.DEFAULT_MOODLE_INBOUND_QUEUE_DEPTH));
+        this.moodleClient = new MoodleWebServiceClient(configuration, metrics);
+        String journalDirectory = configuration.getString(MoodleUtils.MOODLE_OUTBOUND_JOURNAL_DIRECTORY_KEY);
+        if (nonNull(journalDirectory)) {
+            this.outboundJournal = new OutboundJournal(Paths.get(journalDirectory),
+                    configuration.getInt(MoodleUtils.MOODLE_OUTBOUND_JOURNAL_SEGMENT_SIZE_KEY,
+                            MoodleUtils.DEFAULT_MOODLE_OUTBOUND_JOURNAL_SEGMENT_SIZE),
+                    configuration.getBoolean(MoodleUtils.MOODLE_OUTBOUND_JOURNAL_SYNC_KEY,
+                            MoodleUtils.DEFAULT_MOODLE_OUTBOUND_JOURNAL_SYNC));
+            metrics.gauge(MetricNames.OUTBOUND_JOURNAL_PENDING, outboundJournal::getPendingCount);
+        }
+        this.messageBatcher = new MessageBatcher(this.moodleClient,
+                configuration.getLong(MoodleUtils.MOODLE_OUTBOUND_BATCH_WINDOW_KEY,
+                        MoodleUtils.DEFAULT_MOODLE_OUTBOUND_BATCH_WINDOW),
+                configuration.getInt(MoodleUtils.MOODLE_OUTBOUND_BATCH_MAX_SIZE_KEY,
+                        MoodleUtils.DEFAULT_MOODLE_OUTBOUND_BATCH_MAX_SIZE), this.outboundJournal,
+                configuration.getLong(MoodleUtils.MOODLE_OUTBOUND_JOURNAL_RETRY_INTERVAL_KEY,
+                        MoodleUtils.DEFAULT_MOODLE_OUTBOUND_JOURNAL_RETRY_INTERVAL));
+        this.messageBatcher.replay();
+        long courseCacheTtl = configuration.getLong(MoodleUtils.MOODLE_COURSE_CACHE_TTL_KEY,
+                MoodleUtils.DEFAULT_MOODLE_COURSE_CACHE_TTL);
+        if (courseCacheTtl > 0) {
+            this.courseCache = new ExpiringCache<>(courseCacheTtl,
+                    configuration.getInt(MoodleUtils.MOODLE_COURSE_CACHE_MAX_SIZE_KEY,
+                            MoodleUtils.DEFAULT_MOODLE_COURSE_CACHE_MAX_SIZE));
+            String moodleEndpoint = getMoodleEndpoint(configuration);
+            if (nonNull(moodleEndpoint) && configuration.getBoolean(MoodleUtils.MOODLE_COURSE_PREFETCH_KEY,
+                    MoodleUtils.DEFAULT_MOODLE_COURSE_PREFETCH)) {
+                this.coursePrefetcher = new CoursePrefetcher(moodleEndpoint, moodleClient, courseCache,
+                        configuration.getLong(MoodleUtils.MOODLE_COURSE_PREFETCH_WINDOW_KEY,
+                                MoodleUtils.DEFAULT_MOODLE_COURSE_PREFETCH_WINDOW),
+                        configuration.getInt(MoodleUtils.MOODLE_COURSE_PREFETCH_MAX_BATCH_SIZE_KEY,
+                                MoodleUtils.DEFAULT_MOODLE_COURSE_PREFETCH_MAX_BATCH_SIZE),
+                        configuration.getBoolean(MoodleUtils.MOODLE_COURSE_PREFETCH_BATCH_KEY,
+                                MoodleUtils.DEFAULT_MOODLE_COURSE_PREFETCH_BATCH));
+            }
+        } else {
+            Log.info("Moodle course cache disabled");
+        }
+        long catalogSyncInterval = configuration.getLong(MoodleUtils.MOODLE_CATALOG_SYNC_INTERVAL_KEY,
+                MoodleUtils.DEFAULT_MOODLE_CATALOG_SYNC_INTERVAL);
+        String catalogEndpoint = getMoodleEndpoint(configuration);
+        if (catalogSyncInterval > 0 && nonNull(catalogEndpoint)) {
+            String catalogDirectory = configuration.getString(MoodleUtils.MOODLE_CATALOG_DIRECTORY_KEY);
+            this.courseCatalog = new CourseCatalog();
+            this.catalogSynchronizer = new CourseCatalogSynchronizer(catalogEndpoint, moodleClient, courseCatalog,
+                    catalogSyncInterval, nonNull(catalogDirectory) ? Paths.get(catalogDirectory, "courses.snapshot")
+                    : null);
+            this.catalogSynchronizer.start();
+            metrics.gauge(MetricNames.CATALOG_COURSES, courseCatalog::size);
+            metrics.gauge(MetricNames.CATALOG_SYNCS, catalogSynchronizer::getSyncCount);
+            metrics.gauge(MetricNames.CATALOG_SYNC_ERRORS, catalogSynchronizer::getSyncErrorCount);
+        }
+        long recognitionCacheTtl = configuration.getLong(MoodleUtils.MOODLE_RECOGNITION_CACHE_TTL_KEY,
+                MoodleUtils.DEFAULT_MOODLE_RECOGNITION_CACHE_TTL);
+        if (recognitionCacheTtl > 0) {
+            this.recognitionCache = new RecognitionCache(recognitionCacheTtl,
+                    configuration.getInt(MoodleUtils.MOODLE_RECOGNITION_CACHE_MAX_SIZE_KEY,
+                            MoodleUtils.DEFAULT_MOODLE_RECOGNITION_CACHE_MAX_SIZE));
+            metrics.gauge(MetricNames.RECOGNITION_CACHE_HITS, recognitionCache::getHitCount);
+            metrics.gauge(MetricNames.RECOGNITION_CACHE_MISSES, recognitionCache::getMissCount);
+            metrics.gauge(MetricNames.RECOGNITION_CACHE_SIZE, recognitionCache::size);
+        }
+        this.recognitionBatcher = new RecognitionBatcher(createBatchIntentRecognizer(configuration), xatkitCore,
+                configuration.getInt(MoodleUtils.MOODLE_RECOGNITION_BATCH_MAX_SIZE_KEY,
+                        MoodleUtils.DEFAULT_MOODLE_RECOGNITION_BATCH_MAX_SIZE),
+                configuration.getLong(MoodleUtils.MOODLE_RECOGNITION_BATCH_MAX_DELAY_KEY,
+                        MoodleUtils.DEFAULT_MOODLE_RECOGNITION_BATCH_MAX_DELAY));
+        metrics.gauge(MetricNames.RECOGNITION_BATCHES, recognitionBatcher::getBatchCount);
+        metrics.gauge(MetricNames.RECOGNITION_BATCHED_MESSAGES, recognitionBatcher::getBatchedMessageCount);
+        metrics.gauge(MetricNames.RECOGNITION_BATCH_BYPASSED, recognitionBatcher::getBypassedCount);
+        metrics.gauge(MetricNames.RECOGNITION_BATCH_RETRIED, recognitionBatcher::getRetriedCount);
+        metrics.gauge(MetricNames.INBOUND_QUEUE_DEPTH, inboundDispatcher::getPendingCount);
+        metrics.gauge(MetricNames.CONNECTED_SOCKETS, () -> socketIOServer.getAllClients().size());
+        metrics.gauge(MetricNames.CONNECTED_USERS, clientRegistry::size);
+        int metricsPort = configuration.getInt(MoodleUtils.MOODLE_METRICS_PORT_KEY,
+                MoodleUtils.DEFAULT_MOODLE_METRICS_PORT);
+        if (metricsPort >= 0) {
+            this.metricsEndpoint = new MetricsEndpoint(metrics,
+                    configuration.getString(MoodleUtils.MOODLE_METRICS_HOST_KEY,
+                            MoodleUtils.DEFAULT_MOODLE_METRICS_HOST), metricsPort, this::isReady);
+            Log.info("Moodle metrics available on http://{0}:{1}{2} (readiness on {3})", metricsEndpoint.getHost(),
+                    metricsEndpoint.getPort(), MetricsEndpoint.METRICS_PATH, MetricsEndpoint.READY_PATH);
+        }
+        metrics.gauge(MetricNames.READY, () -> isReady() ? 1 : 0);
+        this.broadcastSocketDeliveries = metrics.counter(MetricsRegistry.name(MetricNames.BROADCAST_DELIVERIES,
+                "channel", "socket"));
+        this.drainDelay = configuration.getLong(MoodleUtils.MOODLE_SHUTDOWN_DRAIN_DELAY_KEY,
+                MoodleUtils.DEFAULT_MOODLE_SHUTDOWN_DRAIN_DELAY);
+        this.shutdownTimeout = configuration.getLong(MoodleUtils.MOODLE_SHUTDOWN_TIMEOUT_KEY,
+                MoodleUtils.DEFAULT_MOODLE_SHUTDOWN_TIMEOUT);
+        this.shutdownQuietPeriod = configuration.getLong(MoodleUtils.MOODLE_SHUTDOWN_QUIET_PERIOD_KEY,
+                MoodleUtils.DEFAULT_MOODLE_SHUTDOWN_QUIET_PERIOD);
+        startSocketServer(socketServerPort, configuration.getLong(MoodleUtils.MOODLE_STARTUP_TIMEOUT_KEY,
+                MoodleUtils.DEFAULT_MOODLE_STARTUP_TIMEOUT));
+    }
+
+    /**
+     * Starts the socket server and waits up to {@code timeout} milliseconds for it to listen on the provided {@code
+     * port}.
+     * <p>
+     * The platform becomes {@link State#READY} once the socket server is listening.
+     *
+     * @param port    the port of the socket server
+     * @param timeout the time (in milliseconds) to wait for the socket server, or {@code 0} to start it in the
+     *                background
+     * @throws XatkitException if the socket server is not listening after {@code timeout} milliseconds
+     */
+    private void startSocketServer(int port, long timeout) {
+        long startTime = System.nanoTime();
+        io.netty.util.concurrent.Future<Void> started = this.socketIOServer.startAsync();
+        started.addListener(future -> {
+            if (future.isSuccess()) {
+                if (state.compareAndSet(State.STARTING, State.READY)) {
+                    Log.info("Moodle platform ready on port {0} ({1}ms)", port,
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+                }
+            } else {
+                Log.error("Cannot start the Moodle socket server on port {0}: {1}", port,
+                        future.cause().getMessage());
+            }
+        });
+        if (timeout <= 0) {
+            return;
+        }
+        if (!started.awaitUninterruptibly(timeout)) {
+            shutdown();
+            throw new XatkitException("The Moodle socket server didn't start on port " + port + " after " + timeout
+                    + "ms");
+        }
+        if (!started.isSuccess()) {
+            shutdown();
+            throw new XatkitException("Cannot start the Moodle socket server on port " + port, started.cause());
+        }
+        state.compareAndSet(State.STARTING, State.READY);
+    }
+
+    /**
+     * Returns the current lifecycle state of the platform.
+     *
+     * @return the current lifecycle state of the platform
+     */
+    public State getState() {
+        return this.state.get();
+    }
+
+    /**
+     * Returns whether the platform is ready to receive new users.
+     * <p>
+     * The readiness is also served by the metrics endpoint (see {@link MetricsEndpoint#READY_PATH}).
+     *
+     * @return {@code true} if the platform is {@link State#READY}, {@code false} otherwise
+     */
+    public boolean isReady() {
+        return this.state.get() == State.READY;
+    }
+
+    /**
+     * Returns whether the platform accepts new connections and messages.
+     *
+     * @return {@code true} if the platform is not stopping nor stopped, {@code false} otherwise
+     */
+    public boolean isAcceptingMessages() {
+        State current = this.state.get();
+        return current != State.STOPPING && current != State.STOPPED;
+    }
+
+    /**
+     * Returns the registry recording the platform's metrics.
+     *
+     * @return the registry recording the platform's metrics
+     * @see MetricNames
+     */
+    public MetricsRegistry getMetrics() {
+        return this.metrics;
     }
 
     /**
@@ -79,23 +612,670 @@ public class MoodlePlatform extends ChatPlatform {
     }
 
     /**
-     * Stops the underlying socket server.
+     * Returns the registry tracking the socket client of each connected user.
+     *
+     * @return the registry tracking the socket client of each connected user
+     */
+    public SocketClientRegistry getClientRegistry() {
+        return this.clientRegistry;
+    }
+
+    /**
+     * Returns whether {@code Reply} messages are delivered over the user's socket.
+     *
+     * @return {@code true} if {@code Reply} messages are delivered over the user's socket, {@code false} if they
+     * are always sent through Moodle's REST API
+     * @see MoodleUtils#MOODLE_SOCKET_REPLY_KEY
+     */
+    public boolean isSocketReplyEnabled() {
+        return this.socketReply;
+    }
+
+    /**
+     * Returns whether the clients can exchange messages encoded with the {@link MessageObjectCodec}.
+     *
+     * @return {@code true} if the binary encoding is enabled, {@code false} if all the clients use JSON
+     * @see MoodleUtils#MOODLE_SOCKET_BINARY_KEY
+     */
+    public boolean isBinarySocketEnabled() {
+        return this.binarySocket;
+    }
+
+    /**
+     * Sends the next bot messages to the provided {@code client} encoded with the {@link MessageObjectCodec}.
+     *
+     * @param client the socket client using the binary encoding
+     */
+    public void useBinaryCodec(SocketIOClient client) {
+        client.set(BINARY_CLIENT_ATTRIBUTE, Boolean.TRUE);
+    }
+
+    /**
+     * Returns the id of this node in the cluster.
+     *
+     * @return the id of this node in the cluster
+     * @see MoodleUtils#MOODLE_CLUSTER_NODE_ID_KEY
+     */
+    public String getNodeId() {
+        return this.nodeId;
+    }
+
+    /**
+     * Returns the store shared by the nodes of the cluster.
+     *
+     * @return the store shared by the nodes of the cluster, or {@code null} if clustering is disabled
+     */
+    public ClusterStore getClusterStore() {
+        return this.clusterStore;
+    }
+
+    /**
+     * Registers the provided {@code client} as the socket of the given {@code userId}.
+     * <p>
+     * A socket is bound to the user of its {@link #USER_ID_HANDSHAKE_PARAMETER} if it provided one, and otherwise
+     * to the user of its first message: the {@code client} is not registered if it is bound to another user, so
+     * that a socket cannot receive the replies of another user by sending a message with its id. If clustering is
+     * enabled the route of the user is updated to point to this node.
+     *
+     * @param userId the id of the Moodle user
+     * @param client the {@link SocketIOClient} of the user
+     * @return {@code true} if the {@code client} is the socket of the {@code userId}, {@code false} if it is bound
+     * to another user
+     */
+    public boolean registerClient(String userId, SocketIOClient client) {
+        String boundUserId = this.clientRegistry.getUserId(client);
+        if (isNull(boundUserId)) {
+            boundUserId = client.getHandshakeData().getSingleUrlParam(USER_ID_HANDSHAKE_PARAMETER);
+        }
+        if (nonNull(boundUserId) && !boundUserId.equals(userId)) {
+            return false;
+        }
+        if (this.clientRegistry.register(userId, client)) {
+            if (nonNull(this.clusterStore)) {
+                this.clusterStore.putRoute(userId, this.nodeId);
+            }
+            prefetchCourses(userId);
+        }
+        return true;
+    }
+
+    /**
+     * Moves the provided {@code client} to the room of the given {@code courseId}.
+     * <p>
+     * The client leaves the room of the course it previously joined, if any. This method does nothing if the
+     * provided {@code courseId} is {@code null} or empty, or if the client already joined the room of the course.
+     *
+     * @param client   the {@link SocketIOClient} to move
+     * @param courseId the Moodle id of the course the client is browsing
+     */
+    public void joinCourseRoom(SocketIOClient client, String courseId) {
+        if (isNull(courseId) || courseId.isEmpty()) {
+            return;
+        }
+        String previous = client.get(COURSE_ROOM_ATTRIBUTE);
+        if (courseId.equals(previous)) {
+            return;
+        }
+        if (nonNull(previous)) {
+            client.leaveRoom(COURSE_ROOM_PREFIX + previous);
+        }
+        client.joinRoom(COURSE_ROOM_PREFIX + courseId);
+        client.set(COURSE_ROOM_ATTRIBUTE, courseId);
+    }
+
+    /**
+     * Emits the provided {@code message} to the sockets connected to this node that joined the room of the given
+     * {@code courseId} and whose user is one of the {@code enrolledUserIds}.
+     * <p>
+     * The room of a socket is selected by the client (see {@link #COURSE_ID_HANDSHAKE_PARAMETER}), and is not
+     * trusted: the sockets whose user is not enrolled in the course (or unknown) are skipped. The message is built
+     * once for all the sockets: the sockets using JSON receive the same {@link SocketEventTypes#BOT_MESSAGE} payload,
+     * and the sockets using the {@link MessageObjectCodec} receive the same encoded
+     * {@link SocketEventTypes#BINARY_BOT_MESSAGE}. The payload contains the {@code courseId} as its
+     * {@code currentCourseID}, and no {@code userId}.
+     *
+     * @param courseId        the Moodle id of the course
+     * @param message         the message to emit
+     * @param enrolledUserIds the ids of the users enrolled in the course
+     * @return the ids of the users whose socket received the message (sockets that haven't sent any message yet are
+     * identified by their {@link #USER_ID_HANDSHAKE_PARAMETER}, if any)
+     */
+    public Set<String> broadcastToCourseRoom(String courseId, String message, Set<String> enrolledUserIds) {
+        Collection<SocketIOClient> clients = this.socketIOServer.getRoomOperations(COURSE_ROOM_PREFIX + courseId)
+                .getClients();
+        Set<String> reached = new HashSet<>(clients.size() * 2);
+        MessageObject jsonPayload = null;
+        byte[] binaryPayload = null;
+        int socketCount = 0;
+        for (SocketIOClient client : clients) {
+            String userId = this.clientRegistry.getUserId(client);
+            if (isNull(userId)) {
+                userId = client.getHandshakeData().getSingleUrlParam(USER_ID_HANDSHAKE_PARAMETER);
+            }
+            if (isNull(userId) || !enrolledUserIds.contains(userId)) {
+                continue;
+            }
+            if (client.has(BINARY_CLIENT_ATTRIBUTE)) {
+                if (isNull(binaryPayload)) {
+                    binaryPayload = MessageObjectCodec.encode(message, null, courseId);
+                }
+                client.sendEvent(SocketEventTypes.BINARY_BOT_MESSAGE.label, binaryPayload);
+            } else {
+                if (isNull(jsonPayload)) {
+                    jsonPayload = new MessageObject(message, null);
+                    jsonPayload.setCurrentCourseAccessID(courseId);
+                }
+                client.sendEvent(SocketEventTypes.BOT_MESSAGE.label, jsonPayload);
+            }
+            reached.add(userId);
+            socketCount++;
+        }
+        this.broadcastSocketDeliveries.add(socketCount);
+        return reached;
+    }
+
+    /**
+     * Requests the background retrieval of the courses of the provided {@code userId}.
+     * <p>
+     * This method is called when a socket is connected with a {@link #USER_ID_HANDSHAKE_PARAMETER} parameter, and
+     * when a socket is registered for a user. It does nothing if the prefetching is disabled or if the provided
+     * {@code userId} is not a numeric Moodle id.
+     *
+     * @param userId the id of the Moodle user to retrieve the courses of
+     * @see CoursePrefetcher
+     */
+    public void prefetchCourses(String userId) {
+        if (isNull(this.coursePrefetcher) || isNull(userId)) {
+            return;
+        }
+        try {
+            this.coursePrefetcher.prefetch(Integer.parseInt(userId));
+        } catch (NumberFormatException e) {
+            Log.debug("Cannot prefetch the courses of the user {0}: not a Moodle user id", userId);
+        }
+    }
+
+    /**
+     * Emits the provided {@code message} as a {@link SocketEventTypes#BOT_MESSAGE} to the socket of the given
+     * {@code userId}.
+     * <p>
+     * If the user is connected to another node of the cluster the message is forwarded to that node. Messages are
+     * not forwarded to nodes that are not alive, and the stale route of a user that is not connected to this node
+     * any more is removed.
+     *
+     * @param userId  the id of the Moodle user to send the message to
+     * @param message the message to send
+     * @return {@code true} if the message has been emitted or forwarded, {@code false} if the user doesn't have a
+     * live socket
+     */
+    public boolean sendToSocket(String userId, String message) {
+        if (emitToLocalSocket(userId, message)) {
+            return true;
+        }
+        if (nonNull(this.clusterStore)) {
+            String route = this.clusterStore.getRoute(userId);
+            if (nonNull(route)) {
+                if (route.equals(this.nodeId)) {
+                    this.clusterStore.removeRoute(userId, this.nodeId);
+                } else {
+                    return this.clusterStore.publish(route, new MessageObject(message, userId));
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Emits the provided {@code message} to the socket of the given {@code userId} connected to this node.
+     *
+     * @param userId  the id of the Moodle user to send the message to
+     * @param message the message to send
+     * @return {@code true} if the message has been emitted, {@code false} if the user isn't connected to this node
+     */
+    private boolean emitToLocalSocket(String userId, String message) {
+        SocketIOClient client = this.clientRegistry.get(userId);
+        if (client == null) {
+            return false;
+        }
+        if (client.has(BINARY_CLIENT_ATTRIBUTE)) {
+            client.sendEvent(SocketEventTypes.BINARY_BOT_MESSAGE.label, MessageObjectCodec.encode(message, userId,
+                    null));
+        } else {
+            client.sendEvent(SocketEventTypes.BOT_MESSAGE.label, new MessageObject(message, userId));
+        }
+        return true;
+    }
+
+    /**
+     * Returns the dispatcher processing the inbound messages.
+     *
+     * @return the dispatcher processing the inbound messages
+     */
+    public InboundMessageDispatcher getInboundDispatcher() {
+        return this.inboundDispatcher;
+    }
+
+    /**
+     * Returns the manager of the Moodle users' sessions.
+     *
+     * @return the manager of the Moodle users' sessions
+     */
+    public MoodleSessionManager getSessionManager() {
+        return this.sessionManager;
+    }
+
+    /**
+     * Returns the client used to call Moodle's web services.
+     *
+     * @return the client used to call Moodle's web services
+     */
+    public MoodleWebServiceClient getMoodleClient() {
+        return this.moodleClient;
+    }
+
+    /**
+     * Returns whether Moodle is currently considered available.
+     * <p>
+     * Moodle is considered unavailable when the circuit breaker of one of its functions is open.
+     *
+     * @return {@code true} if Moodle is available, {@code false} otherwise
+     * @see MoodleWebServiceClient#getResilience()
+     */
+    public boolean isMoodleAvailable() {
+        return this.moodleClient.getResilience().isAvailable();
+    }
+
+    /**
+     * Returns the cache storing the courses of each user.
+     * <p>
+     * The cache is keyed by Moodle endpoint and user id (see {@link #courseCacheKey(String, Integer)}), so that the
+     * courses retrieved from an endpoint (or with a token) are never returned for another one. Its time-to-live and
+     * size can be configured with the {@link MoodleUtils#MOODLE_COURSE_CACHE_TTL_KEY} and
+     * {@link MoodleUtils#MOODLE_COURSE_CACHE_MAX_SIZE_KEY} keys. Entries can be explicitly removed with
+     * {@link #invalidateCourses(Integer)}.
+     *
+     * @return the course cache, or {@code null} if the cache is disabled
+     */
+    public ExpiringCache<String, MoodleCourseList> getCourseCache() {
+        return this.courseCache;
+    }
+
+    /**
+     * Computes the key of the courses of the provided {@code userId} retrieved from the given {@code moodleEndpoint}
+     * in the course cache.
+     *
+     * @param moodleEndpoint the endpoint of the moodle instance (including its {@code wstoken})
+     * @param userId         the Moodle id of the user
+     * @return the key of the courses in the course cache
+     * @see #getCourseCache()
+     */
+    public static String courseCacheKey(String moodleEndpoint, Integer userId) {
+        return moodleEndpoint + COURSE_CACHE_KEY_SEPARATOR + userId;
+    }
+
+    /**
+     * Removes the cached courses of the provided {@code userId}, for all the Moodle endpoints.
+     * <p>
+     * This method should be called when the enrolments of the user change, in order to retrieve the updated courses
+     * from Moodle the next time they are requested.
+     *
+     * @param userId the Moodle id of the user to invalidate the courses of
+     */
+    public void invalidateCourses(Integer userId) {
+        if (nonNull(this.courseCache)) {
+            String suffix = COURSE_CACHE_KEY_SEPARATOR + String.valueOf(userId);
+            this.courseCache.invalidateIf(key -> key.endsWith(suffix));
+        }
+    }
+
+    /**
+     * Returns the catalog indexing the courses of the Moodle instance.
+     * <p>
+     * The catalog is disabled by default, its synchronization interval and snapshot directory can be configured with
+     * the {@link MoodleUtils#MOODLE_CATALOG_SYNC_INTERVAL_KEY} and {@link MoodleUtils#MOODLE_CATALOG_DIRECTORY_KEY}
+     * keys.
+     *
+     * @return the course catalog, or {@code null} if the catalog is disabled
+     */
+    public CourseCatalog getCourseCatalog() {
+        return this.courseCatalog;
+    }
+
+    /**
+     * Returns the catalog indexing the courses of the Moodle instance, loading it from Moodle if the synchronized
+     * catalog is disabled.
+     * <p>
+     * Without synchronization, all the courses are retrieved from the provided {@code moodleEndpoint} the first
+     * time this method is called, and the loaded catalog is reused by the following calls. The concurrent callers
+     * wait for the same download, and the next call retries if it failed. The loaded catalog is never refreshed:
+     * {@link MoodleUtils#MOODLE_CATALOG_SYNC_INTERVAL_KEY} should be set to keep it up to date.
+     *
+     * @param moodleEndpoint the Moodle endpoint (including its {@code wstoken}) used to retrieve the courses
+     * @return the synchronized course catalog if it is enabled, or the catalog loaded from Moodle otherwise
+     * @throws XatkitException if the courses cannot be retrieved from Moodle
+     * @see #getCourseCatalog()
+     */
+    public CourseCatalog getOrLoadCourseCatalog(String moodleEndpoint) {
+        if (nonNull(this.courseCatalog)) {
+            return this.courseCatalog;
+        }
+        CourseCatalog catalog = this.loadedCourseCatalog;
+        if (isNull(catalog)) {
+            synchronized (catalogLoadLock) {
+                catalog = this.loadedCourseCatalog;
+                if (isNull(catalog)) {
+                    Log.warn("The course catalog is not synchronized ({0} is not set), loading all the courses once: "
+                            + "the catalog will not be refreshed", MoodleUtils.MOODLE_CATALOG_SYNC_INTERVAL_KEY);
+                    catalog = new CourseCatalog();
+                    catalog.update(MoodleWebServiceClient.await(this.moodleClient.readList(moodleEndpoint,
+                            CourseCatalogSynchronizer.GET_COURSES_FUNCTION, Collections.emptyMap(),
+                            MoodleCourse.class)));
+                    this.loadedCourseCatalog = catalog;
+                }
+            }
+        }
+        return catalog;
+    }
+
+    /**
+     * Returns the cache storing the intents recognized for the received messages.
+     * <p>
+     * The cache is disabled by default, its time-to-live and size can be configured with the
+     * {@link MoodleUtils#MOODLE_RECOGNITION_CACHE_TTL_KEY} and
+     * {@link MoodleUtils#MOODLE_RECOGNITION_CACHE_MAX_SIZE_KEY} keys.
+     *
+     * @return the recognition cache, or {@code null} if the cache is disabled
+     */
+    public RecognitionCache getRecognitionCache() {
+        return this.recognitionCache;
+    }
+
+    /**
+     * Returns the batcher recognizing the intents of the received messages.
+     * <p>
+     * The batches are disabled by default, their size and delay can be configured with the
+     * {@link MoodleUtils#MOODLE_RECOGNITION_BATCH_MAX_SIZE_KEY} and
+     * {@link MoodleUtils#MOODLE_RECOGNITION_BATCH_MAX_DELAY_KEY} keys.
+     *
+     * @return the recognition batcher
+     */
+    public RecognitionBatcher getRecognitionBatcher() {
+        return this.recognitionBatcher;
+    }
+
+    /**
+     * Returns the prefetcher retrieving the courses of the connected users.
+     *
+     * @return the course prefetcher, or {@code null} if the prefetching is disabled
+     * @see MoodleUtils#MOODLE_COURSE_PREFETCH_KEY
+     */
+    public CoursePrefetcher getCoursePrefetcher() {
+        return this.coursePrefetcher;
+    }
+
+    /**
+     * Returns the batcher used to send outbound messages to Moodle.
+     *
+     * @return the batcher used to send outbound messages to Moodle
+     */
+    public MessageBatcher getMessageBatcher() {
+        return this.messageBatcher;
+    }
+
+    /**
+     * Returns the tracker recording the events sent to the Xatkit core and the Moodle actions being computed.
+     *
+     * @return the tracker recording the events sent to the Xatkit core and the Moodle actions being computed
+     */
+    public ActionTracker getActionTracker() {
+        return this.actionTracker;
+    }
+
+    /**
+     * Returns the journal recording the outbound messages until Moodle returned a result for them.
+     *
+     * @return the outbound journal, or {@code null} if the journal is disabled
+     * @see MoodleUtils#MOODLE_OUTBOUND_JOURNAL_DIRECTORY_KEY
+     */
+    public OutboundJournal getOutboundJournal() {
+        return this.outboundJournal;
+    }
+
+    /**
+     * Drains the platform, processes the pending inbound messages, sends the pending outbound messages, closes the
+     * Moodle client, and stops the underlying socket server.
+     * <p>
+     * The platform first reports that it is not ready, and keeps serving its users during
+     * {@link MoodleUtils#MOODLE_SHUTDOWN_DRAIN_DELAY_KEY} milliseconds. It then refuses the new connections and
+     * messages, and waits up to {@link MoodleUtils#MOODLE_SHUTDOWN_TIMEOUT_KEY} milliseconds for the queued inbound
+     * messages, then for the actions they triggered (see {@link MoodleUtils#MOODLE_SHUTDOWN_QUIET_PERIOD_KEY}), and
+     * then for the outbound messages. The {@link MessageBatcher} accepts the messages of these actions until it is
+     * stopped. The socket server is stopped last, allowing the replies of the queued messages to be sent over the
+     * users' sockets. This method does nothing if the platform is already shutting down.
      */
     @Override
     public void shutdown() {
+        State previous = this.state.getAndUpdate(current -> current == State.STARTING || current == State.READY
+                ? State.DRAINING : current);
+        if (previous != State.STARTING && previous != State.READY) {
+            return;
+        }
+        long startTime = System.nanoTime();
+        if (this.drainDelay > 0 && previous == State.READY) {
+            Log.info("Draining the Moodle platform for {0}ms", this.drainDelay);
+            try {
+                Thread.sleep(this.drainDelay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        this.state.set(State.STOPPING);
+        if (nonNull(this.clusterStore)) {
+            /*
+             * The other nodes send the replies to this node's users through REST from now on.
+             */
+            this.clusterStore.removeRoutes(this.nodeId);
+        }
+        Log.info("Stopping the Moodle platform: {0} inbound message(s) queued",
+                this.inboundDispatcher.getPendingCount());
+        if (nonNull(this.courseCache)) {
+            Log.info("Moodle course cache: {0} hit(s), {1} miss(es), {2} eviction(s)", this.courseCache.getHitCount(),
+                    this.courseCache.getMissCount(), this.courseCache.getEvictionCount());
+        }
+        if (nonNull(this.recognitionCache)) {
+            Log.info("Moodle recognition cache: {0} hit(s), {1} miss(es), hit ratio {2}",
+                    this.recognitionCache.getHitCount(), this.recognitionCache.getMissCount(),
+                    String.format("%.2f", this.recognitionCache.getHitRatio()));
+        }
+        if (nonNull(this.coursePrefetcher)) {
+            this.coursePrefetcher.shutdown();
+        }
+        if (nonNull(this.catalogSynchronizer)) {
+            this.catalogSynchronizer.shutdown();
+        }
+        this.inboundDispatcher.shutdown(this.shutdownTimeout);
+        /*
+         * The actions triggered by the drained messages are executed asynchronously by the core, the batcher keeps
+         * accepting their messages until they are done.
+         */
+        if (!this.actionTracker.awaitQuiescence(this.shutdownQuietPeriod, this.shutdownTimeout)) {
+            Log.warn("{0} Moodle action(s) still running after {1}ms", this.actionTracker.getRunningCount(),
+                    this.shutdownTimeout);
+        }
+        this.sessionManager.close();
+        this.messageBatcher.shutdown(this.shutdownTimeout);
+        if (nonNull(this.outboundJournal)) {
+            this.outboundJournal.close();
+        }
+        this.moodleClient.close();
         this.socketIOServer.stop();
+        if (nonNull(this.metricsEndpoint)) {
+            this.metricsEndpoint.stop();
+        }
+        if (nonNull(this.clusterStore)) {
+            this.clusterStore.unsubscribe(this.nodeId);
+            this.clusterStore.close();
+        }
+        this.state.set(State.STOPPED);
+        Log.info("Moodle platform stopped in {0}ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+    }
+
+    /**
+     * Configures the transport of the socket server from the provided {@code configuration}.
+     * <p>
+     * The transport keys default to netty-socketio's defaults (websocket and long-polling transports, NIO, Netty's
+     * default number of threads, direct buffers, and compression). The native epoll transport is only enabled if it
+     * is available on the system.
+     *
+     * @param socketioConfiguration the socket.io {@link com.corundumstudio.socketio.Configuration} to configure
+     * @param configuration         the platform's {@link Configuration}
+     * @see MoodleUtils#MOODLE_SOCKET_WEBSOCKET_ONLY_KEY
+     * @see MoodleUtils#MOODLE_SOCKET_EPOLL_KEY
+     * @see MoodleUtils#MOODLE_SOCKET_COMPRESSION_KEY
+     */
+    private static void configureTransport(com.corundumstudio.socketio.Configuration socketioConfiguration,
+                                           Configuration configuration) {
+        boolean websocketOnly = configuration.getBoolean(MoodleUtils.MOODLE_SOCKET_WEBSOCKET_ONLY_KEY,
+                MoodleUtils.DEFAULT_MOODLE_SOCKET_WEBSOCKET_ONLY);
+        if (websocketOnly) {
+            socketioConfiguration.setTransports(Transport.WEBSOCKET);
+        }
+        boolean epoll = configuration.getBoolean(MoodleUtils.MOODLE_SOCKET_EPOLL_KEY,
+                MoodleUtils.DEFAULT_MOODLE_SOCKET_EPOLL);
+        if (epoll && !Epoll.isAvailable()) {
+            Log.warn("The native epoll transport is not available ({0}), the Moodle socket server uses the NIO "
+                    + "transport", Epoll.unavailabilityCause().getMessage());
+            epoll = false;
+        }
+        socketioConfiguration.setUseLinuxNativeEpoll(epoll);
+        socketioConfiguration.setBossThreads(configuration.getInt(MoodleUtils.MOODLE_SOCKET_BOSS_THREADS_KEY,
+                MoodleUtils.DEFAULT_MOODLE_SOCKET_BOSS_THREADS));
+        socketioConfiguration.setWorkerThreads(configuration.getInt(MoodleUtils.MOODLE_SOCKET_WORKER_THREADS_KEY,
+                MoodleUtils.DEFAULT_MOODLE_SOCKET_WORKER_THREADS));
+        socketioConfiguration.getSocketConfig().setAcceptBackLog(configuration.getInt(
+                MoodleUtils.MOODLE_SOCKET_ACCEPT_BACKLOG_KEY, MoodleUtils.DEFAULT_MOODLE_SOCKET_ACCEPT_BACKLOG));
+        /*
+         * Allows a restarted node to listen on its port while the connections of the previous process are in the
+         * TIME_WAIT state.
+         */
+        socketioConfiguration.getSocketConfig().setReuseAddress(true);
+        socketioConfiguration.setPreferDirectBuffer(configuration.getBoolean(
+                MoodleUtils.MOODLE_SOCKET_DIRECT_BUFFERS_KEY, MoodleUtils.DEFAULT_MOODLE_SOCKET_DIRECT_BUFFERS));
+        boolean compression = configuration.getBoolean(MoodleUtils.MOODLE_SOCKET_COMPRESSION_KEY,
+                MoodleUtils.DEFAULT_MOODLE_SOCKET_COMPRESSION);
+        socketioConfiguration.setWebsocketCompression(compression);
+        socketioConfiguration.setHttpCompression(compression);
+        Log.info("Moodle socket transport: {0}, {1}, compression {2}", websocketOnly ? "websocket only"
+                : "websocket and polling", epoll ? "epoll" : "nio", compression ? "enabled" : "disabled");
+    }
+
+    /**
+     * Creates the {@link MetricsRegistry} defined in the provided {@code configuration}.
+     *
+     * @param configuration the platform's {@link Configuration}
+     * @return the created {@link MetricsRegistry}
+     * @throws XatkitException if the configured registry class cannot be instantiated
+     * @see MoodleUtils#MOODLE_METRICS_REGISTRY_KEY
+     */
+    private static MetricsRegistry createMetricsRegistry(Configuration configuration) {
+        String registryClass = configuration.getString(MoodleUtils.MOODLE_METRICS_REGISTRY_KEY);
+        if (isNull(registryClass)) {
+            return new InMemoryMetricsRegistry();
+        }
+        try {
+            return (MetricsRegistry) Class.forName(registryClass).newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new XatkitException("Cannot create the Moodle metrics registry " + registryClass, e);
+        }
+    }
+
+    /**
+     * Creates the {@link BatchIntentRecognizer} defined in the provided {@code configuration}.
+     *
+     * @param configuration the platform's {@link Configuration}
+     * @return the created {@link BatchIntentRecognizer}
+     * @throws XatkitException if the configured recognizer class cannot be instantiated
+     * @see MoodleUtils#MOODLE_RECOGNITION_BATCH_RECOGNIZER_KEY
+     */
+    private static BatchIntentRecognizer createBatchIntentRecognizer(Configuration configuration) {
+        String recognizerClass = configuration.getString(MoodleUtils.MOODLE_RECOGNITION_BATCH_RECOGNIZER_KEY);
+        if (isNull(recognizerClass)) {
+            return new SequentialBatchIntentRecognizer();
+        }
+        try {
+            return (BatchIntentRecognizer) Class.forName(recognizerClass).newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new XatkitException("Cannot create the Moodle batch intent recognizer " + recognizerClass, e);
+        }
+    }
+
+    /**
+     * Returns the Moodle endpoint (including its {@code wstoken}) configured with the
+     * {@link MoodleUtils#MOODLE_SERVER_ENDPOINT_KEY} and {@link MoodleUtils#MOODLE_ACCESS_TOKEN_KEY} keys.
+     *
+     * @param configuration the platform's {@link Configuration}
+     * @return the configured endpoint, or {@code null} if the {@link MoodleUtils#MOODLE_SERVER_ENDPOINT_KEY} key is
+     * not set
+     */
+    private static String getMoodleEndpoint(Configuration configuration) {
+        String endpoint = configuration.getString(MoodleUtils.MOODLE_SERVER_ENDPOINT_KEY);
+        if (isNull(endpoint)) {
+            return null;
+        }
+        String token = configuration.getString(MoodleUtils.MOODLE_ACCESS_TOKEN_KEY);
+        if (isNull(token)) {
+            return endpoint;
+        }
+        return endpoint + (endpoint.contains("?") ? "&" : "?") + "wstoken=" + token;
+    }
+
+    /**
+     * Creates the {@link ClusterStore} defined in the provided {@code configuration}.
+     *
+     * @param configuration the platform's {@link Configuration}
+     * @return the created {@link ClusterStore}, or {@code null} if clustering is disabled
+     * @throws XatkitException if the configured store is not supported or if the {@code file} store doesn't define
+     *                         its directory
+     * @see MoodleUtils#MOODLE_CLUSTER_STORE_KEY
+     */
+    private static ClusterStore createClusterStore(Configuration configuration) {
+        String store = configuration.getString(MoodleUtils.MOODLE_CLUSTER_STORE_KEY,
+                MoodleUtils.DEFAULT_MOODLE_CLUSTER_STORE);
+        switch (store.toLowerCase()) {
+            case "none":
+                return null;
+            case "memory":
+                return InMemoryClusterStore.named(configuration.getString(MoodleUtils.MOODLE_CLUSTER_NAME_KEY,
+                        MoodleUtils.DEFAULT_MOODLE_CLUSTER_NAME));
+            case "file":
+                String directory = configuration.getString(MoodleUtils.MOODLE_CLUSTER_DIRECTORY_KEY);
+                if (isNull(directory)) {
+                    throw new XatkitException("Cannot create the file cluster store: the configuration does not "
+                            + "contain the key " + MoodleUtils.MOODLE_CLUSTER_DIRECTORY_KEY);
+                }
+                return new FileClusterStore(Paths.get(directory),
+                        configuration.getLong(MoodleUtils.MOODLE_CLUSTER_POLL_INTERVAL_KEY,
+                                MoodleUtils.DEFAULT_MOODLE_CLUSTER_POLL_INTERVAL),
+                        configuration.getLong(MoodleUtils.MOODLE_CLUSTER_NODE_TIMEOUT_KEY,
+                                MoodleUtils.DEFAULT_MOODLE_CLUSTER_NODE_TIMEOUT));
+            default:
+                throw new XatkitException("Unknown Moodle cluster store " + store + ", expected none, memory, or "
+                        + "file");
+        }
     }
 
     /**
      * Creates a {@link XatkitSession} from the provided {@code channel}.
      * <p>
-     * This method ensures that the same {@link XatkitSession} is returned for the same {@code channel}.
+     * This method ensures that the same {@link XatkitSession} is returned for the same {@code channel} as long as
+     * its session is in memory. Sessions are created by the core's intent recognition provider, and owned by the
+     * platform's {@link MoodleSessionManager} (see {@link #getSessionManager()}).
      *
      * @param userId the channel to create a {@link XatkitSession} from
      * @return the created {@link XatkitSession}
     */
     public XatkitSession createSessionFromUserId(String userId) {
-        return this.xatkitCore.getOrCreateXatkitSession(userId);
+        return this.sessionManager.getOrCreate(userId);
     }
    
 }
@@ -0,0 +1,107 @@
+package com.xatkit.plugins.moodle.platform.action;
+
+import com.xatkit.plugins.moodle.platform.MoodlePlatform;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static fr.inria.atlanmod.commons.Preconditions.checkArgument;
+
+/**
+ * Tracks the Moodle actions executed by the Xatkit core.
+ * <p>
+ * The events sent to the core by the {@link com.xatkit.plugins.moodle.platform.io.MoodleIntentProvider} are
+ * handled asynchronously, and the actions they trigger are not known by the platform until they are computed. The
+ * tracker records the events sent to the core and the actions being computed, allowing the {@link MoodlePlatform}
+ * to wait for the actions triggered by the last inbound messages before stopping its {@link MessageBatcher}.
+ *
+ * @see #awaitQuiescence(long, long)
+ */
+public class ActionTracker {
+
+    /**
+     * The time (in milliseconds) between two checks of {@link #awaitQuiescence(long, long)}.
+     */
+    private static final long CHECK_INTERVAL = 10L;
+
+    /**
+     * The number of actions being computed.
+     */
+    private final AtomicInteger running = new AtomicInteger();
+
+    /**
+     * The time (in nanoseconds) of the last event sent to the core, or of the last action started or completed.
+     */
+    private volatile long lastActivity = System.nanoTime();
+
+    /**
+     * Records that an event has been sent to the Xatkit core.
+     */
+    public void eventSent() {
+        lastActivity = System.nanoTime();
+    }
+
+    /**
+     * Records that an action has started.
+     * <p>
+     * Each call to this method must be followed by a call to {@link #actionCompleted()}.
+     */
+    public void actionStarted() {
+        running.incrementAndGet();
+        lastActivity = System.nanoTime();
+    }
+
+    /**
+     * Records that an action has completed, successfully or not.
+     */
+    public void actionCompleted() {
+        running.decrementAndGet();
+        lastActivity = System.nanoTime();
+    }
+
+    /**
+     * Returns the number of actions being computed.
+     *
+     * @return the number of actions being computed
+     */
+    public int getRunningCount() {
+        return running.get();
+    }
+
+    /**
+     * Waits until no action is running and no event has been sent nor action started or completed for
+     * {@code quietPeriod} milliseconds.
+     * <p>
+     * The quiet period covers the time taken by the core to start the actions of an event, and the time between
+     * two actions triggered by the same event.
+     *
+     * @param quietPeriod the time (in milliseconds) without activity after which the actions are considered done
+     * @param timeout     the maximum time (in milliseconds) to wait
+     * @return {@code true} if the actions are done, {@code false} if the {@code timeout} expired or if the current
+     * thread has been interrupted
+     * @throws IllegalArgumentException if the provided {@code quietPeriod} or {@code timeout} is negative
+     */
+    public boolean awaitQuiescence(long quietPeriod, long timeout) {
+        checkArgument(quietPeriod >= 0, "Cannot wait for the actions with the provided quiet period %s: expected a "
+                + "positive value", quietPeriod);
+        checkArgument(timeout >= 0, "Cannot wait for the actions with the provided timeout %s: expected a positive "
+                + "value", timeout);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        long quietNanos = TimeUnit.MILLISECONDS.toNanos(quietPeriod);
+        while (true) {
+            long now = System.nanoTime();
+            if (running.get() == 0 && now - lastActivity >= quietNanos) {
+                return true;
+            }
+            if (now - deadline >= 0) {
+                return false;
+            }
+            try {
+                Thread.sleep(CHECK_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.xatkit.plugins.moodle.platform.action;
+
+import com.xatkit.core.XatkitException;
+import com.xatkit.core.platform.action.RuntimeArtifactAction;
+import com.xatkit.core.session.XatkitSession;
+import com.xatkit.plugins.moodle.platform.MoodlePlatform;
+import com.xatkit.plugins.moodle.platform.metrics.MetricNames;
+import com.xatkit.plugins.moodle.platform.metrics.MetricsRegistry;
+import com.xatkit.plugins.moodle.platform.utils.BroadcastResult;
+import com.xatkit.plugins.moodle.platform.utils.MessageSendResult;
+import com.xatkit.plugins.moodle.platform.utils.MoodleUnavailableException;
+import com.xatkit.plugins.moodle.platform.utils.MoodleUser;
+import com.xatkit.plugins.moodle.platform.utils.MoodleWebServiceException;
+
+import fr.inria.atlanmod.commons.log.Log;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static fr.inria.atlanmod.commons.Preconditions.checkArgument;
+import static java.util.Objects.nonNull;
+
+/**
+ * A {@link RuntimeArtifactAction} that sends a {@code message} to all the users of the course {@code courseId}.
+ * <p>
+ * The users enrolled in the course are first retrieved from Moodle. The message is then emitted to the sockets of
+ * the course room whose user is enrolled (see {@link MoodlePlatform#broadcastToCourseRoom(String, String, Set)}),
+ * and to the enrolled users that are connected elsewhere (e.g. on another page, or on another node of the cluster).
+ * The message is sent through Moodle's REST API only to the enrolled users that don't have a live socket, using the
+ * {@link MessageBatcher} that packs the messages in a few requests.
+ * <p>
+ * If the enrolled users cannot be retrieved (e.g. because Moodle is unavailable) the message is not sent: the users
+ * of the course room cannot be trusted without the enrolments of the course.
+ */
+public class BroadcastToCourse extends RuntimeArtifactAction<MoodlePlatform> {
+
+    /**
+     * The Moodle web service function used to retrieve the users enrolled in a course.
+     */
+    static final String GET_ENROLLED_USERS_FUNCTION = "core_enrol_get_enrolled_users";
+
+    /**
+     * The endpoint of the moodle instance.
+     */
+    private String moodleEndpoint;
+
+    /**
+     * The moodle id of the course to send the message to.
+     */
+    private Integer courseId;
+
+    /**
+     * The message being sent to the users of the course.
+     */
+    private String message;
+
+    /**
+     * Constructs a new {@link BroadcastToCourse} with the provided {@code runtimePlatform}, {@code session}, {@code
+     * moodleEndpoint}, {@code courseId}, and {@code message}.
+     *
+     * @param runtimePlatform the {@link MoodlePlatform} containing this action
+     * @param session         the {@link XatkitSession} associated to this action
+     * @param moodleEndpoint  the endpoint of the moodle instance
+     * @param courseId        the moodle id of the course to send the message to
+     * @param message         the message being sent to the users of the course
+     * @throws NullPointerException     if the provided {@code runtimePlatform} or {@code session} is {@code null}
+     * @throws IllegalArgumentException if the provided {@code moodleEndpoint}, {@code courseId}, or {@code message}
+     *                                  is {@code null}
+     */
+    public BroadcastToCourse(MoodlePlatform runtimePlatform, XatkitSession session, String moodleEndpoint,
+                             Integer courseId, String message) {
+        super(runtimePlatform, session);
+        checkArgument(nonNull(moodleEndpoint), "Cannot construct a %s action with the provided endpoint %s",
+                this.getClass().getSimpleName(), moodleEndpoint);
+        checkArgument(nonNull(courseId), "Cannot construct a %s action with the provided course id %s",
+                this.getClass().getSimpleName(), courseId);
+        checkArgument(nonNull(message), "Cannot construct a %s action with the provided message %s",
+                this.getClass().getSimpleName(), message);
+        this.moodleEndpoint = moodleEndpoint;
+        this.courseId = courseId;
+        this.message = message;
+    }
+
+    /**
+     * Sends the message to the users of the course and waits for Moodle's results.
+     *
+     * @return the {@link BroadcastResult} containing the number of users reached over their socket and through
+     * Moodle's REST API
+     */
+    @Override
+    protected Object compute() {
+        ActionTracker actionTracker = this.runtimePlatform.getActionTracker();
+        actionTracker.actionStarted();
+        try {
+            List<MoodleUser> enrolledUsers;
+            try {
+                enrolledUsers = MoodleWebServiceClient.await(this.runtimePlatform.getMoodleClient().readList(
+                        moodleEndpoint, GET_ENROLLED_USERS_FUNCTION, createParameters(), MoodleUser.class));
+            } catch (MoodleWebServiceException | MoodleUnavailableException e) {
+                Log.warn("Cannot retrieve the users enrolled in the course {0}, the message has not been sent: {1}",
+                        courseId, e.getMessage());
+                return new BroadcastResult(0, 0, 0);
+            }
+            Set<String> enrolledUserIds = new HashSet<>(enrolledUsers.size() * 2);
+            for (MoodleUser user : enrolledUsers) {
+                enrolledUserIds.add(Integer.toString(user.getId()));
+            }
+            Set<String> reached = this.runtimePlatform.broadcastToCourseRoom(courseId.toString(), message,
+                    enrolledUserIds);
+            int socketCount = reached.size();
+            MetricsRegistry metrics = this.runtimePlatform.getMetrics();
+            int directSocketCount = 0;
+            List<CompletableFuture<MessageSendResult>> restMessages = new ArrayList<>();
+            for (MoodleUser user : enrolledUsers) {
+                String userId = Integer.toString(user.getId());
+                if (reached.contains(userId)) {
+                    continue;
+                }
+                if (this.runtimePlatform.sendToSocket(userId, message)) {
+                    directSocketCount++;
+                } else {
+                    restMessages.add(this.runtimePlatform.getMessageBatcher().submit(moodleEndpoint, user.getId(),
+                            message));
+                }
+            }
+            metrics.counter(MetricsRegistry.name(MetricNames.BROADCAST_DELIVERIES, "channel", "socket"))
+                    .add(directSocketCount);
+            int restCount = 0;
+            int errorCount = 0;
+            for (CompletableFuture<MessageSendResult> restMessage : restMessages) {
+                try {
+                    if (MoodleWebServiceClient.await(restMessage).isSent()) {
+                        restCount++;
+                    } else {
+                        errorCount++;
+                    }
+                } catch (XatkitException e) {
+                    errorCount++;
+                }
+            }
+            metrics.counter(MetricsRegistry.name(MetricNames.BROADCAST_DELIVERIES, "channel", "rest")).add(restCount);
+            if (errorCount > 0) {
+                Log.warn("Cannot send the message broadcast to the course {0} to {1} user(s)", courseId, errorCount);
+            }
+            return new BroadcastResult(socketCount + directSocketCount, restCount, errorCount);
+        } finally {
+            actionTracker.actionCompleted();
+        }
+    }
+
+    /**
+     * Creates the parameters of the {@link #GET_ENROLLED_USERS_FUNCTION} call.
+     * <p>
+     * Only the ids of the users are requested, which keeps the response small for large courses.
+     *
+     * @return the parameters of the call
+     */
+    private Map<String, Object> createParameters() {
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("courseid", courseId);
+        parameters.put("options[0][name]", "userfields");
+        parameters.put("options[0][value]", "id");
+        return parameters;
+    }
+}
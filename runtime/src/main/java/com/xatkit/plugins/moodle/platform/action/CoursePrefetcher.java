@@ -0,0 +1,295 @@
+package com.xatkit.plugins.moodle.platform.action;
+
+import com.xatkit.plugins.moodle.platform.MoodlePlatform;
+import com.xatkit.plugins.moodle.platform.metrics.Counter;
+import com.xatkit.plugins.moodle.platform.metrics.MetricNames;
+import com.xatkit.plugins.moodle.platform.utils.ExpiringCache;
+import com.xatkit.plugins.moodle.platform.utils.MoodleCourse;
+import com.xatkit.plugins.moodle.platform.utils.MoodleCourseList;
+import com.xatkit.plugins.moodle.platform.utils.MoodleRestFormat;
+import com.xatkit.plugins.moodle.platform.utils.MoodleWebServiceException;
+
+import fr.inria.atlanmod.commons.log.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static fr.inria.atlanmod.commons.Preconditions.checkArgument;
+import static fr.inria.atlanmod.commons.Preconditions.checkNotNull;
+import static java.util.Objects.nonNull;
+
+/**
+ * Retrieves the courses of the connected users in the background and stores them in the course cache.
+ * <p>
+ * The {@link com.xatkit.plugins.moodle.platform.MoodlePlatform} requests the courses of a user as soon as its
+ * socket is connected, meaning that the first {@link GetCourses} action of the user is answered from the cache
+ * without calling Moodle. Requested users are gathered during a short window and their courses are retrieved with a
+ * single {@link MoodleWebServiceClient#BATCH_FUNCTION} request. If Moodle doesn't allow batched calls for the
+ * client's token (or if the client doesn't use the {@link MoodleRestFormat#JSON} format), the courses are retrieved
+ * with one request per user.
+ * <p>
+ * The users whose courses are already cached or already being retrieved are ignored.
+ */
+public class CoursePrefetcher {
+
+    /**
+     * The Moodle endpoint (including its {@code wstoken}) used to retrieve the courses.
+     */
+    private final String moodleEndpoint;
+
+    /**
+     * The client used to call Moodle.
+     */
+    private final MoodleWebServiceClient client;
+
+    /**
+     * The cache storing the retrieved courses.
+     */
+    private final ExpiringCache<String, MoodleCourseList> courseCache;
+
+    /**
+     * The time (in milliseconds) to wait for additional users before retrieving the courses.
+     */
+    private final long window;
+
+    /**
+     * The maximum number of users whose courses are retrieved in a single request.
+     */
+    private final int maxBatchSize;
+
+    /**
+     * Whether the courses can be retrieved with batched calls.
+     * <p>
+     * This flag is disabled when Moodle rejects a batch.
+     */
+    private volatile boolean batchEnabled;
+
+    /**
+     * The number of users whose courses have been prefetched.
+     */
+    private final Counter prefetched;
+
+    /**
+     * The number of users whose courses couldn't be prefetched.
+     */
+    private final Counter prefetchErrors;
+
+    /**
+     * The scheduler used to trigger the retrieval of the requested users when the window expires.
+     */
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * The users whose courses have been requested and not stored yet.
+     */
+    private final Set<Integer> requested = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The lock protecting {@link #pending} and {@link #scheduledFlush}.
+     */
+    private final Object lock = new Object();
+
+    /**
+     * The users waiting for the window to expire.
+     */
+    private List<Integer> pending;
+
+    /**
+     * The scheduled retrieval of the {@link #pending} users, if any.
+     */
+    private ScheduledFuture<?> scheduledFlush;
+
+    /**
+     * Constructs a new {@link CoursePrefetcher} retrieving the courses from the provided {@code moodleEndpoint} with
+     * the given {@code client} and storing them in the given {@code courseCache}.
+     *
+     * @param moodleEndpoint the Moodle endpoint (including its {@code wstoken}) used to retrieve the courses
+     * @param client         the {@link MoodleWebServiceClient} used to call Moodle
+     * @param courseCache    the cache storing the retrieved courses
+     * @param window         the time (in milliseconds) to wait for additional users before retrieving the courses
+     * @param maxBatchSize   the maximum number of users whose courses are retrieved in a single request
+     * @param batch          whether the courses can be retrieved with batched calls
+     * @throws NullPointerException     if the provided {@code moodleEndpoint}, {@code client}, or {@code
+     *                                  courseCache} is {@code null}
+     * @throws IllegalArgumentException if the provided {@code window} is negative or if the provided {@code
+     *                                  maxBatchSize} is lower than {@code 1}
+     */
+    public CoursePrefetcher(String moodleEndpoint, MoodleWebServiceClient client,
+                            ExpiringCache<String, MoodleCourseList> courseCache, long window, int maxBatchSize,
+                            boolean batch) {
+        checkNotNull(moodleEndpoint, "Cannot construct a %s with the provided endpoint %s",
+                CoursePrefetcher.class.getSimpleName(), moodleEndpoint);
+        checkNotNull(client, "Cannot construct a %s with the provided client %s",
+                CoursePrefetcher.class.getSimpleName(), client);
+        checkNotNull(courseCache, "Cannot construct a %s with the provided cache %s",
+                CoursePrefetcher.class.getSimpleName(), courseCache);
+        checkArgument(window >= 0, "Cannot construct a %s with the provided window %s: expected a positive or null "
+                + "value", CoursePrefetcher.class.getSimpleName(), window);
+        checkArgument(maxBatchSize > 0, "Cannot construct a %s with the provided batch size %s: expected a strictly "
+                + "positive value", CoursePrefetcher.class.getSimpleName(), maxBatchSize);
+        this.moodleEndpoint = moodleEndpoint;
+        this.client = client;
+        this.courseCache = courseCache;
+        this.window = window;
+        this.maxBatchSize = maxBatchSize;
+        this.batchEnabled = batch && client.getFormat() == MoodleRestFormat.JSON;
+        this.prefetched = client.getMetrics().counter(MetricNames.COURSES_PREFETCHED);
+        this.prefetchErrors = client.getMetrics().counter(MetricNames.COURSES_PREFETCH_ERRORS);
+        this.pending = new ArrayList<>(maxBatchSize);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "moodle-course-prefetcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Requests the retrieval of the courses of the provided {@code userId}.
+     * <p>
+     * This method never blocks. The request is ignored if the courses of the user are already cached or already
+     * being retrieved.
+     *
+     * @param userId the Moodle id of the user to retrieve the courses of
+     */
+    public void prefetch(int userId) {
+        if (courseCache.contains(MoodlePlatform.courseCacheKey(moodleEndpoint, userId))
+                || !requested.add(userId)) {
+            return;
+        }
+        List<Integer> fullBatch = null;
+        synchronized (lock) {
+            if (scheduler.isShutdown()) {
+                requested.remove(userId);
+                return;
+            }
+            pending.add(userId);
+            if (pending.size() >= maxBatchSize) {
+                fullBatch = drainPending();
+            } else if (scheduledFlush == null) {
+                scheduledFlush = scheduler.schedule(this::flush, window, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (nonNull(fullBatch)) {
+            retrieve(fullBatch);
+        }
+    }
+
+    /**
+     * Retrieves the courses of the pending users without waiting for the window to expire.
+     */
+    public void flush() {
+        List<Integer> batch;
+        synchronized (lock) {
+            batch = drainPending();
+        }
+        if (!batch.isEmpty()) {
+            retrieve(batch);
+        }
+    }
+
+    /**
+     * Stops the underlying scheduler and drops the pending users.
+     */
+    public void shutdown() {
+        synchronized (lock) {
+            scheduler.shutdownNow();
+            drainPending();
+        }
+    }
+
+    /**
+     * Takes the pending users and cancels the scheduled flush.
+     * <p>
+     * This method must be called while holding {@link #lock}.
+     *
+     * @return the pending users
+     */
+    private List<Integer> drainPending() {
+        List<Integer> batch = pending;
+        pending = new ArrayList<>(maxBatchSize);
+        if (nonNull(scheduledFlush)) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        return batch;
+    }
+
+    /**
+     * Retrieves the courses of the provided {@code userIds} and stores them in the cache.
+     * <p>
+     * This method does not block: the courses are stored when Moodle responds.
+     *
+     * @param userIds the Moodle ids of the users to retrieve the courses of
+     */
+    private void retrieve(List<Integer> userIds) {
+        if (!batchEnabled) {
+            userIds.forEach(this::retrieve);
+            return;
+        }
+        List<Map<String, Object>> argumentsList = new ArrayList<>(userIds.size());
+        for (Integer userId : userIds) {
+            argumentsList.add(Collections.singletonMap("userid", userId));
+        }
+        client.callBatch(moodleEndpoint, GetCourses.GET_USERS_COURSES_FUNCTION, argumentsList, MoodleCourse.class)
+                .whenComplete((results, error) -> {
+                    if (nonNull(error)) {
+                        if (error instanceof MoodleWebServiceException) {
+                            batchEnabled = false;
+                            Log.warn("Moodle rejected the batched retrieval of the courses ({0}), the courses are "
+                                    + "now prefetched with one call per user", error.getMessage());
+                            userIds.forEach(this::retrieve);
+                        } else {
+                            prefetchErrors.add(userIds.size());
+                            userIds.forEach(requested::remove);
+                            Log.warn("Cannot prefetch the courses of {0} user(s): {1}", userIds.size(),
+                                    error.getMessage());
+                        }
+                        return;
+                    }
+                    for (int i = 0; i < userIds.size(); i++) {
+                        List<MoodleCourse> courses = i < results.size() ? results.get(i) : null;
+                        store(userIds.get(i), courses);
+                    }
+                });
+    }
+
+    /**
+     * Retrieves the courses of the provided {@code userId} and stores them in the cache.
+     * <p>
+     * The call is merged with the concurrent retrievals of the courses of the same user (see
+     * {@link MoodleWebServiceClient#readList(String, String, Map, Class)}).
+     *
+     * @param userId the Moodle id of the user to retrieve the courses of
+     */
+    private void retrieve(Integer userId) {
+        CompletableFuture<List<MoodleCourse>> courses = client.readList(moodleEndpoint,
+                GetCourses.GET_USERS_COURSES_FUNCTION, Collections.singletonMap("userid", userId),
+                MoodleCourse.class);
+        courses.whenComplete((result, error) -> store(userId, result));
+    }
+
+    /**
+     * Stores the provided {@code courses} of the given {@code userId} in the cache.
+     *
+     * @param userId  the Moodle id of the user
+     * @param courses the courses of the user, or {@code null} if they couldn't be retrieved
+     */
+    private void store(Integer userId, List<MoodleCourse> courses) {
+        if (nonNull(courses)) {
+            courseCache.put(MoodlePlatform.courseCacheKey(moodleEndpoint, userId), new MoodleCourseList(courses));
+            prefetched.increment();
+        } else {
+            prefetchErrors.increment();
+        }
+        requested.remove(userId);
+    }
+}
@@ -0,0 +1,66 @@
+package com.xatkit.plugins.moodle.platform.action;
+
+import com.xatkit.core.platform.action.RuntimeArtifactAction;
+import com.xatkit.core.session.XatkitSession;
+import com.xatkit.plugins.moodle.platform.MoodlePlatform;
+import com.xatkit.plugins.moodle.platform.catalog.CourseCatalog;
+import com.xatkit.plugins.moodle.platform.utils.MoodleCourseList;
+
+import static java.util.Objects.nonNull;
+
+/**
+ * A {@link RuntimeArtifactAction} that retrieves the courses of the user with id {@code fromUserId} whose names
+ * contain the words of the provided {@code term}.
+ * <p>
+ * The courses of the user are retrieved like {@link GetCourses} does (i.e. from the course cache when possible),
+ * and are filtered with the words indexed in the {@link MoodlePlatform}'s course catalog, meaning that the action
+ * doesn't call Moodle when the courses of the user are cached.
+ *
+ * @see CourseCatalog#filter(java.util.Collection, String)
+ */
+public class FilterCourses extends GetCourses {
+
+    /**
+     * The catalog used to filter the courses when the {@link MoodlePlatform}'s course catalog is disabled.
+     * <p>
+     * This catalog is empty: the names of the filtered courses are tokenized when filtering them.
+     */
+    private static final CourseCatalog EMPTY_CATALOG = new CourseCatalog();
+
+    /**
+     * The words to look for in the names of the courses.
+     */
+    private String term;
+
+    /**
+     * Constructs a new {@link FilterCourses} with the provided {@code runtimePlatform}, {@code session}, {@code
+     * moodleEndpoint}, {@code fromUserId}, and {@code term}.
+     *
+     * @param runtimePlatform the {@link MoodlePlatform} containing this action
+     * @param session         the {@link XatkitSession} associated to this action
+     * @param moodleEndpoint  the endpoint of the moodle instance
+     * @param fromUserId      the moodle user id to get the registered courses
+     * @param term            the words to look for in the names of the courses, or {@code null} to keep all the
+     *                        courses
+     * @throws NullPointerException     if the provided {@code runtimePlatform} or {@code session} is {@code null}
+     * @throws IllegalArgumentException if the provided {@code moodleEndpoint} or {@code fromUserId} is {@code null}
+     */
+    public FilterCourses(MoodlePlatform runtimePlatform, XatkitSession session, String moodleEndpoint,
+                         Integer fromUserId, String term) {
+        super(runtimePlatform, session, moodleEndpoint, fromUserId);
+        this.term = term;
+    }
+
+    /**
+     * Retrieves the courses of the user matching the term.
+     *
+     * @return the {@link MoodleCourseList} containing the matching courses of the user, or an empty list if Moodle
+     * returned an error or is unavailable
+     */
+    @Override
+    protected Object compute() {
+        MoodleCourseList courses = (MoodleCourseList) super.compute();
+        CourseCatalog catalog = this.runtimePlatform.getCourseCatalog();
+        return (nonNull(catalog) ? catalog : EMPTY_CATALOG).filter(courses, term);
+    }
+}
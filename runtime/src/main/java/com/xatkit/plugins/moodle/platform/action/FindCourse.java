@@ -0,0 +1,96 @@
+package com.xatkit.plugins.moodle.platform.action;
+
+import com.xatkit.core.platform.action.RuntimeArtifactAction;
+import com.xatkit.core.session.XatkitSession;
+import com.xatkit.plugins.moodle.platform.MoodlePlatform;
+import com.xatkit.plugins.moodle.platform.catalog.CourseCatalog;
+import com.xatkit.plugins.moodle.platform.utils.MoodleCourseList;
+import com.xatkit.plugins.moodle.platform.utils.MoodleUnavailableException;
+import com.xatkit.plugins.moodle.platform.utils.MoodleWebServiceException;
+
+import fr.inria.atlanmod.commons.log.Log;
+
+import java.util.Collections;
+
+import static fr.inria.atlanmod.commons.Preconditions.checkArgument;
+import static java.util.Objects.nonNull;
+
+/**
+ * A {@link RuntimeArtifactAction} that finds the courses matching the provided {@code query}.
+ * <p>
+ * The {@code query} can be the id or the short name of a course, or words of the names of the courses (e.g.
+ * {@code "intro prog"}). The courses are looked up in the {@link MoodlePlatform}'s course catalog if it is enabled,
+ * without calling Moodle. Otherwise all the courses are retrieved from Moodle the first time the action is
+ * computed, and the loaded catalog is reused by the following lookups.
+ *
+ * @see MoodlePlatform#getOrLoadCourseCatalog(String)
+ * @see CourseCatalog#find(String, int)
+ */
+public class FindCourse extends RuntimeArtifactAction<MoodlePlatform> {
+
+    /**
+     * The maximum number of courses returned by the action.
+     */
+    static final int MAX_RESULTS = 10;
+
+    /**
+     * The endpoint of the moodle instance.
+     */
+    private String moodleEndpoint;
+
+    /**
+     * The id, short name, or words of the names of the courses to find.
+     */
+    private String query;
+
+    /**
+     * Constructs a new {@link FindCourse} with the provided {@code runtimePlatform}, {@code session}, {@code
+     * moodleEndpoint}, and {@code query}.
+     *
+     * @param runtimePlatform the {@link MoodlePlatform} containing this action
+     * @param session         the {@link XatkitSession} associated to this action
+     * @param moodleEndpoint  the endpoint of the moodle instance
+     * @param query           the id, short name, or words of the names of the courses to find
+     * @throws NullPointerException     if the provided {@code runtimePlatform} or {@code session} is {@code null}
+     * @throws IllegalArgumentException if the provided {@code moodleEndpoint} or {@code query} is {@code null}
+     */
+    public FindCourse(MoodlePlatform runtimePlatform, XatkitSession session, String moodleEndpoint, String query) {
+        super(runtimePlatform, session);
+        checkArgument(nonNull(moodleEndpoint), "Cannot construct a %s action with the provided endpoint %s",
+                this.getClass().getSimpleName(), moodleEndpoint);
+        checkArgument(nonNull(query), "Cannot construct a %s action with the provided query %s",
+                this.getClass().getSimpleName(), query);
+        this.moodleEndpoint = moodleEndpoint;
+        this.query = query;
+    }
+
+    /**
+     * Finds the courses matching the query.
+     * <p>
+     * The returned {@link MoodleCourseList} contains at most {@link #MAX_RESULTS} courses, and renders the numbered
+     * list of the course names when converted to a {@link String}.
+     *
+     * @return the {@link MoodleCourseList} containing the matching courses, or an empty list if no course matches
+     * the query or if the courses cannot be retrieved from Moodle
+     */
+    @Override
+    protected Object compute() {
+        ActionTracker actionTracker = this.runtimePlatform.getActionTracker();
+        actionTracker.actionStarted();
+        try {
+            CourseCatalog catalog;
+            try {
+                catalog = this.runtimePlatform.getOrLoadCourseCatalog(moodleEndpoint);
+            } catch (MoodleWebServiceException e) {
+                Log.error("Cannot retrieve the courses: {0}", e.getMessage());
+                return new MoodleCourseList(Collections.emptyList());
+            } catch (MoodleUnavailableException e) {
+                Log.warn("Cannot retrieve the courses: {0}", e.getMessage());
+                return new MoodleCourseList(Collections.emptyList());
+            }
+            return catalog.find(query, MAX_RESULTS);
+        } finally {
+            actionTracker.actionCompleted();
+        }
+    }
+}
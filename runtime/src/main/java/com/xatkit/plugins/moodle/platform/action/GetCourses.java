@@ -1,37 +1,47 @@
 package com.xatkit.plugins.moodle.platform.action;
 
-import com.mashape.unirest.http.Headers;
-import com.xatkit.core.platform.action.RestGetAction;
+import com.xatkit.core.platform.action.RuntimeArtifactAction;
 import com.xatkit.core.session.XatkitSession;
 import com.xatkit.plugins.moodle.platform.MoodlePlatform;
+import com.xatkit.plugins.moodle.platform.utils.ExpiringCache;
+import com.xatkit.plugins.moodle.platform.utils.MoodleCourse;
+import com.xatkit.plugins.moodle.platform.utils.MoodleCourseList;
+import com.xatkit.plugins.moodle.platform.utils.MoodleUnavailableException;
+import com.xatkit.plugins.moodle.platform.utils.MoodleWebServiceException;
 
-import java.util.Collections;
-import java.util.HashMap;
-
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
+import fr.inria.atlanmod.commons.log.Log;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
+import java.util.Collections;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.StringReader;
+import static fr.inria.atlanmod.commons.Preconditions.checkArgument;
+import static java.util.Objects.nonNull;
 
 /**
- * A {@link RestGetAction} that retrieves the courses in which the user with id {@code fromUserId} is registered.
+ * A {@link RuntimeArtifactAction} that retrieves the courses in which the user with id {@code fromUserId} is
+ * registered.
+ * <p>
+ * The retrieved courses are cached in the {@link MoodlePlatform}'s course cache, meaning that subsequent calls for
+ * the same user and endpoint are answered without calling Moodle until the cached entry expires or is invalidated. Concurrent
+ * retrievals of the courses of the same user are merged into a single Moodle call.
+ *
+ * @see MoodlePlatform#getCourseCache()
  */
-public class GetCourses extends RestGetAction<MoodlePlatform> {
+public class GetCourses extends RuntimeArtifactAction<MoodlePlatform> {
+
+    /**
+     * The Moodle web service function used to retrieve the courses of a user.
+     */
+    static final String GET_USERS_COURSES_FUNCTION = "core_enrol_get_users_courses";
+
+    /**
+     * The endpoint of the moodle instance.
+     */
+    private String moodleEndpoint;
+
+    /**
+     * The moodle user id to get the registered courses of.
+     */
+    private Integer fromUserId;
 
     /**
      * Constructs a new {@link GetCourses} with the provided {@code runtimePlatform}, {@code session}, {@code
@@ -42,72 +52,56 @@ public class GetCourses extends RestGetAction<MoodlePlatform> {
      * @param moodleEndpoint  the endpoint of the moodle instance
      * @param fromUserId      the moodle user id to get the registered courses
      * @throws NullPointerException     if the provided {@code runtimePlatform} or {@code session} is {@code null}
-     * @throws IllegalArgumentException if the provided {@code message} or {@code channel} is {@code null}
+     * @throws IllegalArgumentException if the provided {@code moodleEndpoint} or {@code fromUserId} is {@code null}
      */
     public GetCourses(MoodlePlatform runtimePlatform, XatkitSession session, String moodleEndpoint,
             Integer fromUserId) {
-        super(runtimePlatform, session, Collections.emptyMap(),
-                moodleEndpoint + "&wsfunction=core_enrol_get_users_courses", new HashMap<String, Object>() {
-                    {
-                        put("userid", Integer.valueOf(fromUserId));
-                    }
-                });
+        super(runtimePlatform, session);
+        checkArgument(nonNull(moodleEndpoint), "Cannot construct a %s action with the provided endpoint %s",
+                this.getClass().getSimpleName(), moodleEndpoint);
+        checkArgument(nonNull(fromUserId), "Cannot construct a %s action with the provided user id %s",
+                this.getClass().getSimpleName(), fromUserId);
+        this.moodleEndpoint = moodleEndpoint;
+        this.fromUserId = fromUserId;
     }
 
     /**
-     * Handles the REST API response and computes the action's results
+     * Retrieves the courses of the user.
      * <p>
+     * The courses are retrieved from the {@link MoodlePlatform}'s course cache if possible, and from Moodle
+     * otherwise. The returned {@link MoodleCourseList} renders the numbered list of the course names when
+     * converted to a {@link String}.
      *
-     * @param headers the {@link Headers} returned by the REST API
-     * @param status  the status code returned by the REST API
-     * @param body    the {@link InputStream} containing the response body
-     * @return the action's result
+     * @return the {@link MoodleCourseList} containing the user's courses, or an empty list if Moodle returned an
+     * error or is unavailable (see {@link IsMoodleAvailable})
      */
-    protected Object handleResponse(Headers headers, int status, InputStream body) {
-        String result = "";
-        BufferedReader reader = new BufferedReader(new InputStreamReader(body));
-        StringBuilder xml = new StringBuilder();
-        String line = null;
+    @Override
+    protected Object compute() {
+        ActionTracker actionTracker = this.runtimePlatform.getActionTracker();
+        actionTracker.actionStarted();
         try {
-            while ((line = reader.readLine()) != null) {
-                xml.append(line);
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        } finally {
-            // Clean up
-            if (reader != null) {
+            ExpiringCache<String, MoodleCourseList> courseCache = this.runtimePlatform.getCourseCache();
+            String cacheKey = MoodlePlatform.courseCacheKey(moodleEndpoint, fromUserId);
+            MoodleCourseList courses = nonNull(courseCache) ? courseCache.get(cacheKey) : null;
+            if (courses == null) {
                 try {
-                    reader.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
+                    courses = new MoodleCourseList(MoodleWebServiceClient.await(this.runtimePlatform.getMoodleClient()
+                            .readList(moodleEndpoint, GET_USERS_COURSES_FUNCTION, Collections.singletonMap("userid",
+                                    fromUserId), MoodleCourse.class)));
+                } catch (MoodleWebServiceException e) {
+                    Log.error("Cannot retrieve the courses: {0}", e.getMessage());
+                    return new MoodleCourseList(Collections.emptyList());
+                } catch (MoodleUnavailableException e) {
+                    Log.warn("Cannot retrieve the courses: {0}", e.getMessage());
+                    return new MoodleCourseList(Collections.emptyList());
+                }
+                if (nonNull(courseCache)) {
+                    courseCache.put(cacheKey, courses);
                 }
             }
+            return courses;
+        } finally {
+            actionTracker.actionCompleted();
         }
-
-        try {
-            Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder()
-                    .parse(new InputSource(new StringReader(xml.toString())));
-
-            NodeList errNodes = doc.getElementsByTagName("error");
-            if (errNodes.getLength() > 0) {
-                Element err = (Element) errNodes.item(0);
-                System.out.println(err.getElementsByTagName("errorMessage").item(0).getTextContent());
-            }
-
-            XPathFactory xPathfactory = XPathFactory.newInstance();
-            XPath xpath = xPathfactory.newXPath();
-            XPathExpression expr = xpath.compile("//KEY[@name=\"fullname\"]");
-            NodeList nl = (NodeList) expr.evaluate(doc, XPathConstants.NODESET);
-
-            for (int i = 0; nl.getLength() > i; i++) {
-                result += (i + 1) + " - " + nl.item(i).getTextContent() + "<br>";
-            }
-
-        } catch (SAXException | IOException | ParserConfigurationException | XPathExpressionException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
-        }
-        return result;
     }
 }
@@ -0,0 +1,39 @@
+package com.xatkit.plugins.moodle.platform.action;
+
+import com.xatkit.core.platform.action.RuntimeArtifactAction;
+import com.xatkit.core.session.XatkitSession;
+import com.xatkit.plugins.moodle.platform.MoodlePlatform;
+import com.xatkit.plugins.moodle.platform.resilience.MoodleResilience;
+
+/**
+ * A {@link RuntimeArtifactAction} that checks whether Moodle is currently considered available.
+ * <p>
+ * Moodle is considered unavailable when the circuit breaker of one of its functions is open, i.e. when the recent
+ * calls failed because Moodle was unreachable or too slow. Bots can use this action to degrade gracefully (e.g. by
+ * telling the user to try again later) instead of calling actions that would fail.
+ *
+ * @see MoodleResilience
+ */
+public class IsMoodleAvailable extends RuntimeArtifactAction<MoodlePlatform> {
+
+    /**
+     * Constructs a new {@link IsMoodleAvailable} with the provided {@code runtimePlatform} and {@code session}.
+     *
+     * @param runtimePlatform the {@link MoodlePlatform} containing this action
+     * @param session         the {@link XatkitSession} associated to this action
+     * @throws NullPointerException if the provided {@code runtimePlatform} or {@code session} is {@code null}
+     */
+    public IsMoodleAvailable(MoodlePlatform runtimePlatform, XatkitSession session) {
+        super(runtimePlatform, session);
+    }
+
+    /**
+     * Checks whether Moodle is currently considered available.
+     *
+     * @return {@code true} if Moodle is available, {@code false} otherwise
+     */
+    @Override
+    protected Object compute() {
+        return this.runtimePlatform.isMoodleAvailable();
+    }
+}
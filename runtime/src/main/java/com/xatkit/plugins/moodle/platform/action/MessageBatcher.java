@@ -0,0 +1,547 @@
+package com.xatkit.plugins.moodle.platform.action;
+
+import com.xatkit.core.XatkitException;
+import com.xatkit.plugins.moodle.platform.journal.JournalEntry;
+import com.xatkit.plugins.moodle.platform.journal.OutboundJournal;
+import com.xatkit.plugins.moodle.platform.metrics.Counter;
+import com.xatkit.plugins.moodle.platform.metrics.MetricNames;
+import com.xatkit.plugins.moodle.platform.utils.MessageSendResult;
+import com.xatkit.plugins.moodle.platform.utils.MoodleUnavailableException;
+
+import fr.inria.atlanmod.commons.log.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static fr.inria.atlanmod.commons.Preconditions.checkArgument;
+import static fr.inria.atlanmod.commons.Preconditions.checkNotNull;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+
+/**
+ * Gathers outbound messages and sends them to Moodle in batches.
+ * <p>
+ * Moodle's {@code core_message_send_instant_messages} function accepts an indexed array of messages. This class
+ * queues the messages submitted by {@link PostMessage} and {@link Reply} and packs them in a single {@code
+ * messages[N]} request when the batch window expires or when the batch reaches its maximum size, whichever comes
+ * first. The per-message results returned by Moodle are mapped back to the {@link CompletableFuture} returned by
+ * {@link #submit(String, int, String)}.
+ * <p>
+ * If an {@link OutboundJournal} is provided, each message is recorded in the journal when it is submitted and
+ * acknowledged once Moodle returned a result for it. The messages that were not acknowledged when the platform
+ * stopped are sent again by {@link #replay()}, and the messages whose send failed while the platform is running are
+ * sent again every {@code retryInterval} milliseconds. Sending messages is not idempotent: a message whose send
+ * exceeded its deadline may have been delivered by Moodle, it is acknowledged and counted in the
+ * {@link MetricNames#OUTBOUND_UNKNOWN} counter instead of being sent again.
+ */
+public class MessageBatcher {
+
+    /**
+     * The Moodle web service function used to send messages.
+     */
+    static final String SEND_MESSAGES_FUNCTION = "core_message_send_instant_messages";
+
+    /**
+     * The prefix of the client-side ids used to correlate messages with Moodle's results.
+     */
+    private static final String CLIENT_MSG_ID_PREFIX = "xatkit-";
+
+    /**
+     * The client used to send the batches to Moodle.
+     */
+    private final MoodleWebServiceClient client;
+
+    /**
+     * The number of messages Moodle failed to send.
+     */
+    private final Counter messageErrors;
+
+    /**
+     * The number of messages whose send exceeded its deadline.
+     */
+    private final Counter unknownOutcomes;
+
+    /**
+     * The number of messages of the journal sent again because their previous send failed.
+     */
+    private final Counter retried;
+
+    /**
+     * The journal recording the messages until Moodle returned a result for them, if any.
+     */
+    private final OutboundJournal journal;
+
+    /**
+     * The ids in the {@link #journal} of the messages that are queued or being sent.
+     */
+    private final Set<Long> activeJournalIds = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The time (in milliseconds) to wait for additional messages before sending a batch.
+     */
+    private final long window;
+
+    /**
+     * The maximum number of messages sent in a single request.
+     */
+    private final int maxBatchSize;
+
+    /**
+     * The scheduler used to trigger the flush of the pending batch when its window expires.
+     */
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * The requests sent to Moodle that haven't completed yet.
+     */
+    private final Set<CompletableFuture<?>> inFlight = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The lock protecting {@link #pending}, {@link #scheduledFlush}, and {@link #stopped}.
+     */
+    private final Object lock = new Object();
+
+    /**
+     * The messages waiting to be sent.
+     */
+    private List<PendingMessage> pending;
+
+    /**
+     * The scheduled flush of the {@link #pending} messages, if any.
+     */
+    private ScheduledFuture<?> scheduledFlush;
+
+    /**
+     * Whether the batcher has been shut down and refuses new messages.
+     */
+    private boolean stopped;
+
+    /**
+     * The counter used to create client-side message ids.
+     */
+    private final AtomicLong clientMsgIdCounter = new AtomicLong();
+
+    /**
+     * Constructs a new {@link MessageBatcher} with the provided {@code client}, {@code window}, and {@code
+     * maxBatchSize}.
+     *
+     * @param client       the {@link MoodleWebServiceClient} used to send the batches to Moodle
+     * @param window       the time (in milliseconds) to wait for additional messages before sending a batch
+     * @param maxBatchSize the maximum number of messages sent in a single request
+     * @throws NullPointerException     if the provided {@code client} is {@code null}
+     * @throws IllegalArgumentException if the provided {@code window} is negative or if the provided {@code
+     *                                  maxBatchSize} is lower than {@code 1}
+     */
+    public MessageBatcher(MoodleWebServiceClient client, long window, int maxBatchSize) {
+        this(client, window, maxBatchSize, null);
+    }
+
+    /**
+     * Constructs a new {@link MessageBatcher} with the provided {@code client}, {@code window}, {@code
+     * maxBatchSize}, and {@code journal}.
+     *
+     * @param client       the {@link MoodleWebServiceClient} used to send the batches to Moodle
+     * @param window       the time (in milliseconds) to wait for additional messages before sending a batch
+     * @param maxBatchSize the maximum number of messages sent in a single request
+     * @param journal      the {@link OutboundJournal} recording the messages until Moodle returned a result for
+     *                     them, or {@code null} to send the messages without recording them
+     * @throws NullPointerException     if the provided {@code client} is {@code null}
+     * @throws IllegalArgumentException if the provided {@code window} is negative or if the provided {@code
+     *                                  maxBatchSize} is lower than {@code 1}
+     */
+    public MessageBatcher(MoodleWebServiceClient client, long window, int maxBatchSize, OutboundJournal journal) {
+        this(client, window, maxBatchSize, journal, 0);
+    }
+
+    /**
+     * Constructs a new {@link MessageBatcher} with the provided {@code client}, {@code window}, {@code
+     * maxBatchSize}, {@code journal}, and {@code retryInterval}.
+     *
+     * @param client        the {@link MoodleWebServiceClient} used to send the batches to Moodle
+     * @param window        the time (in milliseconds) to wait for additional messages before sending a batch
+     * @param maxBatchSize  the maximum number of messages sent in a single request
+     * @param journal       the {@link OutboundJournal} recording the messages until Moodle returned a result for
+     *                      them, or {@code null} to send the messages without recording them
+     * @param retryInterval the time (in milliseconds) between two retries of the messages of the {@code journal}
+     *                      that couldn't be sent, or {@code 0} to only send them again with {@link #replay()}
+     * @throws NullPointerException     if the provided {@code client} is {@code null}
+     * @throws IllegalArgumentException if the provided {@code window} or {@code retryInterval} is negative or if
+     *                                  the provided {@code maxBatchSize} is lower than {@code 1}
+     */
+    public MessageBatcher(MoodleWebServiceClient client, long window, int maxBatchSize, OutboundJournal journal,
+                          long retryInterval) {
+        checkNotNull(client, "Cannot construct a %s with the provided client %s", MessageBatcher.class.getSimpleName(),
+                client);
+        checkArgument(window >= 0, "Cannot construct a %s with the provided window %s: expected a positive or null "
+                + "value", MessageBatcher.class.getSimpleName(), window);
+        checkArgument(maxBatchSize > 0, "Cannot construct a %s with the provided batch size %s: expected a strictly "
+                + "positive value", MessageBatcher.class.getSimpleName(), maxBatchSize);
+        checkArgument(retryInterval >= 0, "Cannot construct a %s with the provided retry interval %s: expected a "
+                + "positive or null value", MessageBatcher.class.getSimpleName(), retryInterval);
+        this.client = client;
+        this.messageErrors = client.getMetrics().counter(MetricNames.MESSAGE_ERRORS);
+        this.unknownOutcomes = client.getMetrics().counter(MetricNames.OUTBOUND_UNKNOWN);
+        this.retried = client.getMetrics().counter(MetricNames.OUTBOUND_JOURNAL_RETRIED);
+        this.journal = journal;
+        this.window = window;
+        this.maxBatchSize = maxBatchSize;
+        this.pending = new ArrayList<>(maxBatchSize);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "moodle-outbound-batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (nonNull(journal) && retryInterval > 0) {
+            this.scheduler.scheduleWithFixedDelay(this::retryFailed, retryInterval, retryInterval,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Queues the provided {@code text} to be sent to the Moodle user {@code toUserId}.
+     * <p>
+     * The message is recorded in the journal (if any) before being queued.
+     *
+     * @param moodleEndpoint the endpoint of the moodle instance
+     * @param toUserId       the moodle user id to which the message is going to be sent
+     * @param text           the message being sent to the user
+     * @return a {@link CompletableFuture} completed with Moodle's result for the message once its batch is sent, or
+     * completed exceptionally if the batcher has been shut down
+     * @throws NullPointerException if the provided {@code moodleEndpoint} or {@code text} is {@code null}
+     */
+    public CompletableFuture<MessageSendResult> submit(String moodleEndpoint, int toUserId, String text) {
+        checkNotNull(moodleEndpoint, "Cannot send a message to the provided endpoint %s", moodleEndpoint);
+        checkNotNull(text, "Cannot send the provided message %s", text);
+        if (isStopped()) {
+            return stoppedFuture();
+        }
+        long journalId = nonNull(journal) ? journal.append(moodleEndpoint, toUserId, text) : -1;
+        return enqueue(moodleEndpoint, toUserId, text, journalId);
+    }
+
+    /**
+     * Sends again the messages that were not acknowledged in the journal when it was opened.
+     * <p>
+     * This method does nothing if the batcher doesn't have a journal.
+     *
+     * @return the number of messages sent again
+     */
+    public int replay() {
+        if (journal == null) {
+            return 0;
+        }
+        List<JournalEntry> entries = journal.getPending();
+        for (JournalEntry entry : entries) {
+            enqueue(entry.getMoodleEndpoint(), entry.getToUserId(), entry.getText(), entry.getId());
+        }
+        if (!entries.isEmpty()) {
+            Log.info("Sending again {0} message(s) recorded in the outbound journal", entries.size());
+        }
+        return entries.size();
+    }
+
+    /**
+     * Sends again the messages of the journal that are not acknowledged and that are neither queued nor being sent,
+     * i.e. the messages whose previous send failed.
+     * <p>
+     * This method is called every {@code retryInterval} milliseconds. It does nothing if the batcher doesn't have a
+     * journal.
+     *
+     * @return the number of messages sent again
+     */
+    public int retryFailed() {
+        if (journal == null || isStopped()) {
+            return 0;
+        }
+        int count = 0;
+        for (JournalEntry entry : journal.getUnacknowledged()) {
+            /*
+             * Mark the message as active before checking that it is still pending: a message acknowledged after
+             * the journal has been read is released only once its acknowledgement is recorded.
+             */
+            if (!activeJournalIds.add(entry.getId())) {
+                continue;
+            }
+            if (!journal.isPending(entry.getId())) {
+                activeJournalIds.remove(entry.getId());
+                continue;
+            }
+            enqueue(entry.getMoodleEndpoint(), entry.getToUserId(), entry.getText(), entry.getId());
+            count++;
+        }
+        if (count > 0) {
+            retried.add(count);
+            Log.info("Sending again {0} message(s) of the outbound journal that couldn't be sent", count);
+        }
+        return count;
+    }
+
+    /**
+     * Queues the provided message and acknowledges it in the journal once Moodle returned a result for it.
+     * <p>
+     * Messages that couldn't be sent (e.g. because Moodle is unavailable, or because the batcher has been shut down
+     * in the meantime) are not acknowledged, and are sent again by {@link #retryFailed()} or the next time the
+     * journal is opened. Messages whose send exceeded its deadline are acknowledged: Moodle may have delivered them.
+     *
+     * @param moodleEndpoint the endpoint of the moodle instance
+     * @param toUserId       the moodle user id to which the message is going to be sent
+     * @param text           the message being sent to the user
+     * @param journalId      the id of the message in the journal, or {@code -1} if it is not recorded
+     * @return a {@link CompletableFuture} completed with Moodle's result for the message once its batch is sent
+     */
+    private CompletableFuture<MessageSendResult> enqueue(String moodleEndpoint, int toUserId, String text,
+                                                         long journalId) {
+        PendingMessage message = new PendingMessage(moodleEndpoint, toUserId, text,
+                CLIENT_MSG_ID_PREFIX + clientMsgIdCounter.incrementAndGet());
+        if (journalId >= 0) {
+            activeJournalIds.add(journalId);
+            message.future.whenComplete((result, error) -> {
+                if (isNull(error)) {
+                    journal.acknowledge(journalId);
+                } else if (isDeadlineExceeded(error)) {
+                    unknownOutcomes.increment();
+                    Log.warn("The message {0} to the Moodle user {1} exceeded its deadline and may have been "
+                            + "delivered, it is not sent again", journalId, toUserId);
+                    journal.acknowledge(journalId);
+                }
+                activeJournalIds.remove(journalId);
+            });
+        }
+        List<PendingMessage> fullBatch = null;
+        synchronized (lock) {
+            if (stopped) {
+                activeJournalIds.remove(journalId);
+                return stoppedFuture();
+            }
+            pending.add(message);
+            if (pending.size() >= maxBatchSize) {
+                fullBatch = drainPending();
+            } else if (scheduledFlush == null) {
+                scheduledFlush = scheduler.schedule(this::flush, window, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (nonNull(fullBatch)) {
+            send(fullBatch);
+        }
+        return message.future;
+    }
+
+    /**
+     * Sends the pending messages without waiting for the batch window to expire.
+     */
+    public void flush() {
+        List<PendingMessage> batch;
+        synchronized (lock) {
+            batch = drainPending();
+        }
+        if (!batch.isEmpty()) {
+            send(batch);
+        }
+    }
+
+    /**
+     * Sends the pending messages and stops the underlying scheduler.
+     * <p>
+     * This method waits up to {@code timeout} milliseconds for the in-flight batches to complete. The messages
+     * submitted after this method has been called are not queued, and their futures are completed exceptionally.
+     *
+     * @param timeout the time (in milliseconds) to wait for the in-flight batches
+     */
+    public void shutdown(long timeout) {
+        synchronized (lock) {
+            stopped = true;
+        }
+        scheduler.shutdownNow();
+        flush();
+        try {
+            CompletableFuture.allOf(inFlight.toArray(new CompletableFuture<?>[0])).get(timeout,
+                    TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            Log.warn("Some Moodle messages were still being sent after {0}ms", timeout);
+        } catch (ExecutionException e) {
+            /*
+             * Errors are reported to the callers of submit.
+             */
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns whether the batcher has been shut down.
+     *
+     * @return {@code true} if the batcher has been shut down, {@code false} otherwise
+     */
+    public boolean isStopped() {
+        synchronized (lock) {
+            return stopped;
+        }
+    }
+
+    /**
+     * Creates the future returned for the messages submitted after the batcher has been shut down.
+     *
+     * @return a {@link CompletableFuture} completed with a {@link XatkitException}
+     */
+    private static CompletableFuture<MessageSendResult> stoppedFuture() {
+        CompletableFuture<MessageSendResult> future = new CompletableFuture<>();
+        future.completeExceptionally(new XatkitException("Cannot send the message to Moodle: the "
+                + MessageBatcher.class.getSimpleName() + " has been shut down"));
+        return future;
+    }
+
+    /**
+     * Returns whether the provided send {@code error} is caused by the deadline of the request.
+     * <p>
+     * The request may have reached Moodle before its deadline, meaning that its outcome is unknown.
+     *
+     * @param error the error of the send
+     * @return {@code true} if the send exceeded its deadline, {@code false} otherwise
+     */
+    private static boolean isDeadlineExceeded(Throwable error) {
+        for (Throwable cause = error; nonNull(cause); cause = cause.getCause()) {
+            if (cause instanceof MoodleUnavailableException) {
+                return ((MoodleUnavailableException) cause).getReason()
+                        == MoodleUnavailableException.Reason.DEADLINE_EXCEEDED;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Takes the pending messages and cancels the scheduled flush.
+     * <p>
+     * This method must be called while holding {@link #lock}.
+     *
+     * @return the pending messages
+     */
+    private List<PendingMessage> drainPending() {
+        List<PendingMessage> batch = pending;
+        pending = new ArrayList<>(maxBatchSize);
+        if (nonNull(scheduledFlush)) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        return batch;
+    }
+
+    /**
+     * Sends the provided {@code batch}, using one request per Moodle endpoint.
+     * <p>
+     * This method does not block: the results are dispatched to the messages' futures when Moodle responds.
+     *
+     * @param batch the messages to send
+     */
+    private void send(List<PendingMessage> batch) {
+        Map<String, List<PendingMessage>> byEndpoint = new LinkedHashMap<>();
+        for (PendingMessage message : batch) {
+            byEndpoint.computeIfAbsent(message.moodleEndpoint, k -> new ArrayList<>()).add(message);
+        }
+        for (Map.Entry<String, List<PendingMessage>> entry : byEndpoint.entrySet()) {
+            List<PendingMessage> messages = entry.getValue();
+            CompletableFuture<List<MessageSendResult>> request = sendMessages(entry.getKey(), messages);
+            inFlight.add(request);
+            request.whenComplete((results, error) -> {
+                inFlight.remove(request);
+                if (nonNull(error)) {
+                    Log.error("Cannot send {0} message(s) to Moodle: {1}", messages.size(), error.getMessage());
+                    XatkitException exception = new XatkitException("Cannot send the message to Moodle", error);
+                    messages.forEach(m -> m.future.completeExceptionally(exception));
+                } else {
+                    dispatchResults(messages, results);
+                }
+            });
+        }
+    }
+
+    /**
+     * Sends the provided {@code messages} to Moodle in a single request.
+     *
+     * @param moodleEndpoint the endpoint of the moodle instance
+     * @param messages       the messages to send
+     * @return a {@link CompletableFuture} completed with the per-message results returned by Moodle, in the order
+     * of the messages in the request
+     */
+    private CompletableFuture<List<MessageSendResult>> sendMessages(String moodleEndpoint,
+                                                                    List<PendingMessage> messages) {
+        Map<String, Object> fields = new HashMap<>(messages.size() * 4);
+        for (int i = 0; i < messages.size(); i++) {
+            PendingMessage message = messages.get(i);
+            fields.put("messages[" + i + "][touserid]", message.toUserId);
+            fields.put("messages[" + i + "][text]", message.text);
+            fields.put("messages[" + i + "][clientmsgid]", message.clientMsgId);
+        }
+        return client.callForList(moodleEndpoint, SEND_MESSAGES_FUNCTION, fields, MessageSendResult.class);
+    }
+
+    /**
+     * Completes the futures of the provided {@code messages} with their corresponding {@code results}.
+     * <p>
+     * Results are matched using their client-side id when Moodle returns it, and using their position in the
+     * request otherwise. The messages Moodle failed to send are counted in the {@link MetricNames#MESSAGE_ERRORS}
+     * counter.
+     *
+     * @param messages the sent messages
+     * @param results  the per-message results returned by Moodle
+     */
+    private void dispatchResults(List<PendingMessage> messages, List<MessageSendResult> results) {
+        Map<String, MessageSendResult> byClientMsgId = new HashMap<>(results.size() * 2);
+        for (MessageSendResult result : results) {
+            if (nonNull(result.getClientMsgId())) {
+                byClientMsgId.put(result.getClientMsgId(), result);
+            }
+        }
+        for (int i = 0; i < messages.size(); i++) {
+            PendingMessage message = messages.get(i);
+            MessageSendResult result = byClientMsgId.get(message.clientMsgId);
+            if (result == null && i < results.size()) {
+                result = results.get(i);
+            }
+            if (nonNull(result)) {
+                if (!result.isSent()) {
+                    messageErrors.increment();
+                }
+                message.future.complete(result);
+            } else {
+                message.future.completeExceptionally(new XatkitException("Moodle did not return a result for the "
+                        + "message " + message.clientMsgId));
+            }
+        }
+    }
+
+    /**
+     * A message waiting to be sent.
+     */
+    private static class PendingMessage {
+
+        private final String moodleEndpoint;
+
+        private final int toUserId;
+
+        private final String text;
+
+        private final String clientMsgId;
+
+        private final CompletableFuture<MessageSendResult> future = new CompletableFuture<>();
+
+        private PendingMessage(String moodleEndpoint, int toUserId, String text, String clientMsgId) {
+            this.moodleEndpoint = moodleEndpoint;
+            this.toUserId = toUserId;
+            this.text = text;
+            this.clientMsgId = clientMsgId;
+        }
+    }
+}
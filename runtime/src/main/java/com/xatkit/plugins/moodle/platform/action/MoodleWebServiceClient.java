@@ -0,0 +1,487 @@
+package com.xatkit.plugins.moodle.platform.action;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xatkit.core.XatkitException;
+import com.xatkit.plugins.moodle.platform.metrics.InMemoryMetricsRegistry;
+import com.xatkit.plugins.moodle.platform.metrics.LatencyHistogram;
+import com.xatkit.plugins.moodle.platform.metrics.MetricNames;
+import com.xatkit.plugins.moodle.platform.metrics.MetricsRegistry;
+import com.xatkit.plugins.moodle.platform.resilience.MoodleResilience;
+import com.xatkit.plugins.moodle.platform.utils.MoodleResponseReader;
+import com.xatkit.plugins.moodle.platform.utils.MoodleRestFormat;
+import com.xatkit.plugins.moodle.platform.utils.MoodleUtils;
+import com.xatkit.plugins.moodle.platform.utils.MoodleWebServiceException;
+import com.xatkit.plugins.moodle.platform.utils.SingleFlight;
+import org.apache.commons.configuration2.Configuration;
+import org.apache.http.HttpResponse;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.message.BasicNameValuePair;
+
+import fr.inria.atlanmod.commons.log.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static fr.inria.atlanmod.commons.Preconditions.checkNotNull;
+
+/**
+ * A non-blocking client calling the functions of Moodle's REST web services.
+ * <p>
+ * This client is shared by the Moodle actions and the {@link MessageBatcher}. It relies on a pool of keep-alive
+ * connections served by a small set of I/O threads, meaning that no thread is blocked while a request is in flight.
+ * The size of the pool, the per-host connection limit, and the timeouts can be configured with the
+ * {@code xatkit.moodle.http.*} keys defined in {@link MoodleUtils}.
+ * <p>
+ * Parameters are sent as a form-encoded body, which supports the indexed array parameters used by Moodle functions
+ * (e.g. {@code messages[0][text]}) without hitting URL length limitations. The client requests the responses in the
+ * configured {@link MoodleRestFormat}, and deserializes them using a {@link MoodleResponseReader} (see
+ * {@link #callForList(String, String, Map, Class)}).
+ * <p>
+ * Concurrent calls of the same read-only function with the same parameters can be merged into a single request
+ * with {@link #readList(String, String, Map, Class)}, which caps the load on Moodle when many sessions request the
+ * same data at the same time (e.g. when a course starts).
+ * <p>
+ * All the calls are protected by a {@link MoodleResilience}: each function has its own bulkhead and circuit
+ * breaker, each call has a deadline, and the read-only calls are retried with a jittered backoff.
+ */
+public class MoodleWebServiceClient {
+
+    /**
+     * The Moodle web service function used to send several function calls in a single request.
+     *
+     * @see #callBatch(String, String, List, Class)
+     */
+    public static final String BATCH_FUNCTION = "tool_mobile_call_external_functions";
+
+    /**
+     * The {@link ObjectMapper} used to encode the arguments of the batched calls.
+     */
+    private static final ObjectMapper ARGUMENTS_WRITER = new ObjectMapper();
+
+    /**
+     * The format of the responses requested to Moodle.
+     */
+    private final MoodleRestFormat format;
+
+    /**
+     * The reader used to deserialize the responses.
+     */
+    private final MoodleResponseReader responseReader;
+
+    /**
+     * The query string fragment appended to the endpoint to select the response format.
+     */
+    private final String formatParameter;
+
+    /**
+     * The underlying HTTP client.
+     */
+    private final CloseableHttpAsyncClient httpClient;
+
+    /**
+     * The registry recording the latency and errors of the calls.
+     */
+    private final MetricsRegistry metrics;
+
+    /**
+     * The latency histograms of the called functions, indexed by function name.
+     */
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+
+    /**
+     * The read-only calls in flight, indexed by endpoint, function, parameters, and result type, or {@code null}
+     * if the coalescing of the calls is disabled.
+     */
+    private final SingleFlight<String, List<?>> readsInFlight;
+
+    /**
+     * The bulkheads, circuit breakers, deadlines, and retries protecting the calls.
+     */
+    private final MoodleResilience resilience;
+
+    /**
+     * Constructs a new {@link MoodleWebServiceClient} from the provided {@code configuration}.
+     * <p>
+     * This constructor starts the underlying I/O threads, {@link #close()} must be called to release them.
+     *
+     * @param configuration the platform's {@link Configuration}
+     * @throws NullPointerException     if the provided {@code configuration} is {@code null}
+     * @throws IllegalArgumentException if the configured {@link MoodleRestFormat} is not supported
+     */
+    public MoodleWebServiceClient(Configuration configuration) {
+        this(configuration, new InMemoryMetricsRegistry());
+    }
+
+    /**
+     * Constructs a new {@link MoodleWebServiceClient} from the provided {@code configuration}, recording its
+     * metrics in the given {@code metrics} registry.
+     * <p>
+     * This constructor starts the underlying I/O threads, {@link #close()} must be called to release them.
+     *
+     * @param configuration the platform's {@link Configuration}
+     * @param metrics       the {@link MetricsRegistry} recording the latency and errors of the calls
+     * @throws NullPointerException     if the provided {@code configuration} or {@code metrics} is {@code null}
+     * @throws IllegalArgumentException if the configured {@link MoodleRestFormat} is not supported
+     */
+    public MoodleWebServiceClient(Configuration configuration, MetricsRegistry metrics) {
+        checkNotNull(configuration, "Cannot construct a %s with the provided configuration %s",
+                MoodleWebServiceClient.class.getSimpleName(), configuration);
+        checkNotNull(metrics, "Cannot construct a %s with the provided metrics registry %s",
+                MoodleWebServiceClient.class.getSimpleName(), metrics);
+        this.metrics = metrics;
+        this.format = MoodleRestFormat.fromLabel(configuration.getString(MoodleUtils.MOODLE_REST_FORMAT_KEY,
+                MoodleUtils.DEFAULT_MOODLE_REST_FORMAT));
+        this.responseReader = new MoodleResponseReader(format);
+        this.formatParameter = "&moodlewsrestformat=" + format.label;
+        int connectTimeout = configuration.getInt(MoodleUtils.MOODLE_HTTP_CONNECT_TIMEOUT_KEY,
+                MoodleUtils.DEFAULT_MOODLE_HTTP_CONNECT_TIMEOUT);
+        int socketTimeout = configuration.getInt(MoodleUtils.MOODLE_HTTP_SOCKET_TIMEOUT_KEY,
+                MoodleUtils.DEFAULT_MOODLE_HTTP_SOCKET_TIMEOUT);
+        long keepAlive = configuration.getLong(MoodleUtils.MOODLE_HTTP_KEEP_ALIVE_KEY,
+                MoodleUtils.DEFAULT_MOODLE_HTTP_KEEP_ALIVE);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.httpClient = HttpAsyncClients.custom()
+                .setMaxConnTotal(configuration.getInt(MoodleUtils.MOODLE_HTTP_MAX_CONNECTIONS_KEY,
+                        MoodleUtils.DEFAULT_MOODLE_HTTP_MAX_CONNECTIONS))
+                .setMaxConnPerRoute(configuration.getInt(MoodleUtils.MOODLE_HTTP_MAX_CONNECTIONS_PER_HOST_KEY,
+                        MoodleUtils.DEFAULT_MOODLE_HTTP_MAX_CONNECTIONS_PER_HOST))
+                .setKeepAliveStrategy((response, context) -> keepAlive)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(connectTimeout)
+                        .setConnectionRequestTimeout(connectTimeout)
+                        .setSocketTimeout(socketTimeout)
+                        .build())
+                .setDefaultIOReactorConfig(IOReactorConfig.custom()
+                        .setIoThreadCount(configuration.getInt(MoodleUtils.MOODLE_HTTP_IO_THREADS_KEY,
+                                MoodleUtils.DEFAULT_MOODLE_HTTP_IO_THREADS))
+                        .setConnectTimeout(connectTimeout)
+                        .setSoKeepAlive(true)
+                        .setTcpNoDelay(true)
+                        .build())
+                .setThreadFactory(r -> {
+                    Thread thread = new Thread(r, "moodle-http-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                })
+                .build();
+        this.httpClient.start();
+        this.resilience = new MoodleResilience(configuration, metrics);
+        if (configuration.getBoolean(MoodleUtils.MOODLE_HTTP_COALESCE_READS_KEY,
+                MoodleUtils.DEFAULT_MOODLE_HTTP_COALESCE_READS)) {
+            this.readsInFlight = new SingleFlight<>();
+            metrics.gauge(MetricNames.REST_COALESCED, readsInFlight::getJoinedCount);
+        } else {
+            this.readsInFlight = null;
+        }
+    }
+
+    /**
+     * Returns the format of the responses requested to Moodle.
+     *
+     * @return the format of the responses requested to Moodle
+     */
+    public MoodleRestFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Returns the registry recording the latency and errors of the calls.
+     *
+     * @return the registry recording the latency and errors of the calls
+     */
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the bulkheads, circuit breakers, deadlines, and retries protecting the calls.
+     *
+     * @return the {@link MoodleResilience} protecting the calls
+     */
+    public MoodleResilience getResilience() {
+        return resilience;
+    }
+
+    /**
+     * Calls the provided Moodle {@code wsfunction} and deserializes its response as a list of {@code type}
+     * instances.
+     *
+     * @param moodleEndpoint the endpoint of the moodle instance (including its {@code wstoken})
+     * @param wsfunction     the name of the Moodle web service function to call
+     * @param parameters     the parameters of the function
+     * @param type           the type of the elements of the returned list
+     * @param <T>            the type of the elements of the returned list
+     * @return a {@link CompletableFuture} completed with an unmodifiable list containing the deserialized elements,
+     * or completed exceptionally with a {@link MoodleWebServiceException} if Moodle returned an error
+     */
+    public <T> CompletableFuture<List<T>> callForList(String moodleEndpoint, String wsfunction,
+                                                      Map<String, Object> parameters, Class<T> type) {
+        return call(moodleEndpoint, wsfunction, parameters, body -> responseReader.readList(body, type));
+    }
+
+    /**
+     * Calls the provided read-only Moodle {@code wsfunction} and deserializes its response as a list of {@code type}
+     * instances, merging concurrent identical calls.
+     * <p>
+     * If a call of the same function with the same {@code parameters} and {@code type} is already in flight, this
+     * method waits for its response instead of sending a new request. This method must only be used for functions
+     * that don't modify Moodle's state, use {@link #callForList(String, String, Map, Class)} for the other ones.
+     *
+     * @param moodleEndpoint the endpoint of the moodle instance (including its {@code wstoken})
+     * @param wsfunction     the name of the Moodle web service function to call
+     * @param parameters     the parameters of the function
+     * @param type           the type of the elements of the returned list
+     * @param <T>            the type of the elements of the returned list
+     * @return a {@link CompletableFuture} completed with an unmodifiable list containing the deserialized elements,
+     * or completed exceptionally with a {@link MoodleWebServiceException} if Moodle returned an error
+     * @see MoodleUtils#MOODLE_HTTP_COALESCE_READS_KEY
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<List<T>> readList(String moodleEndpoint, String wsfunction,
+                                                  Map<String, Object> parameters, Class<T> type) {
+        if (readsInFlight == null) {
+            return call(moodleEndpoint, wsfunction, parameters, body -> responseReader.readList(body, type), true);
+        }
+        String key = moodleEndpoint + '\n' + wsfunction + '\n' + new TreeMap<>(parameters) + '\n' + type.getName();
+        CompletableFuture<? extends List<?>> result = readsInFlight.execute(key,
+                () -> (CompletableFuture<List<?>>) (CompletableFuture<?>) call(moodleEndpoint, wsfunction,
+                        parameters, body -> responseReader.readList(body, type), true));
+        return (CompletableFuture<List<T>>) result;
+    }
+
+    /**
+     * Calls the provided read-only Moodle {@code wsfunction} once for each element of {@code argumentsList} in a
+     * single request, and deserializes the responses as lists of {@code type} instances.
+     * <p>
+     * The calls are sent with Moodle's {@link #BATCH_FUNCTION} function (provided by the Moodle mobile
+     * web service), which must be enabled for the client's token. Batches can only be sent in the
+     * {@link MoodleRestFormat#JSON} format.
+     *
+     * @param moodleEndpoint the endpoint of the moodle instance (including its {@code wstoken})
+     * @param wsfunction     the name of the Moodle web service function to call
+     * @param argumentsList  the arguments of each call
+     * @param type           the type of the elements of the returned lists
+     * @param <T>            the type of the elements of the returned lists
+     * @return a {@link CompletableFuture} completed with the lists returned by each call (or {@code null} for the
+     * calls that failed) in the order of {@code argumentsList}, or completed exceptionally with a
+     * {@link MoodleWebServiceException} if Moodle rejected the batch
+     * @see MoodleResponseReader#readBatch(InputStream, Class)
+     */
+    public <T> CompletableFuture<List<List<T>>> callBatch(String moodleEndpoint, String wsfunction,
+                                                         List<Map<String, Object>> argumentsList, Class<T> type) {
+        Map<String, Object> parameters = new HashMap<>(argumentsList.size() * 3);
+        try {
+            for (int i = 0; i < argumentsList.size(); i++) {
+                parameters.put("requests[" + i + "][function]", wsfunction);
+                parameters.put("requests[" + i + "][arguments]", ARGUMENTS_WRITER.writeValueAsString(
+                        argumentsList.get(i)));
+            }
+        } catch (JsonProcessingException e) {
+            CompletableFuture<List<List<T>>> result = new CompletableFuture<>();
+            result.completeExceptionally(new XatkitException("Cannot encode the arguments of the Moodle function "
+                    + wsfunction, e));
+            return result;
+        }
+        return call(moodleEndpoint, BATCH_FUNCTION, parameters, body -> responseReader.readBatch(body, type), true);
+    }
+
+    /**
+     * Calls the provided Moodle {@code wsfunction} and handles its response with the given {@code handler}.
+     * <p>
+     * The {@code handler} is invoked on one of the client's I/O threads once the response body has been received,
+     * it must not perform blocking operations. The latency of the call is recorded in the
+     * {@link MetricNames#REST_LATENCY} histogram of the function, and the errors returned by Moodle in the
+     * {@link MetricNames#REST_ERRORS} counters.
+     * <p>
+     * The call is protected by the client's {@link MoodleResilience} (bulkhead, circuit breaker, and deadline), and
+     * is not retried since the function may not be idempotent.
+     *
+     * @param moodleEndpoint the endpoint of the moodle instance (including its {@code wstoken})
+     * @param wsfunction     the name of the Moodle web service function to call
+     * @param parameters     the parameters of the function
+     * @param handler        the {@link ResponseHandler} used to compute the result from the response body
+     * @param <T>            the type of the result
+     * @return a {@link CompletableFuture} completed with the result computed by the {@code handler}, or completed
+     * exceptionally with a {@link XatkitException} if an error occurred when calling the function
+     */
+    public <T> CompletableFuture<T> call(String moodleEndpoint, String wsfunction, Map<String, Object> parameters,
+                                         ResponseHandler<T> handler) {
+        return call(moodleEndpoint, wsfunction, parameters, handler, false);
+    }
+
+    /**
+     * Calls the provided Moodle {@code wsfunction} through the client's {@link MoodleResilience} and handles its
+     * response with the given {@code handler}.
+     *
+     * @param moodleEndpoint the endpoint of the moodle instance (including its {@code wstoken})
+     * @param wsfunction     the name of the Moodle web service function to call
+     * @param parameters     the parameters of the function
+     * @param handler        the {@link ResponseHandler} used to compute the result from the response body
+     * @param idempotent     whether the call can be retried
+     * @param <T>            the type of the result
+     * @return a {@link CompletableFuture} completed with the result computed by the {@code handler}, or completed
+     * exceptionally with a {@link XatkitException} if an error occurred when calling the function
+     */
+    private <T> CompletableFuture<T> call(String moodleEndpoint, String wsfunction, Map<String, Object> parameters,
+                                          ResponseHandler<T> handler, boolean idempotent) {
+        return resilience.execute(wsfunction, idempotent, () -> send(moodleEndpoint, wsfunction, parameters,
+                handler));
+    }
+
+    /**
+     * Sends a single request calling the provided Moodle {@code wsfunction}, and handles its response with the
+     * given {@code handler}.
+     * <p>
+     * The request is aborted if the returned future is completed exceptionally before Moodle responds (e.g. when
+     * the deadline of the call is exceeded).
+     *
+     * @param moodleEndpoint the endpoint of the moodle instance (including its {@code wstoken})
+     * @param wsfunction     the name of the Moodle web service function to call
+     * @param parameters     the parameters of the function
+     * @param handler        the {@link ResponseHandler} used to compute the result from the response body
+     * @param <T>            the type of the result
+     * @return a {@link CompletableFuture} completed with the result computed by the {@code handler}, or completed
+     * exceptionally with a {@link XatkitException} if an error occurred when calling the function
+     */
+    private <T> CompletableFuture<T> send(String moodleEndpoint, String wsfunction, Map<String, Object> parameters,
+                                          ResponseHandler<T> handler) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        HttpPost request = createRequest(moodleEndpoint, wsfunction, parameters);
+        LatencyHistogram latency = latencies.computeIfAbsent(wsfunction,
+                f -> metrics.histogram(MetricsRegistry.name(MetricNames.REST_LATENCY, "wsfunction", f)));
+        long start = System.nanoTime();
+        Future<HttpResponse> response = httpClient.execute(request, new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                latency.recordSince(start);
+                int status = response.getStatusLine().getStatusCode();
+                if (status < 200 || status >= 300) {
+                    result.completeExceptionally(new XatkitException("Cannot call the Moodle function " + wsfunction
+                            + ": Moodle returned the HTTP status " + status));
+                    return;
+                }
+                try (InputStream body = response.getEntity().getContent()) {
+                    result.complete(handler.handle(body));
+                } catch (MoodleWebServiceException e) {
+                    metrics.counter(MetricsRegistry.name(MetricNames.REST_ERRORS, "wsfunction", wsfunction,
+                            "errorcode", String.valueOf(e.getErrorCode()))).increment();
+                    result.completeExceptionally(e);
+                } catch (XatkitException e) {
+                    result.completeExceptionally(e);
+                } catch (Exception e) {
+                    result.completeExceptionally(new XatkitException("Cannot read the response of the Moodle "
+                            + "function " + wsfunction, e));
+                }
+            }
+
+            @Override
+            public void failed(Exception e) {
+                latency.recordSince(start);
+                result.completeExceptionally(new XatkitException("Cannot call the Moodle function " + wsfunction, e));
+            }
+
+            @Override
+            public void cancelled() {
+                result.cancel(false);
+            }
+        });
+        result.whenComplete((value, error) -> {
+            if (error != null) {
+                response.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Creates the request calling the provided Moodle {@code wsfunction} with the given {@code parameters}.
+     *
+     * @param moodleEndpoint the endpoint of the moodle instance (including its {@code wstoken})
+     * @param wsfunction     the name of the Moodle web service function to call
+     * @param parameters     the parameters of the function
+     * @return the created {@link HttpPost} request
+     */
+    public HttpPost createRequest(String moodleEndpoint, String wsfunction, Map<String, Object> parameters) {
+        HttpPost request = new HttpPost(moodleEndpoint + "&wsfunction=" + wsfunction + formatParameter);
+        List<NameValuePair> form = new ArrayList<>(parameters.size());
+        for (Map.Entry<String, Object> parameter : parameters.entrySet()) {
+            form.add(new BasicNameValuePair(parameter.getKey(), String.valueOf(parameter.getValue())));
+        }
+        request.setEntity(new UrlEncodedFormEntity(form, StandardCharsets.UTF_8));
+        return request;
+    }
+
+    /**
+     * Waits for the provided {@code future} and returns its result.
+     * <p>
+     * This method is used by the actions, which compute their result synchronously. The {@link XatkitException}s
+     * completing the {@code future} (including {@link MoodleWebServiceException}s) are rethrown as is.
+     *
+     * @param future the {@link CompletableFuture} to wait for
+     * @param <T>    the type of the result
+     * @return the result of the {@code future}
+     * @throws XatkitException if the {@code future} completed exceptionally or if the thread has been interrupted
+     */
+    public static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof XatkitException) {
+                throw (XatkitException) e.getCause();
+            }
+            throw new XatkitException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new XatkitException("Interrupted while waiting for Moodle", e);
+        }
+    }
+
+    /**
+     * Closes the connection pool and stops the underlying I/O and resilience threads.
+     */
+    public void close() {
+        resilience.shutdown();
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            Log.error("Cannot close the Moodle HTTP client: {0}", e.getMessage());
+        }
+    }
+
+    /**
+     * Computes a result from the body of a Moodle response.
+     *
+     * @param <T> the type of the result
+     */
+    @FunctionalInterface
+    public interface ResponseHandler<T> {
+
+        /**
+         * Computes a result from the provided response {@code body}.
+         *
+         * @param body the {@link InputStream} containing the response body
+         * @return the computed result
+         * @throws IOException if an error occurred when reading the body
+         */
+        T handle(InputStream body) throws IOException;
+    }
+}
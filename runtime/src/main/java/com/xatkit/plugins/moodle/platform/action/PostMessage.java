@@ -1,22 +1,38 @@
 package com.xatkit.plugins.moodle.platform.action;
 
-import com.mashape.unirest.http.Headers;
-import com.xatkit.core.platform.action.RestGetAction;
+import com.xatkit.core.XatkitException;
+import com.xatkit.core.platform.action.RuntimeArtifactAction;
 import com.xatkit.core.session.XatkitSession;
 import com.xatkit.plugins.moodle.platform.MoodlePlatform;
+import com.xatkit.plugins.moodle.platform.utils.MessageSendResult;
 
-import java.util.Collections;
-import java.util.HashMap;
-
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import static fr.inria.atlanmod.commons.Preconditions.checkArgument;
+import static java.util.Objects.nonNull;
 
 /**
- * A {@link RestGetAction} that posts a {@code message} to a given moodle {@code channel} (i.e. user).
+ * A {@link RuntimeArtifactAction} that posts a {@code message} to a given moodle {@code channel} (i.e. user).
+ * <p>
+ * Messages are not sent right away: they are queued in the {@link MoodlePlatform}'s {@link MessageBatcher} that
+ * sends them to Moodle in batches.
+ *
+ * @see MessageBatcher
  */
-public class PostMessage extends RestGetAction<MoodlePlatform> {
+public class PostMessage extends RuntimeArtifactAction<MoodlePlatform> {
+
+    /**
+     * The endpoint of the moodle instance.
+     */
+    protected String moodleEndpoint;
+
+    /**
+     * The moodle user id to which the message is going to be sent.
+     */
+    protected Integer toUserId;
+
+    /**
+     * The message being sent to the user.
+     */
+    protected String message;
 
     /**
      * Constructs a new {@link PostMessage} with the provided {@code runtimePlatform}, {@code session}, {@code
@@ -25,51 +41,41 @@ public class PostMessage extends RestGetAction<MoodlePlatform> {
      * @param runtimePlatform the {@link MoodlePlatform} containing this action
      * @param session         the {@link XatkitSession} associated to this action
      * @param moodleEndpoint  the endpoint of the moodle instance
-     * @param userId          the moodle user id to which the message is going to be sent
+     * @param toUserId        the moodle user id to which the message is going to be sent
      * @param message         the message being sent to the user
      * @throws NullPointerException     if the provided {@code runtimePlatform} or {@code session} is {@code null}
-     * @throws IllegalArgumentException if the provided {@code message} or {@code channel} is {@code null}
+     * @throws IllegalArgumentException if the provided {@code moodleEndpoint}, {@code toUserId}, or {@code message}
+     *                                  is {@code null}
      */
     public PostMessage(MoodlePlatform runtimePlatform, XatkitSession session, String moodleEndpoint, Integer toUserId,
             String message) {
-        super(runtimePlatform, session, Collections.emptyMap(),
-                moodleEndpoint + "&wsfunction=core_message_send_instant_messages", new HashMap<String, Object>() {
-                    {
-                        put("messages[0][touserid]", Integer.valueOf(toUserId));
-                        put("messages[0][text]", message);
-                    }
-                });
+        super(runtimePlatform, session);
+        checkArgument(nonNull(moodleEndpoint), "Cannot construct a %s action with the provided endpoint %s",
+                this.getClass().getSimpleName(), moodleEndpoint);
+        checkArgument(nonNull(toUserId), "Cannot construct a %s action with the provided user id %s",
+                this.getClass().getSimpleName(), toUserId);
+        checkArgument(nonNull(message), "Cannot construct a %s action with the provided message %s",
+                this.getClass().getSimpleName(), message);
+        this.moodleEndpoint = moodleEndpoint;
+        this.toUserId = toUserId;
+        this.message = message;
     }
 
     /**
-     * Handles the REST API response and computes the action's results
-     * <p>
+     * Queues the message in the {@link MoodlePlatform}'s {@link MessageBatcher} and waits for Moodle's result.
      *
-     * @param headers the {@link Headers} returned by the REST API
-     * @param status  the status code returned by the REST API
-     * @param body    the {@link InputStream} containing the response body
-     * @return the action's result
+     * @return the {@link MessageSendResult} returned by Moodle for the posted message
+     * @throws XatkitException if an error occurred when sending the message
      */
-    protected Object handleResponse(Headers headers, int status, InputStream body) {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(body));
-        StringBuilder jsonSb = new StringBuilder();
-        String line = null;
+    @Override
+    protected Object compute() {
+        ActionTracker actionTracker = this.runtimePlatform.getActionTracker();
+        actionTracker.actionStarted();
         try {
-            while ((line = reader.readLine()) != null) {
-                jsonSb.append(line);
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
+            return MoodleWebServiceClient.await(this.runtimePlatform.getMessageBatcher().submit(moodleEndpoint,
+                    toUserId, message));
         } finally {
-            // Clean up
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
+            actionTracker.actionCompleted();
         }
-        return null;
     }
 }
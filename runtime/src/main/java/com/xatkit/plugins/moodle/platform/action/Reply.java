@@ -1,16 +1,19 @@
 package com.xatkit.plugins.moodle.platform.action;
 
+import com.xatkit.core.XatkitException;
 import com.xatkit.core.platform.action.RuntimeMessageAction;
-import com.xatkit.core.session.RuntimeContexts;
 import com.xatkit.core.session.XatkitSession;
 import com.xatkit.plugins.moodle.platform.MoodlePlatform;
-import com.xatkit.plugins.moodle.platform.utils.MoodleUtils;
+import com.xatkit.plugins.moodle.platform.session.MoodleSessionContext;
+import com.xatkit.plugins.moodle.platform.utils.MessageSendResult;
+
+import static fr.inria.atlanmod.commons.Preconditions.checkNotNull;
 
 /**
  * A {@link RuntimeMessageAction} that replies to a message using the input xatkit-moodle channel.
  * <p>
- * This action relies on the provided {@link XatkitSession} to retrieve the xatkit-moodle {@code channel} associated to
- * the user input.
+ * This action relies on the {@link MoodleSessionContext} stored in the provided {@link XatkitSession} to retrieve the
+ * Moodle user who sent the input.
  *
  * @see PostMessage
  * 
@@ -18,20 +21,25 @@ import com.xatkit.plugins.moodle.platform.utils.MoodleUtils;
 public class Reply extends PostMessage {
 
     /**
-     * Returns the xatkit-moodle channel associated to the user input.
+     * Returns the id of the Moodle user who sent the last message of the provided {@code session}.
      * <p>
-     * This method searches in the provided {@link RuntimeContexts} for the value stored with the key
-     * {@link MoodleUtils#MOODLE_CONTEXT_KEY}.{@link MoodleUtils#CHAT_CHANNEL_CONTEXT_KEY}. Note that if the provided
-     * {@link RuntimeContexts} does not contain the requested value a {@link NullPointerException} is thrown.
+     * This method retrieves the user id from the {@link MoodleSessionContext} stored in the {@code session} by the
+     * {@link com.xatkit.plugins.moodle.platform.io.MoodleIntentProvider}.
      *
-     * @param context the {@link RuntimeContexts} to retrieve the xatkit-moodle channel from
-     * @return the xatkit-moodle channel associated to the user input
-     * @throws NullPointerException     if the provided {@code context} is {@code null}, or if it does not contain the
-     *                                  channel information
-     * @throws IllegalArgumentException if the retrieved channel is not a {@link String}
+     * @param session the {@link XatkitSession} to retrieve the user id from
+     * @return the id of the Moodle user who sent the last message
+     * @throws NullPointerException     if the provided {@code session} is {@code null}, or if it does not contain a
+     *                                  {@link MoodleSessionContext}
+     * @throws IllegalArgumentException if the retrieved user id is not a number
      */
-    private static String getChannel(RuntimeContexts context) {
-        return "";
+    private static Integer getUserId(XatkitSession session) {
+        MoodleSessionContext context = MoodleSessionContext.of(session);
+        checkNotNull(context, "Cannot retrieve the Moodle user of the session %s", session.getSessionId());
+        try {
+            return context.getNumericUserId();
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The Moodle user id " + context.getUserId() + " is not a number", e);
+        }
     }
 
     /**
@@ -42,7 +50,7 @@ public class Reply extends PostMessage {
      * @param message       the message to post
      * @throws NullPointerException     if the provided {@code reactPlatform} or {@code session} is {@code null}
      * @throws IllegalArgumentException if the provided {@code message} is {@code null} or empty
-     * @see #getChannel(RuntimeContexts)
+     * @see #getUserId(XatkitSession)
      * @see PostMessage
      */
     
@@ -50,8 +58,27 @@ public class Reply extends PostMessage {
      * TODO This action was not used once nor tested.
      */    
     public Reply(MoodlePlatform moodlePlatform, XatkitSession session, String moodleEndpoint, String message) {
-        super(moodlePlatform, session, moodleEndpoint, (Integer) session.getRuntimeContexts()
-                .getContextValue(MoodleUtils.MOODLE_CONTEXT_KEY, MoodleUtils.CHAT_USERNAME_CONTEXT_KEY), message);
+        super(moodlePlatform, session, moodleEndpoint, getUserId(session), message);
+    }
+
+    /**
+     * Replies to the user.
+     * <p>
+     * If {@link MoodlePlatform#isSocketReplyEnabled()} is {@code true} the message is emitted directly to the
+     * socket of the user, saving a round trip through Moodle. The message is sent through Moodle's REST API if the
+     * socket delivery is disabled or if the user doesn't have a live socket.
+     *
+     * @return the {@link MessageSendResult} returned by Moodle for the posted message, or {@code null} if the message
+     * has been delivered over the user's socket
+     * @throws XatkitException if an error occurred when sending the message through Moodle's REST API
+     */
+    @Override
+    protected Object compute() {
+        if (this.runtimePlatform.isSocketReplyEnabled()
+                && this.runtimePlatform.sendToSocket(String.valueOf(toUserId), message)) {
+            return null;
+        }
+        return super.compute();
     }
 
 }
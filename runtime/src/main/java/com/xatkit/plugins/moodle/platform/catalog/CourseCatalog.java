@@ -0,0 +1,575 @@
+package com.xatkit.plugins.moodle.platform.catalog;
+
+import com.xatkit.core.XatkitException;
+import com.xatkit.plugins.moodle.platform.utils.MoodleCourse;
+import com.xatkit.plugins.moodle.platform.utils.MoodleCourseList;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+import static fr.inria.atlanmod.commons.Preconditions.checkArgument;
+import static fr.inria.atlanmod.commons.Preconditions.checkNotNull;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+
+/**
+ * An in-memory index of the courses of a Moodle instance.
+ * <p>
+ * The courses are indexed by id, by short name, and by the words of their full and short names. Words are compared
+ * in lower case and without accents, and the words of a query match the words of the courses they are a prefix of
+ * (e.g. {@code "intro prog"} matches {@code "Introduction to Programming"}). Lookups never block and don't call
+ * Moodle: the catalog is updated with the courses retrieved by a {@link CourseCatalogSynchronizer}, and can be
+ * saved to and loaded from a snapshot file to start with a filled index.
+ * <p>
+ * The index is immutable and replaced as a whole when the catalog is updated. Only the added and modified courses
+ * are tokenized when building the new index, and the index is kept as is if no course changed.
+ */
+public class CourseCatalog {
+
+    /**
+     * The magic number starting the snapshot files.
+     */
+    private static final int SNAPSHOT_MAGIC = 0x4D434154;
+
+    /**
+     * The version of the snapshot format.
+     */
+    private static final int SNAPSHOT_VERSION = 1;
+
+    /**
+     * The size of the header of a snapshot (its magic number, version, and CRC).
+     */
+    private static final int SNAPSHOT_HEADER_SIZE = 12;
+
+    /**
+     * The order of the courses returned by the lookups.
+     */
+    private static final Comparator<Entry> ENTRY_ORDER = Comparator
+            .comparing((Entry entry) -> entry.sortKey)
+            .thenComparingLong(entry -> entry.course.getId());
+
+    /**
+     * The current index.
+     */
+    private volatile Index index = new Index(new Entry[0]);
+
+    /**
+     * Returns the number of courses in the catalog.
+     *
+     * @return the number of courses in the catalog
+     */
+    public int size() {
+        return index.entries.length;
+    }
+
+    /**
+     * Returns the course with the provided {@code id}.
+     *
+     * @param id the id of the course
+     * @return the course, or {@code null} if the catalog doesn't contain it
+     */
+    public MoodleCourse get(long id) {
+        Entry entry = index.byId.get(id);
+        return nonNull(entry) ? entry.course : null;
+    }
+
+    /**
+     * Returns the course with the provided {@code shortName}.
+     * <p>
+     * Short names are compared in lower case and without accents.
+     *
+     * @param shortName the short name of the course
+     * @return the course, or {@code null} if the catalog doesn't contain it
+     */
+    public MoodleCourse getByShortName(String shortName) {
+        if (isNull(shortName)) {
+            return null;
+        }
+        Entry entry = index.byShortName.get(normalize(shortName.trim()));
+        return nonNull(entry) ? entry.course : null;
+    }
+
+    /**
+     * Returns the courses matching the provided {@code query}.
+     * <p>
+     * If the {@code query} is the id or the short name of a course, this course is returned. Otherwise, the courses
+     * whose names contain a word starting with each word of the {@code query} are returned, ordered by full name.
+     *
+     * @param query the query (an id, a short name, or words of the course names)
+     * @param limit the maximum number of returned courses
+     * @return the matching courses, or an empty list if no course matches the {@code query}
+     * @throws IllegalArgumentException if the provided {@code limit} is lower than {@code 1}
+     */
+    public MoodleCourseList find(String query, int limit) {
+        checkArgument(limit > 0, "Cannot find the courses matching %s with the provided limit %s: expected a "
+                + "strictly positive value", query, limit);
+        if (isNull(query) || query.trim().isEmpty()) {
+            return new MoodleCourseList(Collections.emptyList());
+        }
+        Index current = index;
+        String trimmed = query.trim();
+        Entry exact = current.byShortName.get(normalize(trimmed));
+        if (isNull(exact) && isId(trimmed)) {
+            exact = current.byId.get(Long.parseLong(trimmed));
+        }
+        if (nonNull(exact)) {
+            return new MoodleCourseList(Collections.singletonList(exact.course));
+        }
+        String[] words = tokenize(trimmed);
+        if (words.length == 0) {
+            return new MoodleCourseList(Collections.emptyList());
+        }
+        BitSet matches = null;
+        for (String word : words) {
+            BitSet wordMatches = current.match(word);
+            if (isNull(matches)) {
+                matches = wordMatches;
+            } else {
+                matches.and(wordMatches);
+            }
+            if (matches.isEmpty()) {
+                return new MoodleCourseList(Collections.emptyList());
+            }
+        }
+        List<MoodleCourse> result = new ArrayList<>(Math.min(limit, matches.cardinality()));
+        for (int i = matches.nextSetBit(0); i >= 0 && result.size() < limit; i = matches.nextSetBit(i + 1)) {
+            result.add(current.entries[i].course);
+        }
+        return new MoodleCourseList(result);
+    }
+
+    /**
+     * Returns the provided {@code courses} whose names contain a word starting with each word of the given {@code
+     * term}.
+     * <p>
+     * The words of the courses contained in the catalog are read from the index, the names of the other courses are
+     * tokenized when filtering them. The order of the {@code courses} is preserved.
+     *
+     * @param courses the courses to filter
+     * @param term    the words to look for, or {@code null} to keep all the {@code courses}
+     * @return the matching courses
+     * @throws NullPointerException if the provided {@code courses} is {@code null}
+     */
+    public MoodleCourseList filter(Collection<MoodleCourse> courses, String term) {
+        checkNotNull(courses, "Cannot filter the provided courses %s", courses);
+        String[] words = isNull(term) ? new String[0] : tokenize(term);
+        if (words.length == 0) {
+            return courses instanceof MoodleCourseList ? (MoodleCourseList) courses : new MoodleCourseList(courses);
+        }
+        Index current = index;
+        List<MoodleCourse> result = new ArrayList<>();
+        for (MoodleCourse course : courses) {
+            Entry entry = current.byId.get(course.getId());
+            String[] tokens = nonNull(entry) && sameNames(entry.course, course) ? entry.tokens : tokensOf(course);
+            if (containsAll(tokens, words)) {
+                result.add(course);
+            }
+        }
+        return new MoodleCourseList(result);
+    }
+
+    /**
+     * Replaces the content of the catalog with the provided {@code courses}.
+     * <p>
+     * The courses that are not in the catalog or whose last modification date or names changed are tokenized, and
+     * the other ones are reused from the current index. The index is not rebuilt if no course has been added,
+     * modified, or removed. The site course (whose category is {@code 0}) is ignored.
+     *
+     * @param courses the courses of the Moodle instance
+     * @return the number of added, modified, and removed courses
+     * @throws NullPointerException if the provided {@code courses} is {@code null}
+     */
+    public synchronized int update(Collection<MoodleCourse> courses) {
+        checkNotNull(courses, "Cannot update the catalog with the provided courses %s", courses);
+        Index current = index;
+        Map<Long, Entry> entries = new HashMap<>(courses.size() * 2);
+        List<Entry> modified = new ArrayList<>();
+        for (MoodleCourse course : courses) {
+            if (course.getCategory() == 0) {
+                continue;
+            }
+            Entry previous = current.byId.get(course.getId());
+            if (nonNull(previous) && previous.course.getTimeModified() == course.getTimeModified()
+                    && sameNames(previous.course, course)) {
+                entries.put(course.getId(), previous);
+            } else {
+                Entry entry = new Entry(course, tokensOf(course));
+                entries.put(course.getId(), entry);
+                modified.add(entry);
+            }
+        }
+        /*
+         * The kept entries are already sorted, only the modified ones are sorted and merged with them.
+         */
+        List<Entry> kept = new ArrayList<>(entries.size());
+        int removed = 0;
+        for (Entry entry : current.entries) {
+            Entry updated = entries.get(entry.course.getId());
+            if (updated == entry) {
+                kept.add(entry);
+            } else if (isNull(updated)) {
+                removed++;
+            }
+        }
+        modified.removeIf(entry -> entries.get(entry.course.getId()) != entry);
+        int changes = modified.size() + removed;
+        if (changes > 0) {
+            modified.sort(ENTRY_ORDER);
+            Entry[] sorted = new Entry[kept.size() + modified.size()];
+            int i = 0;
+            int j = 0;
+            while (i + j < sorted.length) {
+                if (j == modified.size() || (i < kept.size() && ENTRY_ORDER.compare(kept.get(i), modified.get(j))
+                        <= 0)) {
+                    sorted[i + j] = kept.get(i++);
+                } else {
+                    sorted[i + j] = modified.get(j++);
+                }
+            }
+            index = new Index(sorted);
+        }
+        return changes;
+    }
+
+    /**
+     * Writes the courses of the catalog to the provided {@code file}.
+     * <p>
+     * The snapshot is written to a temporary file which then replaces the {@code file}, meaning that the previous
+     * snapshot is kept if an error occurs.
+     *
+     * @param file the snapshot file
+     * @throws NullPointerException if the provided {@code file} is {@code null}
+     * @throws XatkitException      if an error occurred when writing the snapshot
+     */
+    public void save(Path file) {
+        checkNotNull(file, "Cannot save the catalog to the provided file %s", file);
+        Entry[] entries = index.entries;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(SNAPSHOT_HEADER_SIZE + entries.length * 96);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(0);
+            out.writeInt(entries.length);
+            for (Entry entry : entries) {
+                MoodleCourse course = entry.course;
+                out.writeLong(course.getId());
+                out.writeUTF(Objects.toString(course.getShortName(), ""));
+                out.writeUTF(Objects.toString(course.getFullName(), ""));
+                out.writeLong(course.getCategory());
+                out.writeLong(course.getStartDate());
+                out.writeLong(course.getEndDate());
+                out.writeLong(course.getTimeModified());
+            }
+        } catch (IOException e) {
+            throw new XatkitException("Cannot encode the course catalog", e);
+        }
+        ByteBuffer snapshot = ByteBuffer.wrap(bytes.toByteArray());
+        snapshot.putInt(8, crcOf(snapshot.array()));
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                while (snapshot.hasRemaining()) {
+                    out.write(snapshot);
+                }
+                out.force(false);
+            }
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new XatkitException("Cannot write the course catalog snapshot " + file, e);
+        }
+    }
+
+    /**
+     * Replaces the content of the catalog with the courses of the provided snapshot {@code file}.
+     *
+     * @param file the snapshot file
+     * @return the number of loaded courses, or {@code -1} if the {@code file} doesn't exist
+     * @throws NullPointerException if the provided {@code file} is {@code null}
+     * @throws XatkitException      if the {@code file} cannot be read or is not a valid snapshot
+     */
+    public int load(Path file) {
+        checkNotNull(file, "Cannot load the catalog from the provided file %s", file);
+        byte[] snapshot;
+        try {
+            snapshot = Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+            return -1;
+        } catch (IOException e) {
+            throw new XatkitException("Cannot read the course catalog snapshot " + file, e);
+        }
+        if (snapshot.length < SNAPSHOT_HEADER_SIZE || ByteBuffer.wrap(snapshot).getInt(0) != SNAPSHOT_MAGIC) {
+            throw new XatkitException("Cannot read the course catalog snapshot " + file + ": not a snapshot file");
+        }
+        int version = ByteBuffer.wrap(snapshot).getInt(4);
+        if (version != SNAPSHOT_VERSION) {
+            throw new XatkitException("Cannot read the course catalog snapshot " + file + ": unsupported version "
+                    + version);
+        }
+        int expectedCrc = ByteBuffer.wrap(snapshot).getInt(8);
+        ByteBuffer.wrap(snapshot).putInt(8, 0);
+        if (crcOf(snapshot) != expectedCrc) {
+            throw new XatkitException("Cannot read the course catalog snapshot " + file + ": the file is corrupted");
+        }
+        List<MoodleCourse> courses;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(snapshot, SNAPSHOT_HEADER_SIZE,
+                snapshot.length - SNAPSHOT_HEADER_SIZE))) {
+            int count = in.readInt();
+            courses = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                courses.add(new MoodleCourse(in.readLong(), in.readUTF(), in.readUTF(), in.readLong(),
+                        in.readLong(), in.readLong(), in.readLong()));
+            }
+        } catch (IOException e) {
+            throw new XatkitException("Cannot read the course catalog snapshot " + file, e);
+        }
+        update(courses);
+        return courses.size();
+    }
+
+    /**
+     * Splits the provided {@code text} into lower case words without accents.
+     *
+     * @param text the text to split
+     * @return the distinct words of the {@code text}, sorted
+     */
+    static String[] tokenize(String text) {
+        if (isNull(text) || text.isEmpty()) {
+            return new String[0];
+        }
+        String normalized = normalize(text);
+        String[] words = new String[8];
+        int size = 0;
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            if (i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i))) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                if (size == words.length) {
+                    words = Arrays.copyOf(words, size * 2);
+                }
+                words[size++] = normalized.substring(start, i);
+                start = -1;
+            }
+        }
+        Arrays.sort(words, 0, size);
+        int distinct = 0;
+        for (int i = 0; i < size; i++) {
+            if (distinct == 0 || !words[i].equals(words[distinct - 1])) {
+                words[distinct++] = words[i];
+            }
+        }
+        return Arrays.copyOf(words, distinct);
+    }
+
+    /**
+     * Returns the provided {@code text} in lower case and without accents.
+     *
+     * @param text the text to normalize
+     * @return the normalized text
+     */
+    private static String normalize(String text) {
+        if (isNull(text)) {
+            return "";
+        }
+        String lowerCase = text.toLowerCase(Locale.ROOT);
+        for (int i = 0; i < lowerCase.length(); i++) {
+            if (lowerCase.charAt(i) >= 0x80) {
+                String decomposed = Normalizer.normalize(lowerCase, Normalizer.Form.NFD);
+                StringBuilder sb = new StringBuilder(decomposed.length());
+                for (int j = 0; j < decomposed.length(); j++) {
+                    if (Character.getType(decomposed.charAt(j)) != Character.NON_SPACING_MARK) {
+                        sb.append(decomposed.charAt(j));
+                    }
+                }
+                return sb.toString();
+            }
+        }
+        return lowerCase;
+    }
+
+    /**
+     * Returns the words of the full and short names of the provided {@code course}.
+     *
+     * @param course the course
+     * @return the distinct words of the names of the {@code course}, sorted
+     */
+    private static String[] tokensOf(MoodleCourse course) {
+        return tokenize(Objects.toString(course.getFullName(), "") + ' ' + Objects.toString(course.getShortName(),
+                ""));
+    }
+
+    /**
+     * Returns whether each of the provided {@code words} is a prefix of one of the given sorted {@code tokens}.
+     *
+     * @param tokens the sorted tokens
+     * @param words  the words to look for
+     * @return {@code true} if all the {@code words} are found, {@code false} otherwise
+     */
+    private static boolean containsAll(String[] tokens, String[] words) {
+        for (String word : words) {
+            int position = Arrays.binarySearch(tokens, word);
+            if (position < 0 && (-position - 1 == tokens.length || !tokens[-position - 1].startsWith(word))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean sameNames(MoodleCourse course, MoodleCourse other) {
+        return Objects.equals(course.getFullName(), other.getFullName())
+                && Objects.equals(course.getShortName(), other.getShortName());
+    }
+
+    private static boolean isId(String text) {
+        if (text.isEmpty() || text.length() > 18) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (!Character.isDigit(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int crcOf(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * An indexed course.
+     */
+    private static final class Entry {
+
+        private final MoodleCourse course;
+
+        /**
+         * The sorted words of the names of the course.
+         */
+        private final String[] tokens;
+
+        /**
+         * The normalized full name of the course.
+         */
+        private final String sortKey;
+
+        /**
+         * The normalized short name of the course.
+         */
+        private final String shortNameKey;
+
+        private Entry(MoodleCourse course, String[] tokens) {
+            this.course = course;
+            this.tokens = tokens;
+            this.sortKey = normalize(course.getFullName());
+            this.shortNameKey = isNull(course.getShortName()) ? "" : normalize(course.getShortName().trim());
+        }
+    }
+
+    /**
+     * An immutable index of courses.
+     */
+    private static final class Index {
+
+        /**
+         * The indexed courses, ordered by full name.
+         */
+        private final Entry[] entries;
+
+        private final Map<Long, Entry> byId;
+
+        /**
+         * The indexed courses by normalized short name.
+         */
+        private final Map<String, Entry> byShortName;
+
+        /**
+         * The sorted words of the names of the courses.
+         */
+        private final String[] words;
+
+        /**
+         * The positions in {@link #entries} of the courses containing each of the {@link #words}.
+         */
+        private final int[][] postings;
+
+        private Index(Entry[] entries) {
+            this.entries = entries;
+            this.byId = new HashMap<>(entries.length * 2);
+            this.byShortName = new HashMap<>(entries.length * 2);
+            Map<String, int[]> words = new HashMap<>();
+            for (int i = 0; i < entries.length; i++) {
+                Entry entry = entries[i];
+                byId.put(entry.course.getId(), entry);
+                if (!entry.shortNameKey.isEmpty()) {
+                    byShortName.putIfAbsent(entry.shortNameKey, entry);
+                }
+                for (String token : entry.tokens) {
+                    int[] positions = words.get(token);
+                    if (isNull(positions)) {
+                        positions = new int[]{0, 0, 0, 0};
+                        words.put(token, positions);
+                    } else if (positions[0] == positions.length - 1) {
+                        positions = Arrays.copyOf(positions, positions.length * 2);
+                        words.put(token, positions);
+                    }
+                    positions[++positions[0]] = i;
+                }
+            }
+            this.words = words.keySet().toArray(new String[0]);
+            Arrays.sort(this.words);
+            this.postings = new int[this.words.length][];
+            for (int i = 0; i < this.words.length; i++) {
+                int[] positions = words.get(this.words[i]);
+                postings[i] = Arrays.copyOfRange(positions, 1, positions[0] + 1);
+            }
+        }
+
+        /**
+         * Returns the positions of the courses containing a word starting with the provided {@code prefix}.
+         *
+         * @param prefix the prefix to look for
+         * @return the positions of the matching courses in {@link #entries}
+         */
+        private BitSet match(String prefix) {
+            BitSet result = new BitSet(entries.length);
+            int position = Arrays.binarySearch(words, prefix);
+            for (int i = position < 0 ? -position - 1 : position; i < words.length && words[i].startsWith(prefix);
+                 i++) {
+                for (int entry : postings[i]) {
+                    result.set(entry);
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.xatkit.plugins.moodle.platform.catalog;
+
+import com.xatkit.core.XatkitException;
+import com.xatkit.plugins.moodle.platform.action.MoodleWebServiceClient;
+import com.xatkit.plugins.moodle.platform.utils.MoodleCourse;
+
+import fr.inria.atlanmod.commons.log.Log;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static fr.inria.atlanmod.commons.Preconditions.checkArgument;
+import static fr.inria.atlanmod.commons.Preconditions.checkNotNull;
+import static java.util.Objects.nonNull;
+
+/**
+ * Keeps a {@link CourseCatalog} up to date with the courses of a Moodle instance.
+ * <p>
+ * The courses are retrieved with the {@link #GET_COURSES_FUNCTION} function when the synchronizer starts and then
+ * periodically, and the catalog only re-indexes the courses that have been added, modified, or removed since the
+ * previous synchronization. If a snapshot file is provided, the catalog is loaded from it when the synchronizer
+ * starts (meaning that lookups are answered before the first synchronization completes), and the snapshot is
+ * rewritten after each synchronization that changed the catalog.
+ */
+public class CourseCatalogSynchronizer {
+
+    /**
+     * The Moodle web service function used to retrieve the courses.
+     */
+    public static final String GET_COURSES_FUNCTION = "core_course_get_courses";
+
+    /**
+     * The Moodle endpoint (including its {@code wstoken}) used to retrieve the courses.
+     */
+    private final String moodleEndpoint;
+
+    /**
+     * The client used to call Moodle.
+     */
+    private final MoodleWebServiceClient client;
+
+    /**
+     * The catalog to synchronize.
+     */
+    private final CourseCatalog catalog;
+
+    /**
+     * The time (in milliseconds) between two synchronizations.
+     */
+    private final long interval;
+
+    /**
+     * The snapshot file of the catalog, or {@code null} if the catalog is not saved.
+     */
+    private final Path snapshotFile;
+
+    /**
+     * The scheduler running the synchronizations.
+     */
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * The number of completed synchronizations.
+     */
+    private final LongAdder syncCount = new LongAdder();
+
+    /**
+     * The number of synchronizations that failed.
+     */
+    private final LongAdder syncErrorCount = new LongAdder();
+
+    /**
+     * Constructs a new {@link CourseCatalogSynchronizer} updating the provided {@code catalog} with the courses
+     * retrieved from the given {@code moodleEndpoint} every {@code interval} milliseconds.
+     *
+     * @param moodleEndpoint the Moodle endpoint (including its {@code wstoken}) used to retrieve the courses
+     * @param client         the {@link MoodleWebServiceClient} used to call Moodle
+     * @param catalog        the {@link CourseCatalog} to synchronize
+     * @param interval       the time (in milliseconds) between two synchronizations
+     * @param snapshotFile   the snapshot file of the catalog, or {@code null} to not save the catalog
+     * @throws NullPointerException     if the provided {@code moodleEndpoint}, {@code client}, or {@code catalog} is
+     *                                  {@code null}
+     * @throws IllegalArgumentException if the provided {@code interval} is lower than {@code 1}
+     */
+    public CourseCatalogSynchronizer(String moodleEndpoint, MoodleWebServiceClient client, CourseCatalog catalog,
+                                     long interval, Path snapshotFile) {
+        checkNotNull(moodleEndpoint, "Cannot construct a %s with the provided endpoint %s",
+                CourseCatalogSynchronizer.class.getSimpleName(), moodleEndpoint);
+        checkNotNull(client, "Cannot construct a %s with the provided client %s",
+                CourseCatalogSynchronizer.class.getSimpleName(), client);
+        checkNotNull(catalog, "Cannot construct a %s with the provided catalog %s",
+                CourseCatalogSynchronizer.class.getSimpleName(), catalog);
+        checkArgument(interval > 0, "Cannot construct a %s with the provided interval %s: expected a strictly "
+                + "positive value", CourseCatalogSynchronizer.class.getSimpleName(), interval);
+        this.moodleEndpoint = moodleEndpoint;
+        this.client = client;
+        this.catalog = catalog;
+        this.interval = interval;
+        this.snapshotFile = snapshotFile;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "moodle-course-catalog");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Loads the catalog from its snapshot file and schedules the synchronizations.
+     * <p>
+     * The first synchronization starts immediately in the background. An invalid snapshot file is ignored, and a
+     * failed synchronization is logged without cancelling the following ones.
+     */
+    public void start() {
+        if (nonNull(snapshotFile)) {
+            long startTime = System.nanoTime();
+            try {
+                int loaded = catalog.load(snapshotFile);
+                if (loaded >= 0) {
+                    Log.info("Loaded {0} course(s) from the catalog snapshot in {1}ms", loaded,
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+                }
+            } catch (XatkitException e) {
+                Log.warn("{0}, the course catalog is empty until the first synchronization", e.getMessage());
+            } catch (RuntimeException e) {
+                Log.warn("Cannot load the catalog snapshot {0}, the course catalog is empty until the first "
+                        + "synchronization: {1}", snapshotFile, e.toString());
+            }
+        }
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                sync();
+            } catch (XatkitException e) {
+                Log.warn("Cannot synchronize the course catalog: {0}", e.getMessage());
+            } catch (RuntimeException e) {
+                /*
+                 * An exception escaping the task would cancel the following synchronizations.
+                 */
+                syncErrorCount.increment();
+                Log.error("Cannot synchronize the course catalog: {0}", e.toString());
+            }
+        }, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Retrieves the courses from Moodle, updates the catalog, and saves it if it changed.
+     * <p>
+     * This method blocks until Moodle responds.
+     *
+     * @return the number of added, modified, and removed courses
+     * @throws XatkitException if the courses cannot be retrieved
+     */
+    public int sync() {
+        List<MoodleCourse> courses;
+        try {
+            courses = MoodleWebServiceClient.await(client.readList(moodleEndpoint, GET_COURSES_FUNCTION,
+                    Collections.emptyMap(), MoodleCourse.class));
+        } catch (XatkitException e) {
+            syncErrorCount.increment();
+            throw e;
+        }
+        int changes = catalog.update(courses);
+        syncCount.increment();
+        if (changes > 0) {
+            Log.debug("Course catalog synchronized: {0} change(s), {1} course(s)", changes, catalog.size());
+            if (nonNull(snapshotFile)) {
+                try {
+                    catalog.save(snapshotFile);
+                } catch (XatkitException e) {
+                    Log.error("{0}: {1}", e.getMessage(), nonNull(e.getCause()) ? e.getCause().getMessage() : "");
+                }
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Stops the scheduled synchronizations.
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Returns the synchronized catalog.
+     *
+     * @return the synchronized catalog
+     */
+    public CourseCatalog getCatalog() {
+        return catalog;
+    }
+
+    /**
+     * Returns the number of completed synchronizations.
+     *
+     * @return the number of completed synchronizations
+     */
+    public long getSyncCount() {
+        return syncCount.sum();
+    }
+
+    /**
+     * Returns the number of synchronizations that failed.
+     *
+     * @return the number of synchronizations that failed
+     */
+    public long getSyncErrorCount() {
+        return syncErrorCount.sum();
+    }
+}
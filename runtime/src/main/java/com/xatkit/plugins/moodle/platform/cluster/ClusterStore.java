@@ -0,0 +1,99 @@
+package com.xatkit.plugins.moodle.platform.cluster;
+
+import com.xatkit.plugins.moodle.platform.utils.MessageObject;
+
+import java.util.function.Consumer;
+
+/**
+ * A store shared by the nodes of a Moodle platform cluster.
+ * <p>
+ * The store records the node each Moodle user is connected to (the user's route), and transports the messages that
+ * must be emitted to a user connected to another node. A node is alive while it is subscribed to the store (see
+ * {@link #subscribe(String, Consumer)}), and the routes pointing to a node that is not alive anymore (e.g. because
+ * it crashed) are expired. Implementations must be thread-safe.
+ *
+ * @see InMemoryClusterStore
+ * @see FileClusterStore
+ */
+public interface ClusterStore extends AutoCloseable {
+
+    /**
+     * Records that the provided {@code userId} is connected to the node {@code nodeId}.
+     *
+     * @param userId the id of the Moodle user
+     * @param nodeId the id of the node the user is connected to
+     */
+    void putRoute(String userId, String nodeId);
+
+    /**
+     * Returns the id of the node the provided {@code userId} is connected to.
+     * <p>
+     * A route pointing to a node that is not alive is expired: it is removed, and this method returns {@code null}.
+     *
+     * @param userId the id of the Moodle user
+     * @return the id of the node the user is connected to, or {@code null} if the user isn't connected to a live
+     * node
+     */
+    String getRoute(String userId);
+
+    /**
+     * Removes the route of the provided {@code userId} if it points to the node {@code nodeId}.
+     * <p>
+     * The route is not removed if it has been updated to point to another node.
+     *
+     * @param userId the id of the Moodle user
+     * @param nodeId the id of the node the user was connected to
+     */
+    void removeRoute(String userId, String nodeId);
+
+    /**
+     * Removes all the routes pointing to the node {@code nodeId}.
+     *
+     * @param nodeId the id of the node
+     */
+    void removeRoutes(String nodeId);
+
+    /**
+     * Sends the provided {@code message} to the node {@code nodeId}.
+     *
+     * @param nodeId  the id of the node to send the message to
+     * @param message the message to send, containing the id of the recipient user
+     * @return {@code true} if the message has been sent to the node, {@code false} if the node is not alive or if
+     * the message cannot be sent
+     */
+    boolean publish(String nodeId, MessageObject message);
+
+    /**
+     * Returns whether the node {@code nodeId} is alive.
+     *
+     * @param nodeId the id of the node
+     * @return {@code true} if the node is subscribed to the store, {@code false} otherwise
+     */
+    boolean isAlive(String nodeId);
+
+    /**
+     * Registers the {@code handler} receiving the messages sent to the node {@code nodeId}.
+     * <p>
+     * The node is alive until it is unsubscribed. The {@code handler} may be called from a thread owned by the
+     * store.
+     *
+     * @param nodeId  the id of the node receiving the messages
+     * @param handler the handler receiving the messages
+     */
+    void subscribe(String nodeId, Consumer<MessageObject> handler);
+
+    /**
+     * Unregisters the handler of the node {@code nodeId}.
+     * <p>
+     * The node is not alive anymore once this method returns.
+     *
+     * @param nodeId the id of the node to unregister the handler of
+     */
+    void unsubscribe(String nodeId);
+
+    /**
+     * Releases the resources used by the store.
+     */
+    @Override
+    void close();
+}
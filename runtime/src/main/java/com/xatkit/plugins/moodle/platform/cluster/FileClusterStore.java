@@ -0,0 +1,403 @@
+package com.xatkit.plugins.moodle.platform.cluster;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xatkit.core.XatkitException;
+import com.xatkit.plugins.moodle.platform.utils.MessageObject;
+
+import fr.inria.atlanmod.commons.log.Log;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static fr.inria.atlanmod.commons.Preconditions.checkArgument;
+import static fr.inria.atlanmod.commons.Preconditions.checkNotNull;
+
+/**
+ * A {@link ClusterStore} backed by a directory shared by the nodes of the cluster.
+ * <p>
+ * This store allows to run several nodes in different JVMs on the same host (or sharing a network file system).
+ * The route of each user is stored in a dedicated file of the {@code routes} directory, and the messages sent to a
+ * node are stored in the {@code inbox/<nodeId>} directory, which is polled by the node every {@code pollInterval}
+ * milliseconds. Files are written in a temporary location and atomically moved to their final location, meaning
+ * that readers never see partially written files.
+ * <p>
+ * Each subscribed node writes a heartbeat (the current time) in the {@code nodes/<nodeId>} file every quarter of
+ * the {@code nodeTimeout}. A node whose heartbeat is older than {@code nodeTimeout} milliseconds (e.g. because it
+ * crashed) is not alive: the messages are not published to its inbox, and the routes pointing to it are expired.
+ */
+public class FileClusterStore implements ClusterStore {
+
+    /**
+     * The mapper used to serialize the messages.
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    /**
+     * The directory containing the routes of the users.
+     */
+    private final Path routesDirectory;
+
+    /**
+     * The directory containing the inboxes of the nodes.
+     */
+    private final Path inboxDirectory;
+
+    /**
+     * The directory containing the heartbeats of the nodes.
+     */
+    private final Path nodesDirectory;
+
+    /**
+     * The directory containing the files being written.
+     */
+    private final Path tmpDirectory;
+
+    /**
+     * The time (in milliseconds) after which a node that didn't write its heartbeat is not alive.
+     */
+    private final long nodeTimeout;
+
+    /**
+     * The time (in milliseconds) between two polls of the inboxes.
+     */
+    private final long pollInterval;
+
+    /**
+     * The scheduler polling the inboxes of the subscribed nodes.
+     */
+    private final ScheduledExecutorService poller;
+
+    /**
+     * The poll tasks of the subscribed nodes, indexed by node id.
+     */
+    private final Map<String, ScheduledFuture<?>> subscriptions = new ConcurrentHashMap<>();
+
+    /**
+     * The heartbeat tasks of the subscribed nodes, indexed by node id.
+     */
+    private final Map<String, ScheduledFuture<?>> heartbeats = new ConcurrentHashMap<>();
+
+    /**
+     * The sequence number of the published messages, used to preserve their order within the same millisecond.
+     */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Constructs a new {@link FileClusterStore} storing its files in the provided {@code directory}.
+     *
+     * @param directory    the directory shared by the nodes of the cluster
+     * @param pollInterval the time (in milliseconds) between two polls of the inboxes
+     * @param nodeTimeout  the time (in milliseconds) after which a node that didn't write its heartbeat is not alive
+     * @throws NullPointerException     if the provided {@code directory} is {@code null}
+     * @throws IllegalArgumentException if the provided {@code pollInterval} is lower than {@code 1} or if the
+     *                                  provided {@code nodeTimeout} is lower than {@code 4}
+     * @throws XatkitException          if an error occurred when creating the store's directories
+     */
+    public FileClusterStore(Path directory, long pollInterval, long nodeTimeout) {
+        checkNotNull(directory, "Cannot construct a %s with the provided directory %s",
+                FileClusterStore.class.getSimpleName(), directory);
+        checkArgument(pollInterval > 0, "Cannot construct a %s with the provided poll interval %s: expected a "
+                + "strictly positive value", FileClusterStore.class.getSimpleName(), pollInterval);
+        checkArgument(nodeTimeout >= 4, "Cannot construct a %s with the provided node timeout %s: expected a value "
+                + "greater than or equal to 4", FileClusterStore.class.getSimpleName(), nodeTimeout);
+        this.routesDirectory = directory.resolve("routes");
+        this.inboxDirectory = directory.resolve("inbox");
+        this.nodesDirectory = directory.resolve("nodes");
+        this.tmpDirectory = directory.resolve("tmp");
+        this.pollInterval = pollInterval;
+        this.nodeTimeout = nodeTimeout;
+        try {
+            Files.createDirectories(routesDirectory);
+            Files.createDirectories(inboxDirectory);
+            Files.createDirectories(nodesDirectory);
+            Files.createDirectories(tmpDirectory);
+        } catch (IOException e) {
+            throw new XatkitException("Cannot create the cluster store in " + directory, e);
+        }
+        this.poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "moodle-cluster-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void putRoute(String userId, String nodeId) {
+        try {
+            write(routesDirectory.resolve(encode(userId)), nodeId.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Log.error("Cannot store the route of the user {0}: {1}", userId, e.getMessage());
+        }
+    }
+
+    @Override
+    public String getRoute(String userId) {
+        String nodeId = readRoute(routesDirectory.resolve(encode(userId)));
+        if (nodeId != null && !isAlive(nodeId)) {
+            removeRoute(userId, nodeId);
+            return null;
+        }
+        return nodeId;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The route file is atomically moved to a temporary location before being checked, meaning that a route written
+     * by another node in the meantime is never deleted. A route pointing to another node is moved back unless a
+     * newer route has been written.
+     */
+    @Override
+    public void removeRoute(String userId, String nodeId) {
+        removeRoute(routesDirectory.resolve(encode(userId)), nodeId);
+    }
+
+    @Override
+    public void removeRoutes(String nodeId) {
+        int removed = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(routesDirectory)) {
+            for (Path route : stream) {
+                if (nodeId.equals(readRoute(route)) && removeRoute(route, nodeId)) {
+                    removed++;
+                }
+            }
+        } catch (IOException e) {
+            Log.error("Cannot remove the routes of the node {0}: {1}", nodeId, e.getMessage());
+        }
+        Log.debug("Removed {0} route(s) of the node {1}", removed, nodeId);
+    }
+
+    @Override
+    public boolean publish(String nodeId, MessageObject message) {
+        if (!isAlive(nodeId)) {
+            Log.debug("Cannot send the message to the user {0}: the node {1} is not alive", message.getUserId(),
+                    nodeId);
+            return false;
+        }
+        try {
+            Path inbox = Files.createDirectories(inboxDirectory.resolve(encode(nodeId)));
+            String fileName = String.format("%019d-%019d-%s.json", System.currentTimeMillis(),
+                    sequence.incrementAndGet(), UUID.randomUUID());
+            write(inbox.resolve(fileName), MAPPER.writeValueAsBytes(message));
+            return true;
+        } catch (IOException e) {
+            Log.error("Cannot send the message to the user {0} on the node {1}: {2}", message.getUserId(), nodeId,
+                    e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public boolean isAlive(String nodeId) {
+        try {
+            long heartbeat = Long.parseLong(new String(Files.readAllBytes(nodesDirectory.resolve(encode(nodeId))),
+                    StandardCharsets.UTF_8));
+            return System.currentTimeMillis() - heartbeat <= nodeTimeout;
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (IOException | NumberFormatException e) {
+            Log.error("Cannot read the heartbeat of the node {0}: {1}", nodeId, e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public void subscribe(String nodeId, Consumer<MessageObject> handler) {
+        Path inbox;
+        Path heartbeat = nodesDirectory.resolve(encode(nodeId));
+        try {
+            inbox = Files.createDirectories(inboxDirectory.resolve(encode(nodeId)));
+            writeHeartbeat(heartbeat);
+        } catch (IOException e) {
+            throw new XatkitException("Cannot create the inbox of the node " + nodeId, e);
+        }
+        ScheduledFuture<?> previous = subscriptions.put(nodeId, poller.scheduleWithFixedDelay(() -> poll(inbox,
+                handler), pollInterval, pollInterval, TimeUnit.MILLISECONDS));
+        if (previous != null) {
+            previous.cancel(false);
+        }
+        long heartbeatInterval = nodeTimeout / 4;
+        previous = heartbeats.put(nodeId, poller.scheduleWithFixedDelay(() -> {
+            try {
+                writeHeartbeat(heartbeat);
+            } catch (IOException e) {
+                Log.error("Cannot write the heartbeat of the node {0}: {1}", nodeId, e.getMessage());
+            }
+        }, heartbeatInterval, heartbeatInterval, TimeUnit.MILLISECONDS));
+        if (previous != null) {
+            previous.cancel(false);
+        }
+    }
+
+    @Override
+    public void unsubscribe(String nodeId) {
+        ScheduledFuture<?> subscription = subscriptions.remove(nodeId);
+        if (subscription != null) {
+            subscription.cancel(false);
+        }
+        ScheduledFuture<?> heartbeat = heartbeats.remove(nodeId);
+        if (heartbeat != null) {
+            heartbeat.cancel(false);
+            try {
+                Files.deleteIfExists(nodesDirectory.resolve(encode(nodeId)));
+            } catch (IOException e) {
+                Log.error("Cannot remove the heartbeat of the node {0}: {1}", nodeId, e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        poller.shutdownNow();
+    }
+
+    /**
+     * Reads the messages stored in the provided {@code inbox}, in the order they were sent, and passes them to the
+     * given {@code handler}.
+     *
+     * @param inbox   the directory containing the messages
+     * @param handler the handler receiving the messages
+     */
+    private void poll(Path inbox, Consumer<MessageObject> handler) {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(inbox, "*.json")) {
+            stream.forEach(files::add);
+        } catch (IOException e) {
+            Log.error("Cannot read the inbox {0}: {1}", inbox, e.getMessage());
+            return;
+        }
+        Collections.sort(files);
+        for (Path file : files) {
+            try {
+                MessageObject message = MAPPER.readValue(file.toFile(), MessageObject.class);
+                Files.delete(file);
+                handler.accept(message);
+            } catch (IOException e) {
+                Log.error("Cannot read the message {0}: {1}", file, e.getMessage());
+            } catch (RuntimeException e) {
+                Log.error("An error occurred when handling the message {0}: {1}", file, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Reads the id of the node stored in the provided {@code route} file.
+     *
+     * @param route the route file
+     * @return the id of the node, or {@code null} if the route doesn't exist or cannot be read
+     */
+    private static String readRoute(Path route) {
+        try {
+            return new String(Files.readAllBytes(route), StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            Log.error("Cannot read the route {0}: {1}", route, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Removes the provided {@code route} file if it points to the node {@code nodeId}.
+     * <p>
+     * The route is atomically moved to a temporary location before being checked, so that a route written by
+     * another node between the check and the removal is never deleted.
+     *
+     * @param route  the route file
+     * @param nodeId the id of the node the route must point to
+     * @return {@code true} if the route has been removed, {@code false} otherwise
+     */
+    private boolean removeRoute(Path route, String nodeId) {
+        Path taken;
+        try {
+            taken = tmpDirectory.resolve(UUID.randomUUID() + ".route");
+            Files.move(route, taken, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (IOException e) {
+            Log.error("Cannot remove the route {0}: {1}", route, e.getMessage());
+            return false;
+        }
+        try {
+            if (nodeId.equals(readRoute(taken))) {
+                return true;
+            }
+            try {
+                /*
+                 * The route has been updated by another node, restore it unless an even newer route exists.
+                 */
+                Files.move(taken, route, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                Log.debug("The route {0} has been updated while being removed", route);
+            } catch (IOException e) {
+                Log.error("Cannot restore the route {0}: {1}", route, e.getMessage());
+            }
+            return false;
+        } finally {
+            try {
+                Files.deleteIfExists(taken);
+            } catch (IOException e) {
+                Log.error("Cannot delete {0}: {1}", taken, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Writes the current time in the provided {@code heartbeat} file.
+     *
+     * @param heartbeat the heartbeat file of a node
+     * @throws IOException if an error occurred when writing the file
+     */
+    private void writeHeartbeat(Path heartbeat) throws IOException {
+        write(heartbeat, Long.toString(System.currentTimeMillis()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Atomically writes the provided {@code content} in the given {@code file}.
+     *
+     * @param file    the file to write
+     * @param content the content of the file
+     * @throws IOException if an error occurred when writing the file
+     */
+    private void write(Path file, byte[] content) throws IOException {
+        Path tmp = Files.createTempFile(tmpDirectory, null, null);
+        Files.write(tmp, content);
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Encodes the provided {@code id} into a valid file name.
+     *
+     * @param id the id to encode
+     * @return the encoded id
+     */
+    private static String encode(String id) {
+        try {
+            return URLEncoder.encode(id, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new XatkitException(e);
+        }
+    }
+}
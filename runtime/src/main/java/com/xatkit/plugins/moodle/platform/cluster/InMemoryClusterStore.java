@@ -0,0 +1,109 @@
+package com.xatkit.plugins.moodle.platform.cluster;
+
+import com.xatkit.plugins.moodle.platform.utils.MessageObject;
+
+import fr.inria.atlanmod.commons.log.Log;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+
+import static fr.inria.atlanmod.commons.Preconditions.checkNotNull;
+
+/**
+ * A {@link ClusterStore} shared by the nodes running in the same JVM.
+ * <p>
+ * The nodes using the same cluster name share the same routes and message handlers (see {@link #named(String)}).
+ * This store is mainly intended to run several nodes locally.
+ */
+public class InMemoryClusterStore implements ClusterStore {
+
+    /**
+     * The shared state of the clusters, indexed by cluster name.
+     */
+    private static final ConcurrentMap<String, InMemoryClusterStore> CLUSTERS = new ConcurrentHashMap<>();
+
+    /**
+     * The routes of the users, indexed by user id.
+     */
+    private final ConcurrentMap<String, String> routes = new ConcurrentHashMap<>();
+
+    /**
+     * The message handlers of the nodes, indexed by node id.
+     */
+    private final Map<String, Consumer<MessageObject>> handlers = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the {@link InMemoryClusterStore} of the cluster with the provided {@code name}.
+     *
+     * @param name the name of the cluster
+     * @return the {@link InMemoryClusterStore} of the cluster
+     * @throws NullPointerException if the provided {@code name} is {@code null}
+     */
+    public static InMemoryClusterStore named(String name) {
+        checkNotNull(name, "Cannot retrieve the cluster with the provided name %s", name);
+        return CLUSTERS.computeIfAbsent(name, k -> new InMemoryClusterStore());
+    }
+
+    @Override
+    public void putRoute(String userId, String nodeId) {
+        routes.put(userId, nodeId);
+    }
+
+    @Override
+    public String getRoute(String userId) {
+        String nodeId = routes.get(userId);
+        if (nodeId != null && !isAlive(nodeId)) {
+            routes.remove(userId, nodeId);
+            return null;
+        }
+        return nodeId;
+    }
+
+    @Override
+    public void removeRoute(String userId, String nodeId) {
+        routes.remove(userId, nodeId);
+    }
+
+    @Override
+    public void removeRoutes(String nodeId) {
+        routes.values().removeIf(nodeId::equals);
+    }
+
+    @Override
+    public boolean publish(String nodeId, MessageObject message) {
+        Consumer<MessageObject> handler = handlers.get(nodeId);
+        if (handler == null) {
+            Log.debug("Cannot send the message to the user {0}: the node {1} is not available", message.getUserId(),
+                    nodeId);
+            return false;
+        }
+        handler.accept(message);
+        return true;
+    }
+
+    @Override
+    public boolean isAlive(String nodeId) {
+        return handlers.containsKey(nodeId);
+    }
+
+    @Override
+    public void subscribe(String nodeId, Consumer<MessageObject> handler) {
+        handlers.put(nodeId, handler);
+    }
+
+    @Override
+    public void unsubscribe(String nodeId) {
+        handlers.remove(nodeId);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This method does nothing: the store is shared by the nodes of the cluster running in this JVM.
+     */
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,39 @@
+package com.xatkit.plugins.moodle.platform.io;
+
+import com.xatkit.core.XatkitCore;
+import com.xatkit.core.session.XatkitSession;
+
+import java.util.List;
+
+/**
+ * Recognizes the intents of several messages at once.
+ * <p>
+ * The {@link RecognitionBatcher} groups the messages received within a few milliseconds and hands them to a
+ * {@link BatchIntentRecognizer}, which can submit them to the intent recognition engine in a single call to amortize
+ * its per-call overhead. The recognizer used by the platform can be replaced by setting the
+ * {@link com.xatkit.plugins.moodle.platform.utils.MoodleUtils#MOODLE_RECOGNITION_BATCH_RECOGNIZER_KEY} key to the
+ * name of a class implementing this interface and providing a public no-argument constructor.
+ * <p>
+ * Implementations must be thread-safe: several batches can be recognized concurrently.
+ *
+ * @see SequentialBatchIntentRecognizer
+ */
+public interface BatchIntentRecognizer {
+
+    /**
+     * Recognizes the intents of the provided {@code messages}.
+     * <p>
+     * The {@code i}-th message has been sent in the {@code i}-th session of {@code sessions}. A session appears at
+     * most once in a batch. The messages that cannot be recognized are reported with a
+     * {@link RecognitionResult#failed(RuntimeException)} result, and are recognized again separately by the
+     * {@link RecognitionBatcher} without recognizing the other messages of the batch again.
+     *
+     * @param messages   the messages to recognize the intents of
+     * @param sessions   the {@link XatkitSession}s the messages have been sent in
+     * @param xatkitCore the {@link XatkitCore} running the bot
+     * @return the {@link RecognitionResult}s of the messages, in the order of the {@code messages}
+     * @throws RuntimeException if the batch cannot be recognized at all, in which case the
+     *                          {@link RecognitionBatcher} recognizes each message of the batch separately
+     */
+    List<RecognitionResult> recognize(List<String> messages, List<XatkitSession> sessions, XatkitCore xatkitCore);
+}
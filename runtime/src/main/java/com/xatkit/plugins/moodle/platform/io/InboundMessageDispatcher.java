@@ -0,0 +1,347 @@
+package com.xatkit.plugins.moodle.platform.io;
+
+import fr.inria.atlanmod.commons.log.Log;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static fr.inria.atlanmod.commons.Preconditions.checkArgument;
+import static fr.inria.atlanmod.commons.Preconditions.checkNotNull;
+
+/**
+ * A bounded work queue processing inbound messages on a dedicated worker pool.
+ * <p>
+ * The socket server's event loop hands the received messages to this dispatcher instead of processing them inline,
+ * meaning that slow intent recognition never blocks socket I/O. Messages from the same user are processed
+ * sequentially and in order, while messages from different users are processed in parallel by the workers.
+ * <p>
+ * The dispatcher accepts at most {@code queueDepth} pending messages: {@link #submit(String, Runnable)} returns
+ * {@code false} when the queue is full, and the caller is responsible of applying its reject policy (see
+ * {@link InboundRejectPolicy}).
+ * <p>
+ * Messages can also be deferred with {@link #schedule(String, Runnable, long)}: a deferred message takes a slot of
+ * the queue right away, and is queued after the pending messages of its user once its delay has expired.
+ * <p>
+ * The tasks are never processed on the calling thread: a task that cannot be handed to the workers because the
+ * dispatcher has been shut down is rejected, like the tasks submitted when the queue is full.
+ */
+public class InboundMessageDispatcher {
+
+    /**
+     * The maximum number of messages of a user processed before yielding the worker to other users.
+     */
+    private static final int MAX_TASKS_PER_TURN = 16;
+
+    /**
+     * The workers processing the messages.
+     */
+    private final ExecutorService workers;
+
+    /**
+     * The scheduler queuing the deferred messages once their delay has expired.
+     */
+    private final ScheduledExecutorService deferrer;
+
+    /**
+     * The queues of the users having pending messages.
+     * <p>
+     * All the accesses to a {@link UserQueue} are performed through the atomic {@code compute} methods of the map,
+     * which guarantees that a queue is removed only when it is empty and not scheduled.
+     */
+    private final ConcurrentHashMap<String, UserQueue> queues = new ConcurrentHashMap<>();
+
+    /**
+     * The maximum number of pending messages.
+     */
+    private final int queueDepth;
+
+    /**
+     * The number of pending messages.
+     */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /**
+     * The number of messages rejected because the queue was full or because the dispatcher has been shut down.
+     */
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * Constructs a new {@link InboundMessageDispatcher} with the provided {@code workerCount} and {@code queueDepth}.
+     *
+     * @param workerCount the number of workers processing the messages
+     * @param queueDepth  the maximum number of pending messages
+     * @throws IllegalArgumentException if the provided {@code workerCount} or {@code queueDepth} is lower than
+     *                                  {@code 1}
+     */
+    public InboundMessageDispatcher(int workerCount, int queueDepth) {
+        checkArgument(workerCount > 0, "Cannot construct a %s with the provided worker count %s: expected a strictly"
+                + " positive value", InboundMessageDispatcher.class.getSimpleName(), workerCount);
+        checkArgument(queueDepth > 0, "Cannot construct a %s with the provided queue depth %s: expected a strictly "
+                + "positive value", InboundMessageDispatcher.class.getSimpleName(), queueDepth);
+        this.queueDepth = queueDepth;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workerCount, r -> {
+            Thread thread = new Thread(r, "moodle-inbound-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.deferrer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "moodle-inbound-deferrer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues the provided {@code task} to be processed after the pending tasks of the given {@code userId}.
+     * <p>
+     * This method never blocks.
+     *
+     * @param userId the id of the user who sent the message
+     * @param task   the task processing the message
+     * @return {@code true} if the task has been queued, {@code false} if the queue is full or if the dispatcher
+     * has been shut down
+     * @throws NullPointerException if the provided {@code userId} or {@code task} is {@code null}
+     */
+    public boolean submit(String userId, Runnable task) {
+        checkNotNull(userId, "Cannot submit a task for the provided user %s", userId);
+        checkNotNull(task, "Cannot submit the provided task %s", task);
+        if (!reserve()) {
+            return false;
+        }
+        return enqueue(userId, task);
+    }
+
+    /**
+     * Queues the provided {@code task} to be processed after the pending tasks of the given {@code userId} once the
+     * provided {@code delay} has expired.
+     * <p>
+     * The task counts as a pending message from the time it is scheduled. This method never blocks. Note that a
+     * deferred task is ordered with respect to the tasks of its user submitted after its delay has expired, callers
+     * deferring the messages of a user must defer all its subsequent messages by at least the same delay to
+     * preserve their order. A deferred task is dropped (and counted as rejected) if the dispatcher is shut down
+     * before its delay expires.
+     *
+     * @param userId the id of the user who sent the message
+     * @param task   the task processing the message
+     * @param delay  the time (in nanoseconds) to wait before queuing the task
+     * @return {@code true} if the task has been scheduled, {@code false} if the queue is full or if the dispatcher
+     * has been shut down
+     * @throws NullPointerException if the provided {@code userId} or {@code task} is {@code null}
+     */
+    public boolean schedule(String userId, Runnable task, long delay) {
+        checkNotNull(userId, "Cannot schedule a task for the provided user %s", userId);
+        checkNotNull(task, "Cannot schedule the provided task %s", task);
+        if (delay <= 0) {
+            return submit(userId, task);
+        }
+        if (!reserve()) {
+            return false;
+        }
+        try {
+            deferrer.schedule(() -> enqueue(userId, task), delay, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            pending.decrementAndGet();
+            rejected.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of pending messages.
+     *
+     * @return the number of pending messages
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * Returns the number of messages rejected because the queue was full or because the dispatcher has been shut
+     * down.
+     *
+     * @return the number of rejected messages
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Stops the workers, waiting up to {@code timeout} milliseconds for the pending messages to be processed.
+     *
+     * @param timeout the time (in milliseconds) to wait for the pending messages
+     */
+    public void shutdown(long timeout) {
+        /*
+         * Deferred messages are dropped, their senders are rate limited anyway.
+         */
+        pending.addAndGet(-deferrer.shutdownNow().size());
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
+                Log.warn("{0} inbound Moodle message(s) were still pending after {1}ms", pending.get(), timeout);
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Takes a slot in the queue.
+     *
+     * @return {@code true} if a slot has been taken, {@code false} if the queue is full or if the dispatcher has
+     * been shut down
+     */
+    private boolean reserve() {
+        if (workers.isShutdown()) {
+            rejected.increment();
+            return false;
+        }
+        if (pending.incrementAndGet() > queueDepth) {
+            pending.decrementAndGet();
+            rejected.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Adds the provided {@code task} to the queue of the given {@code userId}, and schedules the queue on a worker
+     * if it isn't already scheduled.
+     * <p>
+     * The slot of the task must have been taken with {@link #reserve()}. If the workers have been shut down the
+     * queue of the user is discarded, and the slots of its tasks are released.
+     *
+     * @param userId the id of the user who sent the message
+     * @param task   the task processing the message
+     * @return {@code true} if the task has been queued, {@code false} if the dispatcher has been shut down
+     */
+    private boolean enqueue(String userId, Runnable task) {
+        UserQueue[] toSchedule = new UserQueue[1];
+        queues.compute(userId, (key, queue) -> {
+            UserQueue result = queue == null ? new UserQueue(key) : queue;
+            result.tasks.add(task);
+            if (!result.scheduled) {
+                result.scheduled = true;
+                toSchedule[0] = result;
+            }
+            return result;
+        });
+        if (toSchedule[0] != null) {
+            try {
+                workers.execute(toSchedule[0]);
+            } catch (RejectedExecutionException e) {
+                /*
+                 * The dispatcher has been shut down after the task was accepted. The calling thread is the socket
+                 * server's event loop or the deferrer, so the tasks of the queue are rejected instead of being
+                 * processed here.
+                 */
+                int discarded = discard(toSchedule[0]);
+                pending.addAndGet(-discarded);
+                rejected.add(discarded);
+                if (discarded > 1) {
+                    Log.warn("{0} inbound Moodle message(s) from user {1} dropped: the dispatcher has been shut down",
+                            discarded - 1, userId);
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes the provided {@code queue} and its tasks.
+     *
+     * @param queue the queue to remove
+     * @return the number of removed tasks
+     */
+    private int discard(UserQueue queue) {
+        int[] discarded = new int[1];
+        queues.computeIfPresent(queue.userId, (key, current) -> {
+            discarded[0] = current.tasks.size();
+            current.tasks.clear();
+            current.scheduled = false;
+            return null;
+        });
+        return discarded[0];
+    }
+
+    /**
+     * Takes the next task of the provided {@code queue}, or unschedules the queue if it is empty.
+     *
+     * @param queue the queue to take the next task of
+     * @return the next task, or {@code null} if the queue is empty
+     */
+    private Runnable nextTask(UserQueue queue) {
+        Runnable[] next = new Runnable[1];
+        queues.compute(queue.userId, (key, current) -> {
+            next[0] = current.tasks.poll();
+            if (next[0] == null) {
+                current.scheduled = false;
+                return null;
+            }
+            return current;
+        });
+        return next[0];
+    }
+
+    /**
+     * The pending tasks of a user.
+     * <p>
+     * A {@link UserQueue} is scheduled on at most one worker at a time, which guarantees that the tasks of a user
+     * are processed in order.
+     */
+    private class UserQueue implements Runnable {
+
+        private final String userId;
+
+        private final Queue<Runnable> tasks = new ArrayDeque<>();
+
+        private boolean scheduled;
+
+        private UserQueue(String userId) {
+            this.userId = userId;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                for (int i = 0; i < MAX_TASKS_PER_TURN; i++) {
+                    Runnable task = nextTask(this);
+                    if (task == null) {
+                        return;
+                    }
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        Log.error("An error occurred when processing a message from the Moodle user {0}: {1}",
+                                userId, e.getMessage());
+                    } finally {
+                        pending.decrementAndGet();
+                    }
+                }
+                /*
+                 * Yield the worker to the other users, the queue is still scheduled and will be processed again.
+                 */
+                try {
+                    workers.execute(this);
+                    return;
+                } catch (RuntimeException e) {
+                    /*
+                     * The dispatcher is shutting down, process the remaining tasks on this worker.
+                     */
+                }
+            }
+        }
+    }
+}
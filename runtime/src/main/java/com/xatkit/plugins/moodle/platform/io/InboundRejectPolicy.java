@@ -0,0 +1,19 @@
+package com.xatkit.plugins.moodle.platform.io;
+
+/**
+ * The policies applied to the inbound messages received when the {@link InboundMessageDispatcher} is full.
+ *
+ * @see com.xatkit.plugins.moodle.platform.utils.MoodleUtils#MOODLE_INBOUND_REJECT_POLICY_KEY
+ */
+public enum InboundRejectPolicy {
+
+    /**
+     * Rejects the message and notifies the client through the socket.io acknowledgement (if the client requested
+     * one), allowing it to retry later.
+     */
+    ACK,
+    /**
+     * Silently drops the message.
+     */
+    DROP
+}
@@ -1,12 +1,19 @@
 package com.xatkit.plugins.moodle.platform.io;
 
-import com.xatkit.core.platform.io.IntentRecognitionHelper;
+import com.corundumstudio.socketio.AckRequest;
+import com.corundumstudio.socketio.SocketIOClient;
 import com.xatkit.core.session.XatkitSession;
 import com.xatkit.intent.RecognizedIntent;
-import com.xatkit.plugins.chat.ChatUtils;
 import com.xatkit.plugins.chat.platform.io.ChatIntentProvider;
 import com.xatkit.plugins.moodle.platform.MoodlePlatform;
+import com.xatkit.plugins.moodle.platform.metrics.Counter;
+import com.xatkit.plugins.moodle.platform.metrics.LatencyHistogram;
+import com.xatkit.plugins.moodle.platform.metrics.MetricNames;
+import com.xatkit.plugins.moodle.platform.metrics.MetricsRegistry;
+import com.xatkit.plugins.moodle.platform.session.MoodleSessionContext;
+import com.xatkit.plugins.moodle.platform.utils.LogSampler;
 import com.xatkit.plugins.moodle.platform.utils.MessageObject;
+import com.xatkit.plugins.moodle.platform.utils.MessageObjectCodec;
 import com.xatkit.plugins.moodle.platform.utils.MoodleUtils;
 import com.xatkit.plugins.moodle.platform.utils.SocketEventTypes;
 
@@ -15,53 +22,315 @@ import fr.inria.atlanmod.commons.log.Log;
 
 import org.apache.commons.configuration2.Configuration;
 
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.nonNull;
+
 /**
  * A {@link ChatIntentProvider} that receives message through the socket server and translates them into
  * {@link RecognizedIntent}s.
  */
 public class MoodleIntentProvider extends ChatIntentProvider<MoodlePlatform> {
 
+    /**
+     * The acknowledgement sent to the client when its message has been queued.
+     */
+    public static final String ACK_ACCEPTED = "accepted";
+
+    /**
+     * The acknowledgement sent to the client when its message has been rejected because the inbound queue is full.
+     *
+     * @see InboundRejectPolicy#ACK
+     */
+    public static final String ACK_REJECTED = "rejected";
+
+    /**
+     * The acknowledgement sent to the client when its message has been shed because it exceeded its rate limit.
+     *
+     * @see InboundRejectPolicy#ACK
+     */
+    public static final String ACK_RATE_LIMITED = "rate_limited";
+
+    /**
+     * The acknowledgement sent to the client when its message has been refused because the platform is stopping.
+     * <p>
+     * The client is disconnected right after, and should send the message again once reconnected to another node.
+     */
+    public static final String ACK_DRAINING = "draining";
+
+    /**
+     * The acknowledgement sent to the client when its binary message cannot be decoded, or when its message claims
+     * another user than the one its socket is bound to.
+     */
+    public static final String ACK_INVALID = "invalid";
+
+    /**
+     * The policy applied to the messages received when the inbound queue is full.
+     */
+    private final InboundRejectPolicy rejectPolicy;
+
+    /**
+     * The limiter applied to the messages of each user, {@code null} if the per-user rate limit is disabled.
+     */
+    private final TokenBucketLimiter userLimiter;
+
+    /**
+     * The limiter applied to the messages sent from each course, {@code null} if the per-course rate limit is
+     * disabled.
+     */
+    private final TokenBucketLimiter courseLimiter;
+
+    /**
+     * The maximum time (in nanoseconds) a message exceeding a rate limit is deferred.
+     */
+    private final long rateLimitMaxDelay;
+
+    /**
+     * The sampler selecting the received messages to log.
+     */
+    private final LogSampler logSampler;
+
+    /**
+     * The number of received messages.
+     */
+    private final Counter inboundMessages;
+
+    /**
+     * The number of received messages rejected because the inbound queue was full.
+     */
+    private final Counter inboundRejected;
+
+    /**
+     * The number of received messages shed because their user exceeded its rate limit.
+     */
+    private final Counter userRateLimited;
+
+    /**
+     * The number of received messages shed because their course exceeded its rate limit.
+     */
+    private final Counter courseRateLimited;
+
+    /**
+     * The number of received messages deferred because their user or course exceeded its rate limit.
+     */
+    private final Counter inboundDeferred;
+
+    /**
+     * The time spent recognizing the intent of the received messages.
+     */
+    private final LatencyHistogram recognitionLatency;
+
     /**
      * Constructs a {@link MoodleIntentProvider} from the provided {@code runtimePlatform} and {@code configuration}.
      * <p>
-     * This constructor registers a dedicated listener to the socket server that receives user messages and
-     * translates them into {@link RecognizedIntent}s using the {@link IntentRecognitionHelper}.
+     * This constructor registers a dedicated listener to the socket server that receives user messages and hands
+     * them to the {@link MoodlePlatform}'s {@link InboundMessageDispatcher}, which translates them into
+     * {@link RecognizedIntent}s using the {@link RecognitionBatcher}. The listener never blocks the socket
+     * server's event loop: when the inbound queue is full the message is rejected according to the configured
+     * {@link InboundRejectPolicy}.
+     * <p>
+     * The messages are rate limited per user and per course with {@link TokenBucketLimiter}s: a message exceeding
+     * a limit is deferred if it conforms within {@link MoodleUtils#MOODLE_RATE_LIMIT_MAX_DELAY_KEY}, and shed
+     * according to the {@link InboundRejectPolicy} otherwise.
      *
      * @param runtimePlatform the {@link MoodlePlatform} containing this provider
      * @param configuration   the platform's {@link Configuration}
-     * @see IntentRecognitionHelper
+     * @see RecognitionBatcher
      */
     public MoodleIntentProvider(MoodlePlatform runtimePlatform, Configuration configuration) {
         super(runtimePlatform, configuration);
-        this.runtimePlatform.getSocketIOServer().addEventListener(SocketEventTypes.USER_MESSAGE.label, MessageObject.class, 
-                (socketIOClient, messageObject, ackRequest)-> {
-                        Log.info("Received message: {0}\n", messageObject.getMessage());
-                        Log.info("Received userId: {0}\n", messageObject.getUserId());
-                        Log.info("Received currentCourseID: {0}\n", messageObject.getCurrentCourseID());
-                        String userId = messageObject.getUserId();
-                        String currentCourseID = messageObject.getCurrentCourseID();
-                        String rawMessage = messageObject.getMessage();
-                        XatkitSession session = this.getRuntimePlatform().createSessionFromUserId(userId);
-                        RecognizedIntent recognizedIntent = IntentRecognitionHelper.getRecognizedIntent(rawMessage,
-                                session, this.getRuntimePlatform().getXatkitCore());
-                    	session.getRuntimeContexts().setContextValue(MoodleUtils.MOODLE_CONTEXT_KEY, 1,
-                                MoodleUtils.CHAT_USERNAME_CONTEXT_KEY, userId);
-                    	session.getRuntimeContexts().setContextValue(MoodleUtils.MOODLE_CONTEXT_KEY, 1,
-                    			MoodleUtils.CHAT_CHANNEL_CONTEXT_KEY, userId);
-                    	session.getRuntimeContexts().setContextValue(MoodleUtils.MOODLE_CONTEXT_KEY, 1,
-                                MoodleUtils.CHAT_RAW_MESSAGE_CONTEXT_KEY, rawMessage);
-                        session.getRuntimeContexts().setContextValue(MoodleUtils.MOODLE_CONTEXT_KEY,1,
-                        		MoodleUtils.MOODLE_CHAT_COURSEID_CONTEXT_KEY,currentCourseID);
-                        
-                        session.getRuntimeContexts().setContextValue(ChatUtils.CHAT_CONTEXT_KEY, 1,
-                                ChatUtils.CHAT_USERNAME_CONTEXT_KEY, userId);
-                        session.getRuntimeContexts().setContextValue(ChatUtils.CHAT_CONTEXT_KEY, 1,
-                                ChatUtils.CHAT_CHANNEL_CONTEXT_KEY, userId);
-                        session.getRuntimeContexts().setContextValue(ChatUtils.CHAT_CONTEXT_KEY, 1,
-                                ChatUtils.CHAT_RAW_MESSAGE_CONTEXT_KEY, rawMessage);
-                        
-                        this.sendEventInstance(recognizedIntent, session);
-                });
+        this.rejectPolicy = InboundRejectPolicy.valueOf(configuration.getString(
+                MoodleUtils.MOODLE_INBOUND_REJECT_POLICY_KEY, MoodleUtils.DEFAULT_MOODLE_INBOUND_REJECT_POLICY)
+                .toUpperCase());
+        this.logSampler = new LogSampler(configuration.getLong(MoodleUtils.MOODLE_LOG_SAMPLE_RATE_KEY,
+                MoodleUtils.DEFAULT_MOODLE_LOG_SAMPLE_RATE));
+        this.userLimiter = createLimiter(configuration.getDouble(MoodleUtils.MOODLE_RATE_LIMIT_USER_RATE_KEY,
+                MoodleUtils.DEFAULT_MOODLE_RATE_LIMIT_USER_RATE), configuration.getInt(
+                MoodleUtils.MOODLE_RATE_LIMIT_USER_BURST_KEY, MoodleUtils.DEFAULT_MOODLE_RATE_LIMIT_USER_BURST));
+        this.courseLimiter = createLimiter(configuration.getDouble(MoodleUtils.MOODLE_RATE_LIMIT_COURSE_RATE_KEY,
+                MoodleUtils.DEFAULT_MOODLE_RATE_LIMIT_COURSE_RATE), configuration.getInt(
+                MoodleUtils.MOODLE_RATE_LIMIT_COURSE_BURST_KEY, MoodleUtils.DEFAULT_MOODLE_RATE_LIMIT_COURSE_BURST));
+        this.rateLimitMaxDelay = TimeUnit.MILLISECONDS.toNanos(configuration.getLong(
+                MoodleUtils.MOODLE_RATE_LIMIT_MAX_DELAY_KEY, MoodleUtils.DEFAULT_MOODLE_RATE_LIMIT_MAX_DELAY));
+        MetricsRegistry metrics = runtimePlatform.getMetrics();
+        this.inboundMessages = metrics.counter(MetricNames.INBOUND_MESSAGES);
+        this.inboundRejected = metrics.counter(MetricNames.INBOUND_REJECTED);
+        this.userRateLimited = metrics.counter(MetricsRegistry.name(MetricNames.INBOUND_RATE_LIMITED, "scope",
+                "user"));
+        this.courseRateLimited = metrics.counter(MetricsRegistry.name(MetricNames.INBOUND_RATE_LIMITED, "scope",
+                "course"));
+        this.inboundDeferred = metrics.counter(MetricNames.INBOUND_DEFERRED);
+        this.recognitionLatency = metrics.histogram(MetricNames.RECOGNITION_LATENCY);
+        this.runtimePlatform.getSocketIOServer().addEventListener(SocketEventTypes.USER_MESSAGE.label,
+                MessageObject.class, this::onMessage);
+        if (runtimePlatform.isBinarySocketEnabled()) {
+            this.runtimePlatform.getSocketIOServer().addEventListener(SocketEventTypes.BINARY_USER_MESSAGE.label,
+                    byte[].class, (socketIOClient, bytes, ackRequest) -> {
+                        MessageObject messageObject;
+                        try {
+                            messageObject = MessageObjectCodec.decode(bytes);
+                        } catch (IllegalArgumentException e) {
+                            if (logSampler.sample()) {
+                                Log.warn("Ignoring an invalid binary message: {0}", e.getMessage());
+                            }
+                            if (ackRequest.isAckRequested()) {
+                                ackRequest.sendAckData(ACK_INVALID);
+                            }
+                            return;
+                        }
+                        this.getRuntimePlatform().useBinaryCodec(socketIOClient);
+                        onMessage(socketIOClient, messageObject, ackRequest);
+                    });
+        }
+    }
+
+    /**
+     * Rate limits the provided {@code messageObject} and queues it on the {@link MoodlePlatform}'s
+     * {@link InboundMessageDispatcher}.
+     * <p>
+     * This method is called on the socket server's event loop for the {@link SocketEventTypes#USER_MESSAGE} and
+     * {@link SocketEventTypes#BINARY_USER_MESSAGE} events, and never blocks.
+     *
+     * @param socketIOClient the socket client that sent the message
+     * @param messageObject  the received message
+     * @param ackRequest     the acknowledgement request of the message
+     */
+    private void onMessage(SocketIOClient socketIOClient, MessageObject messageObject, AckRequest ackRequest) {
+        if (!this.getRuntimePlatform().isAcceptingMessages()) {
+            if (rejectPolicy == InboundRejectPolicy.ACK && ackRequest.isAckRequested()) {
+                ackRequest.sendAckData(ACK_DRAINING);
+            }
+            socketIOClient.disconnect();
+            return;
+        }
+        inboundMessages.increment();
+        if (logSampler.sample()) {
+            Log.debug("Received message from user {0} (course {1}): {2}", messageObject.getUserId(),
+                    messageObject.getCurrentCourseID(), messageObject.getMessage());
+        }
+        if (!this.getRuntimePlatform().registerClient(messageObject.getUserId(), socketIOClient)) {
+            if (logSampler.sample()) {
+                Log.warn("Ignoring a message claiming the Moodle user {0} sent on the socket of another user",
+                        messageObject.getUserId());
+            }
+            if (ackRequest.isAckRequested()) {
+                ackRequest.sendAckData(ACK_INVALID);
+            }
+            return;
+        }
+        this.getRuntimePlatform().joinCourseRoom(socketIOClient, messageObject.getCurrentCourseID());
+        long delay = acquireRateLimit(messageObject);
+        if (delay == TokenBucketLimiter.REJECTED) {
+            if (rejectPolicy == InboundRejectPolicy.ACK && ackRequest.isAckRequested()) {
+                ackRequest.sendAckData(ACK_RATE_LIMITED);
+            }
+            return;
+        }
+        boolean accepted = this.getRuntimePlatform().getInboundDispatcher().schedule(
+                messageObject.getUserId(), () -> handleMessage(messageObject), delay);
+        if (accepted) {
+            if (delay > 0) {
+                inboundDeferred.increment();
+            }
+            if (ackRequest.isAckRequested()) {
+                ackRequest.sendAckData(ACK_ACCEPTED);
+            }
+        } else {
+            inboundRejected.increment();
+            if (logSampler.sample()) {
+                Log.warn("Inbound queue full, message from Moodle user {0} rejected ({1} rejected "
+                        + "so far)", messageObject.getUserId(), inboundRejected.get());
+            }
+            if (rejectPolicy == InboundRejectPolicy.ACK && ackRequest.isAckRequested()) {
+                ackRequest.sendAckData(ACK_REJECTED);
+            }
+        }
+    }
+
+    /**
+     * Acquires the rate limit tokens of the provided {@code messageObject} from the user and course limiters.
+     * <p>
+     * The user's limiter is checked first, meaning that a message shed by the course limiter still counts in the
+     * rate of its user.
+     *
+     * @param messageObject the received message
+     * @return the time (in nanoseconds) the message must be deferred, or {@link TokenBucketLimiter#REJECTED} if the
+     * message must be shed
+     */
+    private long acquireRateLimit(MessageObject messageObject) {
+        long delay = 0L;
+        if (nonNull(userLimiter)) {
+            delay = userLimiter.acquire(messageObject.getUserId(), rateLimitMaxDelay);
+            if (delay == TokenBucketLimiter.REJECTED) {
+                userRateLimited.increment();
+                if (logSampler.sample()) {
+                    Log.warn("Moodle user {0} exceeded its rate limit, message shed ({1} shed so far)",
+                            messageObject.getUserId(), userRateLimited.get());
+                }
+                return delay;
+            }
+        }
+        String courseId = messageObject.getCurrentCourseID();
+        if (nonNull(courseLimiter) && nonNull(courseId)) {
+            long courseDelay = courseLimiter.acquire(courseId, rateLimitMaxDelay);
+            if (courseDelay == TokenBucketLimiter.REJECTED) {
+                courseRateLimited.increment();
+                if (logSampler.sample()) {
+                    Log.warn("Moodle course {0} exceeded its rate limit, message from user {1} shed ({2} shed so "
+                            + "far)", courseId, messageObject.getUserId(), courseRateLimited.get());
+                }
+                return courseDelay;
+            }
+            delay = Math.max(delay, courseDelay);
+        }
+        return delay;
+    }
+
+    /**
+     * Creates a {@link TokenBucketLimiter} with the provided {@code rate} and {@code burst}.
+     *
+     * @param rate  the number of messages per second accepted for each key, {@code 0} to disable the limiter
+     * @param burst the maximum number of messages accepted at once for each key
+     * @return the created {@link TokenBucketLimiter}, or {@code null} if the provided {@code rate} is {@code 0}
+     */
+    private static TokenBucketLimiter createLimiter(double rate, int burst) {
+        if (rate <= 0) {
+            return null;
+        }
+        return new TokenBucketLimiter(rate, burst);
+    }
+
+    /**
+     * Recognizes the intent of the provided {@code messageObject} and sends it to the Xatkit core.
+     * <p>
+     * The intent is retrieved from the {@link MoodlePlatform}'s {@link RecognitionCache} if it is enabled and
+     * contains an intent for the message in the current contexts of the session, and is recognized by the
+     * {@link MoodlePlatform}'s {@link RecognitionBatcher} otherwise.
+     * <p>
+     * This method is executed by the workers of the {@link MoodlePlatform}'s {@link InboundMessageDispatcher}, and
+     * never on the socket server's event loop.
+     *
+     * @param messageObject the received message
+     */
+    private void handleMessage(MessageObject messageObject) {
+        String userId = messageObject.getUserId();
+        String currentCourseID = messageObject.getCurrentCourseID();
+        String rawMessage = messageObject.getMessage();
+        XatkitSession session = this.getRuntimePlatform().createSessionFromUserId(userId);
+        long recognitionStart = System.nanoTime();
+        RecognitionCache recognitionCache = this.getRuntimePlatform().getRecognitionCache();
+        RecognitionBatcher recognitionBatcher = this.getRuntimePlatform().getRecognitionBatcher();
+        RecognizedIntent recognizedIntent;
+        if (nonNull(recognitionCache)) {
+            recognizedIntent = recognitionCache.recognize(rawMessage, session, recognitionBatcher::recognize);
+        } else {
+            recognizedIntent = recognitionBatcher.recognize(rawMessage, session);
+        }
+        recognitionLatency.recordSince(recognitionStart);
+        this.getRuntimePlatform().getSessionManager().update(session, new MoodleSessionContext(userId, rawMessage,
+                currentCourseID));
+        this.getRuntimePlatform().getActionTracker().eventSent();
+        this.sendEventInstance(recognizedIntent, session);
     }
 
     @Override
@@ -0,0 +1,404 @@
+package com.xatkit.plugins.moodle.platform.io;
+
+import com.xatkit.core.XatkitCore;
+import com.xatkit.core.session.XatkitSession;
+import com.xatkit.intent.RecognizedIntent;
+
+import fr.inria.atlanmod.commons.log.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static fr.inria.atlanmod.commons.Preconditions.checkArgument;
+import static fr.inria.atlanmod.commons.Preconditions.checkNotNull;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+
+/**
+ * Groups the messages received within a few milliseconds and recognizes their intents in a single call to a
+ * {@link BatchIntentRecognizer}.
+ * <p>
+ * The workers of the {@link InboundMessageDispatcher} call {@link #recognize(String, XatkitSession)}, which blocks
+ * until the intent of the message is recognized. The first worker opens a batch and waits up to {@code maxDelay}
+ * for other messages, the following workers join the batch and wait for its result. The batch is recognized by the
+ * first worker once {@code maxDelay} has expired or {@code maxBatchSize} messages have joined it, and each worker
+ * gets back the intent of its own message. Since the dispatcher processes the messages of a user one after the
+ * other, the intents are sent back to each session in the order of its messages.
+ * <p>
+ * Waiting for other messages is only useful under load: the batcher estimates the interval between the received
+ * messages, and recognizes a message right away (without opening a batch) when no other message is expected within
+ * {@code maxDelay}. The estimate is a moving average updated without synchronization, and may lose some samples
+ * under contention.
+ * <p>
+ * The recognizer reports the messages it cannot recognize in their {@link RecognitionResult}: only these messages
+ * are recognized again, separately, by the workers that submitted them. If the recognizer fails to recognize the
+ * whole batch, each message of the batch is recognized separately, so that a single invalid message doesn't fail
+ * the others.
+ *
+ * @see com.xatkit.plugins.moodle.platform.utils.MoodleUtils#MOODLE_RECOGNITION_BATCH_MAX_SIZE_KEY
+ */
+public class RecognitionBatcher {
+
+    /**
+     * The weight of the last sample in the average interval between the received messages.
+     */
+    private static final double INTERVAL_WEIGHT = 0.2;
+
+    /**
+     * The recognizer of the batches.
+     */
+    private final BatchIntentRecognizer recognizer;
+
+    /**
+     * The {@link XatkitCore} running the bot.
+     */
+    private final XatkitCore xatkitCore;
+
+    /**
+     * The maximum number of messages in a batch.
+     */
+    private final int maxBatchSize;
+
+    /**
+     * The maximum time (in nanoseconds) a message waits for other messages.
+     */
+    private final long maxDelay;
+
+    /**
+     * The maximum interval (in nanoseconds) recorded between two messages, which allows the average to quickly
+     * adapt when the traffic increases after an idle period.
+     */
+    private final long maxInterval;
+
+    /**
+     * The lock protecting the {@link #current} batch.
+     */
+    private final Object lock = new Object();
+
+    /**
+     * The batch collecting the received messages, or {@code null} if there is no open batch.
+     */
+    private Batch current;
+
+    /**
+     * The time (in nanoseconds) the last message was received.
+     */
+    private final AtomicLong lastArrival = new AtomicLong(System.nanoTime());
+
+    /**
+     * The average interval (in nanoseconds) between the received messages.
+     */
+    private volatile double averageInterval;
+
+    /**
+     * The number of batches recognized by the {@link #recognizer}.
+     */
+    private final LongAdder batches = new LongAdder();
+
+    /**
+     * The number of messages recognized in a batch.
+     */
+    private final LongAdder batchedMessages = new LongAdder();
+
+    /**
+     * The number of messages recognized right away because no other message was expected.
+     */
+    private final LongAdder bypassed = new LongAdder();
+
+    /**
+     * The number of messages of a batch recognized again separately because their recognition failed.
+     */
+    private final LongAdder retried = new LongAdder();
+
+    /**
+     * Constructs a new {@link RecognitionBatcher} with the provided {@code recognizer}, {@code xatkitCore},
+     * {@code maxBatchSize}, and {@code maxDelay}.
+     *
+     * @param recognizer   the {@link BatchIntentRecognizer} recognizing the batches
+     * @param xatkitCore   the {@link XatkitCore} running the bot
+     * @param maxBatchSize the maximum number of messages in a batch ({@code 1} recognizes each message separately)
+     * @param maxDelay     the maximum time (in milliseconds) a message waits for other messages
+     * @throws NullPointerException     if the provided {@code recognizer} is {@code null}
+     * @throws IllegalArgumentException if the provided {@code maxBatchSize} is lower than {@code 1} or if the
+     *                                  provided {@code maxDelay} is negative
+     */
+    public RecognitionBatcher(BatchIntentRecognizer recognizer, XatkitCore xatkitCore, int maxBatchSize,
+                              long maxDelay) {
+        checkNotNull(recognizer, "Cannot construct a %s with the provided recognizer %s",
+                RecognitionBatcher.class.getSimpleName(), recognizer);
+        checkArgument(maxBatchSize > 0, "Cannot construct a %s with the provided batch size %s: expected a strictly "
+                + "positive value", RecognitionBatcher.class.getSimpleName(), maxBatchSize);
+        checkArgument(maxDelay >= 0, "Cannot construct a %s with the provided maximum delay %s: expected a positive "
+                + "value", RecognitionBatcher.class.getSimpleName(), maxDelay);
+        this.recognizer = recognizer;
+        this.xatkitCore = xatkitCore;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelay = TimeUnit.MILLISECONDS.toNanos(maxDelay);
+        this.maxInterval = Math.max(this.maxDelay * 4, 1);
+        this.averageInterval = maxInterval;
+    }
+
+    /**
+     * Recognizes the intent of the provided {@code message} sent in the given {@code session}.
+     * <p>
+     * This method blocks until the intent is recognized, waiting up to {@code maxDelay} milliseconds for other
+     * messages to recognize with it.
+     *
+     * @param message the received message
+     * @param session the {@link XatkitSession} of the user who sent the message
+     * @return the {@link RecognizedIntent} of the message
+     * @throws RuntimeException if the intent cannot be recognized
+     */
+    public RecognizedIntent recognize(String message, XatkitSession session) {
+        long now = System.nanoTime();
+        long interval = Math.min(now - lastArrival.getAndSet(now), maxInterval);
+        double average = averageInterval + (interval - averageInterval) * INTERVAL_WEIGHT;
+        averageInterval = average;
+        if (maxBatchSize > 1 && maxDelay > 0) {
+            Batch batch = null;
+            boolean leader = false;
+            int index = -1;
+            synchronized (lock) {
+                if (isNull(current) && average < maxDelay) {
+                    current = new Batch(now);
+                    leader = true;
+                }
+                if (nonNull(current) && !current.sessions.contains(session)) {
+                    batch = current;
+                    index = batch.add(message, session);
+                    if (batch.messages.size() >= maxBatchSize) {
+                        current = null;
+                        batch.close();
+                    }
+                }
+            }
+            if (leader) {
+                return lead(batch);
+            }
+            if (nonNull(batch)) {
+                return follow(batch, index);
+            }
+        }
+        bypassed.increment();
+        return recognizeAlone(message, session);
+    }
+
+    /**
+     * Returns the number of recognized batches.
+     *
+     * @return the number of recognized batches
+     */
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    /**
+     * Returns the number of messages recognized in a batch.
+     *
+     * @return the number of messages recognized in a batch
+     */
+    public long getBatchedMessageCount() {
+        return batchedMessages.sum();
+    }
+
+    /**
+     * Returns the number of messages recognized right away because no other message was expected.
+     *
+     * @return the number of messages recognized without a batch
+     */
+    public long getBypassedCount() {
+        return bypassed.sum();
+    }
+
+    /**
+     * Returns the number of messages of a batch recognized again separately because their recognition failed.
+     *
+     * @return the number of messages recognized again separately
+     */
+    public long getRetriedCount() {
+        return retried.sum();
+    }
+
+    /**
+     * Waits for the provided {@code batch} to be full or for {@code maxDelay} to expire, recognizes it, and hands
+     * the intents to the workers waiting for them.
+     *
+     * @param batch the {@link Batch} opened by the calling thread
+     * @return the {@link RecognizedIntent} of the first message of the batch
+     * @throws RuntimeException if the intent of the first message cannot be recognized
+     */
+    private RecognizedIntent lead(Batch batch) {
+        long deadline = batch.openedAt + maxDelay;
+        synchronized (batch) {
+            long remaining;
+            while (!batch.closed && (remaining = deadline - System.nanoTime()) > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(batch, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        synchronized (lock) {
+            if (current == batch) {
+                current = null;
+            }
+        }
+        /*
+         * No message can join the batch anymore.
+         */
+        List<RecognitionResult> results;
+        try {
+            results = recognizer.recognize(batch.messages, batch.sessions, xatkitCore);
+            if (results.size() != batch.messages.size()) {
+                throw new IllegalStateException("Expected " + batch.messages.size() + " results, found "
+                        + results.size());
+            }
+            batches.increment();
+            batchedMessages.add(batch.messages.size());
+        } catch (RuntimeException e) {
+            Log.warn("Cannot recognize a batch of {0} message(s), recognizing them separately: {1}",
+                    batch.messages.size(), e.getMessage());
+            results = null;
+        }
+        batch.complete(results);
+        return resultOf(batch, 0);
+    }
+
+    /**
+     * Waits for the provided {@code batch} to be recognized and returns the intent of the message at the given
+     * {@code index}.
+     *
+     * @param batch the {@link Batch} the message of the calling thread joined
+     * @param index the index of the message in the batch
+     * @return the {@link RecognizedIntent} of the message
+     * @throws RuntimeException if the intent of the message cannot be recognized
+     */
+    private RecognizedIntent follow(Batch batch, int index) {
+        boolean interrupted = false;
+        synchronized (batch) {
+            while (!batch.done) {
+                try {
+                    batch.wait();
+                } catch (InterruptedException e) {
+                    /*
+                     * The leader is recognizing the message, wait for its result.
+                     */
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return resultOf(batch, index);
+    }
+
+    /**
+     * Returns the intent of the message at the given {@code index} of the recognized {@code batch}.
+     * <p>
+     * The message is recognized again separately if the batch or the message failed.
+     *
+     * @param batch the recognized {@link Batch}
+     * @param index the index of the message in the batch
+     * @return the {@link RecognizedIntent} of the message
+     * @throws RuntimeException if the intent of the message cannot be recognized
+     */
+    private RecognizedIntent resultOf(Batch batch, int index) {
+        if (nonNull(batch.results)) {
+            RecognitionResult result = batch.results.get(index);
+            if (nonNull(result) && result.isRecognized()) {
+                return result.getIntent();
+            }
+            retried.increment();
+            Log.debug("Cannot recognize a message of a batch, recognizing it separately: {0}",
+                    isNull(result) ? null : result.getError().getMessage());
+        }
+        return recognizeAlone(batch.messages.get(index), batch.sessions.get(index));
+    }
+
+    /**
+     * Recognizes the provided {@code message} in a batch of its own.
+     *
+     * @param message the received message
+     * @param session the {@link XatkitSession} of the user who sent the message
+     * @return the {@link RecognizedIntent} of the message
+     * @throws RuntimeException if the intent of the message cannot be recognized
+     */
+    private RecognizedIntent recognizeAlone(String message, XatkitSession session) {
+        List<RecognitionResult> results = recognizer.recognize(Collections.singletonList(message),
+                Collections.singletonList(session), xatkitCore);
+        if (results.size() != 1) {
+            throw new IllegalStateException("Expected 1 result, found " + results.size());
+        }
+        RecognitionResult result = results.get(0);
+        checkNotNull(result, "Cannot recognize the message %s: the recognizer returned %s", message, result);
+        return result.getIntent();
+    }
+
+    /**
+     * The messages recognized together.
+     * <p>
+     * The messages and sessions are only added under the batcher's lock while the batch is open, and read once it
+     * has been removed from the batcher. The {@code closed} and {@code done} flags are protected by the batch's
+     * monitor.
+     */
+    private static final class Batch {
+
+        /**
+         * The time (in nanoseconds) the batch was opened.
+         */
+        private final long openedAt;
+
+        /**
+         * The messages of the batch.
+         */
+        private final List<String> messages = new ArrayList<>();
+
+        /**
+         * The {@link XatkitSession}s the {@link #messages} have been sent in.
+         */
+        private final List<XatkitSession> sessions = new ArrayList<>();
+
+        /**
+         * Whether the batch is full and must be recognized without waiting for {@code maxDelay}.
+         */
+        private boolean closed;
+
+        /**
+         * Whether the batch has been recognized.
+         */
+        private boolean done;
+
+        /**
+         * The {@link RecognitionResult}s of the {@link #messages}, or {@code null} if the batch cannot be recognized.
+         */
+        private List<RecognitionResult> results;
+
+        private Batch(long openedAt) {
+            this.openedAt = openedAt;
+        }
+
+        private int add(String message, XatkitSession session) {
+            messages.add(message);
+            sessions.add(session);
+            return messages.size() - 1;
+        }
+
+        private synchronized void close() {
+            closed = true;
+            notifyAll();
+        }
+
+        private synchronized void complete(List<RecognitionResult> results) {
+            this.results = results;
+            this.done = true;
+            notifyAll();
+        }
+    }
+}
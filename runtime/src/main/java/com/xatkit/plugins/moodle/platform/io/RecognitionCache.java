@@ -0,0 +1,361 @@
+package com.xatkit.plugins.moodle.platform.io;
+
+import com.xatkit.core.session.RuntimeContexts;
+import com.xatkit.core.session.XatkitSession;
+import com.xatkit.intent.RecognizedIntent;
+import com.xatkit.plugins.chat.ChatUtils;
+import com.xatkit.plugins.moodle.platform.utils.ExpiringCache;
+import com.xatkit.plugins.moodle.platform.utils.MoodleUtils;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiFunction;
+
+import static fr.inria.atlanmod.commons.Preconditions.checkNotNull;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+
+/**
+ * A cache of the {@link RecognizedIntent}s computed for the received messages.
+ * <p>
+ * Students of a course tend to send the same questions, this cache allows to answer them without calling the
+ * intent recognition provider. The cached intents are indexed by the normalized text of the message (collapsed
+ * whitespaces, no trailing punctuation) and the state of the session's active contexts, meaning that a message
+ * matching a follow-up intent in a given context is never answered with the intent recognized outside of it. The
+ * case of the message is kept in the key: the parameters extracted from the message (e.g. a course name) are
+ * returned with the case the user typed. The {@link MoodleUtils#MOODLE_CONTEXT_KEY} and {@link ChatUtils#CHAT_CONTEXT_KEY} contexts are not part of the
+ * key: they are written by the platform for every message and only contain the user's information.
+ * <p>
+ * The intent recognition provider sets the output contexts of the recognized intent in the session (e.g. the
+ * context a follow-up intent depends on). These changes are cached with the intent and applied to the session on
+ * each hit, so that the follow-up intents still match. The intents whose recognition changed the session's
+ * contexts in a way that cannot be replayed (a context or a context value removed, or a lifespan decreased) are not
+ * cached. Cached intents are copied before being returned, the returned {@link RecognizedIntent}s can be modified by
+ * the caller.
+ *
+ * @see MoodleUtils#MOODLE_RECOGNITION_CACHE_TTL_KEY
+ */
+public class RecognitionCache {
+
+    /**
+     * The separator between the message and the contexts in the cache keys.
+     */
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    /**
+     * The cached intents and their output contexts.
+     */
+    private final ExpiringCache<String, CachedIntent> intents;
+
+    /**
+     * Constructs a new {@link RecognitionCache} with the provided {@code ttl} and {@code maxSize}.
+     *
+     * @param ttl     the time (in milliseconds) after which a cached intent expires
+     * @param maxSize the maximum number of cached intents
+     * @throws IllegalArgumentException if the provided {@code ttl} or {@code maxSize} is lower than {@code 1}
+     */
+    public RecognitionCache(long ttl, int maxSize) {
+        this.intents = new ExpiringCache<>(ttl, maxSize);
+    }
+
+    /**
+     * Computes the cache key of the provided {@code rawMessage} received in the given {@code session}.
+     *
+     * @param rawMessage the received message
+     * @param session    the {@link XatkitSession} of the user who sent the message
+     * @return the cache key
+     * @throws NullPointerException if the provided {@code rawMessage} or {@code session} is {@code null}
+     */
+    public String key(String rawMessage, XatkitSession session) {
+        checkNotNull(rawMessage, "Cannot compute the cache key of the provided message %s", rawMessage);
+        checkNotNull(session, "Cannot compute the cache key of the provided session %s", session);
+        StringBuilder sb = new StringBuilder(rawMessage.length() + 16);
+        normalize(rawMessage, sb);
+        sb.append(KEY_SEPARATOR);
+        appendContexts(session.getRuntimeContexts(), sb);
+        return sb.toString();
+    }
+
+    /**
+     * Returns the {@link RecognizedIntent} of the provided {@code rawMessage} received in the given {@code session}.
+     * <p>
+     * If an intent is cached for the message and the session's active contexts, a copy of the cached intent is
+     * returned and its output contexts are set in the {@code session}. Otherwise the intent is recognized with the
+     * provided {@code recognizer}, and cached with the contexts it set in the {@code session}.
+     *
+     * @param rawMessage the received message
+     * @param session    the {@link XatkitSession} of the user who sent the message
+     * @param recognizer the function recognizing the intent of a message in a session when it is not cached
+     * @return the {@link RecognizedIntent} of the message
+     * @throws NullPointerException if the provided {@code rawMessage}, {@code session}, or {@code recognizer} is
+     *                              {@code null}
+     */
+    public RecognizedIntent recognize(String rawMessage, XatkitSession session,
+                                      BiFunction<String, XatkitSession, RecognizedIntent> recognizer) {
+        checkNotNull(recognizer, "Cannot recognize the message %s with the provided recognizer %s", rawMessage,
+                recognizer);
+        String key = key(rawMessage, session);
+        CachedIntent cached = intents.get(key);
+        if (nonNull(cached)) {
+            RecognizedIntent copy;
+            /*
+             * EcoreUtil.copy reads the cached intent, copies are serialized to avoid concurrent reads of lazily
+             * initialized EMF lists.
+             */
+            synchronized (cached) {
+                copy = EcoreUtil.copy(cached.intent);
+            }
+            copy.setMatchedInput(rawMessage);
+            RuntimeContexts runtimeContexts = session.getRuntimeContexts();
+            for (Map.Entry<String, ContextState> context : cached.outputContexts.entrySet()) {
+                for (Map.Entry<String, Object> value : context.getValue().values.entrySet()) {
+                    runtimeContexts.setContextValue(context.getKey(), context.getValue().lifespan, value.getKey(),
+                            value.getValue());
+                }
+            }
+            return copy;
+        }
+        Map<String, ContextState> contextsBefore = snapshot(session.getRuntimeContexts());
+        RecognizedIntent recognizedIntent = recognizer.apply(rawMessage, session);
+        Map<String, ContextState> outputContexts = outputContexts(contextsBefore,
+                snapshot(session.getRuntimeContexts()));
+        if (nonNull(recognizedIntent) && nonNull(outputContexts)) {
+            intents.put(key, new CachedIntent(EcoreUtil.copy(recognizedIntent), outputContexts));
+        }
+        return recognizedIntent;
+    }
+
+    /**
+     * Removes all the cached intents.
+     * <p>
+     * This method should be called when the intents of the bot are updated.
+     */
+    public void invalidateAll() {
+        intents.invalidateAll();
+    }
+
+    /**
+     * Returns the number of cached intents.
+     *
+     * @return the number of cached intents
+     */
+    public int size() {
+        return intents.size();
+    }
+
+    /**
+     * Returns the number of messages answered from the cache.
+     *
+     * @return the number of messages answered from the cache
+     */
+    public long getHitCount() {
+        return intents.getHitCount();
+    }
+
+    /**
+     * Returns the number of messages that were not found in the cache.
+     *
+     * @return the number of messages that were not found in the cache
+     */
+    public long getMissCount() {
+        return intents.getMissCount();
+    }
+
+    /**
+     * Returns the ratio of messages answered from the cache.
+     *
+     * @return the ratio of messages answered from the cache, or {@code 0} if the cache hasn't been accessed
+     */
+    public double getHitRatio() {
+        return intents.getHitRatio();
+    }
+
+    /**
+     * Appends the normalized form of the provided {@code rawMessage} to the given {@code sb}.
+     * <p>
+     * The whitespaces of the message are collapsed, and its leading and trailing whitespaces and trailing
+     * punctuation are removed. The case of the message is kept, since it is part of the extracted parameters.
+     *
+     * @param rawMessage the message to normalize
+     * @param sb         the {@link StringBuilder} to append the normalized message to
+     */
+    private static void normalize(String rawMessage, StringBuilder sb) {
+        int start = sb.length();
+        boolean pendingSpace = false;
+        for (int i = 0; i < rawMessage.length(); i++) {
+            char c = rawMessage.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = sb.length() > start;
+            } else {
+                if (pendingSpace) {
+                    sb.append(' ');
+                    pendingSpace = false;
+                }
+                sb.append(c);
+            }
+        }
+        int end = sb.length();
+        while (end > start && isTrailingPunctuation(sb.charAt(end - 1))) {
+            end--;
+        }
+        while (end > start && sb.charAt(end - 1) == ' ') {
+            end--;
+        }
+        sb.setLength(end);
+    }
+
+    /**
+     * Returns whether the provided {@code c} is a punctuation character ignored at the end of a message.
+     *
+     * @param c the character to check
+     * @return {@code true} if the character is ignored at the end of a message, {@code false} otherwise
+     */
+    private static boolean isTrailingPunctuation(char c) {
+        return c == '?' || c == '!' || c == '.' || c == ',' || c == ';' || c == '\u00bf' || c == '\u00a1';
+    }
+
+    /**
+     * Appends the active contexts of the provided {@code runtimeContexts} to the given {@code sb}, in a
+     * deterministic order.
+     *
+     * @param runtimeContexts the {@link RuntimeContexts} to append the active contexts of
+     * @param sb              the {@link StringBuilder} to append the contexts to
+     */
+    private static void appendContexts(RuntimeContexts runtimeContexts, StringBuilder sb) {
+        Map<String, Map<String, Object>> contextMap = runtimeContexts.getContextMap();
+        if (isNull(contextMap) || contextMap.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<String, Map<String, Object>> context : new TreeMap<>(contextMap).entrySet()) {
+            String contextName = context.getKey();
+            if (MoodleUtils.MOODLE_CONTEXT_KEY.equals(contextName) || ChatUtils.CHAT_CONTEXT_KEY.equals(contextName)
+                    || runtimeContexts.getContextLifespanCount(contextName) <= 0) {
+                continue;
+            }
+            sb.append(contextName).append('{');
+            if (!isNull(context.getValue())) {
+                for (Map.Entry<String, Object> value : new TreeMap<>(context.getValue()).entrySet()) {
+                    sb.append(value.getKey()).append('=').append(value.getValue()).append(';');
+                }
+            }
+            sb.append('}');
+        }
+    }
+
+    /**
+     * Returns a copy of the contexts of the provided {@code runtimeContexts}, except the
+     * {@link MoodleUtils#MOODLE_CONTEXT_KEY} and {@link ChatUtils#CHAT_CONTEXT_KEY} contexts written by the platform.
+     *
+     * @param runtimeContexts the {@link RuntimeContexts} to copy the contexts of
+     * @return the copied contexts, indexed by name
+     */
+    private static Map<String, ContextState> snapshot(RuntimeContexts runtimeContexts) {
+        Map<String, Map<String, Object>> contextMap = runtimeContexts.getContextMap();
+        if (isNull(contextMap) || contextMap.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, ContextState> snapshot = new HashMap<>();
+        for (Map.Entry<String, Map<String, Object>> context : contextMap.entrySet()) {
+            String contextName = context.getKey();
+            if (MoodleUtils.MOODLE_CONTEXT_KEY.equals(contextName) || ChatUtils.CHAT_CONTEXT_KEY.equals(contextName)) {
+                continue;
+            }
+            snapshot.put(contextName, new ContextState(runtimeContexts.getContextLifespanCount(contextName),
+                    isNull(context.getValue()) ? Collections.emptyMap() : new HashMap<>(context.getValue())));
+        }
+        return snapshot;
+    }
+
+    /**
+     * Computes the contexts set by the intent recognition provider from the contexts of the session before and
+     * after the recognition.
+     *
+     * @param before the contexts of the session before the recognition
+     * @param after  the contexts of the session after the recognition
+     * @return the contexts created or updated by the recognition, or {@code null} if the recognition removed a
+     * context or a context value, or decreased the lifespan of a context
+     */
+    private static Map<String, ContextState> outputContexts(Map<String, ContextState> before,
+                                                            Map<String, ContextState> after) {
+        if (!after.keySet().containsAll(before.keySet())) {
+            return null;
+        }
+        Map<String, ContextState> outputContexts = new HashMap<>();
+        for (Map.Entry<String, ContextState> context : after.entrySet()) {
+            ContextState previous = before.get(context.getKey());
+            ContextState current = context.getValue();
+            if (isNull(previous)) {
+                outputContexts.put(context.getKey(), current);
+            } else if (!previous.equals(current)) {
+                if (current.lifespan < previous.lifespan
+                        || !current.values.keySet().containsAll(previous.values.keySet())) {
+                    return null;
+                }
+                outputContexts.put(context.getKey(), current);
+            }
+        }
+        return outputContexts;
+    }
+
+    /**
+     * A cached intent and the contexts its recognition set in the session.
+     */
+    private static final class CachedIntent {
+
+        /**
+         * The recognized intent.
+         */
+        private final RecognizedIntent intent;
+
+        /**
+         * The contexts created or updated by the recognition of the {@link #intent}, indexed by name.
+         */
+        private final Map<String, ContextState> outputContexts;
+
+        private CachedIntent(RecognizedIntent intent, Map<String, ContextState> outputContexts) {
+            this.intent = intent;
+            this.outputContexts = outputContexts;
+        }
+    }
+
+    /**
+     * The lifespan and the values of a context.
+     */
+    private static final class ContextState {
+
+        /**
+         * The remaining lifespan of the context.
+         */
+        private final int lifespan;
+
+        /**
+         * The values of the context, indexed by key.
+         */
+        private final Map<String, Object> values;
+
+        private ContextState(int lifespan, Map<String, Object> values) {
+            this.lifespan = lifespan;
+            this.values = values;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ContextState)) {
+                return false;
+            }
+            ContextState other = (ContextState) obj;
+            return lifespan == other.lifespan && values.equals(other.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * lifespan + values.hashCode();
+        }
+    }
+}
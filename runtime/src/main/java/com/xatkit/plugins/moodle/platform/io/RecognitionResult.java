@@ -0,0 +1,96 @@
+package com.xatkit.plugins.moodle.platform.io;
+
+import com.xatkit.intent.RecognizedIntent;
+
+import static fr.inria.atlanmod.commons.Preconditions.checkNotNull;
+import static java.util.Objects.isNull;
+
+/**
+ * The result of the recognition of a message of a batch, containing either its {@link RecognizedIntent} or the
+ * error that prevented its recognition.
+ * <p>
+ * Reporting the errors per message allows the {@link RecognitionBatcher} to recognize again only the messages that
+ * failed, instead of the whole batch.
+ *
+ * @see BatchIntentRecognizer
+ */
+public final class RecognitionResult {
+
+    /**
+     * The recognized intent, or {@code null} if the recognition failed.
+     */
+    private final RecognizedIntent intent;
+
+    /**
+     * The error that prevented the recognition, or {@code null} if the intent has been recognized.
+     */
+    private final RuntimeException error;
+
+    /**
+     * Constructs a new {@link RecognitionResult} with the provided {@code intent} and {@code error}.
+     *
+     * @param intent the recognized intent
+     * @param error  the error that prevented the recognition
+     */
+    private RecognitionResult(RecognizedIntent intent, RuntimeException error) {
+        this.intent = intent;
+        this.error = error;
+    }
+
+    /**
+     * Creates a {@link RecognitionResult} for a recognized {@code intent}.
+     *
+     * @param intent the recognized intent
+     * @return the created {@link RecognitionResult}
+     * @throws NullPointerException if the provided {@code intent} is {@code null}
+     */
+    public static RecognitionResult of(RecognizedIntent intent) {
+        checkNotNull(intent, "Cannot create a %s with the provided intent %s",
+                RecognitionResult.class.getSimpleName(), intent);
+        return new RecognitionResult(intent, null);
+    }
+
+    /**
+     * Creates a {@link RecognitionResult} for a message that cannot be recognized.
+     *
+     * @param error the error that prevented the recognition
+     * @return the created {@link RecognitionResult}
+     * @throws NullPointerException if the provided {@code error} is {@code null}
+     */
+    public static RecognitionResult failed(RuntimeException error) {
+        checkNotNull(error, "Cannot create a %s with the provided error %s",
+                RecognitionResult.class.getSimpleName(), error);
+        return new RecognitionResult(null, error);
+    }
+
+    /**
+     * Returns whether the intent has been recognized.
+     *
+     * @return {@code true} if the intent has been recognized, {@code false} otherwise
+     */
+    public boolean isRecognized() {
+        return isNull(error);
+    }
+
+    /**
+     * Returns the recognized intent.
+     *
+     * @return the recognized intent
+     * @throws RuntimeException the error that prevented the recognition, if the intent has not been recognized
+     */
+    public RecognizedIntent getIntent() {
+        if (isNull(intent)) {
+            throw error;
+        }
+        return intent;
+    }
+
+    /**
+     * Returns the error that prevented the recognition.
+     *
+     * @return the error that prevented the recognition, or {@code null} if the intent has been recognized
+     */
+    public RuntimeException getError() {
+        return error;
+    }
+}
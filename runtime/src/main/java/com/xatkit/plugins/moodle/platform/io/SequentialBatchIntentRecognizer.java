@@ -0,0 +1,35 @@
+package com.xatkit.plugins.moodle.platform.io;
+
+import com.xatkit.core.XatkitCore;
+import com.xatkit.core.platform.io.IntentRecognitionHelper;
+import com.xatkit.core.session.XatkitSession;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link BatchIntentRecognizer} recognizing the messages one after the other with the
+ * {@link IntentRecognitionHelper}.
+ * <p>
+ * This recognizer is used when the intent recognition engine doesn't support batches. It doesn't reduce the cost of
+ * the recognition, meaning that the batches of the {@link RecognitionBatcher} should only be enabled with a
+ * recognizer submitting them to the engine in a single call. An error recognizing a message is reported in its
+ * {@link RecognitionResult}, and doesn't prevent the recognition of the following messages.
+ */
+public class SequentialBatchIntentRecognizer implements BatchIntentRecognizer {
+
+    @Override
+    public List<RecognitionResult> recognize(List<String> messages, List<XatkitSession> sessions,
+                                             XatkitCore xatkitCore) {
+        List<RecognitionResult> result = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            try {
+                result.add(RecognitionResult.of(IntentRecognitionHelper.getRecognizedIntent(messages.get(i),
+                        sessions.get(i), xatkitCore)));
+            } catch (RuntimeException e) {
+                result.add(RecognitionResult.failed(e));
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,100 @@
+package com.xatkit.plugins.moodle.platform.io;
+
+import com.corundumstudio.socketio.SocketIOClient;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static fr.inria.atlanmod.commons.Preconditions.checkNotNull;
+
+/**
+ * Tracks the {@link SocketIOClient} of each connected Moodle user.
+ * <p>
+ * Clients are registered when they send a message (the user id is not known before), and unregistered when they
+ * disconnect. If a user has several connections (e.g. multiple tabs) the last one that sent a message is used.
+ */
+public class SocketClientRegistry {
+
+    /**
+     * The clients of the users, indexed by user id.
+     */
+    private final ConcurrentMap<String, SocketIOClient> clients = new ConcurrentHashMap<>();
+
+    /**
+     * The ids of the users, indexed by the session id of their client.
+     */
+    private final ConcurrentMap<UUID, String> users = new ConcurrentHashMap<>();
+
+    /**
+     * Registers the provided {@code client} as the client of the given {@code userId}.
+     *
+     * @param userId the id of the Moodle user
+     * @param client the {@link SocketIOClient} of the user
+     * @return {@code true} if the {@code client} wasn't already registered for the {@code userId}
+     * @throws NullPointerException if the provided {@code userId} or {@code client} is {@code null}
+     */
+    public boolean register(String userId, SocketIOClient client) {
+        checkNotNull(userId, "Cannot register a client for the provided user %s", userId);
+        checkNotNull(client, "Cannot register the provided client %s", client);
+        if (clients.get(userId) != client) {
+            users.put(client.getSessionId(), userId);
+            clients.put(userId, client);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Unregisters the provided {@code client}.
+     * <p>
+     * The user of the {@code client} is not unregistered if another client has been registered for the user since
+     * the {@code client} (e.g. from another tab), in which case this method returns {@code null}.
+     *
+     * @param client the {@link SocketIOClient} to unregister
+     * @return the id of the user of the {@code client} if it was the current client of the user, or {@code null} if
+     * the client wasn't registered or if the user has a more recent client
+     */
+    public String unregister(SocketIOClient client) {
+        String userId = users.remove(client.getSessionId());
+        if (userId != null && clients.remove(userId, client)) {
+            return userId;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the live client of the provided {@code userId}.
+     *
+     * @param userId the id of the Moodle user
+     * @return the {@link SocketIOClient} of the user, or {@code null} if the user doesn't have a live connection
+     */
+    public SocketIOClient get(String userId) {
+        SocketIOClient client = clients.get(userId);
+        if (client != null && !client.isChannelOpen()) {
+            clients.remove(userId, client);
+            users.remove(client.getSessionId());
+            return null;
+        }
+        return client;
+    }
+
+    /**
+     * Returns the id of the user of the provided {@code client}.
+     *
+     * @param client the {@link SocketIOClient} to retrieve the user of
+     * @return the id of the user of the {@code client}, or {@code null} if the client isn't registered
+     */
+    public String getUserId(SocketIOClient client) {
+        return users.get(client.getSessionId());
+    }
+
+    /**
+     * Returns the number of users having a registered client.
+     *
+     * @return the number of users having a registered client
+     */
+    public int size() {
+        return clients.size();
+    }
+}
@@ -0,0 +1,140 @@
+package com.xatkit.plugins.moodle.platform.io;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static fr.inria.atlanmod.commons.Preconditions.checkArgument;
+import static fr.inria.atlanmod.commons.Preconditions.checkNotNull;
+
+/**
+ * A lock-free token bucket limiting the rate of the events of each key.
+ * <p>
+ * Each key is granted {@code rate} events per second, with bursts of up to {@code burst} events. The buckets are
+ * implemented with the generic cell rate algorithm (GCRA): the state of a key is a single {@link AtomicLong}
+ * holding its theoretical arrival time, updated with a compare-and-set. Acquiring a token never blocks and never
+ * allocates once the key is known.
+ * <p>
+ * An event that doesn't conform to the rate can be deferred instead of rejected: {@link #acquire(String, long)}
+ * reserves the next token of the key and returns the delay after which the event conforms, as long as this delay
+ * doesn't exceed the provided maximum.
+ * <p>
+ * The buckets of the keys that are full again are periodically removed, meaning that the memory used by the limiter
+ * is proportional to the number of recently active keys.
+ */
+public class TokenBucketLimiter {
+
+    /**
+     * The value returned by {@link #acquire(String, long)} when the event is rejected.
+     */
+    public static final long REJECTED = -1L;
+
+    /**
+     * The number of acquisitions between two removals of the full buckets (must be a power of 2).
+     */
+    private static final int PURGE_INTERVAL = 4096;
+
+    /**
+     * The time (in nanoseconds) between two tokens.
+     */
+    private final long emissionInterval;
+
+    /**
+     * The time (in nanoseconds) a key can get ahead of its rate, i.e. the size of the bursts.
+     */
+    private final long burstTolerance;
+
+    /**
+     * The theoretical arrival time of the next event of each key.
+     */
+    private final ConcurrentHashMap<String, AtomicLong> arrivalTimes = new ConcurrentHashMap<>();
+
+    /**
+     * The number of acquisitions, used to trigger the removal of the full buckets.
+     */
+    private final AtomicInteger acquisitions = new AtomicInteger();
+
+    /**
+     * Constructs a new {@link TokenBucketLimiter} granting {@code rate} events per second with bursts of up to
+     * {@code burst} events to each key.
+     *
+     * @param rate  the number of events per second granted to each key
+     * @param burst the maximum number of events a key can send at once
+     * @throws IllegalArgumentException if the provided {@code rate} is not strictly positive or if the provided
+     *                                  {@code burst} is lower than {@code 1}
+     */
+    public TokenBucketLimiter(double rate, int burst) {
+        checkArgument(rate > 0, "Cannot construct a %s with the provided rate %s: expected a strictly positive value",
+                TokenBucketLimiter.class.getSimpleName(), rate);
+        checkArgument(burst > 0, "Cannot construct a %s with the provided burst %s: expected a strictly positive "
+                + "value", TokenBucketLimiter.class.getSimpleName(), burst);
+        this.emissionInterval = Math.max(1L, (long) (TimeUnit.SECONDS.toNanos(1) / rate));
+        this.burstTolerance = emissionInterval * burst;
+    }
+
+    /**
+     * Acquires a token for the provided {@code key}, rejecting the event if no token is available.
+     *
+     * @param key the key to acquire a token for
+     * @return {@code true} if a token has been acquired, {@code false} otherwise
+     * @throws NullPointerException if the provided {@code key} is {@code null}
+     */
+    public boolean tryAcquire(String key) {
+        return acquire(key, 0L) == 0L;
+    }
+
+    /**
+     * Acquires a token for the provided {@code key}, reserving a future token if the event can be deferred by up to
+     * {@code maxDelay} nanoseconds.
+     *
+     * @param key      the key to acquire a token for
+     * @param maxDelay the maximum time (in nanoseconds) the event can be deferred
+     * @return {@code 0} if a token has been acquired, the time (in nanoseconds) after which the reserved token is
+     * available if the event must be deferred, or {@link #REJECTED} if the event is rejected
+     * @throws NullPointerException if the provided {@code key} is {@code null}
+     */
+    public long acquire(String key, long maxDelay) {
+        checkNotNull(key, "Cannot acquire a token for the provided key %s", key);
+        long now = System.nanoTime();
+        if ((acquisitions.incrementAndGet() & (PURGE_INTERVAL - 1)) == 0) {
+            purge(now);
+        }
+        AtomicLong arrivalTime = arrivalTimes.get(key);
+        if (arrivalTime == null) {
+            arrivalTime = arrivalTimes.computeIfAbsent(key, k -> new AtomicLong(now));
+        }
+        while (true) {
+            long current = arrivalTime.get();
+            long next = Math.max(current, now) + emissionInterval;
+            long delay = next - now - burstTolerance;
+            if (delay > maxDelay) {
+                return REJECTED;
+            }
+            if (arrivalTime.compareAndSet(current, next)) {
+                return Math.max(0L, delay);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of keys having a bucket.
+     *
+     * @return the number of keys having a bucket
+     */
+    public int size() {
+        return arrivalTimes.size();
+    }
+
+    /**
+     * Removes the buckets that are full at the provided {@code now} time.
+     * <p>
+     * A key whose bucket has been removed is granted a full bucket on its next event, which is the state its bucket
+     * was in.
+     *
+     * @param now the current time (in nanoseconds)
+     */
+    private void purge(long now) {
+        arrivalTimes.entrySet().removeIf(entry -> entry.getValue().get() - now <= 0);
+    }
+}
@@ -0,0 +1,81 @@
+package com.xatkit.plugins.moodle.platform.journal;
+
+/**
+ * An outbound message recorded in the {@link OutboundJournal}.
+ * <p>
+ * This class is immutable.
+ */
+public final class JournalEntry {
+
+    /**
+     * The id of the entry in the journal.
+     */
+    private final long id;
+
+    /**
+     * The endpoint of the moodle instance.
+     */
+    private final String moodleEndpoint;
+
+    /**
+     * The moodle user id to which the message is sent.
+     */
+    private final int toUserId;
+
+    /**
+     * The message sent to the user.
+     */
+    private final String text;
+
+    /**
+     * Constructs a new {@link JournalEntry} with the provided {@code id}, {@code moodleEndpoint}, {@code toUserId},
+     * and {@code text}.
+     *
+     * @param id             the id of the entry in the journal
+     * @param moodleEndpoint the endpoint of the moodle instance
+     * @param toUserId       the moodle user id to which the message is sent
+     * @param text           the message sent to the user
+     */
+    JournalEntry(long id, String moodleEndpoint, int toUserId, String text) {
+        this.id = id;
+        this.moodleEndpoint = moodleEndpoint;
+        this.toUserId = toUserId;
+        this.text = text;
+    }
+
+    /**
+     * Returns the id of the entry in the journal.
+     *
+     * @return the id of the entry in the journal
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Returns the endpoint of the moodle instance.
+     *
+     * @return the endpoint of the moodle instance
+     */
+    public String getMoodleEndpoint() {
+        return moodleEndpoint;
+    }
+
+    /**
+     * Returns the moodle user id to which the message is sent.
+     *
+     * @return the moodle user id to which the message is sent
+     */
+    public int getToUserId() {
+        return toUserId;
+    }
+
+    /**
+     * Returns the message sent to the user.
+     *
+     * @return the message sent to the user
+     */
+    public String getText() {
+        return text;
+    }
+}
@@ -0,0 +1,601 @@
+package com.xatkit.plugins.moodle.platform.journal;
+
+import com.xatkit.core.XatkitException;
+
+import fr.inria.atlanmod.commons.log.Log;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import static fr.inria.atlanmod.commons.Preconditions.checkArgument;
+import static fr.inria.atlanmod.commons.Preconditions.checkNotNull;
+import static java.util.Objects.nonNull;
+
+/**
+ * An append-only journal of the outbound messages, used to send again the messages that were not acknowledged by
+ * Moodle when the platform stopped.
+ * <p>
+ * Each message is {@link #append(String, int, String) appended} to the journal before being sent, and
+ * {@link #acknowledge(long) acknowledged} once Moodle returned a result for it. The journal is stored in fixed-size
+ * segment files that are memory-mapped, meaning that recording a message only costs a copy in the page cache of the
+ * OS: the records survive a crash of the JVM, but may be lost if the host crashes before the OS writes them to the
+ * disk (see the {@code sync} parameter of {@link #OutboundJournal(Path, int, boolean)}).
+ * <p>
+ * A new segment is created when the current one is full. Segments whose messages are all acknowledged are deleted,
+ * oldest first, and the messages still pending in the oldest segment are copied to the current one when a new
+ * segment is created, so that a message that stays pending doesn't prevent the deletion of the subsequent segments.
+ * <p>
+ * The messages that were still pending when the journal was opened are returned by {@link #getPending()}.
+ * <p>
+ * <b>Note</b>: the records contain the Moodle endpoint of the messages, including its {@code wstoken}. The journal
+ * directory must be readable by the bot only.
+ */
+public class OutboundJournal {
+
+    /**
+     * The prefix of the segment files.
+     */
+    private static final String SEGMENT_PREFIX = "outbound-";
+
+    /**
+     * The suffix of the segment files.
+     */
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    /**
+     * The type of the records storing a message to send.
+     */
+    private static final byte PENDING = 1;
+
+    /**
+     * The type of the records storing the acknowledgement of a message.
+     */
+    private static final byte ACK = 2;
+
+    /**
+     * The size of the header of a record (the length and the CRC of its body).
+     */
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    /**
+     * The size of the body of an {@link #ACK} record.
+     */
+    private static final int ACK_BODY_SIZE = 9;
+
+    /**
+     * The directory containing the segment files.
+     */
+    private final Path directory;
+
+    /**
+     * The size (in bytes) of a segment file.
+     */
+    private final int segmentSize;
+
+    /**
+     * Whether each record is written to the disk before {@link #append(String, int, String)} and
+     * {@link #acknowledge(long)} return.
+     */
+    private final boolean sync;
+
+    /**
+     * The segments of the journal, from the oldest to the current one.
+     */
+    private final Deque<Segment> segments = new ArrayDeque<>();
+
+    /**
+     * The pending messages, indexed by id, with the segment containing their latest record.
+     */
+    private final Map<Long, Located> pending = new LinkedHashMap<>();
+
+    /**
+     * The messages that were pending when the journal was opened.
+     */
+    private final List<JournalEntry> recovered;
+
+    /**
+     * The checksum used to compute the CRC of the records.
+     */
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * The segment the records are appended to.
+     */
+    private Segment head;
+
+    /**
+     * The id of the last appended message.
+     */
+    private long lastId;
+
+    /**
+     * Whether the journal is closed.
+     */
+    private boolean closed;
+
+    /**
+     * Constructs a new {@link OutboundJournal} stored in the provided {@code directory}.
+     * <p>
+     * The existing segments of the {@code directory} are read, and the messages they contain that were not
+     * acknowledged are available through {@link #getPending()}. A truncated or corrupted record ends the segment it
+     * belongs to.
+     *
+     * @param directory   the directory containing the segment files
+     * @param segmentSize the size (in bytes) of a segment file
+     * @param sync        whether each record is written to the disk before the journal's methods return
+     * @throws NullPointerException     if the provided {@code directory} is {@code null}
+     * @throws IllegalArgumentException if the provided {@code segmentSize} is lower than {@code 4096}
+     * @throws XatkitException          if an error occurred when reading or creating the segment files
+     */
+    public OutboundJournal(Path directory, int segmentSize, boolean sync) {
+        checkNotNull(directory, "Cannot construct a %s with the provided directory %s",
+                OutboundJournal.class.getSimpleName(), directory);
+        checkArgument(segmentSize >= 4096, "Cannot construct a %s with the provided segment size %s: expected at "
+                + "least 4096 bytes", OutboundJournal.class.getSimpleName(), segmentSize);
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.sync = sync;
+        try {
+            Files.createDirectories(directory);
+            for (Path file : listSegmentFiles()) {
+                read(file);
+            }
+            if (segments.isEmpty()) {
+                head = new Segment(0);
+                head.map();
+                segments.add(head);
+            } else {
+                head = segments.getLast();
+                for (Segment segment : segments) {
+                    if (segment != head) {
+                        segment.buffer = null;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new XatkitException("Cannot open the outbound journal in " + directory, e);
+        }
+        this.recovered = new ArrayList<>(pending.size());
+        for (Located located : pending.values()) {
+            recovered.add(located.entry);
+        }
+        deleteAcknowledgedSegments();
+        if (!recovered.isEmpty()) {
+            Log.info("Outbound journal: {0} message(s) were not acknowledged by Moodle", recovered.size());
+        }
+    }
+
+    /**
+     * Records the provided message before it is sent.
+     *
+     * @param moodleEndpoint the endpoint of the moodle instance
+     * @param toUserId       the moodle user id to which the message is sent
+     * @param text           the message sent to the user
+     * @return the id of the message in the journal, or {@code -1} if the message couldn't be recorded
+     */
+    public synchronized long append(String moodleEndpoint, int toUserId, String text) {
+        if (closed) {
+            return -1;
+        }
+        JournalEntry entry = new JournalEntry(++lastId, moodleEndpoint, toUserId, text);
+        byte[] endpointBytes = moodleEndpoint.getBytes(StandardCharsets.UTF_8);
+        byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
+        int bodySize = 1 + 8 + 4 + 4 + endpointBytes.length + 4 + textBytes.length;
+        if (RECORD_HEADER_SIZE + bodySize > segmentSize) {
+            Log.warn("Cannot record the message {0} in the outbound journal: the message is larger than a segment",
+                    entry.getId());
+            return -1;
+        }
+        try {
+            Segment segment = ensureCapacity(RECORD_HEADER_SIZE + bodySize);
+            writePending(segment, entry, endpointBytes, textBytes);
+            pending.put(entry.getId(), new Located(entry, segment));
+            segment.live++;
+        } catch (IOException e) {
+            Log.error("Cannot record the message {0} in the outbound journal: {1}", entry.getId(), e.getMessage());
+            return -1;
+        }
+        return entry.getId();
+    }
+
+    /**
+     * Records that Moodle returned a result for the message with the provided {@code id}.
+     * <p>
+     * This method does nothing if the message is unknown or already acknowledged.
+     *
+     * @param id the id of the message in the journal
+     */
+    public synchronized void acknowledge(long id) {
+        if (closed) {
+            return;
+        }
+        Located located = pending.remove(id);
+        if (located == null) {
+            return;
+        }
+        located.segment.live--;
+        try {
+            Segment segment = ensureCapacity(RECORD_HEADER_SIZE + ACK_BODY_SIZE);
+            ByteBufferWriter writer = new ByteBufferWriter(segment, ACK_BODY_SIZE);
+            writer.buffer.put(ACK).putLong(id);
+            writer.commit();
+        } catch (IOException e) {
+            Log.error("Cannot acknowledge the message {0} in the outbound journal: {1}", id, e.getMessage());
+        }
+        deleteAcknowledgedSegments();
+    }
+
+    /**
+     * Returns the messages that were not acknowledged when the journal was opened, in the order they were appended.
+     * <p>
+     * These messages are still pending: they must be sent again and {@link #acknowledge(long) acknowledged} once
+     * Moodle returned a result for them.
+     *
+     * @return the messages that were not acknowledged when the journal was opened
+     */
+    public List<JournalEntry> getPending() {
+        return recovered;
+    }
+
+    /**
+     * Returns the messages that are not acknowledged, in the order they were appended.
+     * <p>
+     * Unlike {@link #getPending()}, the returned messages include the messages appended since the journal was
+     * opened, including the ones that are being sent.
+     *
+     * @return the messages that are not acknowledged
+     */
+    public synchronized List<JournalEntry> getUnacknowledged() {
+        List<JournalEntry> entries = new ArrayList<>(pending.size());
+        for (Located located : pending.values()) {
+            entries.add(located.entry);
+        }
+        return entries;
+    }
+
+    /**
+     * Returns whether the message with the provided {@code id} is not acknowledged.
+     *
+     * @param id the id of the message in the journal
+     * @return {@code true} if the message is not acknowledged, {@code false} if it is unknown or acknowledged
+     */
+    public synchronized boolean isPending(long id) {
+        return pending.containsKey(id);
+    }
+
+    /**
+     * Returns the number of messages that are not acknowledged.
+     *
+     * @return the number of messages that are not acknowledged
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Returns the number of segment files of the journal.
+     *
+     * @return the number of segment files of the journal
+     */
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Writes the current segment to the disk and closes the journal.
+     * <p>
+     * The messages that are not acknowledged are sent again the next time the journal is opened.
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        head.buffer.force();
+        head.buffer = null;
+    }
+
+    /**
+     * Returns the segment the records of {@code size} bytes must be appended to.
+     * <p>
+     * A new segment is created if the current one doesn't have enough space left. The pending messages of the
+     * oldest segment are then copied to the new segment if they fit in it, allowing to delete the oldest segment.
+     *
+     * @param size the size (in bytes) of the record to append
+     * @return the segment the record must be appended to
+     * @throws IOException if an error occurred when creating the new segment
+     */
+    private Segment ensureCapacity(int size) throws IOException {
+        if (head.buffer.remaining() >= size) {
+            return head;
+        }
+        Segment next = new Segment(head.index + 1);
+        next.map();
+        if (sync) {
+            head.buffer.force();
+        }
+        head.buffer = null;
+        segments.add(next);
+        head = next;
+        Segment oldest = segments.getFirst();
+        if (oldest != head && oldest.live > 0) {
+            relocate(oldest, size);
+        }
+        deleteAcknowledgedSegments();
+        return head;
+    }
+
+    /**
+     * Copies the pending messages of the provided {@code segment} to the current segment.
+     * <p>
+     * The messages are not copied if they don't fit in the current segment along with a record of {@code reserved}
+     * bytes.
+     *
+     * @param segment  the segment to copy the pending messages of
+     * @param reserved the size (in bytes) of the record that must fit in the current segment after the copy
+     */
+    private void relocate(Segment segment, int reserved) {
+        List<Located> moved = new ArrayList<>(segment.live);
+        int size = reserved;
+        for (Located located : pending.values()) {
+            if (located.segment == segment) {
+                moved.add(located);
+                size += RECORD_HEADER_SIZE + located.entry.getMoodleEndpoint().length() * 4
+                        + located.entry.getText().length() * 4 + 21;
+            }
+        }
+        if (size > head.buffer.remaining()) {
+            return;
+        }
+        for (Located located : moved) {
+            JournalEntry entry = located.entry;
+            writePending(head, entry, entry.getMoodleEndpoint().getBytes(StandardCharsets.UTF_8),
+                    entry.getText().getBytes(StandardCharsets.UTF_8));
+            located.segment = head;
+            segment.live--;
+            head.live++;
+        }
+        Log.debug("Outbound journal: moved {0} pending message(s) from the segment {1}", moved.size(),
+                segment.index);
+    }
+
+    /**
+     * Deletes the oldest segments that don't contain pending messages.
+     * <p>
+     * Segments are deleted oldest first: an acknowledgement record stored in a segment may refer to a message
+     * stored in a previous one, which would be considered pending again if the segment containing its
+     * acknowledgement was deleted first.
+     */
+    private void deleteAcknowledgedSegments() {
+        while (segments.size() > 1 && segments.getFirst().live == 0) {
+            Segment segment = segments.removeFirst();
+            try {
+                Files.deleteIfExists(segment.file);
+            } catch (IOException e) {
+                Log.warn("Cannot delete the outbound journal segment {0}: {1}", segment.file, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Writes a {@link #PENDING} record for the provided {@code entry} in the given {@code segment}.
+     *
+     * @param segment       the segment to write the record to
+     * @param entry         the message to write
+     * @param endpointBytes the UTF-8 encoded endpoint of the message
+     * @param textBytes     the UTF-8 encoded text of the message
+     */
+    private void writePending(Segment segment, JournalEntry entry, byte[] endpointBytes, byte[] textBytes) {
+        ByteBufferWriter writer = new ByteBufferWriter(segment, 1 + 8 + 4 + 4 + endpointBytes.length + 4
+                + textBytes.length);
+        writer.buffer.put(PENDING).putLong(entry.getId()).putInt(entry.getToUserId())
+                .putInt(endpointBytes.length).put(endpointBytes)
+                .putInt(textBytes.length).put(textBytes);
+        writer.commit();
+    }
+
+    /**
+     * Lists the segment files of the journal directory, from the oldest to the most recent one.
+     *
+     * @return the segment files of the journal directory
+     * @throws IOException if an error occurred when listing the directory
+     */
+    private List<Path> listSegmentFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        files.sort(null);
+        return files;
+    }
+
+    /**
+     * Reads the records of the provided segment {@code file}.
+     *
+     * @param file the segment file to read
+     * @throws IOException if an error occurred when reading the file
+     */
+    private void read(Path file) throws IOException {
+        String name = file.getFileName().toString();
+        long index;
+        try {
+            index = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            Log.warn("Ignoring the outbound journal file {0}: unexpected name", file);
+            return;
+        }
+        Segment segment = new Segment(index);
+        segment.map();
+        segments.add(segment);
+        MappedByteBuffer buffer = segment.buffer;
+        while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+            int start = buffer.position();
+            int bodySize = buffer.getInt();
+            if (bodySize == 0) {
+                buffer.position(start);
+                return;
+            }
+            int checksum = buffer.getInt();
+            if (bodySize < ACK_BODY_SIZE || bodySize > buffer.remaining() || checksum != checksum(buffer,
+                    buffer.position(), bodySize)) {
+                Log.warn("Outbound journal segment {0} is corrupted at offset {1}, ignoring its remaining records",
+                        file, start);
+                buffer.position(start);
+                return;
+            }
+            int end = buffer.position() + bodySize;
+            try {
+                byte type = buffer.get();
+                long id = buffer.getLong();
+                lastId = Math.max(lastId, id);
+                if (type == PENDING) {
+                    int toUserId = buffer.getInt();
+                    String endpoint = readString(buffer);
+                    String text = readString(buffer);
+                    Located previous = pending.put(id, new Located(new JournalEntry(id, endpoint, toUserId, text),
+                            segment));
+                    if (nonNull(previous)) {
+                        previous.segment.live--;
+                    }
+                    segment.live++;
+                } else if (type == ACK) {
+                    Located acknowledged = pending.remove(id);
+                    if (nonNull(acknowledged)) {
+                        acknowledged.segment.live--;
+                    }
+                }
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                Log.warn("Outbound journal segment {0} contains an invalid record at offset {1}", file, start);
+            }
+            buffer.position(end);
+        }
+    }
+
+    /**
+     * Reads a length-prefixed UTF-8 string from the provided {@code buffer}.
+     *
+     * @param buffer the buffer to read the string from
+     * @return the read string
+     */
+    private static String readString(MappedByteBuffer buffer) {
+        int length = buffer.getInt();
+        checkArgument(length >= 0 && length <= buffer.remaining(), "Invalid string length %s", length);
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Computes the CRC of the {@code length} bytes of the provided {@code buffer} starting at {@code offset}.
+     *
+     * @param buffer the buffer containing the bytes
+     * @param offset the offset of the first byte
+     * @param length the number of bytes
+     * @return the CRC of the bytes
+     */
+    private int checksum(MappedByteBuffer buffer, int offset, int length) {
+        ByteBuffer bytes = buffer.duplicate();
+        bytes.limit(offset + length).position(offset);
+        crc.reset();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Writes a record in the current position of a segment.
+     * <p>
+     * The body of the record is written first, and its length is written last by {@link #commit()}: a record
+     * interrupted by a crash has a {@code 0} length and ends the segment when it is read again.
+     */
+    private class ByteBufferWriter {
+
+        private final Segment segment;
+
+        private final int start;
+
+        private final int bodySize;
+
+        private final MappedByteBuffer buffer;
+
+        private ByteBufferWriter(Segment segment, int bodySize) {
+            this.segment = segment;
+            this.buffer = segment.buffer;
+            this.start = buffer.position();
+            this.bodySize = bodySize;
+            buffer.position(start + RECORD_HEADER_SIZE);
+        }
+
+        private void commit() {
+            int checksum = checksum(buffer, start + RECORD_HEADER_SIZE, bodySize);
+            buffer.putInt(start + 4, checksum);
+            buffer.putInt(start, bodySize);
+            if (sync) {
+                segment.buffer.force();
+            }
+        }
+    }
+
+    /**
+     * A segment file of the journal.
+     */
+    private class Segment {
+
+        private final long index;
+
+        private final Path file;
+
+        /**
+         * The mapping of the file, {@code null} if no record can be appended to the segment.
+         */
+        private MappedByteBuffer buffer;
+
+        /**
+         * The number of pending messages whose latest record is stored in the segment.
+         */
+        private int live;
+
+        private Segment(long index) {
+            this.index = index;
+            this.file = directory.resolve(String.format("%s%019d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+        }
+
+        private void map() throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(segmentSize,
+                        channel.size()));
+            }
+        }
+    }
+
+    /**
+     * A pending message with the segment containing its latest record.
+     */
+    private static class Located {
+
+        private final JournalEntry entry;
+
+        private Segment segment;
+
+        private Located(JournalEntry entry, Segment segment) {
+            this.entry = entry;
+            this.segment = segment;
+        }
+    }
+}
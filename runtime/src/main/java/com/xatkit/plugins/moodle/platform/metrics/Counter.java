@@ -0,0 +1,39 @@
+package com.xatkit.plugins.moodle.platform.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A monotonic counter optimized for concurrent increments.
+ */
+public class Counter {
+
+    /**
+     * The value of the counter.
+     */
+    private final LongAdder value = new LongAdder();
+
+    /**
+     * Increments the counter.
+     */
+    public void increment() {
+        value.increment();
+    }
+
+    /**
+     * Adds the provided {@code delta} to the counter.
+     *
+     * @param delta the value to add
+     */
+    public void add(long delta) {
+        value.add(delta);
+    }
+
+    /**
+     * Returns the value of the counter.
+     *
+     * @return the value of the counter
+     */
+    public long get() {
+        return value.sum();
+    }
+}
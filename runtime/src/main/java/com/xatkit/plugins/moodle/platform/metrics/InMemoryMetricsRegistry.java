@@ -0,0 +1,63 @@
+package com.xatkit.plugins.moodle.platform.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongSupplier;
+
+import static fr.inria.atlanmod.commons.Preconditions.checkNotNull;
+
+/**
+ * The default {@link MetricsRegistry}, storing the metrics in memory.
+ */
+public class InMemoryMetricsRegistry implements MetricsRegistry {
+
+    /**
+     * The registered counters, indexed by name.
+     */
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+
+    /**
+     * The registered histograms, indexed by name.
+     */
+    private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    /**
+     * The registered gauges, indexed by name.
+     */
+    private final ConcurrentMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    @Override
+    public Counter counter(String name) {
+        Counter counter = counters.get(name);
+        return counter == null ? counters.computeIfAbsent(name, k -> new Counter()) : counter;
+    }
+
+    @Override
+    public LatencyHistogram histogram(String name) {
+        LatencyHistogram histogram = histograms.get(name);
+        return histogram == null ? histograms.computeIfAbsent(name, k -> new LatencyHistogram()) : histogram;
+    }
+
+    @Override
+    public void gauge(String name, LongSupplier supplier) {
+        checkNotNull(supplier, "Cannot register the gauge %s with the provided supplier %s", name, supplier);
+        gauges.put(name, supplier);
+    }
+
+    @Override
+    public Map<String, Counter> getCounters() {
+        return Collections.unmodifiableMap(counters);
+    }
+
+    @Override
+    public Map<String, LatencyHistogram> getHistograms() {
+        return Collections.unmodifiableMap(histograms);
+    }
+
+    @Override
+    public Map<String, LongSupplier> getGauges() {
+        return Collections.unmodifiableMap(gauges);
+    }
+}
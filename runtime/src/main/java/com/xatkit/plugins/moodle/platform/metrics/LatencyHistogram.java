@@ -0,0 +1,186 @@
+package com.xatkit.plugins.moodle.platform.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static fr.inria.atlanmod.commons.Preconditions.checkArgument;
+
+/**
+ * A lock-free latency histogram with a bounded relative error.
+ * <p>
+ * Values are recorded in log-linear buckets, in the spirit of HdrHistogram: each power of two is divided in
+ * {@value #HALF_SUB_BUCKET_COUNT} linear sub-buckets, meaning that the values reported by
+ * {@link #getValueAtPercentile(double)} are within {@code 1/64} (~1.6%) of the recorded values, whatever their
+ * magnitude. Recording a value doesn't allocate and only updates a few atomic counters, which makes the histogram
+ * suitable for hot paths.
+ * <p>
+ * Values are expressed in nanoseconds, values greater than {@link #MAX_VALUE} are recorded as {@link #MAX_VALUE}.
+ */
+public class LatencyHistogram {
+
+    /**
+     * The number of bits used to index the sub-buckets.
+     */
+    private static final int SUB_BUCKET_BITS = 7;
+
+    /**
+     * The number of values recorded without loss of precision.
+     */
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * The number of sub-buckets of each power of two above {@link #SUB_BUCKET_COUNT}.
+     */
+    private static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT / 2;
+
+    /**
+     * The maximum value that can be recorded (~4.9 hours in nanoseconds).
+     */
+    public static final long MAX_VALUE = (1L << 44) - 1;
+
+    /**
+     * The number of buckets of the histogram.
+     */
+    private static final int BUCKET_COUNT = indexOf(MAX_VALUE) + 1;
+
+    /**
+     * The number of values recorded in each bucket.
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    /**
+     * The number of recorded values.
+     */
+    private final LongAdder totalCount = new LongAdder();
+
+    /**
+     * The sum of the recorded values.
+     */
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * The greatest recorded value.
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records the provided {@code value}.
+     *
+     * @param value the value to record (in nanoseconds)
+     * @throws IllegalArgumentException if the provided {@code value} is negative
+     */
+    public void record(long value) {
+        checkArgument(value >= 0, "Cannot record the provided value %s: expected a positive or null value", value);
+        long clamped = Math.min(value, MAX_VALUE);
+        counts.incrementAndGet(indexOf(clamped));
+        totalCount.increment();
+        sum.add(clamped);
+        long currentMax = max.get();
+        while (clamped > currentMax && !max.compareAndSet(currentMax, clamped)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * Records the time elapsed since the provided {@code startNanos}.
+     *
+     * @param startNanos the start time, as returned by {@link System#nanoTime()}
+     */
+    public void recordSince(long startNanos) {
+        record(Math.max(0, System.nanoTime() - startNanos));
+    }
+
+    /**
+     * Returns the number of recorded values.
+     *
+     * @return the number of recorded values
+     */
+    public long getCount() {
+        return totalCount.sum();
+    }
+
+    /**
+     * Returns the sum of the recorded values.
+     *
+     * @return the sum of the recorded values (in nanoseconds)
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * Returns the greatest recorded value.
+     *
+     * @return the greatest recorded value (in nanoseconds)
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the mean of the recorded values.
+     *
+     * @return the mean of the recorded values (in nanoseconds), or {@code 0} if no value has been recorded
+     */
+    public double getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : (double) getSum() / count;
+    }
+
+    /**
+     * Returns the value below which the provided {@code percentile} of the recorded values fall.
+     *
+     * @param percentile the percentile, between {@code 0} and {@code 100}
+     * @return the value at the given percentile (in nanoseconds), or {@code 0} if no value has been recorded
+     * @throws IllegalArgumentException if the provided {@code percentile} is not between {@code 0} and {@code 100}
+     */
+    public long getValueAtPercentile(double percentile) {
+        checkArgument(percentile >= 0 && percentile <= 100, "Cannot compute the provided percentile %s: expected a "
+                + "value between 0 and 100", percentile);
+        long count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Returns the index of the bucket of the provided {@code value}.
+     *
+     * @param value the value to compute the bucket index of
+     * @return the index of the bucket
+     */
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+        int subBucket = (int) (value >>> shift);
+        return SUB_BUCKET_COUNT + (shift - 1) * HALF_SUB_BUCKET_COUNT + (subBucket - HALF_SUB_BUCKET_COUNT);
+    }
+
+    /**
+     * Returns the highest value recorded in the bucket with the provided {@code index}.
+     *
+     * @param index the index of the bucket
+     * @return the highest value of the bucket
+     */
+    private static long highestValueOf(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int offset = index - SUB_BUCKET_COUNT;
+        int shift = offset / HALF_SUB_BUCKET_COUNT + 1;
+        long subBucket = offset % HALF_SUB_BUCKET_COUNT + HALF_SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,193 @@
+package com.xatkit.plugins.moodle.platform.metrics;
+
+/**
+ * The names of the metrics recorded by the Moodle platform.
+ */
+public interface MetricNames {
+
+    /**
+     * The number of messages received from the Moodle users.
+     */
+    String INBOUND_MESSAGES = "moodle_inbound_messages_total";
+
+    /**
+     * The number of received messages rejected because the inbound queue was full.
+     */
+    String INBOUND_REJECTED = "moodle_inbound_rejected_total";
+
+    /**
+     * The number of received messages shed because their sender exceeded its rate limit, labelled with {@code scope}
+     * ({@code user} or {@code course}).
+     */
+    String INBOUND_RATE_LIMITED = "moodle_inbound_rate_limited_total";
+
+    /**
+     * The number of received messages deferred because their sender exceeded its rate limit.
+     */
+    String INBOUND_DEFERRED = "moodle_inbound_deferred_total";
+
+    /**
+     * The number of received messages waiting to be processed.
+     */
+    String INBOUND_QUEUE_DEPTH = "moodle_inbound_queue_depth";
+
+    /**
+     * The time spent recognizing the intent of a received message.
+     */
+    String RECOGNITION_LATENCY = "moodle_recognition_latency_seconds";
+
+    /**
+     * The number of received messages whose intent was found in the recognition cache.
+     */
+    String RECOGNITION_CACHE_HITS = "moodle_recognition_cache_hits_total";
+
+    /**
+     * The number of received messages whose intent was not found in the recognition cache.
+     */
+    String RECOGNITION_CACHE_MISSES = "moodle_recognition_cache_misses_total";
+
+    /**
+     * The number of intents stored in the recognition cache.
+     */
+    String RECOGNITION_CACHE_SIZE = "moodle_recognition_cache_size";
+
+    /**
+     * The number of batches of messages whose intents have been recognized together.
+     */
+    String RECOGNITION_BATCHES = "moodle_recognition_batches_total";
+
+    /**
+     * The number of messages whose intents have been recognized in a batch.
+     */
+    String RECOGNITION_BATCHED_MESSAGES = "moodle_recognition_batched_messages_total";
+
+    /**
+     * The number of messages recognized right away because no other message was expected.
+     */
+    String RECOGNITION_BATCH_BYPASSED = "moodle_recognition_batch_bypassed_total";
+
+    /**
+     * The number of messages of a batch recognized again separately because their recognition failed.
+     */
+    String RECOGNITION_BATCH_RETRIED = "moodle_recognition_batch_retried_total";
+
+    /**
+     * The time spent calling a Moodle web service function, labelled with {@code wsfunction}.
+     */
+    String REST_LATENCY = "moodle_rest_latency_seconds";
+
+    /**
+     * The number of errors returned by Moodle, labelled with {@code wsfunction} and {@code errorcode}.
+     */
+    String REST_ERRORS = "moodle_rest_errors_total";
+
+    /**
+     * The number of read-only calls merged with an identical call in flight instead of sending their own request.
+     */
+    String REST_COALESCED = "moodle_rest_coalesced_total";
+
+    /**
+     * The number of users whose courses have been prefetched.
+     */
+    String COURSES_PREFETCHED = "moodle_courses_prefetched_total";
+
+    /**
+     * The number of users whose courses couldn't be prefetched.
+     */
+    String COURSES_PREFETCH_ERRORS = "moodle_courses_prefetch_errors_total";
+
+    /**
+     * The number of retried calls, labelled with {@code wsfunction}.
+     */
+    String REST_RETRIES = "moodle_rest_retries_total";
+
+    /**
+     * The number of calls rejected without waiting for Moodle or aborted at their deadline, labelled with {@code
+     * wsfunction} and {@code reason} ({@code circuit_open}, {@code bulkhead_full}, or {@code deadline_exceeded}).
+     */
+    String REST_REJECTED = "moodle_rest_rejected_total";
+
+    /**
+     * The state of the circuit breaker of a function ({@code 0} closed, {@code 1} open, {@code 2} half-open),
+     * labelled with {@code wsfunction}.
+     */
+    String CIRCUIT_STATE = "moodle_circuit_state";
+
+    /**
+     * The number of messages Moodle failed to send.
+     */
+    String MESSAGE_ERRORS = "moodle_message_errors_total";
+
+    /**
+     * The number of outbound messages recorded in the journal and not acknowledged yet.
+     */
+    String OUTBOUND_JOURNAL_PENDING = "moodle_outbound_journal_pending";
+
+    /**
+     * The number of outbound messages of the journal sent again because their previous send failed.
+     */
+    String OUTBOUND_JOURNAL_RETRIED = "moodle_outbound_journal_retried_total";
+
+    /**
+     * The number of outbound messages whose send exceeded its deadline: Moodle may have delivered them, they are not
+     * sent again.
+     */
+    String OUTBOUND_UNKNOWN = "moodle_outbound_unknown_total";
+
+    /**
+     * The number of messages delivered by course broadcasts, labelled with {@code channel} ({@code socket} or
+     * {@code rest}).
+     */
+    String BROADCAST_DELIVERIES = "moodle_broadcast_deliveries_total";
+
+    /**
+     * The number of Moodle sessions in memory.
+     */
+    String SESSIONS = "moodle_sessions";
+
+    /**
+     * The number of Moodle sessions evicted from memory, labelled with {@code reason} ({@code idle} or
+     * {@code capacity}).
+     */
+    String SESSIONS_EVICTED = "moodle_sessions_evicted_total";
+
+    /**
+     * The number of evicted Moodle sessions loaded back from the session store.
+     */
+    String SESSIONS_REHYDRATED = "moodle_sessions_rehydrated_total";
+
+    /**
+     * The number of Moodle sessions in the session store.
+     */
+    String SESSIONS_STORED = "moodle_sessions_stored";
+
+    /**
+     * The number of courses in the course catalog.
+     */
+    String CATALOG_COURSES = "moodle_catalog_courses";
+
+    /**
+     * The number of completed synchronizations of the course catalog.
+     */
+    String CATALOG_SYNCS = "moodle_catalog_syncs_total";
+
+    /**
+     * The number of synchronizations of the course catalog that failed.
+     */
+    String CATALOG_SYNC_ERRORS = "moodle_catalog_sync_errors_total";
+
+    /**
+     * The number of connected sockets.
+     */
+    String CONNECTED_SOCKETS = "moodle_connected_sockets";
+
+    /**
+     * The number of users having a registered socket.
+     */
+    String CONNECTED_USERS = "moodle_connected_users";
+
+    /**
+     * Whether the platform is ready to receive traffic ({@code 1}) or not ({@code 0}, starting or draining).
+     */
+    String READY = "moodle_ready";
+}
@@ -0,0 +1,239 @@
+package com.xatkit.plugins.moodle.platform.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+import com.xatkit.core.XatkitException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
+
+import static fr.inria.atlanmod.commons.Preconditions.checkNotNull;
+
+/**
+ * A local HTTP endpoint exposing the metrics of a {@link MetricsRegistry} in the Prometheus text format.
+ * <p>
+ * The metrics are served on {@code /metrics}. {@link LatencyHistogram}s are exposed as summaries (with the
+ * {@code 0.5}, {@code 0.9}, {@code 0.99}, and {@code 0.999} quantiles) expressed in seconds, and their maximum
+ * value is exposed in an additional {@code <name>_max} gauge.
+ * <p>
+ * If a readiness check is provided, the endpoint also serves {@code /ready}, which responds {@code 200} when the
+ * platform is ready to receive traffic and {@code 503} otherwise (e.g. while it is starting or draining). This
+ * allows load balancers and orchestrators to stop routing new users to a node before it is shut down.
+ */
+public class MetricsEndpoint {
+
+    /**
+     * The path of the endpoint.
+     */
+    public static final String METRICS_PATH = "/metrics";
+
+    /**
+     * The path of the readiness endpoint.
+     */
+    public static final String READY_PATH = "/ready";
+
+    /**
+     * The quantiles exposed for each {@link LatencyHistogram}.
+     */
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    /**
+     * The number of nanoseconds in a second.
+     */
+    private static final double NANOS_PER_SECOND = 1_000_000_000d;
+
+    /**
+     * The registry containing the exposed metrics.
+     */
+    private final MetricsRegistry registry;
+
+    /**
+     * The underlying HTTP server.
+     */
+    private final HttpServer server;
+
+    /**
+     * Constructs a new {@link MetricsEndpoint} exposing the metrics of the provided {@code registry} on the given
+     * {@code port} of the loopback interface.
+     * <p>
+     * This constructor starts the underlying HTTP server, {@link #stop()} must be called to release it.
+     *
+     * @param registry the {@link MetricsRegistry} containing the metrics to expose
+     * @param port     the port of the endpoint
+     * @throws NullPointerException if the provided {@code registry} is {@code null}
+     * @throws XatkitException      if the HTTP server cannot be started
+     */
+    public MetricsEndpoint(MetricsRegistry registry, int port) {
+        this(registry, null, port, null);
+    }
+
+    /**
+     * Constructs a new {@link MetricsEndpoint} exposing the metrics of the provided {@code registry} and the
+     * given {@code readiness} check on the given {@code port} of the provided {@code host}.
+     * <p>
+     * The endpoint exposes the internals of the platform: it is bound to the loopback interface unless another
+     * {@code host} is provided (e.g. {@code 0.0.0.0} to accept the requests of a remote Prometheus server). This
+     * constructor starts the underlying HTTP server, {@link #stop()} must be called to release it.
+     *
+     * @param registry  the {@link MetricsRegistry} containing the metrics to expose
+     * @param host      the host name or address of the interface to bind to, or {@code null} to bind to the
+     *                  loopback interface
+     * @param port      the port of the endpoint
+     * @param readiness the check served on {@link #READY_PATH}, or {@code null} to disable the readiness endpoint
+     * @throws NullPointerException if the provided {@code registry} is {@code null}
+     * @throws XatkitException      if the HTTP server cannot be started
+     */
+    public MetricsEndpoint(MetricsRegistry registry, String host, int port, BooleanSupplier readiness) {
+        checkNotNull(registry, "Cannot construct a %s with the provided registry %s",
+                MetricsEndpoint.class.getSimpleName(), registry);
+        this.registry = registry;
+        InetSocketAddress address = host == null ? new InetSocketAddress(InetAddress.getLoopbackAddress(), port)
+                : new InetSocketAddress(host, port);
+        if (address.isUnresolved()) {
+            throw new XatkitException("Cannot start the Moodle metrics endpoint: unknown host " + host);
+        }
+        try {
+            this.server = HttpServer.create(address, 0);
+        } catch (IOException e) {
+            throw new XatkitException("Cannot start the Moodle metrics endpoint on " + address, e);
+        }
+        this.server.createContext(METRICS_PATH, exchange -> {
+            byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        if (readiness != null) {
+            this.server.createContext(READY_PATH, exchange -> {
+                boolean ready = readiness.getAsBoolean();
+                byte[] body = (ready ? "ready" : "not ready").getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+                exchange.sendResponseHeaders(ready ? 200 : 503, body.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(body);
+                }
+            });
+        }
+        this.server.setExecutor(Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "moodle-metrics");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        this.server.start();
+    }
+
+    /**
+     * Returns the port the endpoint is listening on.
+     *
+     * @return the port the endpoint is listening on
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Returns the address of the interface the endpoint is listening on.
+     *
+     * @return the address of the interface the endpoint is listening on
+     */
+    public String getHost() {
+        return server.getAddress().getAddress().getHostAddress();
+    }
+
+    /**
+     * Renders the metrics of the registry in the Prometheus text format.
+     *
+     * @return the rendered metrics
+     */
+    public String scrape() {
+        StringBuilder sb = new StringBuilder();
+        Set<String> declared = new HashSet<>();
+        for (Map.Entry<String, Counter> counter : new TreeMap<>(registry.getCounters()).entrySet()) {
+            declare(sb, declared, counter.getKey(), "counter");
+            sb.append(counter.getKey()).append(' ').append(counter.getValue().get()).append('\n');
+        }
+        for (Map.Entry<String, LongSupplier> gauge : new TreeMap<>(registry.getGauges()).entrySet()) {
+            declare(sb, declared, gauge.getKey(), "gauge");
+            sb.append(gauge.getKey()).append(' ').append(gauge.getValue().getAsLong()).append('\n');
+        }
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(registry.getHistograms()).entrySet()) {
+            String name = entry.getKey();
+            LatencyHistogram histogram = entry.getValue();
+            declare(sb, declared, name, "summary");
+            for (double quantile : QUANTILES) {
+                sb.append(withLabel(name, "", "quantile", Double.toString(quantile))).append(' ')
+                        .append(histogram.getValueAtPercentile(quantile * 100) / NANOS_PER_SECOND).append('\n');
+            }
+            sb.append(withLabel(name, "_sum", null, null)).append(' ').append(histogram.getSum() / NANOS_PER_SECOND)
+                    .append('\n');
+            sb.append(withLabel(name, "_count", null, null)).append(' ').append(histogram.getCount()).append('\n');
+            declare(sb, declared, withLabel(name, "_max", null, null), "gauge");
+            sb.append(withLabel(name, "_max", null, null)).append(' ').append(histogram.getMax() / NANOS_PER_SECOND)
+                    .append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Stops the underlying HTTP server.
+     */
+    public void stop() {
+        server.stop(0);
+    }
+
+    /**
+     * Appends the {@code TYPE} line of the provided metric if its base name hasn't been declared yet.
+     *
+     * @param sb       the {@link StringBuilder} to append the line to
+     * @param declared the base names already declared
+     * @param name     the name of the metric
+     * @param type     the Prometheus type of the metric
+     */
+    private static void declare(StringBuilder sb, Set<String> declared, String name, String type) {
+        String base = baseName(name);
+        if (declared.add(base)) {
+            sb.append("# TYPE ").append(base).append(' ').append(type).append('\n');
+        }
+    }
+
+    /**
+     * Returns the base name of the provided metric {@code name} (i.e. without its labels).
+     *
+     * @param name the name of the metric
+     * @return the base name of the metric
+     */
+    private static String baseName(String name) {
+        int labelsStart = name.indexOf('{');
+        return labelsStart < 0 ? name : name.substring(0, labelsStart);
+    }
+
+    /**
+     * Appends the provided {@code suffix} to the base name of the given metric, and adds the provided label.
+     *
+     * @param name       the name of the metric
+     * @param suffix     the suffix to append to the base name
+     * @param labelKey   the key of the label to add, or {@code null}
+     * @param labelValue the value of the label to add
+     * @return the created name
+     */
+    private static String withLabel(String name, String suffix, String labelKey, String labelValue) {
+        String base = baseName(name);
+        String labels = name.length() > base.length() ? name.substring(base.length() + 1, name.length() - 1) : "";
+        if (labelKey != null) {
+            labels = labels.isEmpty() ? labelKey + "=\"" + labelValue + "\"" : labels + "," + labelKey + "=\""
+                    + labelValue + "\"";
+        }
+        return labels.isEmpty() ? base + suffix : base + suffix + "{" + labels + "}";
+    }
+}
@@ -0,0 +1,93 @@
+package com.xatkit.plugins.moodle.platform.metrics;
+
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * A registry storing the metrics of the Moodle platform.
+ * <p>
+ * Metrics are identified by their name, which can contain labels in the Prometheus format (see
+ * {@link #name(String, String...)}). The registry used by the platform can be replaced by setting the
+ * {@link com.xatkit.plugins.moodle.platform.utils.MoodleUtils#MOODLE_METRICS_REGISTRY_KEY} key to the name of a
+ * class implementing this interface and providing a public no-argument constructor.
+ *
+ * @see InMemoryMetricsRegistry
+ * @see MetricsEndpoint
+ */
+public interface MetricsRegistry {
+
+    /**
+     * Returns the {@link Counter} with the provided {@code name}, creating it if needed.
+     *
+     * @param name the name of the counter
+     * @return the {@link Counter}
+     */
+    Counter counter(String name);
+
+    /**
+     * Returns the {@link LatencyHistogram} with the provided {@code name}, creating it if needed.
+     *
+     * @param name the name of the histogram
+     * @return the {@link LatencyHistogram}
+     */
+    LatencyHistogram histogram(String name);
+
+    /**
+     * Registers a gauge computing its value with the provided {@code supplier}.
+     *
+     * @param name     the name of the gauge
+     * @param supplier the supplier computing the value of the gauge
+     */
+    void gauge(String name, LongSupplier supplier);
+
+    /**
+     * Returns the registered counters, indexed by name.
+     *
+     * @return an unmodifiable view of the registered counters
+     */
+    Map<String, Counter> getCounters();
+
+    /**
+     * Returns the registered histograms, indexed by name.
+     *
+     * @return an unmodifiable view of the registered histograms
+     */
+    Map<String, LatencyHistogram> getHistograms();
+
+    /**
+     * Returns the registered gauges, indexed by name.
+     *
+     * @return an unmodifiable view of the registered gauges
+     */
+    Map<String, LongSupplier> getGauges();
+
+    /**
+     * Creates a metric name from the provided {@code base} name and {@code labels}.
+     * <p>
+     * Labels are provided as key/value pairs, e.g. {@code name("moodle_rest_latency", "wsfunction",
+     * "core_enrol_get_users_courses")} returns {@code moodle_rest_latency{wsfunction="core_enrol_get_users_courses"}}.
+     *
+     * @param base   the base name of the metric
+     * @param labels the key/value pairs of the labels
+     * @return the metric name
+     * @throws IllegalArgumentException if the provided {@code labels} don't contain an even number of elements
+     */
+    static String name(String base, String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Cannot create the name of the metric " + base + ": expected key/value"
+                    + " pairs of labels");
+        }
+        if (labels.length == 0) {
+            return base;
+        }
+        StringBuilder sb = new StringBuilder(base).append('{');
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(labels[i]).append("=\"").append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\""))
+                    .append('"');
+        }
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,147 @@
+package com.xatkit.plugins.moodle.platform.resilience;
+
+import java.util.concurrent.TimeUnit;
+
+import static fr.inria.atlanmod.commons.Preconditions.checkArgument;
+
+/**
+ * A circuit breaker failing fast the calls of a Moodle function that keeps failing.
+ * <p>
+ * The breaker is {@link State#CLOSED} as long as the calls succeed. It opens after {@code failureThreshold}
+ * consecutive failures, and rejects all the calls for {@code openDuration} milliseconds. It then becomes
+ * {@link State#HALF_OPEN} and lets a single probe call through: the breaker closes if the probe succeeds, and opens
+ * again otherwise.
+ * <p>
+ * Only the failures indicating that Moodle is unreachable or unhealthy (transport errors, timeouts, HTTP errors)
+ * must be recorded as failures, errors returned by a healthy Moodle (e.g. an invalid parameter) are successes from
+ * the breaker's point of view.
+ */
+public class CircuitBreaker {
+
+    /**
+     * The states of a {@link CircuitBreaker}.
+     */
+    public enum State {
+        /**
+         * The calls are performed.
+         */
+        CLOSED,
+        /**
+         * The calls are rejected.
+         */
+        OPEN,
+        /**
+         * A single probe call is performed, the other ones are rejected.
+         */
+        HALF_OPEN
+    }
+
+    /**
+     * The number of consecutive failures opening the breaker.
+     */
+    private final int failureThreshold;
+
+    /**
+     * The time (in nanoseconds) the breaker stays open before letting a probe call through.
+     */
+    private final long openDuration;
+
+    /**
+     * The current state of the breaker.
+     */
+    private State state = State.CLOSED;
+
+    /**
+     * The number of consecutive failures.
+     */
+    private int failures;
+
+    /**
+     * The time (in nanoseconds) at which the breaker has been opened.
+     */
+    private long openedAt;
+
+    /**
+     * Whether the probe call of the {@link State#HALF_OPEN} state is in flight.
+     */
+    private boolean probing;
+
+    /**
+     * Constructs a new {@link CircuitBreaker} with the provided {@code failureThreshold} and {@code openDuration}.
+     *
+     * @param failureThreshold the number of consecutive failures opening the breaker
+     * @param openDuration     the time (in milliseconds) the breaker stays open before letting a probe call through
+     * @throws IllegalArgumentException if the provided {@code failureThreshold} is lower than {@code 1} or if the
+     *                                  provided {@code openDuration} is negative
+     */
+    public CircuitBreaker(int failureThreshold, long openDuration) {
+        checkArgument(failureThreshold > 0, "Cannot construct a %s with the provided failure threshold %s: expected "
+                + "a strictly positive value", CircuitBreaker.class.getSimpleName(), failureThreshold);
+        checkArgument(openDuration >= 0, "Cannot construct a %s with the provided open duration %s: expected a "
+                + "positive or null value", CircuitBreaker.class.getSimpleName(), openDuration);
+        this.failureThreshold = failureThreshold;
+        this.openDuration = TimeUnit.MILLISECONDS.toNanos(openDuration);
+    }
+
+    /**
+     * Returns whether a call can be performed.
+     * <p>
+     * A call allowed by this method must be followed by a call to {@link #onSuccess()} or {@link #onFailure()}.
+     *
+     * @return {@code true} if the call can be performed, {@code false} if it must be rejected
+     */
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - openedAt < openDuration) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probing = true;
+                return true;
+            default:
+                if (probing) {
+                    return false;
+                }
+                probing = true;
+                return true;
+        }
+    }
+
+    /**
+     * Records the success of a call allowed by {@link #tryAcquire()}.
+     */
+    public synchronized void onSuccess() {
+        failures = 0;
+        probing = false;
+        state = State.CLOSED;
+    }
+
+    /**
+     * Records the failure of a call allowed by {@link #tryAcquire()}.
+     */
+    public synchronized void onFailure() {
+        probing = false;
+        failures++;
+        if (state == State.HALF_OPEN || failures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+        }
+    }
+
+    /**
+     * Returns the current state of the breaker.
+     * <p>
+     * An {@link State#OPEN} breaker whose open duration has expired is reported as {@link State#HALF_OPEN}.
+     *
+     * @return the current state of the breaker
+     */
+    public synchronized State getState() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openDuration) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+}
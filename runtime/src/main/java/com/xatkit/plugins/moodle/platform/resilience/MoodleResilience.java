@@ -0,0 +1,335 @@
+package com.xatkit.plugins.moodle.platform.resilience;
+
+import com.xatkit.plugins.moodle.platform.metrics.Counter;
+import com.xatkit.plugins.moodle.platform.metrics.MetricNames;
+import com.xatkit.plugins.moodle.platform.metrics.MetricsRegistry;
+import com.xatkit.plugins.moodle.platform.utils.MoodleUnavailableException;
+import com.xatkit.plugins.moodle.platform.utils.MoodleUtils;
+import com.xatkit.plugins.moodle.platform.utils.MoodleWebServiceException;
+import org.apache.commons.configuration2.Configuration;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static fr.inria.atlanmod.commons.Preconditions.checkNotNull;
+
+/**
+ * Protects the calls of the Moodle web service functions against a slow or failing Moodle instance.
+ * <p>
+ * Each function is isolated in its own bulkhead (a maximum number of concurrent calls) and has its own
+ * {@link CircuitBreaker}, meaning that a function that keeps failing or hanging doesn't prevent the other ones
+ * from being called. Each call has a deadline covering all its attempts: the call fails with a
+ * {@link MoodleUnavailableException} once the deadline is exceeded instead of waiting for Moodle. Idempotent calls
+ * that fail because Moodle is unreachable or unhealthy are retried with an exponential backoff with full jitter, as
+ * long as their deadline allows it.
+ * <p>
+ * The calls rejected by a full bulkhead or an open breaker fail immediately with a
+ * {@link MoodleUnavailableException}. The state of the breakers can be checked with {@link #isAvailable()}.
+ *
+ * @see MoodleUtils#MOODLE_RESILIENCE_DEADLINE_KEY
+ */
+public class MoodleResilience {
+
+    /**
+     * The time (in nanoseconds) after which a call fails with a
+     * {@link MoodleUnavailableException.Reason#DEADLINE_EXCEEDED} error.
+     */
+    private final long deadline;
+
+    /**
+     * The maximum number of attempts of an idempotent call.
+     */
+    private final int maxAttempts;
+
+    /**
+     * The delay (in nanoseconds) before the first retry, doubled for each subsequent retry.
+     */
+    private final long baseDelay;
+
+    /**
+     * The maximum delay (in nanoseconds) between two attempts.
+     */
+    private final long maxDelay;
+
+    /**
+     * The maximum number of concurrent calls of a function.
+     */
+    private final int maxConcurrentCalls;
+
+    /**
+     * The number of consecutive failures opening the breaker of a function.
+     */
+    private final int failureThreshold;
+
+    /**
+     * The time (in milliseconds) the breaker of a function stays open.
+     */
+    private final long openDuration;
+
+    /**
+     * The registry recording the retries, the rejected calls, and the state of the breakers.
+     */
+    private final MetricsRegistry metrics;
+
+    /**
+     * The guards of the called functions, indexed by function name.
+     */
+    private final Map<String, FunctionGuard> guards = new ConcurrentHashMap<>();
+
+    /**
+     * The scheduler enforcing the deadlines and triggering the retries.
+     */
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Constructs a new {@link MoodleResilience} from the provided {@code configuration}, recording its metrics in
+     * the given {@code metrics} registry.
+     *
+     * @param configuration the platform's {@link Configuration}
+     * @param metrics       the {@link MetricsRegistry} recording the retries, the rejected calls, and the state of
+     *                      the breakers
+     * @throws NullPointerException if the provided {@code configuration} or {@code metrics} is {@code null}
+     */
+    public MoodleResilience(Configuration configuration, MetricsRegistry metrics) {
+        checkNotNull(configuration, "Cannot construct a %s with the provided configuration %s",
+                MoodleResilience.class.getSimpleName(), configuration);
+        checkNotNull(metrics, "Cannot construct a %s with the provided metrics registry %s",
+                MoodleResilience.class.getSimpleName(), metrics);
+        this.metrics = metrics;
+        this.deadline = TimeUnit.MILLISECONDS.toNanos(configuration.getLong(
+                MoodleUtils.MOODLE_RESILIENCE_DEADLINE_KEY, MoodleUtils.DEFAULT_MOODLE_RESILIENCE_DEADLINE));
+        this.maxAttempts = Math.max(1, configuration.getInt(MoodleUtils.MOODLE_RESILIENCE_RETRY_MAX_ATTEMPTS_KEY,
+                MoodleUtils.DEFAULT_MOODLE_RESILIENCE_RETRY_MAX_ATTEMPTS));
+        this.baseDelay = TimeUnit.MILLISECONDS.toNanos(configuration.getLong(
+                MoodleUtils.MOODLE_RESILIENCE_RETRY_BASE_DELAY_KEY,
+                MoodleUtils.DEFAULT_MOODLE_RESILIENCE_RETRY_BASE_DELAY));
+        this.maxDelay = TimeUnit.MILLISECONDS.toNanos(configuration.getLong(
+                MoodleUtils.MOODLE_RESILIENCE_RETRY_MAX_DELAY_KEY,
+                MoodleUtils.DEFAULT_MOODLE_RESILIENCE_RETRY_MAX_DELAY));
+        this.maxConcurrentCalls = configuration.getInt(MoodleUtils.MOODLE_RESILIENCE_BULKHEAD_MAX_CALLS_KEY,
+                MoodleUtils.DEFAULT_MOODLE_RESILIENCE_BULKHEAD_MAX_CALLS);
+        this.failureThreshold = configuration.getInt(MoodleUtils.MOODLE_RESILIENCE_BREAKER_FAILURE_THRESHOLD_KEY,
+                MoodleUtils.DEFAULT_MOODLE_RESILIENCE_BREAKER_FAILURE_THRESHOLD);
+        this.openDuration = configuration.getLong(MoodleUtils.MOODLE_RESILIENCE_BREAKER_OPEN_DURATION_KEY,
+                MoodleUtils.DEFAULT_MOODLE_RESILIENCE_BREAKER_OPEN_DURATION);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "moodle-resilience");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Performs the call of the provided {@code wsfunction} started by the given {@code call} supplier.
+     * <p>
+     * The {@code call} supplier is invoked once per attempt, and must return a new {@link CompletableFuture} for each
+     * attempt. The future of an attempt is completed exceptionally with a {@link MoodleUnavailableException} when the
+     * deadline of the call is exceeded, the supplier can use it to abort the underlying request.
+     *
+     * @param wsfunction the name of the Moodle web service function to call
+     * @param idempotent whether the call can be retried
+     * @param call       the {@link Supplier} starting an attempt of the call
+     * @param <T>        the type of the result
+     * @return a {@link CompletableFuture} completed with the result of the call, or completed exceptionally with the
+     * error of its last attempt or with a {@link MoodleUnavailableException} if the call has been rejected or has
+     * exceeded its deadline
+     */
+    public <T> CompletableFuture<T> execute(String wsfunction, boolean idempotent,
+                                            Supplier<CompletableFuture<T>> call) {
+        FunctionGuard guard = guards.computeIfAbsent(wsfunction, FunctionGuard::new);
+        CompletableFuture<T> result = new CompletableFuture<>();
+        if (!guard.bulkhead.tryAcquire()) {
+            guard.rejected(MoodleUnavailableException.Reason.BULKHEAD_FULL, result);
+            return result;
+        }
+        result.whenComplete((r, e) -> guard.bulkhead.release());
+        attempt(guard, idempotent, call, 1, System.nanoTime() + deadline, result);
+        return result;
+    }
+
+    /**
+     * Returns whether Moodle is considered available, i.e. whether none of the breakers is open.
+     *
+     * @return {@code true} if none of the breakers is open, {@code false} otherwise
+     */
+    public boolean isAvailable() {
+        for (FunctionGuard guard : guards.values()) {
+            if (guard.breaker.getState() == CircuitBreaker.State.OPEN) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether the provided {@code wsfunction} is considered available, i.e. whether its breaker is not open.
+     *
+     * @param wsfunction the name of the Moodle web service function
+     * @return {@code true} if the breaker of the function is not open, {@code false} otherwise
+     */
+    public boolean isAvailable(String wsfunction) {
+        FunctionGuard guard = guards.get(wsfunction);
+        return guard == null || guard.breaker.getState() != CircuitBreaker.State.OPEN;
+    }
+
+    /**
+     * Returns the state of the breakers of the functions called so far.
+     *
+     * @return an unmodifiable map containing the state of the breaker of each called function
+     */
+    public Map<String, CircuitBreaker.State> getStates() {
+        Map<String, CircuitBreaker.State> states = new TreeMap<>();
+        guards.forEach((wsfunction, guard) -> states.put(wsfunction, guard.breaker.getState()));
+        return Collections.unmodifiableMap(states);
+    }
+
+    /**
+     * Stops the scheduler enforcing the deadlines and triggering the retries.
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Performs an attempt of the call, and schedules the next attempt if the call must be retried.
+     *
+     * @param guard      the {@link FunctionGuard} of the called function
+     * @param idempotent whether the call can be retried
+     * @param call       the {@link Supplier} starting an attempt of the call
+     * @param attempt    the number of the attempt, starting at {@code 1}
+     * @param deadlineAt the time (in nanoseconds) at which the call exceeds its deadline
+     * @param result     the future to complete with the result of the call
+     * @param <T>        the type of the result
+     */
+    private <T> void attempt(FunctionGuard guard, boolean idempotent, Supplier<CompletableFuture<T>> call,
+                             int attempt, long deadlineAt, CompletableFuture<T> result) {
+        long remaining = deadlineAt - System.nanoTime();
+        if (remaining <= 0) {
+            guard.rejected(MoodleUnavailableException.Reason.DEADLINE_EXCEEDED, result);
+            return;
+        }
+        if (!guard.breaker.tryAcquire()) {
+            guard.rejected(MoodleUnavailableException.Reason.CIRCUIT_OPEN, result);
+            return;
+        }
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        CompletableFuture<T> attemptFuture = future;
+        ScheduledFuture<?> timeout;
+        try {
+            timeout = scheduler.schedule(() -> {
+                if (attemptFuture.completeExceptionally(new MoodleUnavailableException(guard.wsfunction,
+                        MoodleUnavailableException.Reason.DEADLINE_EXCEEDED))) {
+                    guard.rejectedCounters.get(MoodleUnavailableException.Reason.DEADLINE_EXCEEDED).increment();
+                }
+            }, remaining, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            timeout = null;
+        }
+        ScheduledFuture<?> attemptTimeout = timeout;
+        attemptFuture.whenComplete((value, error) -> {
+            if (attemptTimeout != null) {
+                attemptTimeout.cancel(false);
+            }
+            if (error == null) {
+                guard.breaker.onSuccess();
+                result.complete(value);
+                return;
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause()
+                    : error;
+            if (cause instanceof MoodleWebServiceException) {
+                /*
+                 * Moodle answered, it is healthy even if the call failed.
+                 */
+                guard.breaker.onSuccess();
+                result.completeExceptionally(cause);
+                return;
+            }
+            guard.breaker.onFailure();
+            if (idempotent && attempt < maxAttempts) {
+                long delay = backoff(attempt);
+                if (System.nanoTime() + delay < deadlineAt) {
+                    try {
+                        scheduler.schedule(() -> attempt(guard, idempotent, call, attempt + 1, deadlineAt, result),
+                                delay, TimeUnit.NANOSECONDS);
+                        guard.retries.increment();
+                        return;
+                    } catch (RejectedExecutionException e) {
+                        /*
+                         * The client is closing, report the error of the attempt.
+                         */
+                    }
+                }
+            }
+            result.completeExceptionally(cause);
+        });
+    }
+
+    /**
+     * Computes the delay before the next attempt of a call.
+     * <p>
+     * The delay is drawn uniformly between {@code 0} and the exponential backoff of the attempt (full jitter), which
+     * spreads the retries of the concurrent calls instead of sending them to Moodle at the same time.
+     *
+     * @param attempt the number of the failed attempt, starting at {@code 1}
+     * @return the delay (in nanoseconds) before the next attempt
+     */
+    private long backoff(int attempt) {
+        long ceiling = Math.min(maxDelay, baseDelay << Math.min(attempt - 1, 30));
+        return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * The bulkhead, breaker, and metrics of a Moodle function.
+     */
+    private class FunctionGuard {
+
+        private final String wsfunction;
+
+        private final Semaphore bulkhead;
+
+        private final CircuitBreaker breaker;
+
+        private final Counter retries;
+
+        private final Map<MoodleUnavailableException.Reason, Counter> rejectedCounters =
+                new EnumMap<>(MoodleUnavailableException.Reason.class);
+
+        private FunctionGuard(String wsfunction) {
+            this.wsfunction = wsfunction;
+            this.bulkhead = new Semaphore(maxConcurrentCalls);
+            this.breaker = new CircuitBreaker(failureThreshold, openDuration);
+            this.retries = metrics.counter(MetricsRegistry.name(MetricNames.REST_RETRIES, "wsfunction", wsfunction));
+            for (MoodleUnavailableException.Reason reason : MoodleUnavailableException.Reason.values()) {
+                rejectedCounters.put(reason, metrics.counter(MetricsRegistry.name(MetricNames.REST_REJECTED,
+                        "wsfunction", wsfunction, "reason", reason.name().toLowerCase())));
+            }
+            metrics.gauge(MetricsRegistry.name(MetricNames.CIRCUIT_STATE, "wsfunction", wsfunction),
+                    () -> breaker.getState().ordinal());
+        }
+
+        private void rejected(MoodleUnavailableException.Reason reason, CompletableFuture<?> result) {
+            rejectedCounters.get(reason).increment();
+            result.completeExceptionally(new MoodleUnavailableException(wsfunction, reason));
+        }
+    }
+}
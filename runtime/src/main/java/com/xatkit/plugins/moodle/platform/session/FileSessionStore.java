@@ -0,0 +1,824 @@
+package com.xatkit.plugins.moodle.platform.session;
+
+import com.xatkit.core.XatkitException;
+import com.xatkit.core.session.RuntimeContexts;
+import com.xatkit.core.session.XatkitSession;
+
+import fr.inria.atlanmod.commons.log.Log;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import static fr.inria.atlanmod.commons.Preconditions.checkNotNull;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+
+/**
+ * Stores the {@link XatkitSession}s evicted from the {@link MoodleSessionManager} on the disk.
+ * <p>
+ * Sessions are appended to a single log file ({@code sessions.log}) in a compact binary format: strings are written
+ * in UTF-8 prefixed with their length, and numbers and lengths are written as variable-length integers. The store
+ * keeps the session variables and the alive contexts (with their lifespan) whose values are strings, numbers,
+ * booleans, or lists and maps of them, as well as the {@link MoodleSessionContext} of the session. The other values
+ * (e.g. recognized intents) are not stored.
+ * <p>
+ * Each record is protected by a CRC, and the records that were partially written when the JVM stopped are
+ * discarded when the store is opened. The store keeps the position of the last record of each user in memory (a few
+ * dozen bytes per user instead of the whole session), and rewrites the log without its outdated records once they
+ * take more space than the live ones. Records are written to the page cache of the OS, and the log is only forced
+ * to the disk when the store is closed.
+ */
+public class FileSessionStore {
+
+    /**
+     * The name of the log file.
+     */
+    private static final String LOG_FILE = "sessions.log";
+
+    /**
+     * The version of the encoded sessions.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * The type of the records storing a session.
+     */
+    private static final byte PUT = 1;
+
+    /**
+     * The type of the records storing the removal of a session.
+     */
+    private static final byte DELETE = 2;
+
+    /**
+     * The size of the header of a record (the length and the CRC of its body).
+     */
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    /**
+     * The maximum size of a record, which allows to pack the position and the size of a record in a {@code long}.
+     */
+    private static final int MAX_RECORD_SIZE = (1 << 24) - 1;
+
+    /**
+     * The minimum number of bytes of outdated records triggering the compaction of the log.
+     */
+    private static final long MIN_COMPACTION_SIZE = 1024 * 1024;
+
+    /**
+     * The type of the {@code null} values.
+     */
+    private static final int NULL = 0;
+
+    /**
+     * The type of the {@link String} values.
+     */
+    private static final int STRING = 1;
+
+    /**
+     * The type of the {@link Integer} values.
+     */
+    private static final int INTEGER = 2;
+
+    /**
+     * The type of the {@link Long} values.
+     */
+    private static final int LONG = 3;
+
+    /**
+     * The type of the {@link Double} values.
+     */
+    private static final int DOUBLE = 4;
+
+    /**
+     * The type of the {@link Boolean} values.
+     */
+    private static final int BOOLEAN = 5;
+
+    /**
+     * The type of the {@link List} values.
+     */
+    private static final int LIST = 6;
+
+    /**
+     * The type of the {@link Map} values.
+     */
+    private static final int MAP = 7;
+
+    /**
+     * The type of the {@link MoodleSessionContext} values.
+     */
+    private static final int MOODLE_CONTEXT = 8;
+
+    /**
+     * The maximum nesting of the lists and maps stored in a session.
+     */
+    private static final int MAX_DEPTH = 8;
+
+    /**
+     * The log file.
+     */
+    private final Path file;
+
+    /**
+     * The position and the size of the last record of each stored user, packed in a {@code long}.
+     */
+    private final Map<String, Long> index = new HashMap<>();
+
+    /**
+     * The checksum used to protect the records.
+     */
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * The channel writing and reading the log file.
+     */
+    private FileChannel channel;
+
+    /**
+     * The size of the log file.
+     */
+    private long size;
+
+    /**
+     * The number of bytes of the log file used by outdated records.
+     */
+    private long deadSize;
+
+    /**
+     * The number of bytes of outdated records triggering the next compaction of the log.
+     */
+    private long compactionThreshold = MIN_COMPACTION_SIZE;
+
+    /**
+     * Constructs a new {@link FileSessionStore} storing its log in the provided {@code directory}.
+     * <p>
+     * The sessions already stored in the {@code directory} are available once the store is constructed.
+     *
+     * @param directory the directory to store the sessions in
+     * @throws NullPointerException if the provided {@code directory} is {@code null}
+     * @throws XatkitException      if an error occurred when opening the log
+     */
+    public FileSessionStore(Path directory) {
+        checkNotNull(directory, "Cannot construct a %s with the provided directory %s",
+                FileSessionStore.class.getSimpleName(), directory);
+        this.file = directory.resolve(LOG_FILE);
+        try {
+            Files.createDirectories(directory);
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            recover();
+        } catch (IOException e) {
+            throw new XatkitException("Cannot open the session store in " + directory, e);
+        }
+        Log.info("Moodle session store opened with {0} session(s)", index.size());
+    }
+
+    /**
+     * Stores the provided {@code session}, replacing the previously stored session of its user.
+     *
+     * @param session the {@link XatkitSession} to store
+     * @return {@code true} if the session has been stored, {@code false} if an error occurred
+     * @throws NullPointerException if the provided {@code session} is {@code null}
+     */
+    public boolean save(XatkitSession session) {
+        checkNotNull(session, "Cannot store the provided session %s", session);
+        String userId = session.getSessionId();
+        byte[] body = createBody(PUT, userId, encode(session));
+        try {
+            if (body.length > MAX_RECORD_SIZE - RECORD_HEADER_SIZE) {
+                Log.error("Cannot store the session of the user {0}: the session is too large ({1} bytes)", userId,
+                        body.length);
+                return false;
+            }
+            synchronized (this) {
+                long position = append(body);
+                Long previous = index.put(userId, pack(position, RECORD_HEADER_SIZE + body.length));
+                if (nonNull(previous)) {
+                    deadSize += sizeOf(previous);
+                }
+                compactIfNeeded();
+            }
+            return true;
+        } catch (IOException e) {
+            Log.error("Cannot store the session of the user {0}: {1}", userId, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Restores the stored variables and contexts of the provided {@code session}'s user into the {@code session}.
+     * <p>
+     * The {@code session} is created by the core's intent recognition provider (e.g. a {@code DialogFlowSession}
+     * when DialogFlow is used),
+     * this method only restores its content. The {@code session} is not modified if its stored copy cannot be read.
+     * The stored session is kept until it is replaced by a new {@link #save(XatkitSession)} or removed with
+     * {@link #delete(String)}, meaning that the user gets back the state of its session when it was stored if the
+     * platform stops before storing the session again.
+     *
+     * @param session the {@link XatkitSession} to restore
+     * @return {@code true} if the session has been restored, {@code false} if the user doesn't have a stored session
+     * or if it cannot be read
+     * @throws NullPointerException if the provided {@code session} is {@code null}
+     */
+    public boolean load(XatkitSession session) {
+        checkNotNull(session, "Cannot restore the provided session %s", session);
+        String userId = session.getSessionId();
+        ByteBuffer record;
+        synchronized (this) {
+            Long location = index.get(userId);
+            if (isNull(location)) {
+                return false;
+            }
+            record = ByteBuffer.allocate(sizeOf(location));
+            try {
+                readFully(positionOf(location), record);
+            } catch (IOException e) {
+                Log.error("Cannot read the stored session of the user {0}: {1}", userId, e.getMessage());
+                return false;
+            }
+        }
+        try {
+            record.position(RECORD_HEADER_SIZE);
+            record.get();
+            readString(record);
+            decode(record, session);
+        } catch (IllegalArgumentException | BufferUnderflowException e) {
+            Log.warn("Cannot read the stored session of the user {0}, starting a new session: {1}", userId,
+                    e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Removes the stored session of the provided {@code userId}.
+     *
+     * @param userId the id of the Moodle user
+     */
+    public synchronized void delete(String userId) {
+        Long previous = index.remove(userId);
+        if (isNull(previous)) {
+            return;
+        }
+        byte[] body = createBody(DELETE, userId, new byte[0]);
+        try {
+            append(body);
+            deadSize += sizeOf(previous) + RECORD_HEADER_SIZE + body.length;
+            compactIfNeeded();
+        } catch (IOException e) {
+            Log.error("Cannot remove the stored session of the user {0}: {1}", userId, e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the number of stored sessions.
+     *
+     * @return the number of stored sessions
+     */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * Returns the size (in bytes) of the log file.
+     *
+     * @return the size of the log file
+     */
+    public synchronized long getFileSize() {
+        return size;
+    }
+
+    /**
+     * Forces the log to the disk and closes it.
+     */
+    public synchronized void close() {
+        try {
+            channel.force(false);
+            channel.close();
+        } catch (IOException e) {
+            Log.error("Cannot close the session store: {0}", e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the records of the log file and builds the index of the stored sessions.
+     * <p>
+     * The log is truncated after its last valid record.
+     *
+     * @throws IOException if an error occurred when reading the log file
+     */
+    private void recover() throws IOException {
+        long position = 0;
+        long fileSize = channel.size();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(0)),
+                64 * 1024));
+        while (position + RECORD_HEADER_SIZE <= fileSize) {
+            int length = in.readInt();
+            int expectedCrc = in.readInt();
+            if (length <= 0 || length > MAX_RECORD_SIZE - RECORD_HEADER_SIZE
+                    || position + RECORD_HEADER_SIZE + length > fileSize) {
+                break;
+            }
+            byte[] body = new byte[length];
+            in.readFully(body);
+            if (crcOf(body) != expectedCrc) {
+                break;
+            }
+            ByteBuffer bodyBuffer = ByteBuffer.wrap(body);
+            byte type = bodyBuffer.get();
+            String userId;
+            try {
+                userId = readString(bodyBuffer);
+            } catch (IllegalArgumentException | BufferUnderflowException e) {
+                break;
+            }
+            int recordSize = RECORD_HEADER_SIZE + length;
+            Long previous = type == PUT ? index.put(userId, pack(position, recordSize)) : index.remove(userId);
+            if (nonNull(previous)) {
+                deadSize += sizeOf(previous);
+            }
+            if (type != PUT) {
+                deadSize += recordSize;
+            }
+            position += recordSize;
+        }
+        if (position < fileSize) {
+            Log.warn("Discarding {0} byte(s) of the session store that were not completely written",
+                    fileSize - position);
+            channel.truncate(position);
+        }
+        size = position;
+        channel.position(size);
+    }
+
+    /**
+     * Rewrites the log without its outdated records if they take more space than the live ones.
+     * <p>
+     * The live records are copied to a new file which replaces the log once it is complete. The store keeps using
+     * the current log if the compaction fails, and doesn't try to compact it again until its outdated records have
+     * doubled.
+     */
+    private void compactIfNeeded() {
+        if (deadSize < compactionThreshold || deadSize < size - deadSize) {
+            return;
+        }
+        long startTime = System.nanoTime();
+        Path compacted = file.resolveSibling(LOG_FILE + ".compact");
+        Map<String, Long> compactedIndex = new HashMap<>(index.size() * 2);
+        FileChannel out = null;
+        long position = 0;
+        try {
+            out = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            for (Map.Entry<String, Long> entry : index.entrySet()) {
+                ByteBuffer record = ByteBuffer.allocate(sizeOf(entry.getValue()));
+                readFully(positionOf(entry.getValue()), record);
+                record.flip();
+                while (record.hasRemaining()) {
+                    out.write(record);
+                }
+                compactedIndex.put(entry.getKey(), pack(position, record.capacity()));
+                position += record.capacity();
+            }
+            out.force(false);
+            /*
+             * The channel of the compacted file stays valid once the file is renamed, and the current log is only
+             * released once it has been replaced.
+             */
+            Files.move(compacted, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Log.warn("Cannot compact the Moodle session store, keeping the current log: {0}", e.getMessage());
+            closeQuietly(out);
+            try {
+                Files.deleteIfExists(compacted);
+            } catch (IOException deleteException) {
+                Log.warn("Cannot delete {0}: {1}", compacted, deleteException.getMessage());
+            }
+            compactionThreshold = deadSize * 2;
+            return;
+        }
+        closeQuietly(channel);
+        channel = out;
+        long previousSize = size;
+        index.clear();
+        index.putAll(compactedIndex);
+        size = position;
+        deadSize = 0;
+        compactionThreshold = MIN_COMPACTION_SIZE;
+        Log.info("Compacted the Moodle session store from {0} to {1} bytes in {2}ms", previousSize, size,
+                (System.nanoTime() - startTime) / 1000000);
+    }
+
+    /**
+     * Closes the provided {@code fileChannel}, logging the errors.
+     *
+     * @param fileChannel the channel to close (may be {@code null})
+     */
+    private static void closeQuietly(FileChannel fileChannel) {
+        if (nonNull(fileChannel)) {
+            try {
+                fileChannel.close();
+            } catch (IOException e) {
+                Log.warn("Cannot close the session store: {0}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Appends a record with the provided {@code body} to the log.
+     *
+     * @param body the body of the record
+     * @return the position of the record in the log
+     * @throws IOException if an error occurred when writing the record
+     */
+    private long append(byte[] body) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + body.length);
+        record.putInt(body.length).putInt(crcOf(body)).put(body).flip();
+        long position = size;
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record, position + record.position());
+            }
+        } catch (IOException e) {
+            channel.truncate(position);
+            throw e;
+        }
+        size = position + record.capacity();
+        return position;
+    }
+
+    private void readFully(long position, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of the session store");
+            }
+        }
+    }
+
+    private int crcOf(byte[] bytes) {
+        crc.reset();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    private static byte[] createBody(byte type, String userId, byte[] session) {
+        Output out = new Output(session.length + userId.length() + 8);
+        out.write(type);
+        writeString(out, userId);
+        out.write(session);
+        return out.toByteArray();
+    }
+
+    private static long pack(long position, int recordSize) {
+        return position << 24 | recordSize;
+    }
+
+    private static long positionOf(long location) {
+        return location >>> 24;
+    }
+
+    private static int sizeOf(long location) {
+        return (int) (location & MAX_RECORD_SIZE);
+    }
+
+    /**
+     * Encodes the variables and the alive contexts of the provided {@code session}.
+     *
+     * @param session the {@link XatkitSession} to encode
+     * @return the encoded session
+     */
+    static byte[] encode(XatkitSession session) {
+        Output out = new Output(256);
+        out.write(FORMAT_VERSION);
+        List<Map.Entry<Object, Object>> variables = new ArrayList<>();
+        for (Map.Entry<Object, Object> variable : session.getSessionVariables().entrySet()) {
+            if (variable.getKey() instanceof String && isStorable(variable.getValue(), 0)) {
+                variables.add(variable);
+            }
+        }
+        writeVarInt(out, variables.size());
+        for (Map.Entry<Object, Object> variable : variables) {
+            writeString(out, (String) variable.getKey());
+            writeValue(out, variable.getValue());
+        }
+        RuntimeContexts runtimeContexts = session.getRuntimeContexts();
+        List<String> contexts = new ArrayList<>();
+        for (String context : runtimeContexts.getContextMap().keySet()) {
+            if (runtimeContexts.getContextLifespanCount(context) > 0) {
+                contexts.add(context);
+            }
+        }
+        writeVarInt(out, contexts.size());
+        for (String context : contexts) {
+            writeString(out, context);
+            writeVarInt(out, runtimeContexts.getContextLifespanCount(context));
+            List<Map.Entry<String, Object>> values = new ArrayList<>();
+            for (Map.Entry<String, Object> value : runtimeContexts.getContextMap().get(context).entrySet()) {
+                if (isStorable(value.getValue(), 0)) {
+                    values.add(value);
+                }
+            }
+            writeVarInt(out, values.size());
+            for (Map.Entry<String, Object> value : values) {
+                writeString(out, value.getKey());
+                writeValue(out, value.getValue());
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes the session read from the provided {@code in} buffer into the given {@code session}.
+     * <p>
+     * The whole session is decoded before being restored, meaning that the {@code session} is not modified if the
+     * encoded session is not valid.
+     *
+     * @param in      the buffer to read the encoded session from
+     * @param session the {@link XatkitSession} to restore the variables and contexts of
+     * @throws BufferUnderflowException if the encoded session is truncated
+     * @throws IllegalArgumentException if the encoded session is not valid
+     */
+    static void decode(ByteBuffer in, XatkitSession session) {
+        int version = in.get() & 0xff;
+        if (version != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported session format " + version);
+        }
+        int variableCount = readVarInt(in);
+        Map<String, Object> variables = new LinkedHashMap<>();
+        for (int i = 0; i < variableCount; i++) {
+            variables.put(readString(in), readValue(in, 0));
+        }
+        int contextCount = readVarInt(in);
+        Map<String, Integer> lifespans = new LinkedHashMap<>();
+        Map<String, Map<String, Object>> contexts = new LinkedHashMap<>();
+        for (int i = 0; i < contextCount; i++) {
+            String context = readString(in);
+            lifespans.put(context, readVarInt(in));
+            int valueCount = readVarInt(in);
+            Map<String, Object> values = new LinkedHashMap<>();
+            for (int j = 0; j < valueCount; j++) {
+                values.put(readString(in), readValue(in, 0));
+            }
+            contexts.put(context, values);
+        }
+        variables.forEach(session::store);
+        for (Map.Entry<String, Map<String, Object>> context : contexts.entrySet()) {
+            int lifespan = lifespans.get(context.getKey());
+            for (Map.Entry<String, Object> value : context.getValue().entrySet()) {
+                session.getRuntimeContexts().setContextValue(context.getKey(), lifespan, value.getKey(),
+                        value.getValue());
+            }
+        }
+    }
+
+    /**
+     * Returns whether the provided {@code value} can be stored.
+     *
+     * @param value the value to check
+     * @param depth the nesting depth of the value
+     * @return {@code true} if the value can be stored, {@code false} otherwise
+     */
+    private static boolean isStorable(Object value, int depth) {
+        if (isNull(value) || value instanceof String || value instanceof Integer || value instanceof Long
+                || value instanceof Double || value instanceof Boolean || value instanceof MoodleSessionContext) {
+            return true;
+        }
+        if (depth >= MAX_DEPTH) {
+            return false;
+        }
+        if (value instanceof List) {
+            for (Object element : (List<?>) value) {
+                if (!isStorable(element, depth + 1)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (value instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!(entry.getKey() instanceof String) || !isStorable(entry.getValue(), depth + 1)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static void writeValue(Output out, Object value) {
+        if (isNull(value)) {
+            out.write(NULL);
+        } else if (value instanceof String) {
+            out.write(STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Integer) {
+            out.write(INTEGER);
+            writeVarLong(out, (Integer) value);
+        } else if (value instanceof Long) {
+            out.write(LONG);
+            writeVarLong(out, (Long) value);
+        } else if (value instanceof Double) {
+            out.write(DOUBLE);
+            out.writeLong(Double.doubleToLongBits((Double) value));
+        } else if (value instanceof Boolean) {
+            out.write(BOOLEAN);
+            out.write((Boolean) value ? 1 : 0);
+        } else if (value instanceof MoodleSessionContext) {
+            MoodleSessionContext context = (MoodleSessionContext) value;
+            out.write(MOODLE_CONTEXT);
+            writeString(out, context.getUserId());
+            writeString(out, context.getRawMessage());
+            writeValue(out, context.getCourseId());
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            out.write(LIST);
+            writeVarInt(out, list.size());
+            for (Object element : list) {
+                writeValue(out, element);
+            }
+        } else {
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.write(MAP);
+            writeVarInt(out, map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeString(out, (String) entry.getKey());
+                writeValue(out, entry.getValue());
+            }
+        }
+    }
+
+    private static Object readValue(ByteBuffer in, int depth) {
+        if (depth > MAX_DEPTH) {
+            throw new IllegalArgumentException("Session values are nested too deeply");
+        }
+        int type = in.get() & 0xff;
+        switch (type) {
+            case NULL:
+                return null;
+            case STRING:
+                return readString(in);
+            case INTEGER:
+                return (int) readVarLong(in);
+            case LONG:
+                return readVarLong(in);
+            case DOUBLE:
+                return in.getDouble();
+            case BOOLEAN:
+                return in.get() != 0;
+            case MOODLE_CONTEXT:
+                String userId = readString(in);
+                String rawMessage = readString(in);
+                Object courseId = readValue(in, depth + 1);
+                if (nonNull(courseId) && !(courseId instanceof String)) {
+                    throw new IllegalArgumentException("Invalid course id " + courseId);
+                }
+                return new MoodleSessionContext(userId, rawMessage, (String) courseId);
+            case LIST:
+                int size = readVarInt(in);
+                List<Object> list = new ArrayList<>(Math.min(size, in.remaining()));
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(in, depth + 1));
+                }
+                return list;
+            case MAP:
+                int entryCount = readVarInt(in);
+                Map<String, Object> map = new LinkedHashMap<>();
+                for (int i = 0; i < entryCount; i++) {
+                    map.put(readString(in), readValue(in, depth + 1));
+                }
+                return map;
+            default:
+                throw new IllegalArgumentException("Unknown value type " + type);
+        }
+    }
+
+    private static void writeString(Output out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = readVarInt(in);
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    private static void writeVarInt(Output out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.get() & 0xff;
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) {
+                    throw new IllegalArgumentException("Invalid length " + value);
+                }
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed variable-length integer");
+    }
+
+    private static void writeVarLong(Output out, long value) {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7fL) != 0) {
+            out.write((int) ((zigzag & 0x7f) | 0x80));
+            zigzag >>>= 7;
+        }
+        out.write((int) zigzag);
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long zigzag = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.get() & 0xff;
+            zigzag |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+        throw new IllegalArgumentException("Malformed variable-length integer");
+    }
+
+    /**
+     * A growable byte array used to encode the sessions.
+     * <p>
+     * Unlike {@link java.io.ByteArrayOutputStream}, this class is not synchronized, since the sessions are encoded by
+     * a single thread.
+     */
+    private static final class Output {
+
+        /**
+         * The encoded bytes, followed by unused capacity.
+         */
+        private byte[] bytes;
+
+        /**
+         * The number of encoded bytes.
+         */
+        private int size;
+
+        private Output(int capacity) {
+            this.bytes = new byte[capacity];
+        }
+
+        private void write(int b) {
+            ensureCapacity(1);
+            bytes[size++] = (byte) b;
+        }
+
+        private void write(byte[] b) {
+            ensureCapacity(b.length);
+            System.arraycopy(b, 0, bytes, size, b.length);
+            size += b.length;
+        }
+
+        private void writeLong(long value) {
+            ensureCapacity(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                bytes[size++] = (byte) (value >>> shift);
+            }
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+
+        private void ensureCapacity(int length) {
+            if (size + length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + length));
+            }
+        }
+    }
+}
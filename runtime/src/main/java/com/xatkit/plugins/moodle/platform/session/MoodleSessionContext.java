@@ -0,0 +1,182 @@
+package com.xatkit.plugins.moodle.platform.session;
+
+import com.xatkit.core.session.RuntimeContexts;
+import com.xatkit.core.session.XatkitSession;
+import com.xatkit.plugins.chat.ChatUtils;
+import com.xatkit.plugins.moodle.platform.utils.MoodleUtils;
+
+import java.util.Objects;
+
+import static fr.inria.atlanmod.commons.Preconditions.checkNotNull;
+import static java.util.Objects.nonNull;
+
+/**
+ * An immutable snapshot of the Moodle information associated to the last message received from a user.
+ * <p>
+ * A {@link MoodleSessionContext} is created once per inbound message and stored in the user's
+ * {@link XatkitSession} (see {@link MoodleSessionManager#update(XatkitSession, MoodleSessionContext)}). It is the
+ * single source of the values exposed in the {@link MoodleUtils#MOODLE_CONTEXT_KEY} and
+ * {@link ChatUtils#CHAT_CONTEXT_KEY} contexts, and can be retrieved by the actions with {@link #of(XatkitSession)}.
+ */
+public final class MoodleSessionContext {
+
+    /**
+     * The id of the Moodle user who sent the message.
+     */
+    private final String userId;
+
+    /**
+     * The raw message sent by the user.
+     */
+    private final String rawMessage;
+
+    /**
+     * The id of the course the user was browsing when sending the message.
+     */
+    private final String courseId;
+
+    /**
+     * The numeric value of the {@link #userId}, lazily computed.
+     */
+    private Integer numericUserId;
+
+    /**
+     * Constructs a new {@link MoodleSessionContext} with the provided {@code userId}, {@code rawMessage}, and
+     * {@code courseId}.
+     *
+     * @param userId     the id of the Moodle user who sent the message
+     * @param rawMessage the raw message sent by the user
+     * @param courseId   the id of the course the user was browsing when sending the message (may be {@code null})
+     * @throws NullPointerException if the provided {@code userId} or {@code rawMessage} is {@code null}
+     */
+    public MoodleSessionContext(String userId, String rawMessage, String courseId) {
+        checkNotNull(userId, "Cannot construct a %s with the provided user id %s",
+                MoodleSessionContext.class.getSimpleName(), userId);
+        checkNotNull(rawMessage, "Cannot construct a %s with the provided message %s",
+                MoodleSessionContext.class.getSimpleName(), rawMessage);
+        this.userId = userId;
+        this.rawMessage = rawMessage;
+        this.courseId = courseId;
+    }
+
+    /**
+     * Returns the {@link MoodleSessionContext} stored in the provided {@code session}.
+     *
+     * @param session the {@link XatkitSession} to retrieve the context from
+     * @return the {@link MoodleSessionContext} stored in the {@code session}, or {@code null} if the session
+     * hasn't received any Moodle message
+     * @throws NullPointerException if the provided {@code session} is {@code null}
+     */
+    public static MoodleSessionContext of(XatkitSession session) {
+        checkNotNull(session, "Cannot retrieve the Moodle context of the provided session %s", session);
+        return (MoodleSessionContext) session.get(MoodleUtils.MOODLE_SESSION_CONTEXT_KEY);
+    }
+
+    /**
+     * Returns the id of the Moodle user who sent the message.
+     *
+     * @return the id of the Moodle user who sent the message
+     */
+    public String getUserId() {
+        return userId;
+    }
+
+    /**
+     * Returns the id of the Moodle user who sent the message as an {@link Integer}.
+     *
+     * @return the numeric id of the Moodle user who sent the message
+     * @throws NumberFormatException if the user id is not a number
+     */
+    public Integer getNumericUserId() {
+        Integer result = numericUserId;
+        if (result == null) {
+            result = Integer.valueOf(userId);
+            numericUserId = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the raw message sent by the user.
+     *
+     * @return the raw message sent by the user
+     */
+    public String getRawMessage() {
+        return rawMessage;
+    }
+
+    /**
+     * Returns the id of the course the user was browsing when sending the message.
+     *
+     * @return the id of the course, or {@code null} if the user wasn't browsing a course
+     */
+    public String getCourseId() {
+        return courseId;
+    }
+
+    /**
+     * Writes the values of this context in the {@link MoodleUtils#MOODLE_CONTEXT_KEY} and
+     * {@link ChatUtils#CHAT_CONTEXT_KEY} contexts of the provided {@code runtimeContexts}.
+     * <p>
+     * The values that are equal to the ones of the {@code previous} context are not written again if their
+     * context is still alive.
+     *
+     * @param runtimeContexts the {@link RuntimeContexts} to write the values to
+     * @param previous        the previously written {@link MoodleSessionContext} (may be {@code null})
+     */
+    void writeTo(RuntimeContexts runtimeContexts, MoodleSessionContext previous) {
+        boolean moodleAlive = nonNull(previous)
+                && runtimeContexts.getContextLifespanCount(MoodleUtils.MOODLE_CONTEXT_KEY) > 0;
+        boolean chatAlive = nonNull(previous)
+                && runtimeContexts.getContextLifespanCount(ChatUtils.CHAT_CONTEXT_KEY) > 0;
+        boolean sameUser = nonNull(previous) && previous.userId.equals(userId);
+        boolean sameMessage = nonNull(previous) && previous.rawMessage.equals(rawMessage);
+        if (!(moodleAlive && sameUser)) {
+            runtimeContexts.setContextValue(MoodleUtils.MOODLE_CONTEXT_KEY, 1, MoodleUtils.CHAT_USERNAME_CONTEXT_KEY,
+                    userId);
+            runtimeContexts.setContextValue(MoodleUtils.MOODLE_CONTEXT_KEY, 1, MoodleUtils.CHAT_CHANNEL_CONTEXT_KEY,
+                    userId);
+        }
+        if (!(moodleAlive && sameMessage)) {
+            runtimeContexts.setContextValue(MoodleUtils.MOODLE_CONTEXT_KEY, 1,
+                    MoodleUtils.CHAT_RAW_MESSAGE_CONTEXT_KEY, rawMessage);
+        }
+        if (!(moodleAlive && Objects.equals(previous.courseId, courseId))) {
+            runtimeContexts.setContextValue(MoodleUtils.MOODLE_CONTEXT_KEY, 1,
+                    MoodleUtils.MOODLE_CHAT_COURSEID_CONTEXT_KEY, courseId);
+        }
+        if (!(chatAlive && sameUser)) {
+            runtimeContexts.setContextValue(ChatUtils.CHAT_CONTEXT_KEY, 1, ChatUtils.CHAT_USERNAME_CONTEXT_KEY,
+                    userId);
+            runtimeContexts.setContextValue(ChatUtils.CHAT_CONTEXT_KEY, 1, ChatUtils.CHAT_CHANNEL_CONTEXT_KEY,
+                    userId);
+        }
+        if (!(chatAlive && sameMessage)) {
+            runtimeContexts.setContextValue(ChatUtils.CHAT_CONTEXT_KEY, 1, ChatUtils.CHAT_RAW_MESSAGE_CONTEXT_KEY,
+                    rawMessage);
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof MoodleSessionContext)) {
+            return false;
+        }
+        MoodleSessionContext other = (MoodleSessionContext) obj;
+        return userId.equals(other.userId) && rawMessage.equals(other.rawMessage)
+                && Objects.equals(courseId, other.courseId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(userId, rawMessage, courseId);
+    }
+
+    @Override
+    public String toString() {
+        return "MoodleSessionContext{userId=" + userId + ", courseId=" + courseId + "}";
+    }
+}
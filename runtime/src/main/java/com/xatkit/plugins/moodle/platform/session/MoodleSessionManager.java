@@ -0,0 +1,490 @@
+package com.xatkit.plugins.moodle.platform.session;
+
+import com.xatkit.core.session.XatkitSession;
+import com.xatkit.plugins.moodle.platform.utils.MoodleUtils;
+
+import fr.inria.atlanmod.commons.log.Log;
+
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import static fr.inria.atlanmod.commons.Preconditions.checkArgument;
+import static fr.inria.atlanmod.commons.Preconditions.checkNotNull;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+
+/**
+ * Manages the {@link XatkitSession}s of the Moodle users.
+ * <p>
+ * Sessions are created by the provided session factory (the intent recognition provider of the Xatkit core in the
+ * {@code MoodlePlatform}, creating e.g. {@code DialogFlowSession}s when DialogFlow is used). The factory must not
+ * register the sessions anywhere else: the manager owns the sessions it creates, so that an evicted session is no
+ * longer referenced and can be garbage collected. The manager updates the {@link MoodleSessionContext} of a session
+ * under a lock selected from a fixed set of stripes using the user id, which serializes the updates of a given user
+ * without introducing a global lock or allocating a lock per user.
+ * <p>
+ * The manager can bound the number of sessions it holds: sessions that haven't been used for {@code idleTimeout}
+ * milliseconds are evicted by a background task, and the least recently used sessions are evicted when the manager
+ * holds more than {@code maxSize} sessions (the eviction runs in the background, meaning that the number of sessions
+ * may briefly exceed {@code maxSize}). Evicted sessions are written to the {@link FileSessionStore} (if any), and
+ * their stored variables and contexts are restored into a new session created by the factory when their user sends
+ * a new message, after the eviction or after a restart.
+ */
+public class MoodleSessionManager {
+
+    /**
+     * The number of lock stripes (must be a power of two).
+     */
+    private static final int STRIPE_COUNT = 64;
+
+    /**
+     * The minimum time (in milliseconds) between two searches of idle sessions.
+     */
+    private static final long MIN_SWEEP_INTERVAL = 1000;
+
+    /**
+     * The function creating the session of a user.
+     */
+    private final Function<String, XatkitSession> sessionFactory;
+
+    /**
+     * The time (in milliseconds) after which an unused session is evicted, or {@code 0} to keep idle sessions.
+     */
+    private final long idleTimeout;
+
+    /**
+     * The maximum number of sessions kept in memory, or {@code 0} for an unbounded number of sessions.
+     */
+    private final int maxSize;
+
+    /**
+     * The store of the evicted sessions (may be {@code null}).
+     */
+    private final FileSessionStore store;
+
+    /**
+     * The executor evicting the sessions (may be {@code null}).
+     */
+    private final ScheduledExecutorService evictor;
+
+    /**
+     * Whether an eviction of the least recently used sessions is pending.
+     */
+    private final AtomicBoolean capacityEvictionPending = new AtomicBoolean();
+
+    /**
+     * The sessions of the Moodle users, indexed by user id.
+     */
+    private final ConcurrentMap<String, Entry> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * The number of sessions evicted because they were idle.
+     */
+    private final LongAdder idleEvictions = new LongAdder();
+
+    /**
+     * The number of sessions evicted because the manager held more than {@link #maxSize} sessions.
+     */
+    private final LongAdder capacityEvictions = new LongAdder();
+
+    /**
+     * The number of evicted sessions loaded from the {@link #store}.
+     */
+    private final LongAdder rehydrations = new LongAdder();
+
+    /**
+     * The locks protecting the updates of the {@link MoodleSessionContext}s.
+     */
+    private final Object[] stripes = new Object[STRIPE_COUNT];
+
+    /**
+     * Constructs a new {@link MoodleSessionManager} with the provided {@code sessionFactory}.
+     * <p>
+     * The created manager never evicts its sessions.
+     *
+     * @param sessionFactory the function creating the session of a user
+     * @throws NullPointerException if the provided {@code sessionFactory} is {@code null}
+     */
+    public MoodleSessionManager(Function<String, XatkitSession> sessionFactory) {
+        this(sessionFactory, 0, 0, null);
+    }
+
+    /**
+     * Constructs a new {@link MoodleSessionManager} with the provided {@code sessionFactory}, {@code idleTimeout},
+     * {@code maxSize}, and {@code store}.
+     *
+     * @param sessionFactory the function creating the session of a user, typically the
+     *                      {@code createSession} method of the core's intent recognition provider
+     * @param idleTimeout   the time (in milliseconds) after which an unused session is evicted, or {@code 0} to keep
+     *                      idle sessions
+     * @param maxSize       the maximum number of sessions kept in memory, or {@code 0} for an unbounded number of
+     *                      sessions
+     * @param store         the {@link FileSessionStore} storing the evicted sessions, or {@code null} to discard them
+     * @throws NullPointerException     if the provided {@code sessionFactory} is {@code null}
+     * @throws IllegalArgumentException if the provided {@code idleTimeout} or {@code maxSize} is negative
+     */
+    public MoodleSessionManager(Function<String, XatkitSession> sessionFactory, long idleTimeout, int maxSize,
+                                FileSessionStore store) {
+        checkNotNull(sessionFactory, "Cannot construct a %s with the provided session factory %s",
+                MoodleSessionManager.class.getSimpleName(), sessionFactory);
+        checkArgument(idleTimeout >= 0, "Cannot construct a %s with the provided idle timeout %s: expected a "
+                + "positive value", MoodleSessionManager.class.getSimpleName(), idleTimeout);
+        checkArgument(maxSize >= 0, "Cannot construct a %s with the provided maximum size %s: expected a positive "
+                + "value", MoodleSessionManager.class.getSimpleName(), maxSize);
+        this.sessionFactory = sessionFactory;
+        this.idleTimeout = idleTimeout;
+        this.maxSize = maxSize;
+        this.store = store;
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            stripes[i] = new Object();
+        }
+        if (idleTimeout > 0 || maxSize > 0) {
+            this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "moodle-session-evictor");
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            this.evictor = null;
+        }
+        if (idleTimeout > 0) {
+            long sweepInterval = Math.max(MIN_SWEEP_INTERVAL, idleTimeout / 4);
+            this.evictor.scheduleWithFixedDelay(this::evictIdleSessions, sweepInterval, sweepInterval,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Returns the session of the provided {@code userId}, creating it if needed.
+     * <p>
+     * If the user doesn't have a session in memory the session is created by the session factory, and the
+     * variables and contexts stored in the {@link FileSessionStore} for the user (if any, e.g. after an eviction or
+     * a restart) are restored into it.
+     *
+     * @param userId the id of the Moodle user
+     * @return the session of the user
+     * @throws NullPointerException if the provided {@code userId} is {@code null}
+     */
+    public XatkitSession getOrCreate(String userId) {
+        checkNotNull(userId, "Cannot retrieve the session of the provided user %s", userId);
+        Entry entry;
+        boolean created = false;
+        synchronized (stripeFor(userId)) {
+            entry = sessions.get(userId);
+            if (isNull(entry)) {
+                XatkitSession session = sessionFactory.apply(userId);
+                if (nonNull(store) && store.load(session)) {
+                    rehydrations.increment();
+                }
+                entry = new Entry(session);
+                sessions.put(userId, entry);
+                created = true;
+            }
+            entry.lastAccess = System.currentTimeMillis();
+        }
+        if (created && maxSize > 0 && sessions.size() > maxSize && capacityEvictionPending.compareAndSet(false,
+                true)) {
+            try {
+                evictor.execute(this::evictLeastRecentlyUsedSessions);
+            } catch (RejectedExecutionException e) {
+                capacityEvictionPending.set(false);
+            }
+        }
+        return entry.session;
+    }
+
+    /**
+     * Returns the session of the provided {@code userId}.
+     * <p>
+     * This method doesn't load the sessions that have been evicted.
+     *
+     * @param userId the id of the Moodle user
+     * @return the session of the user, or {@code null} if the user doesn't have a session in memory
+     */
+    public XatkitSession get(String userId) {
+        Entry entry = sessions.get(userId);
+        return isNull(entry) ? null : entry.session;
+    }
+
+    /**
+     * Stores the provided {@code context} in the {@code session} and exposes its values in the session's contexts.
+     * <p>
+     * The context values are written once per update, under the lock stripe of the session's user. Values that
+     * didn't change since the previous update are not written again while their context is alive.
+     *
+     * @param session the {@link XatkitSession} to update
+     * @param context the {@link MoodleSessionContext} of the received message
+     * @throws NullPointerException     if the provided {@code session} or {@code context} is {@code null}
+     * @throws IllegalArgumentException if the {@code context} doesn't belong to the {@code session}'s user
+     */
+    public void update(XatkitSession session, MoodleSessionContext context) {
+        checkNotNull(session, "Cannot update the provided session %s", session);
+        checkNotNull(context, "Cannot update the session with the provided context %s", context);
+        checkArgument(context.getUserId().equals(session.getSessionId()), "Cannot update the session %s with the "
+                + "context of the user %s", session.getSessionId(), context.getUserId());
+        synchronized (stripeFor(context.getUserId())) {
+            Entry entry = sessions.get(context.getUserId());
+            if (nonNull(entry) && entry.session == session) {
+                entry.lastAccess = System.currentTimeMillis();
+            }
+            MoodleSessionContext previous = MoodleSessionContext.of(session);
+            context.writeTo(session.getRuntimeContexts(), previous);
+            session.store(MoodleUtils.MOODLE_SESSION_CONTEXT_KEY, context);
+        }
+    }
+
+    /**
+     * Returns the {@link MoodleSessionContext} of the last message received from the provided {@code userId}.
+     *
+     * @param userId the id of the Moodle user
+     * @return the {@link MoodleSessionContext} of the user, or {@code null} if the user doesn't have a session in
+     * memory
+     */
+    public MoodleSessionContext getContext(String userId) {
+        Entry entry = sessions.get(userId);
+        if (entry == null) {
+            return null;
+        }
+        synchronized (stripeFor(userId)) {
+            return MoodleSessionContext.of(entry.session);
+        }
+    }
+
+    /**
+     * Removes the session of the provided {@code userId}, including its stored copy.
+     *
+     * @param userId the id of the Moodle user
+     * @return the removed session, or {@code null} if the user didn't have a session in memory
+     */
+    public XatkitSession remove(String userId) {
+        synchronized (stripeFor(userId)) {
+            Entry entry = sessions.remove(userId);
+            if (nonNull(store)) {
+                store.delete(userId);
+            }
+            return isNull(entry) ? null : entry.session;
+        }
+    }
+
+    /**
+     * Returns the number of sessions in memory.
+     *
+     * @return the number of sessions in memory
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Returns the {@link FileSessionStore} storing the evicted sessions.
+     *
+     * @return the {@link FileSessionStore} storing the evicted sessions, or {@code null} if evicted sessions are
+     * discarded
+     */
+    public FileSessionStore getStore() {
+        return store;
+    }
+
+    /**
+     * Returns the number of sessions evicted because they were idle.
+     *
+     * @return the number of sessions evicted because they were idle
+     */
+    public long getIdleEvictionCount() {
+        return idleEvictions.sum();
+    }
+
+    /**
+     * Returns the number of sessions evicted because the manager held more than {@code maxSize} sessions.
+     *
+     * @return the number of sessions evicted because the manager was full
+     */
+    public long getCapacityEvictionCount() {
+        return capacityEvictions.sum();
+    }
+
+    /**
+     * Returns the number of evicted sessions loaded from the {@link FileSessionStore}.
+     *
+     * @return the number of evicted sessions loaded from the store
+     */
+    public long getRehydrationCount() {
+        return rehydrations.sum();
+    }
+
+    /**
+     * Stops the eviction of the sessions, writes the sessions in memory to the {@link FileSessionStore}, and closes
+     * it.
+     * <p>
+     * The stored sessions are loaded when their user sends a message after a restart. This method only stops the
+     * eviction if the manager doesn't have a store.
+     */
+    public void close() {
+        if (nonNull(evictor)) {
+            evictor.shutdownNow();
+        }
+        if (isNull(store)) {
+            return;
+        }
+        int saved = 0;
+        for (Map.Entry<String, Entry> session : sessions.entrySet()) {
+            if (evict(session.getKey(), session.getValue(), session.getValue().lastAccess)) {
+                saved++;
+            }
+        }
+        store.close();
+        Log.info("Stored {0} Moodle session(s)", saved);
+    }
+
+    /**
+     * Evicts the sessions that haven't been used for {@code idleTimeout} milliseconds.
+     */
+    void evictIdleSessions() {
+        long accessedBefore = System.currentTimeMillis() - idleTimeout;
+        int evicted = 0;
+        for (Map.Entry<String, Entry> session : sessions.entrySet()) {
+            long lastAccess = session.getValue().lastAccess;
+            if (lastAccess < accessedBefore && evict(session.getKey(), session.getValue(), lastAccess)) {
+                evicted++;
+            }
+        }
+        idleEvictions.add(evicted);
+        if (evicted > 0) {
+            Log.debug("Evicted {0} idle Moodle session(s)", evicted);
+        }
+    }
+
+    /**
+     * Evicts the least recently used sessions until the manager holds less than {@code maxSize} sessions.
+     * <p>
+     * This method evicts a tenth of {@code maxSize} more sessions than needed, so that the sessions are not
+     * searched again for each new user.
+     */
+    void evictLeastRecentlyUsedSessions() {
+        capacityEvictionPending.set(false);
+        int excess = sessions.size() - maxSize;
+        if (excess <= 0) {
+            return;
+        }
+        int count = excess + maxSize / 10;
+        /*
+         * Keep the count oldest sessions in a heap whose head is the most recently used of them.
+         */
+        PriorityQueue<Candidate> oldest = new PriorityQueue<>(count + 1,
+                (c1, c2) -> Long.compare(c2.lastAccess, c1.lastAccess));
+        for (Map.Entry<String, Entry> session : sessions.entrySet()) {
+            long lastAccess = session.getValue().lastAccess;
+            if (oldest.size() < count) {
+                oldest.add(new Candidate(session.getKey(), session.getValue(), lastAccess));
+            } else if (lastAccess < oldest.peek().lastAccess) {
+                oldest.poll();
+                oldest.add(new Candidate(session.getKey(), session.getValue(), lastAccess));
+            }
+        }
+        int evicted = 0;
+        for (Candidate candidate : oldest) {
+            if (evict(candidate.userId, candidate.entry, candidate.lastAccess)) {
+                evicted++;
+            }
+        }
+        capacityEvictions.add(evicted);
+        Log.debug("Evicted {0} least recently used Moodle session(s)", evicted);
+    }
+
+    /**
+     * Evicts the provided {@code entry} of the given {@code userId} if it hasn't been used since
+     * {@code lastAccess}.
+     * <p>
+     * The session is written to the {@link FileSessionStore} before being removed from memory, under the lock
+     * stripe of the user, meaning that a message received during the eviction waits for the session to be stored
+     * and then loads it into a new session. The evicted session is no longer referenced by the manager.
+     *
+     * @param userId     the id of the Moodle user
+     * @param entry      the {@link Entry} to evict
+     * @param lastAccess the last access time of the {@code entry} when it was selected for eviction
+     * @return {@code true} if the session has been evicted, {@code false} if it has been used or removed since it
+     * was selected
+     */
+    private boolean evict(String userId, Entry entry, long lastAccess) {
+        synchronized (stripeFor(userId)) {
+            if (entry.lastAccess != lastAccess || sessions.get(userId) != entry) {
+                return false;
+            }
+            if (nonNull(store) && !store.save(entry.session)) {
+                /*
+                 * Keep the session in memory rather than losing the conversation of the user.
+                 */
+                return false;
+            }
+            sessions.remove(userId);
+            return true;
+        }
+    }
+
+    /**
+     * Returns the lock stripe of the provided {@code userId}.
+     *
+     * @param userId the id of the Moodle user
+     * @return the lock stripe of the user
+     */
+    private Object stripeFor(String userId) {
+        int hash = userId.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (STRIPE_COUNT - 1)];
+    }
+
+    /**
+     * A session kept in memory and the time of its last use.
+     */
+    private static final class Entry {
+
+        /**
+         * The session of the user.
+         */
+        private final XatkitSession session;
+
+        /**
+         * The time (in milliseconds) the session was last used.
+         */
+        private volatile long lastAccess;
+
+        private Entry(XatkitSession session) {
+            this.session = session;
+        }
+    }
+
+    /**
+     * A session selected for eviction.
+     */
+    private static final class Candidate {
+
+        /**
+         * The id of the Moodle user.
+         */
+        private final String userId;
+
+        /**
+         * The {@link Entry} to evict.
+         */
+        private final Entry entry;
+
+        /**
+         * The last access time of the {@link #entry} when it was selected.
+         */
+        private final long lastAccess;
+
+        private Candidate(String userId, Entry entry, long lastAccess) {
+            this.userId = userId;
+            this.entry = entry;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.xatkit.plugins.moodle.platform.utils;
+
+/**
+ * The outcome of a course broadcast.
+ * <p>
+ * This class is immutable.
+ *
+ * @see com.xatkit.plugins.moodle.platform.action.BroadcastToCourse
+ */
+public class BroadcastResult {
+
+    /**
+     * The number of users the message has been emitted to over their socket.
+     */
+    private final int socketCount;
+
+    /**
+     * The number of users the message has been sent to through Moodle's REST API.
+     */
+    private final int restCount;
+
+    /**
+     * The number of users the message couldn't be sent to through Moodle's REST API.
+     */
+    private final int errorCount;
+
+    /**
+     * Constructs a new {@link BroadcastResult} from the provided counts.
+     *
+     * @param socketCount the number of users the message has been emitted to over their socket
+     * @param restCount   the number of users the message has been sent to through Moodle's REST API
+     * @param errorCount  the number of users the message couldn't be sent to through Moodle's REST API
+     */
+    public BroadcastResult(int socketCount, int restCount, int errorCount) {
+        this.socketCount = socketCount;
+        this.restCount = restCount;
+        this.errorCount = errorCount;
+    }
+
+    /**
+     * Returns the number of users the message has been emitted to over their socket.
+     * <p>
+     * The sockets of the course room whose user is unknown (i.e. that haven't sent any message yet) receive the
+     * message but are not counted.
+     *
+     * @return the number of users the message has been emitted to over their socket
+     */
+    public int getSocketCount() {
+        return socketCount;
+    }
+
+    /**
+     * Returns the number of users the message has been sent to through Moodle's REST API.
+     *
+     * @return the number of users the message has been sent to through Moodle's REST API
+     */
+    public int getRestCount() {
+        return restCount;
+    }
+
+    /**
+     * Returns the number of users the message couldn't be sent to through Moodle's REST API.
+     *
+     * @return the number of users the message couldn't be sent to
+     */
+    public int getErrorCount() {
+        return errorCount;
+    }
+
+    @Override
+    public String toString() {
+        return "BroadcastResult{socketCount=" + socketCount + ", restCount=" + restCount + ", errorCount="
+                + errorCount + "}";
+    }
+}
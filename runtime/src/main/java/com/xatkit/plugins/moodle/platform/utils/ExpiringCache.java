@@ -0,0 +1,262 @@
+package com.xatkit.plugins.moodle.platform.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+import static fr.inria.atlanmod.commons.Preconditions.checkArgument;
+import static fr.inria.atlanmod.commons.Preconditions.checkNotNull;
+import static java.util.Objects.isNull;
+
+/**
+ * A bounded, thread-safe cache whose entries expire after a fixed time-to-live.
+ * <p>
+ * Entries are evicted when they are older than the cache's time-to-live, or when the cache exceeds its maximum size
+ * (in which case the least recently used entry is evicted). The cache records its hits, misses, and evictions.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the cached values
+ */
+public class ExpiringCache<K, V> {
+
+    /**
+     * The time (in milliseconds) after which an entry expires.
+     */
+    private final long ttl;
+
+    /**
+     * The maximum number of entries in the cache.
+     */
+    private final int maxSize;
+
+    /**
+     * The cached entries, in access order.
+     */
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    /**
+     * The number of lookups that returned a cached value.
+     */
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * The number of lookups that didn't find a valid cached value.
+     */
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * The number of entries evicted because they expired or because the cache was full.
+     */
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Constructs a new {@link ExpiringCache} with the provided {@code ttl} and {@code maxSize}.
+     *
+     * @param ttl     the time (in milliseconds) after which an entry expires
+     * @param maxSize the maximum number of entries in the cache
+     * @throws IllegalArgumentException if the provided {@code ttl} or {@code maxSize} is lower than {@code 1}
+     */
+    public ExpiringCache(long ttl, int maxSize) {
+        checkArgument(ttl > 0, "Cannot construct a %s with the provided time-to-live %s: expected a strictly positive"
+                + " value", ExpiringCache.class.getSimpleName(), ttl);
+        checkArgument(maxSize > 0, "Cannot construct a %s with the provided maximum size %s: expected a strictly "
+                + "positive value", ExpiringCache.class.getSimpleName(), maxSize);
+        this.ttl = ttl;
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() > ExpiringCache.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the value cached for the provided {@code key}.
+     *
+     * @param key the key to retrieve the value of
+     * @return the cached value, or {@code null} if there is no cached value for the {@code key} or if it has expired
+     */
+    public V get(K key) {
+        Entry<V> entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && entry.isExpired(System.currentTimeMillis())) {
+                entries.remove(key);
+                evictions.increment();
+                entry = null;
+            }
+        }
+        if (isNull(entry)) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.value;
+    }
+
+    /**
+     * Returns whether the cache contains a value for the provided {@code key} that hasn't expired.
+     * <p>
+     * Unlike {@link #get(Object)}, this method doesn't update the hit and miss counts of the cache. The entry of the
+     * {@code key} is still considered as recently used.
+     *
+     * @param key the key to check
+     * @return {@code true} if the cache contains a value for the {@code key}, {@code false} otherwise
+     */
+    public boolean contains(K key) {
+        synchronized (entries) {
+            Entry<V> entry = entries.get(key);
+            return entry != null && !entry.isExpired(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Caches the provided {@code value} for the given {@code key}.
+     *
+     * @param key   the key to cache the value of
+     * @param value the value to cache
+     * @throws NullPointerException if the provided {@code value} is {@code null}
+     */
+    public void put(K key, V value) {
+        checkNotNull(value, "Cannot cache the provided value %s", value);
+        Entry<V> entry = new Entry<>(value, System.currentTimeMillis() + ttl);
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+
+    /**
+     * Removes the value cached for the provided {@code key}.
+     *
+     * @param key the key to invalidate
+     */
+    public void invalidate(K key) {
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    /**
+     * Removes the values cached for the keys matching the provided {@code predicate}.
+     *
+     * @param predicate the predicate selecting the keys to invalidate
+     * @throws NullPointerException if the provided {@code predicate} is {@code null}
+     */
+    public void invalidateIf(Predicate<? super K> predicate) {
+        checkNotNull(predicate, "Cannot invalidate the keys matching the provided predicate %s", predicate);
+        synchronized (entries) {
+            entries.keySet().removeIf(predicate);
+        }
+    }
+
+    /**
+     * Removes all the cached values.
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Removes the expired entries from the cache.
+     * <p>
+     * Expired entries are also removed lazily when they are accessed, this method can be called periodically to
+     * release the memory of entries that are not accessed anymore.
+     */
+    public void cleanUp() {
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Iterator<Entry<V>> it = entries.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().isExpired(now)) {
+                    it.remove();
+                    evictions.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of entries in the cache, including the expired entries that haven't been removed yet.
+     *
+     * @return the number of entries in the cache
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Returns the number of lookups that returned a cached value.
+     *
+     * @return the number of lookups that returned a cached value
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of lookups that didn't return a cached value.
+     *
+     * @return the number of lookups that didn't return a cached value
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of entries evicted because they expired or because the cache was full.
+     *
+     * @return the number of evicted entries
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Returns the ratio of lookups that returned a cached value.
+     *
+     * @return the ratio of lookups that returned a cached value, or {@code 0} if the cache hasn't been accessed
+     */
+    public double getHitRatio() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * A cached value and its expiration time.
+     *
+     * @param <V> the type of the cached value
+     */
+    private static class Entry<V> {
+
+        /**
+         * The cached value.
+         */
+        private final V value;
+
+        /**
+         * The time (in milliseconds) at which the entry expires.
+         */
+        private final long expiresAt;
+
+        private Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.xatkit.plugins.moodle.platform.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static fr.inria.atlanmod.commons.Preconditions.checkArgument;
+
+/**
+ * Selects one event out of {@code rate} to be logged.
+ * <p>
+ * This class is used to log per-message information on hot paths without paying the cost of logging every message.
+ *
+ * @see MoodleUtils#MOODLE_LOG_SAMPLE_RATE_KEY
+ */
+public class LogSampler {
+
+    /**
+     * The number of events for each logged event, {@code 0} to disable logging.
+     */
+    private final long rate;
+
+    /**
+     * The number of sampled events.
+     */
+    private final AtomicLong events = new AtomicLong();
+
+    /**
+     * Constructs a new {@link LogSampler} logging one event out of {@code rate}.
+     *
+     * @param rate the number of events for each logged event, {@code 0} to disable logging
+     * @throws IllegalArgumentException if the provided {@code rate} is negative
+     */
+    public LogSampler(long rate) {
+        checkArgument(rate >= 0, "Cannot construct a %s with the provided rate %s: expected a positive or null value",
+                LogSampler.class.getSimpleName(), rate);
+        this.rate = rate;
+    }
+
+    /**
+     * Returns whether the current event should be logged.
+     *
+     * @return {@code true} if the current event should be logged, {@code false} otherwise
+     */
+    public boolean sample() {
+        return rate != 0 && events.getAndIncrement() % rate == 0;
+    }
+}
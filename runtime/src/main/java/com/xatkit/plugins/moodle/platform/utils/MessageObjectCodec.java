@@ -0,0 +1,378 @@
+package com.xatkit.plugins.moodle.platform.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Encodes and decodes {@link MessageObject}s in a compact binary format.
+ * <p>
+ * A message is encoded as a <a href="https://msgpack.org">MessagePack</a> array {@code [message, userId,
+ * currentCourseID]}, meaning that clients can use any MessagePack library to read and write the messages exchanged
+ * with the {@link SocketEventTypes#BINARY_USER_MESSAGE} and {@link SocketEventTypes#BINARY_BOT_MESSAGE} events. The
+ * ids are encoded as integers when they are canonical decimal numbers, and as strings otherwise. The
+ * {@code currentCourseID} is {@code nil} (or omitted) if it is not set.
+ * <p>
+ * The codec doesn't allocate any intermediate object: messages are encoded in a per-thread buffer and copied in a
+ * byte array of the exact size, and decoded directly from the received byte array.
+ */
+public final class MessageObjectCodec {
+
+    /**
+     * The initial size of the per-thread encoding buffers.
+     */
+    private static final int INITIAL_BUFFER_SIZE = 512;
+
+    /**
+     * The maximum number of digits of an id encoded as an integer.
+     */
+    private static final int MAX_NUMERIC_ID_LENGTH = 18;
+
+    /**
+     * The per-thread encoding buffers.
+     */
+    private static final ThreadLocal<byte[]> BUFFERS = ThreadLocal.withInitial(() -> new byte[INITIAL_BUFFER_SIZE]);
+
+    /**
+     * Disables the default constructor, this class only provides static methods.
+     */
+    private MessageObjectCodec() {
+    }
+
+    /**
+     * Encodes the provided {@code messageObject}.
+     *
+     * @param messageObject the {@link MessageObject} to encode
+     * @return the encoded message
+     */
+    public static byte[] encode(MessageObject messageObject) {
+        return encode(messageObject.getMessage(), messageObject.getUserId(), messageObject.getCurrentCourseID());
+    }
+
+    /**
+     * Encodes a message with the provided {@code message}, {@code userId}, and {@code currentCourseID}.
+     *
+     * @param message         the message
+     * @param userId          the id of the user
+     * @param currentCourseID the Moodle course ID of the message, or {@code null}
+     * @return the encoded message
+     */
+    public static byte[] encode(String message, String userId, String currentCourseID) {
+        int capacity = 1 + maxEncodedSize(message) + maxEncodedSize(userId) + maxEncodedSize(currentCourseID);
+        byte[] buffer = BUFFERS.get();
+        if (buffer.length < capacity) {
+            buffer = new byte[Math.max(capacity, buffer.length * 2)];
+            BUFFERS.set(buffer);
+        }
+        buffer[0] = (byte) 0x93;
+        int position = writeString(buffer, 1, message);
+        position = writeId(buffer, position, userId);
+        position = writeId(buffer, position, currentCourseID);
+        return Arrays.copyOf(buffer, position);
+    }
+
+    /**
+     * Decodes the provided {@code bytes}.
+     *
+     * @param bytes the encoded message
+     * @return the decoded {@link MessageObject}
+     * @throws IllegalArgumentException if the provided {@code bytes} are not a valid encoded message
+     */
+    public static MessageObject decode(byte[] bytes) {
+        Reader reader = new Reader(bytes);
+        int size = reader.readArrayHeader();
+        if (size < 2) {
+            throw new IllegalArgumentException("Cannot decode the message: expected an array of 2 or 3 elements, "
+                    + "found " + size + " element(s)");
+        }
+        MessageObject messageObject = new MessageObject(reader.readString(), reader.readId());
+        if (size > 2) {
+            messageObject.setCurrentCourseAccessID(reader.readId());
+        }
+        return messageObject;
+    }
+
+    /**
+     * Returns the maximum size of the provided encoded {@code value}.
+     *
+     * @param value the value to encode
+     * @return the maximum size of the encoded value
+     */
+    private static int maxEncodedSize(String value) {
+        return isNull(value) ? 1 : 5 + value.length() * 3;
+    }
+
+    /**
+     * Writes the provided {@code id} in the given {@code buffer} at the provided {@code position}.
+     * <p>
+     * The id is written as an integer if it is a canonical decimal number, and as a string otherwise.
+     *
+     * @param buffer   the buffer to write the id to
+     * @param position the position to write the id at
+     * @param id       the id to write, or {@code null}
+     * @return the position following the written id
+     */
+    private static int writeId(byte[] buffer, int position, String id) {
+        if (isNull(id)) {
+            buffer[position] = (byte) 0xc0;
+            return position + 1;
+        }
+        if (!isNumeric(id)) {
+            return writeString(buffer, position, id);
+        }
+        long value = Long.parseLong(id);
+        if (value >= 0 && value < 128) {
+            buffer[position] = (byte) value;
+            return position + 1;
+        }
+        if (value >= -32 && value < 0) {
+            buffer[position] = (byte) value;
+            return position + 1;
+        }
+        if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+            buffer[position] = (byte) 0xd2;
+            return writeInt(buffer, position + 1, (int) value);
+        }
+        buffer[position] = (byte) 0xd3;
+        position = writeInt(buffer, position + 1, (int) (value >>> 32));
+        return writeInt(buffer, position, (int) value);
+    }
+
+    /**
+     * Returns whether the provided {@code id} is a canonical decimal number.
+     * <p>
+     * Ids with leading zeros, an explicit {@code +} sign, or too many digits are not canonical: encoding them as
+     * integers would not preserve their value.
+     *
+     * @param id the id to check
+     * @return {@code true} if the id is a canonical decimal number, {@code false} otherwise
+     */
+    private static boolean isNumeric(String id) {
+        int start = id.startsWith("-") ? 1 : 0;
+        int length = id.length() - start;
+        if (length == 0 || length > MAX_NUMERIC_ID_LENGTH || (id.charAt(start) == '0' && length > 1)
+                || (start == 1 && id.charAt(start) == '0')) {
+            return false;
+        }
+        for (int i = start; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the provided {@code value} as a UTF-8 MessagePack string in the given {@code buffer} at the provided
+     * {@code position}.
+     *
+     * @param buffer   the buffer to write the string to
+     * @param position the position to write the string at
+     * @param value    the string to write, or {@code null}
+     * @return the position following the written string
+     */
+    private static int writeString(byte[] buffer, int position, String value) {
+        if (isNull(value)) {
+            buffer[position] = (byte) 0xc0;
+            return position + 1;
+        }
+        int length = utf8Length(value);
+        if (length < 32) {
+            buffer[position++] = (byte) (0xa0 | length);
+        } else if (length < 256) {
+            buffer[position++] = (byte) 0xd9;
+            buffer[position++] = (byte) length;
+        } else if (length < 65536) {
+            buffer[position++] = (byte) 0xda;
+            buffer[position++] = (byte) (length >>> 8);
+            buffer[position++] = (byte) length;
+        } else {
+            buffer[position++] = (byte) 0xdb;
+            position = writeInt(buffer, position, length);
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xc0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[position++] = (byte) (0xf0 | (codePoint >> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                buffer[position++] = (byte) '?';
+            } else {
+                buffer[position++] = (byte) (0xe0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buffer[position++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Returns the size of the UTF-8 encoding of the provided {@code value}.
+     * <p>
+     * Unpaired surrogates are counted as a single byte (they are encoded as {@code '?'}).
+     *
+     * @param value the string to compute the size of
+     * @return the size of the UTF-8 encoding of the string
+     */
+    private static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Writes the provided {@code value} as a big-endian 32-bit integer in the given {@code buffer} at the provided
+     * {@code position}.
+     *
+     * @param buffer   the buffer to write the integer to
+     * @param position the position to write the integer at
+     * @param value    the integer to write
+     * @return the position following the written integer
+     */
+    private static int writeInt(byte[] buffer, int position, int value) {
+        buffer[position] = (byte) (value >>> 24);
+        buffer[position + 1] = (byte) (value >>> 16);
+        buffer[position + 2] = (byte) (value >>> 8);
+        buffer[position + 3] = (byte) value;
+        return position + 4;
+    }
+
+    /**
+     * Reads the MessagePack values of an encoded message.
+     */
+    private static class Reader {
+
+        private final byte[] bytes;
+
+        private int position;
+
+        private Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        private int readArrayHeader() {
+            int header = readByte();
+            if ((header & 0xf0) == 0x90) {
+                return header & 0x0f;
+            }
+            if (header == 0xdc) {
+                return (int) readUnsigned(2);
+            }
+            if (header == 0xdd) {
+                return (int) readUnsigned(4);
+            }
+            throw unexpected(header, "an array");
+        }
+
+        private String readString() {
+            int header = readByte();
+            if (header == 0xc0) {
+                return null;
+            }
+            return readString(header);
+        }
+
+        private String readString(int header) {
+            int length;
+            if ((header & 0xe0) == 0xa0) {
+                length = header & 0x1f;
+            } else if (header == 0xd9) {
+                length = (int) readUnsigned(1);
+            } else if (header == 0xda) {
+                length = (int) readUnsigned(2);
+            } else if (header == 0xdb) {
+                length = (int) readUnsigned(4);
+            } else {
+                throw unexpected(header, "a string");
+            }
+            if (length < 0 || length > bytes.length - position) {
+                throw new IllegalArgumentException("Cannot decode the message: truncated string");
+            }
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        private String readId() {
+            int header = readByte();
+            if (header == 0xc0) {
+                return null;
+            }
+            if (header < 0x80) {
+                return Integer.toString(header);
+            }
+            if (header >= 0xe0) {
+                return Integer.toString((byte) header);
+            }
+            switch (header) {
+                case 0xcc:
+                    return Long.toString(readUnsigned(1));
+                case 0xcd:
+                    return Long.toString(readUnsigned(2));
+                case 0xce:
+                    return Long.toString(readUnsigned(4));
+                case 0xcf:
+                    return Long.toUnsignedString(readUnsigned(8));
+                case 0xd0:
+                    return Long.toString((byte) readUnsigned(1));
+                case 0xd1:
+                    return Long.toString((short) readUnsigned(2));
+                case 0xd2:
+                    return Long.toString((int) readUnsigned(4));
+                case 0xd3:
+                    return Long.toString(readUnsigned(8));
+                default:
+                    return readString(header);
+            }
+        }
+
+        private int readByte() {
+            if (position >= bytes.length) {
+                throw new IllegalArgumentException("Cannot decode the message: unexpected end of message");
+            }
+            return bytes[position++] & 0xff;
+        }
+
+        private long readUnsigned(int size) {
+            if (size > bytes.length - position) {
+                throw new IllegalArgumentException("Cannot decode the message: unexpected end of message");
+            }
+            long value = 0;
+            for (int i = 0; i < size; i++) {
+                value = (value << 8) | (bytes[position++] & 0xff);
+            }
+            return value;
+        }
+
+        private IllegalArgumentException unexpected(int header, String expected) {
+            return new IllegalArgumentException("Cannot decode the message: expected " + expected + ", found the "
+                    + "MessagePack type 0x" + Integer.toHexString(header) + " at offset " + (position - 1));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.xatkit.plugins.moodle.platform.utils;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import static java.util.Objects.isNull;
+
+/**
+ * The result of a single message sent through Moodle's {@code core_message_send_instant_messages} function.
+ * <p>
+ * Moodle returns one result per message in the request, in the same order. A message has been delivered if its
+ * {@link #getMsgId()} is set and positive, otherwise {@link #getErrorMessage()} contains the reason of the failure.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class MessageSendResult {
+
+    /**
+     * The id of the created Moodle message, {@code -1} if the message has not been sent.
+     */
+    private final int msgId;
+
+    /**
+     * The client-side id used to correlate the result with the sent message.
+     */
+    private final String clientMsgId;
+
+    /**
+     * The error message returned by Moodle, if any.
+     */
+    private final String errorMessage;
+
+    /**
+     * Constructs a new {@link MessageSendResult} from the provided {@code msgId}, {@code clientMsgId}, and {@code
+     * errorMessage}.
+     * <p>
+     * This constructor is used by Jackson to deserialize Moodle responses.
+     *
+     * @param msgId        the id of the created Moodle message, {@code -1} if the message has not been sent
+     * @param clientMsgId  the client-side id used to correlate the result with the sent message
+     * @param errorMessage the error message returned by Moodle, if any
+     */
+    @JsonCreator
+    public MessageSendResult(@JsonProperty("msgid") int msgId, @JsonProperty("clientmsgid") String clientMsgId,
+                             @JsonProperty("errormessage") String errorMessage) {
+        this.msgId = msgId == 0 ? -1 : msgId;
+        this.clientMsgId = isNull(clientMsgId) || clientMsgId.isEmpty() ? null : clientMsgId;
+        this.errorMessage = isNull(errorMessage) || errorMessage.isEmpty() ? null : errorMessage;
+    }
+
+    /**
+     * Returns the id of the created Moodle message.
+     *
+     * @return the id of the created Moodle message, {@code -1} if the message has not been sent
+     */
+    public int getMsgId() {
+        return msgId;
+    }
+
+    /**
+     * Returns the client-side id used to correlate the result with the sent message.
+     *
+     * @return the client-side id used to correlate the result with the sent message
+     */
+    public String getClientMsgId() {
+        return clientMsgId;
+    }
+
+    /**
+     * Returns the error message returned by Moodle.
+     *
+     * @return the error message returned by Moodle, or {@code null} if the message has been sent
+     */
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    /**
+     * Returns whether the message has been accepted by Moodle.
+     *
+     * @return {@code true} if the message has been accepted by Moodle, {@code false} otherwise
+     */
+    public boolean isSent() {
+        return msgId > 0 && (isNull(errorMessage) || errorMessage.isEmpty());
+    }
+
+    @Override
+    public String toString() {
+        return "MessageSendResult{msgId=" + msgId + ", clientMsgId=" + clientMsgId + ", errorMessage="
+                + errorMessage + "}";
+    }
+}
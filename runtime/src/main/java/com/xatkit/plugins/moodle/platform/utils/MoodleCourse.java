@@ -0,0 +1,160 @@
+package com.xatkit.plugins.moodle.platform.utils;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A Moodle course, as returned by the course-related web service functions (e.g. {@code
+ * core_enrol_get_users_courses}).
+ * <p>
+ * This class is immutable and only contains the fields used by the platform, the other fields returned by Moodle
+ * are ignored when the course is deserialized.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class MoodleCourse {
+
+    /**
+     * The id of the course.
+     */
+    private final long id;
+
+    /**
+     * The short name of the course.
+     */
+    private final String shortName;
+
+    /**
+     * The full name of the course.
+     */
+    private final String fullName;
+
+    /**
+     * The category of the course, {@code 0} if Moodle didn't return it.
+     */
+    private final long category;
+
+    /**
+     * The start date of the course (Unix timestamp), {@code 0} if not set.
+     */
+    private final long startDate;
+
+    /**
+     * The end date of the course (Unix timestamp), {@code 0} if not set.
+     */
+    private final long endDate;
+
+    /**
+     * The last modification date of the course (Unix timestamp), {@code 0} if Moodle didn't return it.
+     */
+    private final long timeModified;
+
+    /**
+     * Constructs a new {@link MoodleCourse} from the provided fields, without last modification date.
+     *
+     * @param id        the id of the course
+     * @param shortName the short name of the course
+     * @param fullName  the full name of the course
+     * @param category  the category of the course
+     * @param startDate the start date of the course (Unix timestamp)
+     * @param endDate   the end date of the course (Unix timestamp)
+     */
+    public MoodleCourse(long id, String shortName, String fullName, long category, long startDate, long endDate) {
+        this(id, shortName, fullName, category, startDate, endDate, 0);
+    }
+
+    /**
+     * Constructs a new {@link MoodleCourse} from the provided fields.
+     * <p>
+     * This constructor is used by Jackson to deserialize Moodle responses.
+     *
+     * @param id           the id of the course
+     * @param shortName    the short name of the course
+     * @param fullName     the full name of the course
+     * @param category     the category of the course
+     * @param startDate    the start date of the course (Unix timestamp)
+     * @param endDate      the end date of the course (Unix timestamp)
+     * @param timeModified the last modification date of the course (Unix timestamp)
+     */
+    @JsonCreator
+    public MoodleCourse(@JsonProperty("id") long id, @JsonProperty("shortname") String shortName,
+                        @JsonProperty("fullname") String fullName, @JsonProperty("category") long category,
+                        @JsonProperty("startdate") long startDate, @JsonProperty("enddate") long endDate,
+                        @JsonProperty("timemodified") long timeModified) {
+        this.id = id;
+        this.shortName = shortName;
+        this.fullName = fullName;
+        this.category = category;
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.timeModified = timeModified;
+    }
+
+    /**
+     * Returns the id of the course.
+     *
+     * @return the id of the course
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Returns the short name of the course.
+     *
+     * @return the short name of the course
+     */
+    public String getShortName() {
+        return shortName;
+    }
+
+    /**
+     * Returns the full name of the course.
+     *
+     * @return the full name of the course
+     */
+    public String getFullName() {
+        return fullName;
+    }
+
+    /**
+     * Returns the category of the course.
+     *
+     * @return the category of the course, {@code 0} if Moodle didn't return it
+     */
+    public long getCategory() {
+        return category;
+    }
+
+    /**
+     * Returns the start date of the course.
+     *
+     * @return the start date of the course (Unix timestamp), {@code 0} if not set
+     */
+    public long getStartDate() {
+        return startDate;
+    }
+
+    /**
+     * Returns the end date of the course.
+     *
+     * @return the end date of the course (Unix timestamp), {@code 0} if not set
+     */
+    public long getEndDate() {
+        return endDate;
+    }
+
+    /**
+     * Returns the last modification date of the course.
+     *
+     * @return the last modification date of the course (Unix timestamp), {@code 0} if Moodle didn't return it
+     */
+    public long getTimeModified() {
+        return timeModified;
+    }
+
+    @Override
+    public String toString() {
+        return fullName;
+    }
+}
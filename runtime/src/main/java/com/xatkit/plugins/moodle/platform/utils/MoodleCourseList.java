@@ -0,0 +1,77 @@
+package com.xatkit.plugins.moodle.platform.utils;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * An immutable list of {@link MoodleCourse}s.
+ * <p>
+ * This list is returned by the course-related actions. Its {@link #toString()} method renders the numbered list of
+ * the course names that was previously returned by {@code GetCourses}, meaning that execution models using the
+ * action's result as a message keep working.
+ */
+public class MoodleCourseList extends AbstractList<MoodleCourse> {
+
+    /**
+     * The courses of the list.
+     */
+    private final MoodleCourse[] courses;
+
+    /**
+     * The rendered list, computed lazily.
+     */
+    private volatile String rendered;
+
+    /**
+     * Constructs a new {@link MoodleCourseList} containing the provided {@code courses}.
+     *
+     * @param courses the courses of the list
+     */
+    public MoodleCourseList(Collection<MoodleCourse> courses) {
+        this.courses = courses.toArray(new MoodleCourse[0]);
+    }
+
+    @Override
+    public MoodleCourse get(int index) {
+        return courses[index];
+    }
+
+    @Override
+    public int size() {
+        return courses.length;
+    }
+
+    /**
+     * Returns the names of the courses of the list.
+     *
+     * @return the names of the courses of the list
+     */
+    public List<String> getFullNames() {
+        List<String> names = new ArrayList<>(courses.length);
+        for (MoodleCourse course : courses) {
+            names.add(course.getFullName());
+        }
+        return names;
+    }
+
+    /**
+     * Renders the list as a numbered HTML list of course names (e.g. {@code 1 - Course A<br>2 - Course B<br>}).
+     *
+     * @return the rendered list
+     */
+    @Override
+    public String toString() {
+        String result = rendered;
+        if (result == null) {
+            StringBuilder sb = new StringBuilder(courses.length * 32);
+            for (int i = 0; i < courses.length; i++) {
+                sb.append(i + 1).append(" - ").append(courses[i].getFullName()).append("<br>");
+            }
+            result = sb.toString();
+            rendered = result;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,170 @@
+package com.xatkit.plugins.moodle.platform.utils;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xatkit.core.XatkitException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static fr.inria.atlanmod.commons.Preconditions.checkNotNull;
+
+/**
+ * Deserializes Moodle web service responses into typed objects.
+ * <p>
+ * JSON responses are deserialized straight from the response stream using Jackson's streaming parser, without
+ * buffering the body. XML responses are read with a {@link MoodleXmlResponseReader} and their records are mapped to
+ * the same types, meaning that the actions return the same objects regardless of the configured
+ * {@link MoodleRestFormat}.
+ * <p>
+ * Types are mapped using their Jackson annotations (see {@link MoodleCourse} and {@link MessageSendResult}). Moodle
+ * errors are reported as {@link MoodleWebServiceException}s in both formats.
+ */
+public class MoodleResponseReader {
+
+    /**
+     * The {@link ObjectMapper} used to deserialize the responses.
+     * <p>
+     * {@link ObjectMapper} instances are thread-safe once configured.
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .configure(DeserializationFeature.ACCEPT_EMPTY_STRING_AS_NULL_OBJECT, true);
+
+    /**
+     * The reader used to read XML records.
+     */
+    private static final MoodleXmlResponseReader XML_READER = new MoodleXmlResponseReader();
+
+    /**
+     * The format of the responses to read.
+     */
+    private final MoodleRestFormat format;
+
+    /**
+     * Constructs a new {@link MoodleResponseReader} reading responses in the provided {@code format}.
+     *
+     * @param format the format of the responses to read
+     * @throws NullPointerException if the provided {@code format} is {@code null}
+     */
+    public MoodleResponseReader(MoodleRestFormat format) {
+        this.format = checkNotNull(format, "Cannot construct a %s with the provided format %s",
+                MoodleResponseReader.class.getSimpleName(), format);
+    }
+
+    /**
+     * Returns the format of the responses read by this reader.
+     *
+     * @return the format of the responses read by this reader
+     */
+    public MoodleRestFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Reads the list of {@code type} instances contained in the provided {@code body}.
+     * <p>
+     * This method does not close the provided {@code body}.
+     *
+     * @param body the {@link InputStream} containing the response body
+     * @param type the type of the elements of the list
+     * @param <T>  the type of the elements of the list
+     * @return an unmodifiable list containing the deserialized elements
+     * @throws MoodleWebServiceException if the response contains a Moodle error
+     * @throws XatkitException           if an error occurred when reading the response
+     */
+    public <T> List<T> readList(InputStream body, Class<T> type) {
+        if (format == MoodleRestFormat.XML) {
+            List<Map<String, String>> records = XML_READER.readRecords(body);
+            List<T> result = new ArrayList<>(records.size());
+            for (Map<String, String> record : records) {
+                result.add(MAPPER.convertValue(record, type));
+            }
+            return Collections.unmodifiableList(result);
+        }
+        try (JsonParser parser = MAPPER.getFactory().createParser(body)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_OBJECT) {
+                JsonNode node = MAPPER.readTree(parser);
+                throw toException(node);
+            }
+            if (token != JsonToken.START_ARRAY) {
+                throw new XatkitException("Cannot read the Moodle response: expected a JSON array, found " + token);
+            }
+            List<T> result = new ArrayList<>();
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                result.add(MAPPER.readValue(parser, type));
+            }
+            return Collections.unmodifiableList(result);
+        } catch (IOException e) {
+            throw new XatkitException("Cannot read the Moodle response", e);
+        }
+    }
+
+    /**
+     * Reads the lists of {@code type} instances contained in the provided {@code tool_mobile_call_external_functions}
+     * response {@code body}.
+     * <p>
+     * Each call of the batch is answered with a JSON-encoded result, which is deserialized as a list of {@code type}
+     * instances. The calls that failed are reported as {@code null} elements in the returned list. Batch responses
+     * can only be read in the {@link MoodleRestFormat#JSON} format. This method does not close the provided {@code
+     * body}.
+     *
+     * @param body the {@link InputStream} containing the response body
+     * @param type the type of the elements of the lists
+     * @param <T>  the type of the elements of the lists
+     * @return an unmodifiable list containing the deserialized lists (or {@code null} for the failed calls), in the
+     * order of the calls in the batch
+     * @throws MoodleWebServiceException if the response contains a Moodle error
+     * @throws XatkitException           if an error occurred when reading the response, or if the reader's format is
+     *                                   not {@link MoodleRestFormat#JSON}
+     */
+    public <T> List<List<T>> readBatch(InputStream body, Class<T> type) {
+        if (format != MoodleRestFormat.JSON) {
+            throw new XatkitException("Cannot read the Moodle batch response: batch responses can only be read in "
+                    + "the " + MoodleRestFormat.JSON.label + " format");
+        }
+        try {
+            JsonNode root = MAPPER.readTree(body);
+            JsonNode responses = root.path("responses");
+            if (!responses.isArray()) {
+                throw toException(root);
+            }
+            JavaType listType = MAPPER.getTypeFactory().constructCollectionType(List.class, type);
+            List<List<T>> result = new ArrayList<>(responses.size());
+            for (JsonNode response : responses) {
+                if (response.path("error").asBoolean(false) || !response.path("data").isTextual()) {
+                    result.add(null);
+                } else {
+                    List<T> data = MAPPER.readValue(response.path("data").asText(), listType);
+                    result.add(Collections.unmodifiableList(data));
+                }
+            }
+            return Collections.unmodifiableList(result);
+        } catch (IOException e) {
+            throw new XatkitException("Cannot read the Moodle batch response", e);
+        }
+    }
+
+    /**
+     * Creates the exception corresponding to the provided JSON {@code node}.
+     *
+     * @param node the JSON object returned by Moodle instead of the expected array
+     * @return the created exception
+     */
+    private static XatkitException toException(JsonNode node) {
+        if (node.has("exception") || node.has("errorcode")) {
+            return new MoodleWebServiceException(node.path("errorcode").asText(null),
+                    node.path("message").asText("Moodle returned an error"), node.path("debuginfo").asText(null));
+        }
+        return new XatkitException("Cannot read the Moodle response: expected a JSON array, found " + node);
+    }
+}
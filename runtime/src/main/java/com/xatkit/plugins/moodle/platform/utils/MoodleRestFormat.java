@@ -0,0 +1,48 @@
+package com.xatkit.plugins.moodle.platform.utils;
+
+/**
+ * The response formats supported by Moodle's REST web services.
+ *
+ * @see MoodleUtils#MOODLE_REST_FORMAT_KEY
+ */
+public enum MoodleRestFormat {
+
+    /**
+     * The XML format (Moodle's default format).
+     */
+    XML("xml"),
+    /**
+     * The JSON format.
+     */
+    JSON("json");
+
+    /**
+     * The label of the format, as expected by the {@code moodlewsrestformat} parameter.
+     */
+    public final String label;
+
+    /**
+     * Constructs a new value for the enum with the given label.
+     *
+     * @param label the label of the enum value
+     */
+    MoodleRestFormat(String label) {
+        this.label = label;
+    }
+
+    /**
+     * Returns the {@link MoodleRestFormat} corresponding to the provided {@code label}.
+     *
+     * @param label the label of the format to retrieve
+     * @return the {@link MoodleRestFormat} corresponding to the provided {@code label}
+     * @throws IllegalArgumentException if there is no format with the provided {@code label}
+     */
+    public static MoodleRestFormat fromLabel(String label) {
+        for (MoodleRestFormat format : values()) {
+            if (format.label.equalsIgnoreCase(label)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown Moodle REST format " + label + ", expected one of xml, json");
+    }
+}
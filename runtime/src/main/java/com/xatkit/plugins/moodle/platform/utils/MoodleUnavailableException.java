@@ -0,0 +1,74 @@
+package com.xatkit.plugins.moodle.platform.utils;
+
+import com.xatkit.core.XatkitException;
+
+/**
+ * A {@link XatkitException} thrown when a Moodle web service function is not called because Moodle is considered
+ * unavailable, or because the call didn't complete before its deadline.
+ * <p>
+ * This exception is thrown without waiting for Moodle when the circuit breaker of the function is open or when its
+ * bulkhead is full, allowing the bot to degrade gracefully (see {@code IsMoodleAvailable}).
+ *
+ * @see com.xatkit.plugins.moodle.platform.resilience.MoodleResilience
+ */
+public class MoodleUnavailableException extends XatkitException {
+
+    /**
+     * The reasons why a call is not performed.
+     */
+    public enum Reason {
+        /**
+         * The circuit breaker of the function is open.
+         */
+        CIRCUIT_OPEN,
+        /**
+         * The maximum number of concurrent calls of the function has been reached.
+         */
+        BULKHEAD_FULL,
+        /**
+         * The call didn't complete before its deadline.
+         */
+        DEADLINE_EXCEEDED
+    }
+
+    /**
+     * The name of the function that has not been called.
+     */
+    private final String wsfunction;
+
+    /**
+     * The reason why the function has not been called.
+     */
+    private final Reason reason;
+
+    /**
+     * Constructs a new {@link MoodleUnavailableException} for the provided {@code wsfunction} and {@code reason}.
+     *
+     * @param wsfunction the name of the function that has not been called
+     * @param reason     the reason why the function has not been called
+     */
+    public MoodleUnavailableException(String wsfunction, Reason reason) {
+        super("Cannot call the Moodle function " + wsfunction + ": " + reason.name().toLowerCase().replace('_',
+                ' '));
+        this.wsfunction = wsfunction;
+        this.reason = reason;
+    }
+
+    /**
+     * Returns the name of the function that has not been called.
+     *
+     * @return the name of the function that has not been called
+     */
+    public String getWsfunction() {
+        return wsfunction;
+    }
+
+    /**
+     * Returns the reason why the function has not been called.
+     *
+     * @return the reason why the function has not been called
+     */
+    public Reason getReason() {
+        return reason;
+    }
+}
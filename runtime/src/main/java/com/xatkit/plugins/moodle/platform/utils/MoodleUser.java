@@ -0,0 +1,63 @@
+package com.xatkit.plugins.moodle.platform.utils;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A Moodle user, as returned by the user-related web service functions (e.g. {@code
+ * core_enrol_get_enrolled_users}).
+ * <p>
+ * This class is immutable and only contains the fields used by the platform, the other fields returned by Moodle
+ * are ignored when the user is deserialized.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class MoodleUser {
+
+    /**
+     * The id of the user.
+     */
+    private final int id;
+
+    /**
+     * The full name of the user, {@code null} if Moodle didn't return it.
+     */
+    private final String fullName;
+
+    /**
+     * Constructs a new {@link MoodleUser} from the provided fields.
+     * <p>
+     * This constructor is used by Jackson to deserialize Moodle responses.
+     *
+     * @param id       the id of the user
+     * @param fullName the full name of the user
+     */
+    @JsonCreator
+    public MoodleUser(@JsonProperty("id") int id, @JsonProperty("fullname") String fullName) {
+        this.id = id;
+        this.fullName = fullName;
+    }
+
+    /**
+     * Returns the id of the user.
+     *
+     * @return the id of the user
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Returns the full name of the user.
+     *
+     * @return the full name of the user, {@code null} if Moodle didn't return it
+     */
+    public String getFullName() {
+        return fullName;
+    }
+
+    @Override
+    public String toString() {
+        return "MoodleUser{id=" + id + ", fullName=" + fullName + "}";
+    }
+}
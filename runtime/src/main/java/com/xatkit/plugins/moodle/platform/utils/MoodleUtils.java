@@ -35,6 +35,858 @@ public interface MoodleUtils extends ChatUtils {
      */
     int DEFAULT_MOODLE_SERVER_PORT = 5002;
 
+    /**
+     * The {@link Configuration} key to store the format of the responses requested to Moodle's REST web services
+     * ({@code json} or {@code xml}).
+     *
+     * @see MoodleRestFormat
+     */
+    String MOODLE_REST_FORMAT_KEY = "xatkit.moodle.restFormat";
+
+    /**
+     * The default value of the {@link #MOODLE_REST_FORMAT_KEY} {@link Configuration} key.
+     */
+    String DEFAULT_MOODLE_REST_FORMAT = "json";
+
+    /**
+     * The {@link Configuration} key to store the maximum number of pooled connections to Moodle.
+     *
+     * @see com.xatkit.plugins.moodle.platform.action.MoodleWebServiceClient
+     */
+    String MOODLE_HTTP_MAX_CONNECTIONS_KEY = "xatkit.moodle.http.maxConnections";
+
+    /**
+     * The default value of the {@link #MOODLE_HTTP_MAX_CONNECTIONS_KEY} {@link Configuration} key.
+     */
+    int DEFAULT_MOODLE_HTTP_MAX_CONNECTIONS = 64;
+
+    /**
+     * The {@link Configuration} key to store the maximum number of pooled connections to a single Moodle host.
+     *
+     * @see com.xatkit.plugins.moodle.platform.action.MoodleWebServiceClient
+     */
+    String MOODLE_HTTP_MAX_CONNECTIONS_PER_HOST_KEY = "xatkit.moodle.http.maxConnectionsPerHost";
+
+    /**
+     * The default value of the {@link #MOODLE_HTTP_MAX_CONNECTIONS_PER_HOST_KEY} {@link Configuration} key.
+     */
+    int DEFAULT_MOODLE_HTTP_MAX_CONNECTIONS_PER_HOST = 32;
+
+    /**
+     * The {@link Configuration} key to store the time (in milliseconds) to wait for a connection to Moodle (or for
+     * a pooled connection to be available).
+     *
+     * @see com.xatkit.plugins.moodle.platform.action.MoodleWebServiceClient
+     */
+    String MOODLE_HTTP_CONNECT_TIMEOUT_KEY = "xatkit.moodle.http.connectTimeout";
+
+    /**
+     * The default value of the {@link #MOODLE_HTTP_CONNECT_TIMEOUT_KEY} {@link Configuration} key.
+     */
+    int DEFAULT_MOODLE_HTTP_CONNECT_TIMEOUT = 5000;
+
+    /**
+     * The {@link Configuration} key to store the maximum time (in milliseconds) of inactivity while waiting for a
+     * Moodle response.
+     *
+     * @see com.xatkit.plugins.moodle.platform.action.MoodleWebServiceClient
+     */
+    String MOODLE_HTTP_SOCKET_TIMEOUT_KEY = "xatkit.moodle.http.socketTimeout";
+
+    /**
+     * The default value of the {@link #MOODLE_HTTP_SOCKET_TIMEOUT_KEY} {@link Configuration} key.
+     */
+    int DEFAULT_MOODLE_HTTP_SOCKET_TIMEOUT = 30000;
+
+    /**
+     * The {@link Configuration} key to store the time (in milliseconds) idle connections to Moodle are kept alive
+     * in the pool.
+     *
+     * @see com.xatkit.plugins.moodle.platform.action.MoodleWebServiceClient
+     */
+    String MOODLE_HTTP_KEEP_ALIVE_KEY = "xatkit.moodle.http.keepAlive";
+
+    /**
+     * The default value of the {@link #MOODLE_HTTP_KEEP_ALIVE_KEY} {@link Configuration} key.
+     */
+    long DEFAULT_MOODLE_HTTP_KEEP_ALIVE = 30000;
+
+    /**
+     * The {@link Configuration} key to store the number of I/O threads serving the connections to Moodle.
+     *
+     * @see com.xatkit.plugins.moodle.platform.action.MoodleWebServiceClient
+     */
+    String MOODLE_HTTP_IO_THREADS_KEY = "xatkit.moodle.http.ioThreads";
+
+    /**
+     * The default value of the {@link #MOODLE_HTTP_IO_THREADS_KEY} {@link Configuration} key.
+     */
+    int DEFAULT_MOODLE_HTTP_IO_THREADS = 2;
+
+    /**
+     * The {@link Configuration} key to enable the coalescing of the concurrent identical calls of read-only Moodle
+     * functions (e.g. {@code core_enrol_get_users_courses}) into a single request.
+     *
+     * @see com.xatkit.plugins.moodle.platform.action.MoodleWebServiceClient#readList
+     */
+    String MOODLE_HTTP_COALESCE_READS_KEY = "xatkit.moodle.http.coalesceReads";
+
+    /**
+     * The default value of the {@link #MOODLE_HTTP_COALESCE_READS_KEY} {@link Configuration} key.
+     */
+    boolean DEFAULT_MOODLE_HTTP_COALESCE_READS = true;
+
+    /**
+     * The {@link Configuration} key to store the deadline (in milliseconds) of a Moodle call, including all its
+     * attempts.
+     *
+     * @see com.xatkit.plugins.moodle.platform.resilience.MoodleResilience
+     */
+    String MOODLE_RESILIENCE_DEADLINE_KEY = "xatkit.moodle.resilience.deadline";
+
+    /**
+     * The default value of the {@link #MOODLE_RESILIENCE_DEADLINE_KEY} {@link Configuration} key.
+     */
+    long DEFAULT_MOODLE_RESILIENCE_DEADLINE = 10000L;
+
+    /**
+     * The {@link Configuration} key to store the maximum number of attempts of a read-only Moodle call ({@code 1}
+     * disables the retries).
+     */
+    String MOODLE_RESILIENCE_RETRY_MAX_ATTEMPTS_KEY = "xatkit.moodle.resilience.retry.maxAttempts";
+
+    /**
+     * The default value of the {@link #MOODLE_RESILIENCE_RETRY_MAX_ATTEMPTS_KEY} {@link Configuration} key.
+     */
+    int DEFAULT_MOODLE_RESILIENCE_RETRY_MAX_ATTEMPTS = 3;
+
+    /**
+     * The {@link Configuration} key to store the maximum delay (in milliseconds) before the first retry of a Moodle
+     * call, doubled for each subsequent retry.
+     */
+    String MOODLE_RESILIENCE_RETRY_BASE_DELAY_KEY = "xatkit.moodle.resilience.retry.baseDelay";
+
+    /**
+     * The default value of the {@link #MOODLE_RESILIENCE_RETRY_BASE_DELAY_KEY} {@link Configuration} key.
+     */
+    long DEFAULT_MOODLE_RESILIENCE_RETRY_BASE_DELAY = 100L;
+
+    /**
+     * The {@link Configuration} key to store the maximum delay (in milliseconds) between two attempts of a Moodle
+     * call.
+     */
+    String MOODLE_RESILIENCE_RETRY_MAX_DELAY_KEY = "xatkit.moodle.resilience.retry.maxDelay";
+
+    /**
+     * The default value of the {@link #MOODLE_RESILIENCE_RETRY_MAX_DELAY_KEY} {@link Configuration} key.
+     */
+    long DEFAULT_MOODLE_RESILIENCE_RETRY_MAX_DELAY = 2000L;
+
+    /**
+     * The {@link Configuration} key to store the maximum number of concurrent calls of a Moodle function.
+     */
+    String MOODLE_RESILIENCE_BULKHEAD_MAX_CALLS_KEY = "xatkit.moodle.resilience.bulkhead.maxCalls";
+
+    /**
+     * The default value of the {@link #MOODLE_RESILIENCE_BULKHEAD_MAX_CALLS_KEY} {@link Configuration} key.
+     */
+    int DEFAULT_MOODLE_RESILIENCE_BULKHEAD_MAX_CALLS = 64;
+
+    /**
+     * The {@link Configuration} key to store the number of consecutive failures opening the circuit breaker of a
+     * Moodle function.
+     */
+    String MOODLE_RESILIENCE_BREAKER_FAILURE_THRESHOLD_KEY = "xatkit.moodle.resilience.breaker.failureThreshold";
+
+    /**
+     * The default value of the {@link #MOODLE_RESILIENCE_BREAKER_FAILURE_THRESHOLD_KEY} {@link Configuration} key.
+     */
+    int DEFAULT_MOODLE_RESILIENCE_BREAKER_FAILURE_THRESHOLD = 5;
+
+    /**
+     * The {@link Configuration} key to store the time (in milliseconds) the circuit breaker of a Moodle function
+     * stays open before letting a probe call through.
+     */
+    String MOODLE_RESILIENCE_BREAKER_OPEN_DURATION_KEY = "xatkit.moodle.resilience.breaker.openDuration";
+
+    /**
+     * The default value of the {@link #MOODLE_RESILIENCE_BREAKER_OPEN_DURATION_KEY} {@link Configuration} key.
+     */
+    long DEFAULT_MOODLE_RESILIENCE_BREAKER_OPEN_DURATION = 30000L;
+
+    /**
+     * The {@link Configuration} key to store the time (in milliseconds) outbound messages are kept in the batch
+     * before being sent to Moodle.
+     *
+     * @see com.xatkit.plugins.moodle.platform.action.MessageBatcher
+     */
+    String MOODLE_OUTBOUND_BATCH_WINDOW_KEY = "xatkit.moodle.outbound.batch.window";
+
+    /**
+     * The default value of the {@link #MOODLE_OUTBOUND_BATCH_WINDOW_KEY} {@link Configuration} key.
+     */
+    long DEFAULT_MOODLE_OUTBOUND_BATCH_WINDOW = 20;
+
+    /**
+     * The {@link Configuration} key to store the maximum number of outbound messages sent to Moodle in a single
+     * request.
+     *
+     * @see com.xatkit.plugins.moodle.platform.action.MessageBatcher
+     */
+    String MOODLE_OUTBOUND_BATCH_MAX_SIZE_KEY = "xatkit.moodle.outbound.batch.maxSize";
+
+    /**
+     * The default value of the {@link #MOODLE_OUTBOUND_BATCH_MAX_SIZE_KEY} {@link Configuration} key.
+     */
+    int DEFAULT_MOODLE_OUTBOUND_BATCH_MAX_SIZE = 50;
+
+    /**
+     * The {@link Configuration} key to store the directory of the journal recording the outbound messages until
+     * Moodle returned a result for them.
+     * <p>
+     * The messages that were not acknowledged by Moodle when the platform stopped are sent again when it starts. The
+     * journal is disabled if this key is not set.
+     */
+    String MOODLE_OUTBOUND_JOURNAL_DIRECTORY_KEY = "xatkit.moodle.outbound.journal.directory";
+
+    /**
+     * The {@link Configuration} key to store the size (in bytes) of the segment files of the outbound journal.
+     */
+    String MOODLE_OUTBOUND_JOURNAL_SEGMENT_SIZE_KEY = "xatkit.moodle.outbound.journal.segmentSize";
+
+    /**
+     * The default value of the {@link #MOODLE_OUTBOUND_JOURNAL_SEGMENT_SIZE_KEY} {@link Configuration} key.
+     */
+    int DEFAULT_MOODLE_OUTBOUND_JOURNAL_SEGMENT_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * The {@link Configuration} key to store whether each record of the outbound journal is written to the disk
+     * before the message is sent.
+     * <p>
+     * Records are otherwise written to the page cache of the OS, which survives a crash of the JVM but not a crash
+     * of the host. Enabling this option adds a disk write to the send path of each message.
+     */
+    String MOODLE_OUTBOUND_JOURNAL_SYNC_KEY = "xatkit.moodle.outbound.journal.sync";
+
+    /**
+     * The default value of the {@link #MOODLE_OUTBOUND_JOURNAL_SYNC_KEY} {@link Configuration} key.
+     */
+    boolean DEFAULT_MOODLE_OUTBOUND_JOURNAL_SYNC = false;
+
+    /**
+     * The {@link Configuration} key to store the time (in milliseconds) between two retries of the messages of the
+     * outbound journal that couldn't be sent.
+     * <p>
+     * The messages whose send failed before reaching Moodle (e.g. because Moodle is unavailable) are sent again
+     * while the platform is running, and not only when it restarts. Set this key to {@code 0} to only send them
+     * again when the platform restarts.
+     */
+    String MOODLE_OUTBOUND_JOURNAL_RETRY_INTERVAL_KEY = "xatkit.moodle.outbound.journal.retryInterval";
+
+    /**
+     * The default value of the {@link #MOODLE_OUTBOUND_JOURNAL_RETRY_INTERVAL_KEY} {@link Configuration} key.
+     */
+    long DEFAULT_MOODLE_OUTBOUND_JOURNAL_RETRY_INTERVAL = 60000L;
+
+    /**
+     * The {@link Configuration} key to store the time (in milliseconds) after which the session of a user who
+     * doesn't send messages is evicted from memory.
+     * <p>
+     * Setting this key to {@code 0} keeps the idle sessions in memory.
+     *
+     * @see com.xatkit.plugins.moodle.platform.session.MoodleSessionManager
+     */
+    String MOODLE_SESSIONS_IDLE_TIMEOUT_KEY = "xatkit.moodle.sessions.idleTimeout";
+
+    /**
+     * The default value of the {@link #MOODLE_SESSIONS_IDLE_TIMEOUT_KEY} {@link Configuration} key.
+     */
+    long DEFAULT_MOODLE_SESSIONS_IDLE_TIMEOUT = 1800000;
+
+    /**
+     * The {@link Configuration} key to store the maximum number of sessions kept in memory.
+     * <p>
+     * The least recently used sessions are evicted when this number is exceeded. Setting this key to {@code 0}
+     * doesn't limit the number of sessions.
+     *
+     * @see com.xatkit.plugins.moodle.platform.session.MoodleSessionManager
+     */
+    String MOODLE_SESSIONS_MAX_SIZE_KEY = "xatkit.moodle.sessions.maxSize";
+
+    /**
+     * The default value of the {@link #MOODLE_SESSIONS_MAX_SIZE_KEY} {@link Configuration} key.
+     */
+    int DEFAULT_MOODLE_SESSIONS_MAX_SIZE = 10000;
+
+    /**
+     * The {@link Configuration} key to store the directory of the store containing the evicted sessions.
+     * <p>
+     * Evicted sessions are loaded from the store when their user sends a new message, and the sessions in memory are
+     * stored when the platform stops. Evicted sessions are discarded if this key is not set.
+     *
+     * @see com.xatkit.plugins.moodle.platform.session.FileSessionStore
+     */
+    String MOODLE_SESSIONS_DIRECTORY_KEY = "xatkit.moodle.sessions.directory";
+
+    /**
+     * The {@link Configuration} key to store the time (in milliseconds) the courses of a user are cached.
+     * <p>
+     * Setting this key to {@code 0} disables the course cache.
+     *
+     * @see MoodlePlatform#getCourseCache()
+     */
+    String MOODLE_COURSE_CACHE_TTL_KEY = "xatkit.moodle.courses.cache.ttl";
+
+    /**
+     * The default value of the {@link #MOODLE_COURSE_CACHE_TTL_KEY} {@link Configuration} key.
+     */
+    long DEFAULT_MOODLE_COURSE_CACHE_TTL = 600000;
+
+    /**
+     * The {@link Configuration} key to store the maximum number of users whose courses are cached.
+     *
+     * @see MoodlePlatform#getCourseCache()
+     */
+    String MOODLE_COURSE_CACHE_MAX_SIZE_KEY = "xatkit.moodle.courses.cache.maxSize";
+
+    /**
+     * The default value of the {@link #MOODLE_COURSE_CACHE_MAX_SIZE_KEY} {@link Configuration} key.
+     */
+    int DEFAULT_MOODLE_COURSE_CACHE_MAX_SIZE = 10000;
+
+    /**
+     * The {@link Configuration} key to enable the background retrieval of the courses of the connected users.
+     * <p>
+     * The prefetching requires the course cache (see {@link #MOODLE_COURSE_CACHE_TTL_KEY}) and the Moodle endpoint
+     * (see {@link #MOODLE_SERVER_ENDPOINT_KEY} and {@link #MOODLE_ACCESS_TOKEN_KEY}).
+     *
+     * @see com.xatkit.plugins.moodle.platform.action.CoursePrefetcher
+     */
+    String MOODLE_COURSE_PREFETCH_KEY = "xatkit.moodle.courses.prefetch";
+
+    /**
+     * The default value of the {@link #MOODLE_COURSE_PREFETCH_KEY} {@link Configuration} key.
+     */
+    boolean DEFAULT_MOODLE_COURSE_PREFETCH = true;
+
+    /**
+     * The {@link Configuration} key to store the time (in milliseconds) to wait for additional connected users
+     * before retrieving their courses.
+     */
+    String MOODLE_COURSE_PREFETCH_WINDOW_KEY = "xatkit.moodle.courses.prefetch.window";
+
+    /**
+     * The default value of the {@link #MOODLE_COURSE_PREFETCH_WINDOW_KEY} {@link Configuration} key.
+     */
+    long DEFAULT_MOODLE_COURSE_PREFETCH_WINDOW = 100L;
+
+    /**
+     * The {@link Configuration} key to store the maximum number of users whose courses are retrieved in a single
+     * request.
+     */
+    String MOODLE_COURSE_PREFETCH_MAX_BATCH_SIZE_KEY = "xatkit.moodle.courses.prefetch.maxBatchSize";
+
+    /**
+     * The default value of the {@link #MOODLE_COURSE_PREFETCH_MAX_BATCH_SIZE_KEY} {@link Configuration} key.
+     */
+    int DEFAULT_MOODLE_COURSE_PREFETCH_MAX_BATCH_SIZE = 50;
+
+    /**
+     * The {@link Configuration} key to enable the retrieval of the courses of several users in a single
+     * {@code tool_mobile_call_external_functions} request.
+     * <p>
+     * This function is provided by the Moodle mobile web service. The courses are retrieved with one request per
+     * user if this key is {@code false}, or if Moodle rejects the batched calls.
+     */
+    String MOODLE_COURSE_PREFETCH_BATCH_KEY = "xatkit.moodle.courses.prefetch.batch";
+
+    /**
+     * The default value of the {@link #MOODLE_COURSE_PREFETCH_BATCH_KEY} {@link Configuration} key.
+     */
+    boolean DEFAULT_MOODLE_COURSE_PREFETCH_BATCH = true;
+
+    /**
+     * The {@link Configuration} key to store the time (in milliseconds) between two synchronizations of the course
+     * catalog.
+     * <p>
+     * The catalog indexes all the courses of the Moodle instance, and answers the course lookups without calling
+     * Moodle. It requires the Moodle endpoint (see {@link #MOODLE_SERVER_ENDPOINT_KEY} and
+     * {@link #MOODLE_ACCESS_TOKEN_KEY}). Setting this key to {@code 0} disables the catalog.
+     *
+     * @see MoodlePlatform#getCourseCatalog()
+     */
+    String MOODLE_CATALOG_SYNC_INTERVAL_KEY = "xatkit.moodle.catalog.syncInterval";
+
+    /**
+     * The default value of the {@link #MOODLE_CATALOG_SYNC_INTERVAL_KEY} {@link Configuration} key.
+     */
+    long DEFAULT_MOODLE_CATALOG_SYNC_INTERVAL = 0;
+
+    /**
+     * The {@link Configuration} key to store the directory of the course catalog snapshot.
+     * <p>
+     * The catalog is loaded from its snapshot when the platform starts, and the snapshot is updated after each
+     * synchronization that changed the catalog. The catalog is not saved if this key is not set.
+     *
+     * @see com.xatkit.plugins.moodle.platform.catalog.CourseCatalogSynchronizer
+     */
+    String MOODLE_CATALOG_DIRECTORY_KEY = "xatkit.moodle.catalog.directory";
+
+    /**
+     * The {@link Configuration} key to store the time-to-live (in milliseconds) of the intents cached for the
+     * received messages ({@code 0} disables the cache).
+     *
+     * @see com.xatkit.plugins.moodle.platform.io.RecognitionCache
+     */
+    String MOODLE_RECOGNITION_CACHE_TTL_KEY = "xatkit.moodle.recognition.cache.ttl";
+
+    /**
+     * The default value of the {@link #MOODLE_RECOGNITION_CACHE_TTL_KEY} {@link Configuration} key.
+     */
+    long DEFAULT_MOODLE_RECOGNITION_CACHE_TTL = 0L;
+
+    /**
+     * The {@link Configuration} key to store the maximum number of intents cached for the received messages.
+     */
+    String MOODLE_RECOGNITION_CACHE_MAX_SIZE_KEY = "xatkit.moodle.recognition.cache.maxSize";
+
+    /**
+     * The default value of the {@link #MOODLE_RECOGNITION_CACHE_MAX_SIZE_KEY} {@link Configuration} key.
+     */
+    int DEFAULT_MOODLE_RECOGNITION_CACHE_MAX_SIZE = 10000;
+
+    /**
+     * The {@link Configuration} key to store the maximum number of received messages whose intents are recognized
+     * together.
+     * <p>
+     * Setting this key to {@code 1} recognizes each message separately. Batches are only useful with a
+     * {@link #MOODLE_RECOGNITION_BATCH_RECOGNIZER_KEY recognizer} submitting them to the intent recognition engine
+     * in a single call.
+     *
+     * @see com.xatkit.plugins.moodle.platform.io.RecognitionBatcher
+     */
+    String MOODLE_RECOGNITION_BATCH_MAX_SIZE_KEY = "xatkit.moodle.recognition.batch.maxSize";
+
+    /**
+     * The default value of the {@link #MOODLE_RECOGNITION_BATCH_MAX_SIZE_KEY} {@link Configuration} key.
+     */
+    int DEFAULT_MOODLE_RECOGNITION_BATCH_MAX_SIZE = 1;
+
+    /**
+     * The {@link Configuration} key to store the maximum time (in milliseconds) a received message waits for other
+     * messages to recognize with it.
+     * <p>
+     * Messages are recognized right away when no other message is expected within this delay.
+     */
+    String MOODLE_RECOGNITION_BATCH_MAX_DELAY_KEY = "xatkit.moodle.recognition.batch.maxDelay";
+
+    /**
+     * The default value of the {@link #MOODLE_RECOGNITION_BATCH_MAX_DELAY_KEY} {@link Configuration} key.
+     */
+    long DEFAULT_MOODLE_RECOGNITION_BATCH_MAX_DELAY = 5L;
+
+    /**
+     * The {@link Configuration} key to store the name of the
+     * {@link com.xatkit.plugins.moodle.platform.io.BatchIntentRecognizer} recognizing the batches of messages.
+     * <p>
+     * The messages are recognized one after the other with the {@code IntentRecognitionHelper} if this key is not
+     * set.
+     *
+     * @see com.xatkit.plugins.moodle.platform.io.SequentialBatchIntentRecognizer
+     */
+    String MOODLE_RECOGNITION_BATCH_RECOGNIZER_KEY = "xatkit.moodle.recognition.batch.recognizer";
+
+    /**
+     * The {@link Configuration} key to enable the delivery of the {@code Reply} messages over the user's socket.
+     * <p>
+     * When enabled, replies are emitted as {@link SocketEventTypes#BOT_MESSAGE} events to the socket of the user,
+     * and are sent through Moodle's REST API only if the user doesn't have a live socket.
+     * <p>
+     * <b>Note</b>: the socket of a user is bound to the user id it provides in its handshake (or in its first
+     * message), and the platform doesn't authenticate it: a client connecting with the id of another user receives
+     * the replies of that user. Only enable this option if the socket server is only reachable by authenticated
+     * clients (e.g. behind a proxy checking the Moodle session of the connecting user).
+     */
+    String MOODLE_SOCKET_REPLY_KEY = "xatkit.moodle.reply.socket";
+
+    /**
+     * The default value of the {@link #MOODLE_SOCKET_REPLY_KEY} {@link Configuration} key.
+     */
+    boolean DEFAULT_MOODLE_SOCKET_REPLY = false;
+
+    /**
+     * The {@link Configuration} key to store the {@link com.xatkit.plugins.moodle.platform.cluster.ClusterStore}
+     * shared by the nodes of the cluster ({@code none}, {@code memory}, or {@code file}).
+     * <p>
+     * Clustering relies on the socket delivery of the replies (see {@link #MOODLE_SOCKET_REPLY_KEY}): a reply
+     * produced on a node is forwarded to the node the user is connected to.
+     */
+    String MOODLE_CLUSTER_STORE_KEY = "xatkit.moodle.cluster.store";
+
+    /**
+     * The default value of the {@link #MOODLE_CLUSTER_STORE_KEY} {@link Configuration} key.
+     */
+    String DEFAULT_MOODLE_CLUSTER_STORE = "none";
+
+    /**
+     * The {@link Configuration} key to store the id of the node in the cluster.
+     * <p>
+     * A random id is generated if this key is not set.
+     */
+    String MOODLE_CLUSTER_NODE_ID_KEY = "xatkit.moodle.cluster.nodeId";
+
+    /**
+     * The {@link Configuration} key to store the name of the cluster when using the {@code memory} store.
+     */
+    String MOODLE_CLUSTER_NAME_KEY = "xatkit.moodle.cluster.name";
+
+    /**
+     * The default value of the {@link #MOODLE_CLUSTER_NAME_KEY} {@link Configuration} key.
+     */
+    String DEFAULT_MOODLE_CLUSTER_NAME = "xatkit-moodle";
+
+    /**
+     * The {@link Configuration} key to store the directory shared by the nodes when using the {@code file} store.
+     */
+    String MOODLE_CLUSTER_DIRECTORY_KEY = "xatkit.moodle.cluster.directory";
+
+    /**
+     * The {@link Configuration} key to store the time (in milliseconds) between two polls of the node's inbox when
+     * using the {@code file} store.
+     */
+    String MOODLE_CLUSTER_POLL_INTERVAL_KEY = "xatkit.moodle.cluster.pollInterval";
+
+    /**
+     * The default value of the {@link #MOODLE_CLUSTER_POLL_INTERVAL_KEY} {@link Configuration} key.
+     */
+    long DEFAULT_MOODLE_CLUSTER_POLL_INTERVAL = 50L;
+
+    /**
+     * The {@link Configuration} key to store the time (in milliseconds) after which a node that didn't write its
+     * heartbeat is considered dead when using the {@code file} store.
+     * <p>
+     * Messages are not forwarded to dead nodes, and the routes pointing to them are expired.
+     */
+    String MOODLE_CLUSTER_NODE_TIMEOUT_KEY = "xatkit.moodle.cluster.nodeTimeout";
+
+    /**
+     * The default value of the {@link #MOODLE_CLUSTER_NODE_TIMEOUT_KEY} {@link Configuration} key.
+     */
+    long DEFAULT_MOODLE_CLUSTER_NODE_TIMEOUT = 10000L;
+
+    /**
+     * The {@link Configuration} key to store the name of the
+     * {@link com.xatkit.plugins.moodle.platform.metrics.MetricsRegistry} class used to record the platform's
+     * metrics.
+     * <p>
+     * The class must provide a public no-argument constructor.
+     */
+    String MOODLE_METRICS_REGISTRY_KEY = "xatkit.moodle.metrics.registry";
+
+    /**
+     * The {@link Configuration} key to store the port of the local endpoint exposing the platform's metrics.
+     * <p>
+     * The endpoint is disabled if this key is not set or is negative.
+     *
+     * @see com.xatkit.plugins.moodle.platform.metrics.MetricsEndpoint
+     */
+    String MOODLE_METRICS_PORT_KEY = "xatkit.moodle.metrics.port";
+
+    /**
+     * The default value of the {@link #MOODLE_METRICS_PORT_KEY} {@link Configuration} key.
+     */
+    int DEFAULT_MOODLE_METRICS_PORT = -1;
+
+    /**
+     * The {@link Configuration} key to store the host name or address of the interface the metrics endpoint is
+     * bound to.
+     * <p>
+     * The endpoint exposes the internals of the platform and is only reachable from the local host by default. Set
+     * this key to {@code 0.0.0.0} to let a remote Prometheus server scrape it.
+     *
+     * @see com.xatkit.plugins.moodle.platform.metrics.MetricsEndpoint
+     */
+    String MOODLE_METRICS_HOST_KEY = "xatkit.moodle.metrics.host";
+
+    /**
+     * The default value of the {@link #MOODLE_METRICS_HOST_KEY} {@link Configuration} key.
+     */
+    String DEFAULT_MOODLE_METRICS_HOST = "127.0.0.1";
+
+    /**
+     * The {@link Configuration} key to store whether the clients can exchange messages encoded with the
+     * {@link MessageObjectCodec} instead of JSON.
+     * <p>
+     * A client uses the binary encoding if it sets the {@code codec=msgpack} handshake parameter when connecting, or
+     * once it sent a {@link SocketEventTypes#BINARY_USER_MESSAGE}. The other clients keep using JSON.
+     */
+    String MOODLE_SOCKET_BINARY_KEY = "xatkit.moodle.socket.binary";
+
+    /**
+     * The default value of the {@link #MOODLE_SOCKET_BINARY_KEY} {@link Configuration} key.
+     */
+    boolean DEFAULT_MOODLE_SOCKET_BINARY = true;
+
+    /**
+     * The {@link Configuration} key to restrict the socket server to the websocket transport.
+     * <p>
+     * When enabled, the server refuses the HTTP long-polling transport, meaning that the clients must connect
+     * directly with websockets (e.g. {@code io(url, {transports: ['websocket']})}). This avoids the polling
+     * requests and the upgrade of each connection.
+     */
+    String MOODLE_SOCKET_WEBSOCKET_ONLY_KEY = "xatkit.moodle.socket.websocketOnly";
+
+    /**
+     * The default value of the {@link #MOODLE_SOCKET_WEBSOCKET_ONLY_KEY} {@link Configuration} key.
+     */
+    boolean DEFAULT_MOODLE_SOCKET_WEBSOCKET_ONLY = false;
+
+    /**
+     * The {@link Configuration} key to enable the native epoll transport of the socket server.
+     * <p>
+     * The native transport is only available on Linux, the server uses the NIO transport if it cannot be loaded.
+     */
+    String MOODLE_SOCKET_EPOLL_KEY = "xatkit.moodle.socket.epoll";
+
+    /**
+     * The default value of the {@link #MOODLE_SOCKET_EPOLL_KEY} {@link Configuration} key.
+     */
+    boolean DEFAULT_MOODLE_SOCKET_EPOLL = false;
+
+    /**
+     * The {@link Configuration} key to store the number of threads accepting the socket connections.
+     * <p>
+     * Setting this key to {@code 0} uses Netty's default (twice the number of cores).
+     */
+    String MOODLE_SOCKET_BOSS_THREADS_KEY = "xatkit.moodle.socket.bossThreads";
+
+    /**
+     * The default value of the {@link #MOODLE_SOCKET_BOSS_THREADS_KEY} {@link Configuration} key.
+     */
+    int DEFAULT_MOODLE_SOCKET_BOSS_THREADS = 0;
+
+    /**
+     * The {@link Configuration} key to store the number of threads handling the I/O of the connected sockets.
+     * <p>
+     * Setting this key to {@code 0} uses Netty's default (twice the number of cores).
+     */
+    String MOODLE_SOCKET_WORKER_THREADS_KEY = "xatkit.moodle.socket.workerThreads";
+
+    /**
+     * The default value of the {@link #MOODLE_SOCKET_WORKER_THREADS_KEY} {@link Configuration} key.
+     */
+    int DEFAULT_MOODLE_SOCKET_WORKER_THREADS = 0;
+
+    /**
+     * The {@link Configuration} key to store the maximum number of pending connections queued by the socket server.
+     */
+    String MOODLE_SOCKET_ACCEPT_BACKLOG_KEY = "xatkit.moodle.socket.acceptBacklog";
+
+    /**
+     * The default value of the {@link #MOODLE_SOCKET_ACCEPT_BACKLOG_KEY} {@link Configuration} key.
+     */
+    int DEFAULT_MOODLE_SOCKET_ACCEPT_BACKLOG = 1024;
+
+    /**
+     * The {@link Configuration} key to store whether the socket server writes the outbound packets to direct
+     * (off-heap) buffers.
+     */
+    String MOODLE_SOCKET_DIRECT_BUFFERS_KEY = "xatkit.moodle.socket.directBuffers";
+
+    /**
+     * The default value of the {@link #MOODLE_SOCKET_DIRECT_BUFFERS_KEY} {@link Configuration} key.
+     */
+    boolean DEFAULT_MOODLE_SOCKET_DIRECT_BUFFERS = true;
+
+    /**
+     * The {@link Configuration} key to store whether the buffers of the socket server are taken from Netty's pooled
+     * allocator.
+     * <p>
+     * Pooled buffers are recycled instead of being allocated for each packet, setting this key to {@code false} uses
+     * unpooled buffers.
+     */
+    String MOODLE_SOCKET_POOLED_BUFFERS_KEY = "xatkit.moodle.socket.pooledBuffers";
+
+    /**
+     * The default value of the {@link #MOODLE_SOCKET_POOLED_BUFFERS_KEY} {@link Configuration} key.
+     */
+    boolean DEFAULT_MOODLE_SOCKET_POOLED_BUFFERS = true;
+
+    /**
+     * The {@link Configuration} key to store whether the socket server compresses the messages (per-message deflate
+     * for websockets, and gzip for long-polling responses).
+     * <p>
+     * Compression reduces the bandwidth used by large messages, but keeps a compression context for each
+     * connection and costs CPU time for the short chat messages.
+     */
+    String MOODLE_SOCKET_COMPRESSION_KEY = "xatkit.moodle.socket.compression";
+
+    /**
+     * The default value of the {@link #MOODLE_SOCKET_COMPRESSION_KEY} {@link Configuration} key.
+     */
+    boolean DEFAULT_MOODLE_SOCKET_COMPRESSION = true;
+
+    /**
+     * The {@link Configuration} key to store the time (in milliseconds) to wait for the socket server to start.
+     * <p>
+     * The platform fails to start if the socket server is not listening after this delay. A value of {@code 0}
+     * starts the socket server in the background without waiting for it.
+     */
+    String MOODLE_STARTUP_TIMEOUT_KEY = "xatkit.moodle.startup.timeout";
+
+    /**
+     * The default value of the {@link #MOODLE_STARTUP_TIMEOUT_KEY} {@link Configuration} key.
+     */
+    long DEFAULT_MOODLE_STARTUP_TIMEOUT = 10000L;
+
+    /**
+     * The {@link Configuration} key to store the time (in milliseconds) the platform keeps serving its users after
+     * reporting that it is not ready anymore when it is shut down.
+     * <p>
+     * This delay lets load balancers notice that the node is draining and route the new users to the other nodes
+     * before the node stops accepting connections and messages.
+     */
+    String MOODLE_SHUTDOWN_DRAIN_DELAY_KEY = "xatkit.moodle.shutdown.drainDelay";
+
+    /**
+     * The default value of the {@link #MOODLE_SHUTDOWN_DRAIN_DELAY_KEY} {@link Configuration} key.
+     */
+    long DEFAULT_MOODLE_SHUTDOWN_DRAIN_DELAY = 0L;
+
+    /**
+     * The {@link Configuration} key to store the time (in milliseconds) to wait for the queued inbound messages to
+     * be processed, and then for the outbound messages to be sent, when the platform is shut down.
+     */
+    String MOODLE_SHUTDOWN_TIMEOUT_KEY = "xatkit.moodle.shutdown.timeout";
+
+    /**
+     * The default value of the {@link #MOODLE_SHUTDOWN_TIMEOUT_KEY} {@link Configuration} key.
+     */
+    long DEFAULT_MOODLE_SHUTDOWN_TIMEOUT = 5000L;
+
+    /**
+     * The {@link Configuration} key to store the time (in milliseconds) without Moodle action after which the
+     * actions triggered by the queued inbound messages are considered done when the platform is shut down.
+     * <p>
+     * The actions are executed asynchronously by the Xatkit core: this period covers the time taken by the core to
+     * start the actions of a message, and the time between two actions of the same message. The outbound messages
+     * are accepted until the actions are done, or until {@link #MOODLE_SHUTDOWN_TIMEOUT_KEY} milliseconds elapsed.
+     */
+    String MOODLE_SHUTDOWN_QUIET_PERIOD_KEY = "xatkit.moodle.shutdown.quietPeriod";
+
+    /**
+     * The default value of the {@link #MOODLE_SHUTDOWN_QUIET_PERIOD_KEY} {@link Configuration} key.
+     */
+    long DEFAULT_MOODLE_SHUTDOWN_QUIET_PERIOD = 500L;
+
+    /**
+     * The {@link Configuration} key to store the sampling rate of the per-message debug logs (one message out of
+     * {@code rate} is logged, {@code 0} disables the logs).
+     */
+    String MOODLE_LOG_SAMPLE_RATE_KEY = "xatkit.moodle.log.sampleRate";
+
+    /**
+     * The default value of the {@link #MOODLE_LOG_SAMPLE_RATE_KEY} {@link Configuration} key.
+     */
+    long DEFAULT_MOODLE_LOG_SAMPLE_RATE = 100L;
+
+    /**
+     * The {@link Configuration} key to store the number of workers processing the inbound messages.
+     *
+     * @see com.xatkit.plugins.moodle.platform.io.InboundMessageDispatcher
+     */
+    String MOODLE_INBOUND_WORKERS_KEY = "xatkit.moodle.inbound.workers";
+
+    /**
+     * The default value of the {@link #MOODLE_INBOUND_WORKERS_KEY} {@link Configuration} key.
+     */
+    int DEFAULT_MOODLE_INBOUND_WORKERS = 16;
+
+    /**
+     * The {@link Configuration} key to store the maximum number of inbound messages waiting to be processed.
+     *
+     * @see com.xatkit.plugins.moodle.platform.io.InboundMessageDispatcher
+     */
+    String MOODLE_INBOUND_QUEUE_DEPTH_KEY = "xatkit.moodle.inbound.queueDepth";
+
+    /**
+     * The default value of the {@link #MOODLE_INBOUND_QUEUE_DEPTH_KEY} {@link Configuration} key.
+     */
+    int DEFAULT_MOODLE_INBOUND_QUEUE_DEPTH = 1000;
+
+    /**
+     * The {@link Configuration} key to store the policy applied to the inbound messages received when the queue is
+     * full ({@code ack} or {@code drop}).
+     *
+     * @see com.xatkit.plugins.moodle.platform.io.InboundRejectPolicy
+     */
+    String MOODLE_INBOUND_REJECT_POLICY_KEY = "xatkit.moodle.inbound.rejectPolicy";
+
+    /**
+     * The default value of the {@link #MOODLE_INBOUND_REJECT_POLICY_KEY} {@link Configuration} key.
+     */
+    String DEFAULT_MOODLE_INBOUND_REJECT_POLICY = "ack";
+
+    /**
+     * The {@link Configuration} key to store the number of messages per second accepted from each user ({@code 0}
+     * disables the per-user rate limit).
+     *
+     * @see com.xatkit.plugins.moodle.platform.io.TokenBucketLimiter
+     */
+    String MOODLE_RATE_LIMIT_USER_RATE_KEY = "xatkit.moodle.rateLimit.user.rate";
+
+    /**
+     * The default value of the {@link #MOODLE_RATE_LIMIT_USER_RATE_KEY} {@link Configuration} key.
+     */
+    double DEFAULT_MOODLE_RATE_LIMIT_USER_RATE = 0.0;
+
+    /**
+     * The {@link Configuration} key to store the maximum number of messages a user can send at once.
+     */
+    String MOODLE_RATE_LIMIT_USER_BURST_KEY = "xatkit.moodle.rateLimit.user.burst";
+
+    /**
+     * The default value of the {@link #MOODLE_RATE_LIMIT_USER_BURST_KEY} {@link Configuration} key.
+     */
+    int DEFAULT_MOODLE_RATE_LIMIT_USER_BURST = 20;
+
+    /**
+     * The {@link Configuration} key to store the number of messages per second accepted from the users of each
+     * course ({@code 0} disables the per-course rate limit).
+     *
+     * @see com.xatkit.plugins.moodle.platform.io.TokenBucketLimiter
+     */
+    String MOODLE_RATE_LIMIT_COURSE_RATE_KEY = "xatkit.moodle.rateLimit.course.rate";
+
+    /**
+     * The default value of the {@link #MOODLE_RATE_LIMIT_COURSE_RATE_KEY} {@link Configuration} key.
+     */
+    double DEFAULT_MOODLE_RATE_LIMIT_COURSE_RATE = 0.0;
+
+    /**
+     * The {@link Configuration} key to store the maximum number of messages the users of a course can send at once.
+     */
+    String MOODLE_RATE_LIMIT_COURSE_BURST_KEY = "xatkit.moodle.rateLimit.course.burst";
+
+    /**
+     * The default value of the {@link #MOODLE_RATE_LIMIT_COURSE_BURST_KEY} {@link Configuration} key.
+     */
+    int DEFAULT_MOODLE_RATE_LIMIT_COURSE_BURST = 200;
+
+    /**
+     * The {@link Configuration} key to store the maximum time (in milliseconds) a message exceeding a rate limit is
+     * deferred before being processed ({@code 0} sheds these messages right away).
+     * <p>
+     * Messages that would have to be deferred longer are shed according to the
+     * {@link #MOODLE_INBOUND_REJECT_POLICY_KEY} policy.
+     */
+    String MOODLE_RATE_LIMIT_MAX_DELAY_KEY = "xatkit.moodle.rateLimit.maxDelay";
+
+    /**
+     * The default value of the {@link #MOODLE_RATE_LIMIT_MAX_DELAY_KEY} {@link Configuration} key.
+     */
+    long DEFAULT_MOODLE_RATE_LIMIT_MAX_DELAY = 0L;
+
     /**
      * The {@link RuntimeContexts} key used to store Moodle-related information.
      */
@@ -43,4 +895,10 @@ public interface MoodleUtils extends ChatUtils {
      * The {@link RuntimeContexts} key used to store Moodle-session information.
      */
     String MOODLE_CHAT_COURSEID_CONTEXT_KEY = "currentCourseID";
+
+    /**
+     * The {@link com.xatkit.core.session.XatkitSession} key used to store the
+     * {@link com.xatkit.plugins.moodle.platform.session.MoodleSessionContext} of the last received message.
+     */
+    String MOODLE_SESSION_CONTEXT_KEY = "xatkit.moodle.sessionContext";
 }
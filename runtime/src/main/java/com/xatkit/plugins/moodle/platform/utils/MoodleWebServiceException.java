@@ -0,0 +1,54 @@
+package com.xatkit.plugins.moodle.platform.utils;
+
+import com.xatkit.core.XatkitException;
+
+/**
+ * A {@link XatkitException} thrown when a Moodle web service function returns an error.
+ * <p>
+ * This exception contains the error code, message, and debug information returned by Moodle in its {@code
+ * EXCEPTION} payload.
+ */
+public class MoodleWebServiceException extends XatkitException {
+
+    /**
+     * The Moodle error code (e.g. {@code invalidparameter}).
+     */
+    private final String errorCode;
+
+    /**
+     * The debug information returned by Moodle, if any.
+     */
+    private final String debugInfo;
+
+    /**
+     * Constructs a new {@link MoodleWebServiceException} from the provided {@code errorCode}, {@code message}, and
+     * {@code debugInfo}.
+     *
+     * @param errorCode the Moodle error code
+     * @param message   the error message returned by Moodle
+     * @param debugInfo the debug information returned by Moodle, if any
+     */
+    public MoodleWebServiceException(String errorCode, String message, String debugInfo) {
+        super(message);
+        this.errorCode = errorCode;
+        this.debugInfo = debugInfo;
+    }
+
+    /**
+     * Returns the Moodle error code.
+     *
+     * @return the Moodle error code
+     */
+    public String getErrorCode() {
+        return errorCode;
+    }
+
+    /**
+     * Returns the debug information returned by Moodle.
+     *
+     * @return the debug information returned by Moodle, or {@code null} if Moodle didn't return any
+     */
+    public String getDebugInfo() {
+        return debugInfo;
+    }
+}
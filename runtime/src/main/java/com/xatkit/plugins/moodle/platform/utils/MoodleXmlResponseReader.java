@@ -0,0 +1,220 @@
+package com.xatkit.plugins.moodle.platform.utils;
+
+import com.xatkit.core.XatkitException;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+
+/**
+ * A streaming reader for the XML responses returned by Moodle's REST web services.
+ * <p>
+ * Moodle serializes the results of its web service functions as a {@code RESPONSE} element containing {@code
+ * SINGLE} records (usually wrapped in a {@code MULTIPLE} element), each record being a list of {@code KEY} elements
+ * holding a {@code VALUE}. This reader pulls the values of the requested keys straight from the response's {@link
+ * InputStream} in a single pass, without building an intermediate DOM. Nested structures (e.g. the {@code
+ * overviewfiles} of a course) are skipped.
+ * <p>
+ * Error payloads ({@code EXCEPTION} elements) are detected while reading and reported as a
+ * {@link MoodleWebServiceException}.
+ * <p>
+ * {@link MoodleXmlResponseReader} instances are immutable and can be shared between threads.
+ */
+public class MoodleXmlResponseReader {
+
+    /**
+     * The {@link XMLInputFactory} used to create the underlying {@link XMLStreamReader}s.
+     * <p>
+     * The factory is configured once and is thread-safe for reader creation. DTDs and external entities are disabled
+     * since Moodle responses never use them.
+     */
+    private static final XMLInputFactory XML_INPUT_FACTORY = createInputFactory();
+
+    /**
+     * The keys to report, or an empty {@link Set} to report every key.
+     */
+    private final Set<String> keys;
+
+    /**
+     * Constructs a new {@link MoodleXmlResponseReader} reporting the provided {@code keys}.
+     *
+     * @param keys the keys to report (e.g. {@code fullname}), all the keys of the records are reported if no key is
+     *             provided
+     */
+    public MoodleXmlResponseReader(String... keys) {
+        this.keys = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(keys)));
+    }
+
+    /**
+     * Reads the provided {@code body} and notifies the {@code handler} of each value of the requested keys.
+     * <p>
+     * This method does not close the provided {@code body}.
+     *
+     * @param body    the {@link InputStream} containing the response body
+     * @param handler the {@link RecordHandler} notified of each value
+     * @return the number of records in the response
+     * @throws MoodleWebServiceException if the response contains a Moodle error
+     * @throws XatkitException           if an error occurred when reading the response
+     */
+    public int read(InputStream body, RecordHandler handler) {
+        XMLStreamReader reader = null;
+        try {
+            reader = XML_INPUT_FACTORY.createXMLStreamReader(body);
+            int depth = 0;
+            int recordDepth = -1;
+            int recordIndex = -1;
+            String currentKey = null;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    String name = reader.getLocalName();
+                    if (recordDepth < 0) {
+                        if ("SINGLE".equals(name)) {
+                            recordDepth = depth;
+                            recordIndex++;
+                        } else if ("EXCEPTION".equals(name) || "error".equals(name)) {
+                            throw readError(reader);
+                        }
+                    } else if (depth == recordDepth + 1 && "KEY".equals(name)) {
+                        String keyName = reader.getAttributeValue(null, "name");
+                        currentKey = (keys.isEmpty() || keys.contains(keyName)) ? keyName : null;
+                    } else if (depth == recordDepth + 2 && "VALUE".equals(name) && nonNull(currentKey)) {
+                        boolean isNull = nonNull(reader.getAttributeValue(null, "null"));
+                        /*
+                         * getElementText() consumes the END_ELEMENT event of the VALUE.
+                         */
+                        String value = reader.getElementText();
+                        depth--;
+                        handler.onValue(recordIndex, currentKey, isNull ? null : value);
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (depth == recordDepth) {
+                        recordDepth = -1;
+                    } else if (depth == recordDepth + 1) {
+                        currentKey = null;
+                    }
+                    depth--;
+                }
+            }
+            return recordIndex + 1;
+        } catch (XMLStreamException e) {
+            throw new XatkitException("Cannot read the Moodle response", e);
+        } finally {
+            if (nonNull(reader)) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    // Closing the reader doesn't close the underlying stream, nothing to clean up
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the provided {@code body} and returns its records.
+     * <p>
+     * Each record is represented as a {@link Map} containing the values of the requested keys. This method does not
+     * close the provided {@code body}.
+     *
+     * @param body the {@link InputStream} containing the response body
+     * @return the records of the response
+     * @throws MoodleWebServiceException if the response contains a Moodle error
+     * @throws XatkitException           if an error occurred when reading the response
+     * @see #read(InputStream, RecordHandler)
+     */
+    public List<Map<String, String>> readRecords(InputStream body) {
+        List<Map<String, String>> records = new ArrayList<>();
+        int count = read(body, (record, key, value) -> {
+            while (records.size() <= record) {
+                records.add(new HashMap<>());
+            }
+            records.get(record).put(key, value);
+        });
+        while (records.size() < count) {
+            records.add(new HashMap<>());
+        }
+        return records;
+    }
+
+    /**
+     * Reads the Moodle error starting at the current position of the provided {@code reader}.
+     * <p>
+     * This method supports both the {@code EXCEPTION} payload returned by the web service functions and the legacy
+     * {@code error} payload.
+     *
+     * @param reader the {@link XMLStreamReader} positioned on the error element
+     * @return the {@link MoodleWebServiceException} representing the error
+     * @throws XMLStreamException if an error occurred when reading the error
+     */
+    private static MoodleWebServiceException readError(XMLStreamReader reader) throws XMLStreamException {
+        String errorCode = reader.getAttributeValue(null, "class");
+        String message = null;
+        String debugInfo = null;
+        int depth = 1;
+        while (reader.hasNext() && depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = reader.getLocalName();
+                if ("ERRORCODE".equals(name) || "errorcode".equals(name)) {
+                    errorCode = reader.getElementText();
+                } else if ("MESSAGE".equals(name) || "errorMessage".equals(name)) {
+                    message = reader.getElementText();
+                } else if ("DEBUGINFO".equals(name) || "debuginfo".equals(name)) {
+                    debugInfo = reader.getElementText();
+                } else {
+                    depth++;
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+        if (isNull(message)) {
+            message = "Moodle returned an error" + (nonNull(errorCode) ? " (" + errorCode + ")" : "");
+        }
+        return new MoodleWebServiceException(errorCode, message, debugInfo);
+    }
+
+    /**
+     * Creates and configures the {@link XMLInputFactory} used to read Moodle responses.
+     *
+     * @return the created {@link XMLInputFactory}
+     */
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+    /**
+     * A callback notified of the values read by a {@link MoodleXmlResponseReader}.
+     */
+    @FunctionalInterface
+    public interface RecordHandler {
+
+        /**
+         * Handles a value read from the response.
+         *
+         * @param record the index of the record containing the value
+         * @param key    the key of the value
+         * @param value  the value, or {@code null} if Moodle returned a {@code null} value
+         */
+        void onValue(int record, String key, String value);
+    }
+}
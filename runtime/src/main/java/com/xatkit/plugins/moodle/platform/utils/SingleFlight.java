@@ -0,0 +1,98 @@
+package com.xatkit.plugins.moodle.platform.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static fr.inria.atlanmod.commons.Preconditions.checkNotNull;
+
+/**
+ * Merges the concurrent computations of the same key into a single computation.
+ * <p>
+ * The first caller requesting a key starts the computation, and the callers requesting the same key while the
+ * computation is in flight wait for its result instead of starting their own. The key is forgotten as soon as the
+ * computation completes, meaning that this class never returns stale results: it is not a cache.
+ * <p>
+ * Each caller receives its own {@link CompletableFuture}, a caller cancelling its future doesn't cancel the shared
+ * computation.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the results
+ */
+public class SingleFlight<K, V> {
+
+    /**
+     * The computations in flight, indexed by key.
+     */
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * The number of callers that joined a computation in flight.
+     */
+    private final LongAdder joined = new LongAdder();
+
+    /**
+     * Returns the result of the computation of the provided {@code key}, starting it with the given {@code
+     * computation} if it isn't already in flight.
+     *
+     * @param key         the key of the computation
+     * @param computation the {@link Supplier} starting the computation
+     * @return a {@link CompletableFuture} completed with the result of the computation
+     * @throws NullPointerException if the provided {@code key} or {@code computation} is {@code null}
+     */
+    public CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> computation) {
+        checkNotNull(key, "Cannot execute the computation of the provided key %s", key);
+        checkNotNull(computation, "Cannot execute the provided computation %s", computation);
+        CompletableFuture<V> leader = new CompletableFuture<>();
+        CompletableFuture<V> shared = inFlight.putIfAbsent(key, leader);
+        if (shared == null) {
+            shared = leader;
+            try {
+                computation.get().whenComplete((result, error) -> {
+                    inFlight.remove(key, leader);
+                    if (error != null) {
+                        leader.completeExceptionally(error);
+                    } else {
+                        leader.complete(result);
+                    }
+                });
+            } catch (RuntimeException e) {
+                inFlight.remove(key, leader);
+                leader.completeExceptionally(e);
+            }
+        } else {
+            joined.increment();
+        }
+        return shared.thenApply(Function.identity());
+    }
+
+    /**
+     * Returns whether the provided {@code key} has a computation in flight.
+     *
+     * @param key the key to check
+     * @return {@code true} if the {@code key} has a computation in flight, {@code false} otherwise
+     */
+    public boolean isInFlight(K key) {
+        return inFlight.containsKey(key);
+    }
+
+    /**
+     * Returns the number of callers that joined a computation in flight instead of starting their own.
+     *
+     * @return the number of callers that joined a computation in flight
+     */
+    public long getJoinedCount() {
+        return joined.sum();
+    }
+
+    /**
+     * Returns the number of computations in flight.
+     *
+     * @return the number of computations in flight
+     */
+    public int size() {
+        return inFlight.size();
+    }
+}
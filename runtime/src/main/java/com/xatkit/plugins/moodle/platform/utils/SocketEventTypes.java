@@ -12,7 +12,15 @@ public enum SocketEventTypes {
     /**
      * A message sent by the user.
      */
-    USER_MESSAGE("user_message");
+    USER_MESSAGE("user_message"),
+    /**
+     * A message sent by the bot, encoded with the {@link MessageObjectCodec}.
+     */
+    BINARY_BOT_MESSAGE("bot_message_bin"),
+    /**
+     * A message sent by the user, encoded with the {@link MessageObjectCodec}.
+     */
+    BINARY_USER_MESSAGE("user_message_bin");
 
     /**
      * The label of the enumeration value.
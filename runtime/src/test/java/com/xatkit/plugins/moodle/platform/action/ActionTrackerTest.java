@@ -0,0 +1,68 @@
+package com.xatkit.plugins.moodle.platform.action;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ActionTrackerTest {
+
+    private ActionTracker tracker = new ActionTracker();
+
+    @Test
+    public void awaitQuiescenceWithoutActivity() {
+        assertThat(tracker.awaitQuiescence(0, 0)).isTrue();
+    }
+
+    @Test
+    public void awaitQuiescenceTimesOutWhileActionRunning() {
+        tracker.actionStarted();
+        assertThat(tracker.awaitQuiescence(0, 50)).isFalse();
+        assertThat(tracker.getRunningCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void awaitQuiescenceWaitsForRunningAction() {
+        tracker.actionStarted();
+        CompletableFuture.runAsync(() -> {
+            sleep(100);
+            tracker.actionCompleted();
+        });
+        long start = System.nanoTime();
+        assertThat(tracker.awaitQuiescence(0, 5000)).isTrue();
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(90);
+        assertThat(tracker.getRunningCount()).isZero();
+    }
+
+    @Test
+    public void awaitQuiescenceWaitsForQuietPeriodAfterEvent() {
+        tracker.eventSent();
+        long start = System.nanoTime();
+        assertThat(tracker.awaitQuiescence(200, 5000)).isTrue();
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(190);
+    }
+
+    @Test
+    public void awaitQuiescenceCoversActionStartedAfterEvent() {
+        tracker.eventSent();
+        CompletableFuture.runAsync(() -> {
+            sleep(50);
+            tracker.actionStarted();
+            sleep(300);
+            tracker.actionCompleted();
+        });
+        long start = System.nanoTime();
+        assertThat(tracker.awaitQuiescence(200, 5000)).isTrue();
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(540);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.xatkit.plugins.moodle.platform.action;
+
+import com.xatkit.plugins.moodle.platform.journal.OutboundJournal;
+import com.xatkit.plugins.moodle.platform.metrics.MetricNames;
+import com.xatkit.plugins.moodle.platform.utils.MessageSendResult;
+import com.xatkit.plugins.moodle.platform.utils.MoodleUnavailableException;
+import org.apache.commons.configuration2.BaseConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MessageBatcherTest {
+
+    private static final String ENDPOINT = "http://moodle/webservice/rest/server.php?wstoken=token";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private FakeClient client;
+
+    private OutboundJournal journal;
+
+    private MessageBatcher batcher;
+
+    @Before
+    public void setUp() throws IOException {
+        client = new FakeClient();
+        journal = new OutboundJournal(temporaryFolder.newFolder("journal").toPath(), 4096, false);
+        batcher = new MessageBatcher(client, 0, 1, journal);
+    }
+
+    @After
+    public void tearDown() {
+        batcher.shutdown(1000);
+        journal.close();
+        client.close();
+    }
+
+    @Test
+    public void sentMessageIsAcknowledged() throws Exception {
+        client.outcomes.add(null);
+        assertThat(send().isSent()).isTrue();
+        awaitPendingCount(0);
+        assertThat(batcher.retryFailed()).isZero();
+    }
+
+    @Test
+    public void deadlineExceededMessageIsNotSentAgain() throws InterruptedException {
+        client.outcomes.add(new MoodleUnavailableException(MessageBatcher.SEND_MESSAGES_FUNCTION,
+                MoodleUnavailableException.Reason.DEADLINE_EXCEEDED));
+        assertThatThrownBy(this::send).isInstanceOf(ExecutionException.class);
+        awaitPendingCount(0);
+        assertThat(batcher.retryFailed()).isZero();
+        assertThat(client.calls).isEqualTo(1);
+        assertThat(client.getMetrics().counter(MetricNames.OUTBOUND_UNKNOWN).get()).isEqualTo(1);
+    }
+
+    @Test
+    public void failedMessageIsSentAgain() throws Exception {
+        client.outcomes.add(new MoodleUnavailableException(MessageBatcher.SEND_MESSAGES_FUNCTION,
+                MoodleUnavailableException.Reason.CIRCUIT_OPEN));
+        client.outcomes.add(null);
+        assertThatThrownBy(this::send).isInstanceOf(ExecutionException.class);
+        assertThat(journal.getPendingCount()).isEqualTo(1);
+        int retried = 0;
+        for (int i = 0; i < 100 && retried == 0; i++) {
+            /*
+             * The message is released once the failure of its first send has been handled.
+             */
+            retried = batcher.retryFailed();
+            Thread.sleep(10);
+        }
+        assertThat(retried).isEqualTo(1);
+        awaitPendingCount(0);
+        assertThat(client.calls).isEqualTo(2);
+        assertThat(client.getMetrics().counter(MetricNames.OUTBOUND_JOURNAL_RETRIED).get()).isEqualTo(1);
+    }
+
+    /**
+     * Waits until the journal contains {@code expected} pending messages, the messages are acknowledged after their
+     * future is completed.
+     */
+    private void awaitPendingCount(int expected) throws InterruptedException {
+        for (int i = 0; i < 100 && journal.getPendingCount() != expected; i++) {
+            Thread.sleep(10);
+        }
+        assertThat(journal.getPendingCount()).isEqualTo(expected);
+    }
+
+    private MessageSendResult send() throws Exception {
+        return batcher.submit(ENDPOINT, 42, "Hello").get(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * A client completing each request with the next outcome: a sent message if the outcome is {@code null}, the
+     * outcome as an error otherwise.
+     */
+    private static class FakeClient extends MoodleWebServiceClient {
+
+        private final Queue<RuntimeException> outcomes = new LinkedList<>();
+
+        private volatile int calls;
+
+        private FakeClient() {
+            super(new BaseConfiguration());
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public synchronized <T> CompletableFuture<List<T>> callForList(String moodleEndpoint, String wsfunction,
+                                                                       Map<String, Object> parameters,
+                                                                       Class<T> elementType) {
+            calls++;
+            CompletableFuture<List<T>> future = new CompletableFuture<>();
+            RuntimeException outcome = outcomes.poll();
+            if (outcome == null) {
+                future.complete((List<T>) Collections.singletonList(new MessageSendResult(1, null, null)));
+            } else {
+                future.completeExceptionally(outcome);
+            }
+            return future;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.xatkit.plugins.moodle.platform.io;
+
+import com.xatkit.core.XatkitCore;
+import com.xatkit.core.XatkitException;
+import com.xatkit.core.session.XatkitSession;
+import com.xatkit.intent.RecognizedIntent;
+import org.junit.After;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RecognitionBatcherTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(3);
+
+    private final List<List<String>> calls = Collections.synchronizedList(new ArrayList<>());
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void recognizeAloneWithoutBatch() {
+        RecognitionBatcher batcher = new RecognitionBatcher(new FakeRecognizer(false), null, 1, 5);
+        RecognizedIntent intent = batcher.recognize("hello", new XatkitSession("1"));
+        assertThat(intent.getMatchedInput()).isEqualTo("hello");
+        assertThat(batcher.getBypassedCount()).isEqualTo(1);
+        assertThat(calls).containsExactly(Collections.singletonList("hello"));
+    }
+
+    @Test
+    public void recognizeAloneFailure() {
+        RecognitionBatcher batcher = new RecognitionBatcher(new FakeRecognizer(false), null, 1, 5);
+        assertThatThrownBy(() -> batcher.recognize("always bad", new XatkitSession("1")))
+                .isInstanceOf(XatkitException.class);
+    }
+
+    @Test
+    public void batchRetriesOnlyFailedMessages() throws Exception {
+        RecognitionBatcher batcher = new RecognitionBatcher(new FakeRecognizer(false), null, 3, 1000);
+        List<String> results = recognizeBatch(batcher, "first", "bad", "third");
+        assertThat(results).containsExactly("first", "bad", "third");
+        assertThat(batcher.getBatchCount()).isEqualTo(1);
+        assertThat(batcher.getBatchedMessageCount()).isEqualTo(3);
+        assertThat(batcher.getRetriedCount()).isEqualTo(1);
+        assertThat(calls).containsExactly(Arrays.asList("first", "bad", "third"), Collections.singletonList("bad"));
+    }
+
+    @Test
+    public void batchFailureRecognizesEachMessage() throws Exception {
+        RecognitionBatcher batcher = new RecognitionBatcher(new FakeRecognizer(true), null, 3, 1000);
+        List<String> results = recognizeBatch(batcher, "first", "second", "third");
+        assertThat(results).containsExactly("first", "second", "third");
+        assertThat(batcher.getBatchCount()).isZero();
+        assertThat(batcher.getRetriedCount()).isZero();
+        assertThat(calls).hasSize(4);
+        assertThat(calls.subList(1, 4)).containsExactlyInAnyOrder(Collections.singletonList("first"),
+                Collections.singletonList("second"), Collections.singletonList("third"));
+    }
+
+    /**
+     * Recognizes the provided {@code messages} concurrently in a single batch.
+     * <p>
+     * The batcher only opens a batch when messages are expected within its delay: the messages are recognized once
+     * the average interval between the messages is low enough.
+     */
+    private List<String> recognizeBatch(RecognitionBatcher batcher, String... messages) throws Exception {
+        for (int i = 0; i < 6; i++) {
+            batcher.recognize("warm-up", new XatkitSession("warm-up"));
+        }
+        calls.clear();
+        List<Future<RecognizedIntent>> futures = new ArrayList<>();
+        for (int i = 0; i < messages.length; i++) {
+            String message = messages[i];
+            XatkitSession session = new XatkitSession(Integer.toString(i));
+            futures.add(executor.submit(() -> batcher.recognize(message, session)));
+            /*
+             * Let the message join the batch before the next one, so that the batch has a predictable order.
+             */
+            Thread.sleep(50);
+        }
+        List<String> results = new ArrayList<>();
+        for (Future<RecognizedIntent> future : futures) {
+            results.add(future.get(5, TimeUnit.SECONDS).getMatchedInput());
+        }
+        return results;
+    }
+
+    private static RecognizedIntent intent(String matchedInput) {
+        return (RecognizedIntent) Proxy.newProxyInstance(RecognizedIntent.class.getClassLoader(),
+                new Class<?>[]{RecognizedIntent.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("getMatchedInput")) {
+                        return matchedInput;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    /**
+     * A recognizer failing the messages containing {@code bad} in a batch, and the messages starting with
+     * {@code always} everywhere.
+     */
+    private class FakeRecognizer implements BatchIntentRecognizer {
+
+        private final boolean failBatches;
+
+        private FakeRecognizer(boolean failBatches) {
+            this.failBatches = failBatches;
+        }
+
+        @Override
+        public List<RecognitionResult> recognize(List<String> messages, List<XatkitSession> sessions,
+                                                 XatkitCore xatkitCore) {
+            if (!messages.get(0).equals("warm-up")) {
+                calls.add(new ArrayList<>(messages));
+            }
+            if (failBatches && messages.size() > 1) {
+                throw new XatkitException("Cannot recognize the batch");
+            }
+            return messages.stream().map(message -> {
+                if (message.startsWith("always") || (message.contains("bad") && messages.size() > 1)) {
+                    return RecognitionResult.failed(new XatkitException("Cannot recognize " + message));
+                }
+                return RecognitionResult.of(intent(message));
+            }).collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.xatkit.plugins.moodle.platform.io;
+
+import com.xatkit.core.session.XatkitSession;
+import com.xatkit.intent.IntentFactory;
+import com.xatkit.intent.RecognizedIntent;
+import com.xatkit.plugins.moodle.platform.utils.MoodleUtils;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RecognitionCacheTest {
+
+    private final RecognitionCache cache = new RecognitionCache(1000, 10);
+
+    private final List<String> recognized = new ArrayList<>();
+
+    @Test
+    public void keyIgnoresWhitespacesAndTrailingPunctuation() {
+        XatkitSession session = new XatkitSession("42");
+        assertThat(cache.key("  find   course INF101 ?!", session)).isEqualTo(cache.key("find course INF101",
+                session));
+    }
+
+    @Test
+    public void keyKeepsCase() {
+        XatkitSession session = new XatkitSession("42");
+        assertThat(cache.key("find course INF101", session)).isNotEqualTo(cache.key("find course inf101",
+                session));
+    }
+
+    @Test
+    public void keyDependsOnActiveContexts() {
+        XatkitSession session = new XatkitSession("42");
+        String withoutContext = cache.key("yes", session);
+        session.getRuntimeContexts().setContextValue("confirmation", 2, "course", "INF101");
+        assertThat(cache.key("yes", session)).isNotEqualTo(withoutContext);
+    }
+
+    @Test
+    public void keyIgnoresPlatformContexts() {
+        XatkitSession session = new XatkitSession("42");
+        String withoutContext = cache.key("yes", session);
+        session.getRuntimeContexts().setContextValue(MoodleUtils.MOODLE_CONTEXT_KEY, 5, "userId", "42");
+        assertThat(cache.key("yes", session)).isEqualTo(withoutContext);
+    }
+
+    @Test
+    public void hitReturnsCopyWithMatchedInput() {
+        RecognizedIntent first = cache.recognize("find INF101", new XatkitSession("42"), this::recognize);
+        RecognizedIntent second = cache.recognize("find INF101 ?", new XatkitSession("43"), this::recognize);
+        assertThat(recognized).containsExactly("find INF101");
+        assertThat(second).isNotSameAs(first);
+        assertThat(second.getMatchedInput()).isEqualTo("find INF101 ?");
+        assertThat(cache.getHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void followUpIntentMatchesAfterHit() {
+        cache.recognize("enrol me in INF101", new XatkitSession("42"), this::recognize);
+        XatkitSession session = new XatkitSession("43");
+        cache.recognize("enrol me in INF101", session, this::recognize);
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertThat(session.getRuntimeContexts().getContextValue("confirmation", "course")).isEqualTo("INF101");
+        assertThat(session.getRuntimeContexts().getContextLifespanCount("confirmation")).isEqualTo(2);
+        assertThat(cache.recognize("yes", session, this::recognize).getMatchedInput()).isEqualTo("Confirm INF101");
+    }
+
+    @Test
+    public void intentDecreasingContextLifespanIsNotCached() {
+        XatkitSession session = new XatkitSession("42");
+        session.getRuntimeContexts().setContextValue("confirmation", 2, "course", "INF101");
+        cache.recognize("yes", session, this::recognize);
+        session = new XatkitSession("43");
+        session.getRuntimeContexts().setContextValue("confirmation", 2, "course", "INF101");
+        cache.recognize("yes", session, this::recognize);
+        assertThat(recognized).containsExactly("yes", "yes");
+        assertThat(cache.size()).isZero();
+    }
+
+    /**
+     * Recognizes the provided {@code rawMessage} like an intent recognition provider handling a follow-up intent:
+     * the enrolment request sets a {@code confirmation} context, and {@code yes} is confirmed in this context.
+     */
+    private RecognizedIntent recognize(String rawMessage, XatkitSession session) {
+        recognized.add(rawMessage);
+        RecognizedIntent intent = IntentFactory.eINSTANCE.createRecognizedIntent();
+        Object course = session.getRuntimeContexts().getContextValue("confirmation", "course");
+        if (rawMessage.startsWith("enrol me in ")) {
+            session.getRuntimeContexts().setContextValue("confirmation", 2, "course",
+                    rawMessage.substring("enrol me in ".length()));
+            intent.setMatchedInput(rawMessage);
+        } else if (rawMessage.equals("yes") && course != null) {
+            /*
+             * Decrements the lifespan of the context, which cannot be replayed on a cache hit.
+             */
+            session.getRuntimeContexts().setContextValue("confirmation", 1, "course", course);
+            intent.setMatchedInput("Confirm " + course);
+        } else {
+            intent.setMatchedInput(rawMessage);
+        }
+        return intent;
+    }
+}
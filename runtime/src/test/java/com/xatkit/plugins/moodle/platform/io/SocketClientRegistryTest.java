@@ -0,0 +1,78 @@
+package com.xatkit.plugins.moodle.platform.io;
+
+import com.corundumstudio.socketio.SocketIOClient;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SocketClientRegistryTest {
+
+    private final SocketClientRegistry registry = new SocketClientRegistry();
+
+    @Test
+    public void registerSameClientTwice() {
+        SocketIOClient client = client(true);
+        assertThat(registry.register("42", client)).isTrue();
+        assertThat(registry.register("42", client)).isFalse();
+        assertThat(registry.get("42")).isSameAs(client);
+        assertThat(registry.getUserId(client)).isEqualTo("42");
+    }
+
+    @Test
+    public void unregisterCurrentClient() {
+        SocketIOClient client = client(true);
+        registry.register("42", client);
+        assertThat(registry.unregister(client)).isEqualTo("42");
+        assertThat(registry.get("42")).isNull();
+        assertThat(registry.size()).isZero();
+    }
+
+    @Test
+    public void unregisterUnknownClient() {
+        assertThat(registry.unregister(client(true))).isNull();
+    }
+
+    @Test
+    public void firstOfTwoClientsDisconnects() {
+        SocketIOClient first = client(true);
+        SocketIOClient second = client(true);
+        registry.register("42", first);
+        registry.register("42", second);
+        assertThat(registry.unregister(first)).isNull();
+        assertThat(registry.get("42")).isSameAs(second);
+        assertThat(registry.getUserId(second)).isEqualTo("42");
+        assertThat(registry.unregister(second)).isEqualTo("42");
+        assertThat(registry.get("42")).isNull();
+    }
+
+    @Test
+    public void getDropsClosedClient() {
+        SocketIOClient client = client(false);
+        registry.register("42", client);
+        assertThat(registry.get("42")).isNull();
+        assertThat(registry.getUserId(client)).isNull();
+        assertThat(registry.size()).isZero();
+    }
+
+    private static SocketIOClient client(boolean open) {
+        UUID sessionId = UUID.randomUUID();
+        return (SocketIOClient) Proxy.newProxyInstance(SocketIOClient.class.getClassLoader(),
+                new Class<?>[]{SocketIOClient.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getSessionId":
+                            return sessionId;
+                        case "isChannelOpen":
+                            return open;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
@@ -0,0 +1,95 @@
+package com.xatkit.plugins.moodle.platform.io;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class TokenBucketLimiterTest {
+
+    @Test
+    public void constructInvalidRate() {
+        assertThatThrownBy(() -> new TokenBucketLimiter(0, 1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void constructInvalidBurst() {
+        assertThatThrownBy(() -> new TokenBucketLimiter(1, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void burstIsAcceptedAtOnce() {
+        TokenBucketLimiter limiter = new TokenBucketLimiter(1, 5);
+        for (int i = 0; i < 5; i++) {
+            assertThat(limiter.tryAcquire("42")).as("event %s", i).isTrue();
+        }
+        assertThat(limiter.tryAcquire("42")).isFalse();
+    }
+
+    @Test
+    public void keysHaveTheirOwnBucket() {
+        TokenBucketLimiter limiter = new TokenBucketLimiter(1, 1);
+        assertThat(limiter.tryAcquire("42")).isTrue();
+        assertThat(limiter.tryAcquire("42")).isFalse();
+        assertThat(limiter.tryAcquire("43")).isTrue();
+        assertThat(limiter.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void tokensAreGrantedAtRate() throws InterruptedException {
+        TokenBucketLimiter limiter = new TokenBucketLimiter(20, 1);
+        assertThat(limiter.tryAcquire("42")).isTrue();
+        assertThat(limiter.tryAcquire("42")).isFalse();
+        Thread.sleep(60);
+        assertThat(limiter.tryAcquire("42")).isTrue();
+        assertThat(limiter.tryAcquire("42")).isFalse();
+    }
+
+    @Test
+    public void sustainedRateIsLimited() throws InterruptedException {
+        TokenBucketLimiter limiter = new TokenBucketLimiter(100, 1);
+        int accepted = 0;
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200);
+        while (System.nanoTime() - end < 0) {
+            if (limiter.tryAcquire("42")) {
+                accepted++;
+            }
+            Thread.sleep(1);
+        }
+        /*
+         * 100 events per second during 200ms, plus the initial token.
+         */
+        assertThat(accepted).isBetween(15, 22);
+    }
+
+    @Test
+    public void acquireDefersEventWithinMaxDelay() {
+        TokenBucketLimiter limiter = new TokenBucketLimiter(10, 1);
+        long maxDelay = TimeUnit.MILLISECONDS.toNanos(250);
+        assertThat(limiter.acquire("42", maxDelay)).isZero();
+        long delay = limiter.acquire("42", maxDelay);
+        assertThat(delay).isBetween(TimeUnit.MILLISECONDS.toNanos(50), TimeUnit.MILLISECONDS.toNanos(100));
+        long secondDelay = limiter.acquire("42", maxDelay);
+        assertThat(secondDelay).isBetween(TimeUnit.MILLISECONDS.toNanos(150), TimeUnit.MILLISECONDS.toNanos(200));
+        /*
+         * The third deferred event would wait ~300ms.
+         */
+        assertThat(limiter.acquire("42", maxDelay)).isEqualTo(TokenBucketLimiter.REJECTED);
+    }
+
+    @Test
+    public void fullBucketsArePurged() throws InterruptedException {
+        TokenBucketLimiter limiter = new TokenBucketLimiter(1000, 1);
+        for (int i = 0; i < 100; i++) {
+            limiter.tryAcquire(Integer.toString(i));
+        }
+        assertThat(limiter.size()).isEqualTo(100);
+        Thread.sleep(10);
+        for (int i = 100; i < 4096; i++) {
+            limiter.tryAcquire("42");
+        }
+        assertThat(limiter.size()).isLessThanOrEqualTo(1);
+    }
+}
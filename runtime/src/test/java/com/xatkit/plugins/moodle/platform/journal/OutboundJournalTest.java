@@ -0,0 +1,215 @@
+package com.xatkit.plugins.moodle.platform.journal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class OutboundJournalTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    private static final String ENDPOINT = "http://moodle/webservice/rest/server.php?wstoken=token";
+
+    /**
+     * A 100 characters message, the records of a segment of 4096 bytes hold 22 of them.
+     */
+    private static final String TEXT = String.format("%0100d", 0);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path directory;
+
+    private OutboundJournal journal;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = temporaryFolder.newFolder("journal").toPath();
+        journal = new OutboundJournal(directory, SEGMENT_SIZE, false);
+    }
+
+    @After
+    public void tearDown() {
+        journal.close();
+    }
+
+    @Test
+    public void constructTooSmallSegment() {
+        assertThatThrownBy(() -> new OutboundJournal(directory, 1024, false))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void reopenRecoversPendingMessagesInOrder() {
+        long first = journal.append(ENDPOINT, 1, "first");
+        long second = journal.append(ENDPOINT, 2, "second");
+        long third = journal.append(ENDPOINT, 3, "Zoë 😀");
+        journal.acknowledge(second);
+        assertThat(journal.getPendingCount()).isEqualTo(2);
+        reopen();
+        assertThat(journal.getPending()).extracting(JournalEntry::getId).containsExactly(first, third);
+        JournalEntry entry = journal.getPending().get(1);
+        assertThat(entry.getMoodleEndpoint()).isEqualTo(ENDPOINT);
+        assertThat(entry.getToUserId()).isEqualTo(3);
+        assertThat(entry.getText()).isEqualTo("Zoë 😀");
+        assertThat(journal.append(ENDPOINT, 4, "fourth")).isGreaterThan(third);
+    }
+
+    @Test
+    public void appendMessageLargerThanSegment() {
+        assertThat(journal.append(ENDPOINT, 1, String.format("%05000d", 0))).isEqualTo(-1);
+        assertThat(journal.getPendingCount()).isZero();
+    }
+
+    @Test
+    public void reopenAfterTornRecord() throws IOException {
+        long first = journal.append(ENDPOINT, 1, "first");
+        journal.append(ENDPOINT, 2, "second");
+        journal.close();
+        /*
+         * The length of a record is written last: a record interrupted by a crash has a 0 length.
+         */
+        writeInt(segmentFiles().get(0), recordSize("first"), 0);
+        journal = new OutboundJournal(directory, SEGMENT_SIZE, false);
+        assertThat(journal.getPending()).extracting(JournalEntry::getId).containsExactly(first);
+        long third = journal.append(ENDPOINT, 3, "third");
+        reopen();
+        assertThat(journal.getPending()).extracting(JournalEntry::getText).containsExactly("first", "third");
+        assertThat(journal.getPending()).extracting(JournalEntry::getId).containsExactly(first, third);
+    }
+
+    @Test
+    public void reopenAfterCorruptedRecord() throws IOException {
+        journal.append(ENDPOINT, 1, "first");
+        journal.append(ENDPOINT, 2, "second");
+        journal.close();
+        Path segment = segmentFiles().get(0);
+        /*
+         * Flip a byte of the text of the second record.
+         */
+        int offset = recordSize("first") + recordSize("second") - 1;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1);
+            channel.read(buffer, offset);
+            buffer.put(0, (byte) (buffer.get(0) ^ 1));
+            buffer.rewind();
+            channel.write(buffer, offset);
+        }
+        journal = new OutboundJournal(directory, SEGMENT_SIZE, false);
+        assertThat(journal.getPending()).extracting(JournalEntry::getText).containsExactly("first");
+        journal.append(ENDPOINT, 3, "third");
+        reopen();
+        assertThat(journal.getPending()).extracting(JournalEntry::getText).containsExactly("first", "third");
+    }
+
+    @Test
+    public void acknowledgementsDeleteOldestSegments() throws IOException {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            ids.add(journal.append(ENDPOINT, i, TEXT));
+        }
+        assertThat(journal.getSegmentCount()).isEqualTo(2);
+        /*
+         * The first segment is full of pending messages, which are too large to be moved to the second one.
+         */
+        Path firstSegment = segmentFiles().get(0);
+        for (long id : ids.subList(21, 30)) {
+            journal.acknowledge(id);
+        }
+        assertThat(journal.getSegmentCount()).isEqualTo(2);
+        for (long id : ids.subList(0, 20)) {
+            journal.acknowledge(id);
+        }
+        assertThat(journal.getSegmentCount()).isEqualTo(2);
+        assertThat(Files.exists(firstSegment)).isTrue();
+        journal.acknowledge(ids.get(20));
+        assertThat(journal.getSegmentCount()).isEqualTo(1);
+        assertThat(Files.exists(firstSegment)).isFalse();
+        reopen();
+        assertThat(journal.getPending()).isEmpty();
+    }
+
+    @Test
+    public void segmentsAreNotDeletedBeforeOlderOnes() {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            ids.add(journal.append(ENDPOINT, i, TEXT));
+        }
+        assertThat(journal.getSegmentCount()).isEqualTo(3);
+        /*
+         * The second segment only contains acknowledged messages, but the acknowledgements of the messages of the
+         * first segment it contains would be lost if it was deleted first.
+         */
+        for (long id : ids.subList(21, 50)) {
+            journal.acknowledge(id);
+        }
+        assertThat(journal.getSegmentCount()).isEqualTo(3);
+        reopen();
+        assertThat(journal.getPending()).extracting(JournalEntry::getId).containsExactlyElementsOf(ids.subList(0,
+                21));
+    }
+
+    @Test
+    public void pendingMessageIsRelocated() throws IOException {
+        long pending = journal.append(ENDPOINT, 1, "still pending");
+        for (int i = 0; i < 500; i++) {
+            journal.acknowledge(journal.append(ENDPOINT, i, TEXT));
+            assertThat(journal.getSegmentCount()).isLessThanOrEqualTo(2);
+        }
+        assertThat(segmentFiles().size()).isLessThanOrEqualTo(2);
+        assertThat(segmentFiles().get(0).getFileName().toString()).isNotEqualTo("outbound-"
+                + String.format("%019d", 0) + ".journal");
+        reopen();
+        assertThat(journal.getPending()).hasSize(1);
+        JournalEntry entry = journal.getPending().get(0);
+        assertThat(entry.getId()).isEqualTo(pending);
+        assertThat(entry.getToUserId()).isEqualTo(1);
+        assertThat(entry.getText()).isEqualTo("still pending");
+        journal.acknowledge(pending);
+        reopen();
+        assertThat(journal.getPending()).isEmpty();
+    }
+
+    private void reopen() {
+        journal.close();
+        journal = new OutboundJournal(directory, SEGMENT_SIZE, false);
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "outbound-*.journal")) {
+            stream.forEach(files::add);
+        }
+        return files.stream().sorted().collect(Collectors.toList());
+    }
+
+    private static int recordSize(String text) {
+        return 8 + 1 + 8 + 4 + 4 + ENDPOINT.getBytes(StandardCharsets.UTF_8).length + 4
+                + text.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static void writeInt(Path file, int offset, int value) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(4).putInt(value);
+            buffer.flip();
+            channel.write(buffer, offset);
+        }
+    }
+}
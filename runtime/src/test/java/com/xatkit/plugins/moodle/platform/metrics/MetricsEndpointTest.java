@@ -0,0 +1,59 @@
+package com.xatkit.plugins.moodle.platform.metrics;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MetricsEndpointTest {
+
+    private MetricsEndpoint endpoint;
+
+    @After
+    public void tearDown() {
+        if (endpoint != null) {
+            endpoint.stop();
+        }
+    }
+
+    @Test
+    public void bindsToLoopbackByDefault() {
+        endpoint = new MetricsEndpoint(new InMemoryMetricsRegistry(), 0);
+        assertThat(endpoint.getHost()).isIn("127.0.0.1", "0:0:0:0:0:0:0:1");
+    }
+
+    @Test
+    public void bindsToProvidedHost() {
+        endpoint = new MetricsEndpoint(new InMemoryMetricsRegistry(), "0.0.0.0", 0, null);
+        assertThat(endpoint.getHost()).isIn("0.0.0.0", "0:0:0:0:0:0:0:0");
+    }
+
+    @Test
+    public void servesMetricsAndReadiness() throws IOException {
+        MetricsRegistry registry = new InMemoryMetricsRegistry();
+        registry.counter("moodle_test_total").increment();
+        endpoint = new MetricsEndpoint(registry, null, 0, () -> false);
+        assertThat(get(MetricsEndpoint.METRICS_PATH)).contains("moodle_test_total 1");
+        HttpURLConnection connection = open(MetricsEndpoint.READY_PATH);
+        assertThat(connection.getResponseCode()).isEqualTo(503);
+    }
+
+    private HttpURLConnection open(String path) throws IOException {
+        return (HttpURLConnection) new URL("http://127.0.0.1:" + endpoint.getPort() + path).openConnection();
+    }
+
+    private String get(String path) throws IOException {
+        HttpURLConnection connection = open(path);
+        try (InputStream is = connection.getInputStream();
+             Scanner scanner = new Scanner(is, StandardCharsets.UTF_8.name()).useDelimiter("\\A")) {
+            return scanner.hasNext() ? scanner.next() : "";
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.xatkit.plugins.moodle.platform.resilience;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void constructInvalidFailureThreshold() {
+        assertThatThrownBy(() -> new CircuitBreaker(0, 100)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void constructInvalidOpenDuration() {
+        assertThatThrownBy(() -> new CircuitBreaker(1, -1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void staysClosedBelowThreshold() {
+        CircuitBreaker breaker = new CircuitBreaker(3, 10000);
+        fail(breaker, 2);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(breaker.tryAcquire()).isTrue();
+    }
+
+    @Test
+    public void successResetsConsecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker(3, 10000);
+        fail(breaker, 2);
+        assertThat(breaker.tryAcquire()).isTrue();
+        breaker.onSuccess();
+        fail(breaker, 2);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    public void opensAtThresholdAndRejectsCalls() {
+        CircuitBreaker breaker = new CircuitBreaker(3, 10000);
+        fail(breaker, 3);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(breaker.tryAcquire()).isFalse();
+    }
+
+    @Test
+    public void halfOpenLetsSingleProbeThrough() throws InterruptedException {
+        CircuitBreaker breaker = openBreaker(50);
+        Thread.sleep(80);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        assertThat(breaker.tryAcquire()).isTrue();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        assertThat(breaker.tryAcquire()).isFalse();
+        assertThat(breaker.tryAcquire()).isFalse();
+    }
+
+    @Test
+    public void successfulProbeClosesBreaker() throws InterruptedException {
+        CircuitBreaker breaker = openBreaker(50);
+        Thread.sleep(80);
+        assertThat(breaker.tryAcquire()).isTrue();
+        breaker.onSuccess();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(breaker.tryAcquire()).isTrue();
+        assertThat(breaker.tryAcquire()).isTrue();
+    }
+
+    @Test
+    public void failedProbeOpensBreakerAgain() throws InterruptedException {
+        CircuitBreaker breaker = openBreaker(50);
+        Thread.sleep(80);
+        assertThat(breaker.tryAcquire()).isTrue();
+        breaker.onFailure();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(breaker.tryAcquire()).isFalse();
+        Thread.sleep(80);
+        assertThat(breaker.tryAcquire()).isTrue();
+        assertThat(breaker.tryAcquire()).isFalse();
+    }
+
+    @Test
+    public void zeroOpenDurationProbesRightAway() {
+        CircuitBreaker breaker = openBreaker(0);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        assertThat(breaker.tryAcquire()).isTrue();
+        assertThat(breaker.tryAcquire()).isFalse();
+    }
+
+    private static CircuitBreaker openBreaker(long openDuration) {
+        CircuitBreaker breaker = new CircuitBreaker(2, openDuration);
+        fail(breaker, 2);
+        return breaker;
+    }
+
+    private static void fail(CircuitBreaker breaker, int times) {
+        for (int i = 0; i < times; i++) {
+            assertThat(breaker.tryAcquire()).isTrue();
+            breaker.onFailure();
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.xatkit.plugins.moodle.platform.session;
+
+import com.xatkit.core.session.XatkitSession;
+import com.xatkit.plugins.moodle.platform.utils.MoodleUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class FileSessionStoreTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path directory;
+
+    private FileSessionStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = temporaryFolder.newFolder("sessions").toPath();
+        store = new FileSessionStore(directory);
+    }
+
+    @After
+    public void tearDown() {
+        store.close();
+    }
+
+    @Test
+    public void loadRestoresVariablesAndContexts() {
+        XatkitSession session = createSession("42");
+        assertThat(store.save(session)).isTrue();
+        XatkitSession loaded = new XatkitSession("42");
+        assertThat(store.load(loaded)).isTrue();
+        assertSameContent(loaded, session);
+    }
+
+    @Test
+    public void loadAfterReopen() {
+        XatkitSession session = createSession("42");
+        store.save(session);
+        store.close();
+        store = new FileSessionStore(directory);
+        assertThat(store.size()).isEqualTo(1);
+        XatkitSession loaded = new XatkitSession("42");
+        assertThat(store.load(loaded)).isTrue();
+        assertSameContent(loaded, session);
+    }
+
+    @Test
+    public void loadUnknownUser() {
+        XatkitSession session = new XatkitSession("42");
+        assertThat(store.load(session)).isFalse();
+        assertThat(session.getSessionVariables()).isEmpty();
+    }
+
+    @Test
+    public void saveReplacesPreviousSession() {
+        XatkitSession session = createSession("42");
+        store.save(session);
+        session.store("course", "NEW101");
+        store.save(session);
+        XatkitSession loaded = new XatkitSession("42");
+        store.load(loaded);
+        assertThat(loaded.get("course")).isEqualTo("NEW101");
+        assertThat(store.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void deleteRemovesSessionAfterReopen() {
+        store.save(createSession("42"));
+        store.save(createSession("43"));
+        store.delete("42");
+        store.close();
+        store = new FileSessionStore(directory);
+        assertThat(store.size()).isEqualTo(1);
+        assertThat(store.load(new XatkitSession("42"))).isFalse();
+        assertThat(store.load(new XatkitSession("43"))).isTrue();
+    }
+
+    @Test
+    public void reopenDiscardsTornRecord() throws IOException {
+        store.save(createSession("42"));
+        store.close();
+        Path log = directory.resolve("sessions.log");
+        long validSize = Files.size(log);
+        /*
+         * A record header announcing more bytes than written.
+         */
+        Files.write(log, new byte[]{0, 0, 1, 0, 1, 2, 3, 4, 5, 6}, StandardOpenOption.APPEND);
+        store = new FileSessionStore(directory);
+        assertThat(Files.size(log)).isEqualTo(validSize);
+        assertThat(store.load(new XatkitSession("42"))).isTrue();
+        assertThat(store.save(createSession("43"))).isTrue();
+        store.close();
+        store = new FileSessionStore(directory);
+        assertThat(store.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void reopenDiscardsRecordWithInvalidCrc() throws IOException {
+        store.save(createSession("42"));
+        long firstSize = store.getFileSize();
+        store.save(createSession("43"));
+        store.close();
+        Path log = directory.resolve("sessions.log");
+        byte[] bytes = Files.readAllBytes(log);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(log, bytes);
+        store = new FileSessionStore(directory);
+        assertThat(store.getFileSize()).isEqualTo(firstSize);
+        assertThat(store.load(new XatkitSession("42"))).isTrue();
+        assertThat(store.load(new XatkitSession("43"))).isFalse();
+    }
+
+    @Test
+    public void compactionKeepsLiveSessions() {
+        char[] padding = new char[4096];
+        Arrays.fill(padding, 'x');
+        String largeValue = new String(padding);
+        for (int round = 0; round < 20; round++) {
+            for (int user = 0; user < 20; user++) {
+                XatkitSession session = createSession(Integer.toString(user));
+                session.store("round", round);
+                session.store("padding", largeValue);
+                assertThat(store.save(session)).isTrue();
+            }
+        }
+        /*
+         * 400 records of ~4KB have been written, only the last 20 are live.
+         */
+        assertThat(store.getFileSize()).isLessThan(400 * 4096);
+        assertThat(store.size()).isEqualTo(20);
+        assertThat(Files.exists(directory.resolve("sessions.log.compact"))).isFalse();
+        store.save(createSession("new"));
+        store.close();
+        store = new FileSessionStore(directory);
+        assertThat(store.size()).isEqualTo(21);
+        for (int user = 0; user < 20; user++) {
+            XatkitSession loaded = new XatkitSession(Integer.toString(user));
+            assertThat(store.load(loaded)).isTrue();
+            assertThat(loaded.get("round")).isEqualTo(19);
+            assertThat(loaded.get("padding")).isEqualTo(largeValue);
+        }
+        assertThat(store.load(new XatkitSession("new"))).isTrue();
+    }
+
+    @Test
+    public void decodeTruncatedSessionDoesNotModifySession() {
+        byte[] encoded = FileSessionStore.encode(createSession("42"));
+        XatkitSession session = new XatkitSession("42");
+        ByteBuffer truncated = ByteBuffer.wrap(Arrays.copyOf(encoded, encoded.length - 3));
+        assertThatThrownBy(() -> FileSessionStore.decode(truncated, session))
+                .isInstanceOf(BufferUnderflowException.class);
+        assertThat(session.getSessionVariables()).isEmpty();
+        assertThat(session.getRuntimeContexts().getContextMap()).isEmpty();
+    }
+
+    @Test
+    public void encodeSkipsValuesThatCannotBeStored() {
+        XatkitSession session = new XatkitSession("42");
+        session.store("name", "Ada");
+        session.store("intent", new Object());
+        session.store("list", Arrays.asList("a", new Object()));
+        XatkitSession decoded = new XatkitSession("42");
+        FileSessionStore.decode(ByteBuffer.wrap(FileSessionStore.encode(session)), decoded);
+        assertThat(decoded.getSessionVariables()).containsOnlyKeys("name");
+    }
+
+    private static XatkitSession createSession(String userId) {
+        XatkitSession session = new XatkitSession(userId);
+        session.store("name", "Zoë 😀");
+        session.store("count", 3);
+        session.store("big", Long.MAX_VALUE);
+        session.store("negative", -12L);
+        session.store("ratio", 0.25);
+        session.store("enrolled", true);
+        session.store("missing", null);
+        session.store("courses", Arrays.asList("INF101", 7, Collections.singletonList(false)));
+        Map<String, Object> nested = new LinkedHashMap<>();
+        nested.put("id", 12);
+        nested.put("tags", Arrays.asList("a", "b"));
+        session.store("course", nested);
+        session.store(MoodleUtils.MOODLE_SESSION_CONTEXT_KEY, new MoodleSessionContext(userId, "Hi", "12"));
+        session.getRuntimeContexts().setContextValue("enrolment", 5, "course", "INF101");
+        session.getRuntimeContexts().setContextValue("enrolment", 5, "year", 2020);
+        return session;
+    }
+
+    private static void assertSameContent(XatkitSession actual, XatkitSession expected) {
+        assertThat(actual.getSessionVariables()).isEqualTo(expected.getSessionVariables());
+        assertThat(actual.getRuntimeContexts().getContextMap()).isEqualTo(
+                expected.getRuntimeContexts().getContextMap());
+        assertThat(actual.getRuntimeContexts().getContextLifespanCount("enrolment")).isEqualTo(5);
+    }
+}
@@ -0,0 +1,94 @@
+package com.xatkit.plugins.moodle.platform.session;
+
+import com.xatkit.core.session.XatkitSession;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MoodleSessionManagerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final List<String> createdSessions = new ArrayList<>();
+
+    private MoodleSessionManager manager;
+
+    @Before
+    public void setUp() throws IOException {
+        FileSessionStore store = new FileSessionStore(temporaryFolder.newFolder("sessions").toPath());
+        manager = new MoodleSessionManager(userId -> {
+            createdSessions.add(userId);
+            return new XatkitSession(userId);
+        }, 1, 0, store);
+    }
+
+    @After
+    public void tearDown() {
+        manager.close();
+    }
+
+    @Test
+    public void getOrCreateReturnsSameSession() {
+        XatkitSession session = manager.getOrCreate("42");
+        assertThat(manager.getOrCreate("42")).isSameAs(session);
+        assertThat(createdSessions).containsExactly("42");
+    }
+
+    @Test
+    public void evictedSessionIsReleasedAndRestored() throws InterruptedException {
+        WeakReference<XatkitSession> evicted = new WeakReference<>(createAndEvict("42"));
+        assertThat(manager.size()).isZero();
+        assertThat(manager.get("42")).isNull();
+        assertThat(manager.getIdleEvictionCount()).isEqualTo(1);
+        for (int i = 0; i < 10 && nonNullReferent(evicted); i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertThat(evicted.get()).isNull();
+
+        XatkitSession restored = manager.getOrCreate("42");
+        assertThat(createdSessions).containsExactly("42", "42");
+        assertThat(manager.getRehydrationCount()).isEqualTo(1);
+        assertThat(restored.get("course")).isEqualTo("INF101");
+        assertThat(MoodleSessionContext.of(restored)).isEqualTo(new MoodleSessionContext("42", "Hi", "12"));
+        assertThat(restored.getRuntimeContexts().getContextValue("enrolment", "year")).isEqualTo(2020);
+    }
+
+    @Test
+    public void removeDeletesStoredSession() throws InterruptedException {
+        createAndEvict("42");
+        manager.remove("42");
+        XatkitSession session = manager.getOrCreate("42");
+        assertThat(session.get("course")).isNull();
+        assertThat(manager.getRehydrationCount()).isZero();
+    }
+
+    /**
+     * Creates the session of the provided {@code userId} and evicts it as an idle session.
+     * <p>
+     * The returned session must not be kept by the caller to check that the manager releases it.
+     */
+    private XatkitSession createAndEvict(String userId) throws InterruptedException {
+        XatkitSession session = manager.getOrCreate(userId);
+        manager.update(session, new MoodleSessionContext(userId, "Hi", "12"));
+        session.store("course", "INF101");
+        session.getRuntimeContexts().setContextValue("enrolment", 5, "year", 2020);
+        Thread.sleep(5);
+        manager.evictIdleSessions();
+        return session;
+    }
+
+    private static boolean nonNullReferent(WeakReference<?> reference) {
+        return reference.get() != null;
+    }
+}
@@ -0,0 +1,135 @@
+package com.xatkit.plugins.moodle.platform.utils;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MessageObjectCodecTest {
+
+    @Test
+    public void roundTrip() {
+        MessageObject decoded = roundTrip("What are my courses?", "42", "7");
+        assertThat(decoded.getMessage()).isEqualTo("What are my courses?");
+        assertThat(decoded.getUserId()).isEqualTo("42");
+        assertThat(decoded.getCurrentCourseID()).isEqualTo("7");
+    }
+
+    @Test
+    public void roundTripWithoutCourse() {
+        MessageObject decoded = roundTrip("Hello", "42", null);
+        assertThat(decoded.getCurrentCourseID()).isNull();
+    }
+
+    @Test
+    public void roundTripSurrogatePairs() {
+        String message = "Zoë 😀 中文 𝔄";
+        byte[] encoded = MessageObjectCodec.encode(message, "42", null);
+        byte[] expectedString = message.getBytes(StandardCharsets.UTF_8);
+        assertThat(Arrays.copyOfRange(encoded, 2, 2 + expectedString.length)).isEqualTo(expectedString);
+        assertThat(MessageObjectCodec.decode(encoded).getMessage()).isEqualTo(message);
+    }
+
+    @Test
+    public void unpairedSurrogatesAreReplaced() {
+        assertThat(roundTrip("a\uD83Db\uDE00c\uD83D", "42", null).getMessage()).isEqualTo("a?b?c?");
+    }
+
+    @Test
+    public void roundTripLongMessages() {
+        for (int length : new int[]{31, 32, 255, 256, 65535, 65536, 100000}) {
+            char[] chars = new char[length];
+            Arrays.fill(chars, 'é');
+            String message = new String(chars);
+            assertThat(roundTrip(message, "42", null).getMessage()).as("length %s", length).isEqualTo(message);
+        }
+    }
+
+    @Test
+    public void canonicalIdsAreEncodedAsIntegers() {
+        assertThat(MessageObjectCodec.encode("hi", "42", null)).containsExactly(0x93, 0xa2, 'h', 'i', 42, 0xc0);
+        assertThat(MessageObjectCodec.encode("", "-5", "0")).containsExactly(0x93, 0xa0, 0xfb, 0);
+        assertThat(MessageObjectCodec.encode("", "1000", null)).containsExactly(0x93, 0xa0, 0xd2, 0, 0, 0x03,
+                0xe8, 0xc0);
+        byte[] encoded = MessageObjectCodec.encode("", "123456789012345678", null);
+        assertThat(encoded[2] & 0xff).isEqualTo(0xd3);
+        assertThat(encoded).hasSize(12);
+        for (String id : new String[]{"0", "127", "128", "-32", "-33", "2147483647", "-2147483648", "2147483648",
+                "123456789012345678", "-123456789012345678"}) {
+            assertThat(roundTrip("", id, id).getUserId()).as("id %s", id).isEqualTo(id);
+        }
+    }
+
+    @Test
+    public void nonCanonicalIdsAreEncodedAsStrings() {
+        for (String id : new String[]{"007", "+1", "-0", "-", "", "1234567890123456789", "12a", "user-42", "١٢"}) {
+            byte[] encoded = MessageObjectCodec.encode("", id, null);
+            assertThat(encoded[2] & 0xe0).as("id %s", id).isEqualTo(0xa0);
+            MessageObject decoded = MessageObjectCodec.decode(encoded);
+            assertThat(decoded.getUserId()).as("id %s", id).isEqualTo(id);
+        }
+    }
+
+    @Test
+    public void decodeIntegersOfOtherEncoders() {
+        assertThat(MessageObjectCodec.decode(bytes(0x92, 0xa0, 0xcc, 0xc8)).getUserId()).isEqualTo("200");
+        assertThat(MessageObjectCodec.decode(bytes(0x92, 0xa0, 0xcd, 0xff, 0xff)).getUserId()).isEqualTo("65535");
+        assertThat(MessageObjectCodec.decode(bytes(0x92, 0xa0, 0xce, 0xff, 0xff, 0xff, 0xff)).getUserId())
+                .isEqualTo("4294967295");
+        assertThat(MessageObjectCodec.decode(bytes(0x92, 0xa0, 0xcf, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff,
+                0xff)).getUserId()).isEqualTo("18446744073709551615");
+        assertThat(MessageObjectCodec.decode(bytes(0x92, 0xa0, 0xd0, 0x80)).getUserId()).isEqualTo("-128");
+        assertThat(MessageObjectCodec.decode(bytes(0x92, 0xa0, 0xd1, 0x80, 0x00)).getUserId()).isEqualTo("-32768");
+    }
+
+    @Test
+    public void decodeArrayWithOptionalCourse() {
+        MessageObject decoded = MessageObjectCodec.decode(bytes(0x92, 0xa1, 'a', 0x01));
+        assertThat(decoded.getMessage()).isEqualTo("a");
+        assertThat(decoded.getUserId()).isEqualTo("1");
+        assertThat(decoded.getCurrentCourseID()).isNull();
+    }
+
+    @Test
+    public void decodeTruncatedInput() {
+        byte[] encoded = MessageObjectCodec.encode("Zoë 😀 and a longer message", "123456789012", "user-7");
+        for (int length = 0; length < encoded.length; length++) {
+            byte[] truncated = Arrays.copyOf(encoded, length);
+            assertThatThrownBy(() -> MessageObjectCodec.decode(truncated)).as("length %s", length)
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Test
+    public void decodeTruncatedStringLength() {
+        assertThatThrownBy(() -> MessageObjectCodec.decode(bytes(0x92, 0xdb, 0xff, 0xff, 0xff, 0xff, 'a')))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("truncated");
+    }
+
+    @Test
+    public void decodeInvalidInput() {
+        assertThatThrownBy(() -> MessageObjectCodec.decode(bytes(0x91, 0xa0)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> MessageObjectCodec.decode(bytes(0xa0)))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("an array");
+        assertThatThrownBy(() -> MessageObjectCodec.decode(bytes(0x92, 0x01, 0x01)))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("a string");
+    }
+
+    private static MessageObject roundTrip(String message, String userId, String currentCourseID) {
+        MessageObject messageObject = new MessageObject(message, userId);
+        messageObject.setCurrentCourseAccessID(currentCourseID);
+        return MessageObjectCodec.decode(MessageObjectCodec.encode(messageObject));
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+}